@@ -19,4 +19,8 @@ package org.gradle.internal.hash;
 import org.gradle.internal.Factory;
 
 public interface ContentHasherFactory extends Factory<Hasher> {
+    /**
+     * Returns the algorithm used by the hashers created by this factory.
+     */
+    HashAlgorithm getAlgorithm();
 }
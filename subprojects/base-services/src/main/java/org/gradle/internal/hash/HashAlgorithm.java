@@ -0,0 +1,79 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.hash;
+
+import javax.annotation.Nullable;
+
+/**
+ * The hash functions that can be selected for hashes that are persisted in local caches.
+ *
+ * <p>Each algorithm has a version, which must be incremented whenever the hashes produced by its implementation change. Caches record the {@link #getVersionedName() versioned name}
+ * of the algorithm used to produce their hashes, and discard their content when a different algorithm or version is used.</p>
+ */
+public enum HashAlgorithm {
+    MD5("md5", 1) {
+        @Override
+        public HashFunction getHashFunction() {
+            return Hashing.md5();
+        }
+    },
+    MURMUR3_128("murmur3-128", 1) {
+        @Override
+        public HashFunction getHashFunction() {
+            return Hashing.murmur3();
+        }
+    };
+
+    private final String versionedName;
+
+    HashAlgorithm(String name, int version) {
+        this.versionedName = name + "-v" + version;
+    }
+
+    public abstract HashFunction getHashFunction();
+
+    public String getVersionedName() {
+        return versionedName;
+    }
+
+    /**
+     * Returns the algorithm named by the given system property, or the given default when the property is not set.
+     *
+     * @throws IllegalArgumentException when the property does not name a known algorithm.
+     */
+    public static HashAlgorithm fromSystemProperty(String propertyName, HashAlgorithm defaultAlgorithm) {
+        String value = System.getProperty(propertyName);
+        if (value == null) {
+            return defaultAlgorithm;
+        }
+        HashAlgorithm algorithm = forName(value);
+        if (algorithm == null) {
+            throw new IllegalArgumentException(String.format("Unknown hash algorithm '%s' specified by system property '%s'.", value, propertyName));
+        }
+        return algorithm;
+    }
+
+    @Nullable
+    private static HashAlgorithm forName(String name) {
+        for (HashAlgorithm algorithm : values()) {
+            if (algorithm.name().equalsIgnoreCase(name) || algorithm.versionedName.startsWith(name.toLowerCase() + "-v")) {
+                return algorithm;
+            }
+        }
+        return null;
+    }
+}
@@ -42,6 +42,13 @@ public class Hashing {
         return SHA1;
     }
 
+    /**
+     * Returns the x64 128-bit variant of MurmurHash3. This is not a cryptographic hash function, so must only be used for hashes that are not exposed to untrusted input.
+     */
+    public static HashFunction murmur3() {
+        return Murmur3HashFunction.INSTANCE;
+    }
+
     private static abstract class MessageDigestHashFunction implements HashFunction {
         public static MessageDigestHashFunction of(String algorithm) {
             MessageDigest prototype;
@@ -148,6 +155,12 @@ public class Hashing {
             digest.update(bytes, off, len);
         }
 
+        @Override
+        public void putBytes(ByteBuffer buffer) {
+            checkNotDone();
+            digest.update(buffer);
+        }
+
         @Override
         public HashCode hash() {
             done = true;
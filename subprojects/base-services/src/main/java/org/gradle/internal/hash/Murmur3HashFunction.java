@@ -0,0 +1,239 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.hash;
+
+import com.google.common.base.Charsets;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The x64 128-bit variant of MurmurHash3, with a seed of 0. Much faster than the cryptographic hash functions, but must only be used for hashes that are not exposed to untrusted input.
+ * Produces the same hashes as Guava's {@code murmur3_128()}.
+ * Inspired by the Google Guava project – https://github.com/google/guava.
+ */
+class Murmur3HashFunction implements HashFunction {
+    static final HashFunction INSTANCE = new Murmur3HashFunction();
+
+    private static final int CHUNK_SIZE = 16;
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private Murmur3HashFunction() {
+    }
+
+    @Override
+    public Hasher newHasher() {
+        return new Murmur3Hasher();
+    }
+
+    @Override
+    public HashCode hashBytes(byte[] bytes) {
+        Hasher hasher = newHasher();
+        hasher.putBytes(bytes);
+        return hasher.hash();
+    }
+
+    @Override
+    public HashCode hashString(CharSequence string) {
+        Hasher hasher = newHasher();
+        hasher.putString(string);
+        return hasher.hash();
+    }
+
+    private static class Murmur3Hasher implements Hasher {
+        // Has room for a chunk plus a long, so that a primitive can always be written before the buffer is processed
+        private final ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE + 7).order(ByteOrder.LITTLE_ENDIAN);
+        private long h1;
+        private long h2;
+        private long length;
+        private boolean done;
+
+        private void checkNotDone() {
+            if (done) {
+                throw new IllegalStateException("Cannot reuse hasher");
+            }
+        }
+
+        @Override
+        public void putBytes(byte[] bytes) {
+            putBytes(bytes, 0, bytes.length);
+        }
+
+        @Override
+        public void putBytes(byte[] bytes, int off, int len) {
+            checkNotDone();
+            update(ByteBuffer.wrap(bytes, off, len).order(ByteOrder.LITTLE_ENDIAN));
+        }
+
+        @Override
+        public void putBytes(ByteBuffer bytes) {
+            checkNotDone();
+            update(bytes.duplicate().order(ByteOrder.LITTLE_ENDIAN));
+            bytes.position(bytes.limit());
+        }
+
+        @Override
+        public void putByte(byte value) {
+            checkNotDone();
+            buffer.put(value);
+            processIfFull();
+        }
+
+        @Override
+        public void putInt(int value) {
+            checkNotDone();
+            buffer.putInt(value);
+            processIfFull();
+        }
+
+        @Override
+        public void putLong(long value) {
+            checkNotDone();
+            buffer.putLong(value);
+            processIfFull();
+        }
+
+        @Override
+        public void putDouble(double value) {
+            putLong(Double.doubleToRawLongBits(value));
+        }
+
+        @Override
+        public void putBoolean(boolean value) {
+            putByte((byte) (value ? 1 : 0));
+        }
+
+        @Override
+        public void putString(CharSequence value) {
+            putBytes(value.toString().getBytes(Charsets.UTF_8));
+        }
+
+        @Override
+        public void putHash(HashCode hashCode) {
+            putBytes(hashCode.getBytes());
+        }
+
+        @Override
+        public HashCode hash() {
+            checkNotDone();
+            done = true;
+            processBuffer();
+            buffer.flip();
+            if (buffer.hasRemaining()) {
+                processRemaining(buffer);
+            }
+            h1 ^= length;
+            h2 ^= length;
+            h1 += h2;
+            h2 += h1;
+            h1 = fmix64(h1);
+            h2 = fmix64(h2);
+            h1 += h2;
+            h2 += h1;
+            byte[] bytes = new byte[16];
+            ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putLong(h1).putLong(h2);
+            return HashCode.fromBytesNoCopy(bytes);
+        }
+
+        private void update(ByteBuffer bytes) {
+            if (bytes.remaining() <= buffer.remaining()) {
+                buffer.put(bytes);
+                processIfFull();
+                return;
+            }
+            // Complete the buffered chunk, then process whole chunks directly from the source
+            int bytesToCopy = CHUNK_SIZE - buffer.position();
+            for (int i = 0; i < bytesToCopy; i++) {
+                buffer.put(bytes.get());
+            }
+            processBuffer();
+            while (bytes.remaining() >= CHUNK_SIZE) {
+                process(bytes);
+            }
+            buffer.put(bytes);
+        }
+
+        private void processIfFull() {
+            if (buffer.remaining() < 8) {
+                processBuffer();
+            }
+        }
+
+        private void processBuffer() {
+            buffer.flip();
+            while (buffer.remaining() >= CHUNK_SIZE) {
+                process(buffer);
+            }
+            buffer.compact();
+        }
+
+        private void process(ByteBuffer bytes) {
+            long k1 = bytes.getLong();
+            long k2 = bytes.getLong();
+            h1 ^= mixK1(k1);
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+            h2 ^= mixK2(k2);
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+            length += CHUNK_SIZE;
+        }
+
+        private void processRemaining(ByteBuffer bytes) {
+            long k1 = 0;
+            long k2 = 0;
+            int remaining = bytes.remaining();
+            length += remaining;
+            for (int i = 0; i < remaining; i++) {
+                long value = bytes.get() & 0xffL;
+                if (i < 8) {
+                    k1 ^= value << (8 * i);
+                } else {
+                    k2 ^= value << (8 * (i - 8));
+                }
+            }
+            h1 ^= mixK1(k1);
+            h2 ^= mixK2(k2);
+        }
+
+        private static long mixK1(long k1) {
+            k1 *= C1;
+            k1 = Long.rotateLeft(k1, 31);
+            k1 *= C2;
+            return k1;
+        }
+
+        private static long mixK2(long k2) {
+            k2 *= C2;
+            k2 = Long.rotateLeft(k2, 33);
+            k2 *= C1;
+            return k2;
+        }
+
+        private static long fmix64(long k) {
+            k ^= k >>> 33;
+            k *= 0xff51afd7ed558ccdL;
+            k ^= k >>> 33;
+            k *= 0xc4ceb9fe1a85ec53L;
+            k ^= k >>> 33;
+            return k;
+        }
+    }
+}
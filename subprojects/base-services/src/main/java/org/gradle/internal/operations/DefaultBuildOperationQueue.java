@@ -20,15 +20,29 @@ import org.gradle.internal.UncheckedException;
 import org.gradle.internal.work.WorkerLeaseRegistry;
 import org.gradle.internal.work.WorkerLeaseService;
 
+import java.util.ArrayDeque;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Deque;
-import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * Hands out operations to workers without a queue-wide lock, in the style of a work-stealing pool.
+ *
+ * <p>Operations added by a worker of this queue, while it runs an operation, are pushed onto that worker's own deque. All other operations go to a shared submission queue.
+ * A worker looking for work takes the most recently added operation from its own deque, then the oldest operation from the submission queue, then steals the oldest operation
+ * from the deque of another worker.</p>
+ *
+ * <p>A worker holds a child worker lease while it runs operations, and gives it up before it goes idle. A new worker is only started when no worker is idle.</p>
+ */
 class DefaultBuildOperationQueue<T extends BuildOperation> implements BuildOperationQueue<T> {
     private enum QueueState {
         Working, Finishing, Cancelled, Done
@@ -40,15 +54,20 @@ class DefaultBuildOperationQueue<T extends BuildOperation> implements BuildOpera
     private final QueueWorker<T> queueWorker;
     private String logLocation;
 
-    // Lock protects the following state, using an intentionally simple locking strategy
+    private final Queue<T> submittedOperations = new ConcurrentLinkedQueue<T>();
+    private final List<WorkerRunnable> workers = new CopyOnWriteArrayList<WorkerRunnable>();
+    private final ThreadLocal<WorkerRunnable> currentWorker = new ThreadLocal<WorkerRunnable>();
+    private final AtomicInteger workerCount = new AtomicInteger();
+    private final AtomicInteger pendingOperations = new AtomicInteger();
+    private final Queue<Throwable> failures = new ConcurrentLinkedQueue<Throwable>();
+    private volatile QueueState queueState = QueueState.Working;
+
+    // Lock is only used to change the queue state, to park idle workers and to wait for completion
     private final ReentrantLock lock = new ReentrantLock();
     private final Condition workAvailable = lock.newCondition();
     private final Condition operationsComplete = lock.newCondition();
-    private QueueState queueState = QueueState.Working;
-    private int workerCount;
-    private int pendingOperations;
-    private final Deque<T> workQueue = new LinkedList<T>();
-    private final LinkedList<Throwable> failures = new LinkedList<Throwable>();
+    // Only changed while holding the lock, but read without it
+    private volatile int idleWorkers;
 
     DefaultBuildOperationQueue(WorkerLeaseService workerLeases, Executor executor, QueueWorker<T> queueWorker) {
         this.workerLeases = workerLeases;
@@ -59,24 +78,55 @@ class DefaultBuildOperationQueue<T extends BuildOperation> implements BuildOpera
 
     @Override
     public void add(final T operation) {
+        QueueState state = queueState;
+        if (state == QueueState.Done) {
+            throw new IllegalStateException("BuildOperationQueue cannot be reused once it has completed.");
+        }
+        if (state == QueueState.Cancelled) {
+            return;
+        }
+        pendingOperations.incrementAndGet();
+        WorkerRunnable worker = currentWorker.get();
+        if (worker != null) {
+            worker.push(operation);
+        } else {
+            submittedOperations.add(operation);
+        }
+        if (queueState == QueueState.Cancelled) {
+            // Raced with cancel(), which may not have seen the operation
+            discardQueuedOperations();
+            return;
+        }
+        // Either an idle worker sees the operation before it parks, or this thread sees the idle worker
+        if (idleWorkers > 0) {
+            wakeIdleWorker();
+        } else {
+            maybeStartWorker();
+        }
+    }
+
+    private void wakeIdleWorker() {
         lock.lock();
         try {
-            if (queueState == QueueState.Done) {
-                throw new IllegalStateException("BuildOperationQueue cannot be reused once it has completed.");
-            }
-            if (queueState == QueueState.Cancelled) {
+            workAvailable.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void maybeStartWorker() {
+        // The number of operations running at the same time is bounded by the worker leases, so there is no need to hold back workers here.
+        // Starting up to `getMaxWorkerCount()` workers allows all leases to be used before the main thread starts executing work as well.
+        int maxWorkerCount = workerLeases.getMaxWorkerCount();
+        while (true) {
+            int count = workerCount.get();
+            if (count > 0 && count >= maxWorkerCount) {
                 return;
             }
-            workQueue.add(operation);
-            pendingOperations++;
-            workAvailable.signalAll();
-            if (workerCount == 0 || workerCount < workerLeases.getMaxWorkerCount() - 1) {
-                // `getMaxWorkerCount() - 1` because main thread executes work as well. See https://github.com/gradle/gradle/issues/3273
-                // TODO This could be more efficient, so that we only start a worker when there are none idle _and_ there is a worker lease available
-                executor.execute(new WorkerRunnable());
+            if (workerCount.compareAndSet(count, count + 1)) {
+                executor.execute(new WorkerRunnable(true));
+                return;
             }
-        } finally {
-            lock.unlock();
         }
     }
 
@@ -88,12 +138,11 @@ class DefaultBuildOperationQueue<T extends BuildOperation> implements BuildOpera
                 return;
             }
             queueState = QueueState.Cancelled;
-            completeOperations(workQueue.size());
-            workQueue.clear();
             workAvailable.signalAll();
         } finally {
             lock.unlock();
         }
+        discardQueuedOperations();
     }
 
     public void waitForCompletion() throws MultipleBuildOperationFailures {
@@ -113,7 +162,7 @@ class DefaultBuildOperationQueue<T extends BuildOperation> implements BuildOpera
         // workers from other threads.  In other words, it ensures that all worker leases
         // are being utilized, regardless of the bounds of the thread pool.
         try {
-            new WorkerRunnable().run();
+            new WorkerRunnable(false).run();
         } catch (Throwable t) {
             addFailure(t);
         }
@@ -121,7 +170,7 @@ class DefaultBuildOperationQueue<T extends BuildOperation> implements BuildOpera
         lock.lock();
         try {
             // Wait for any work still running in other threads
-            while (pendingOperations > 0) {
+            while (pendingOperations.get() > 0) {
                 try {
                     operationsComplete.await();
                 } catch (InterruptedException e) {
@@ -139,24 +188,45 @@ class DefaultBuildOperationQueue<T extends BuildOperation> implements BuildOpera
     }
 
     private void addFailure(Throwable failure) {
-        lock.lock();
-        try {
-            failures.add(failure);
-        } finally {
-            lock.unlock();
-        }
+        failures.add(failure);
     }
 
     private void completeOperations(int count) {
-        lock.lock();
-        try {
-            pendingOperations = pendingOperations - count;
-            operationsComplete.signalAll();
-        } finally {
-            lock.unlock();
+        if (pendingOperations.addAndGet(-count) == 0) {
+            lock.lock();
+            try {
+                operationsComplete.signalAll();
+            } finally {
+                lock.unlock();
+            }
         }
     }
 
+    private void discardQueuedOperations() {
+        int count = 0;
+        while (submittedOperations.poll() != null) {
+            count++;
+        }
+        for (WorkerRunnable worker : workers) {
+            count += worker.clear();
+        }
+        if (count > 0) {
+            completeOperations(count);
+        }
+    }
+
+    private boolean hasQueuedOperations() {
+        if (!submittedOperations.isEmpty()) {
+            return true;
+        }
+        for (WorkerRunnable worker : workers) {
+            if (worker.hasLocalOperations()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     @Override
     public void setLogLocation(String logLocation) {
         this.logLocation = logLocation;
@@ -170,26 +240,73 @@ class DefaultBuildOperationQueue<T extends BuildOperation> implements BuildOpera
     }
 
     private class WorkerRunnable implements Runnable {
+        private final boolean pooled;
+        // Guarded by itself. The owner takes from the tail and other workers steal from the head.
+        private final Deque<T> localOperations = new ArrayDeque<T>();
+
+        WorkerRunnable(boolean pooled) {
+            this.pooled = pooled;
+        }
+
         @Override
         public void run() {
-            T operation;
-            while ((operation = waitForNextOperation()) != null) {
-                runBatch(operation);
+            workers.add(this);
+            currentWorker.set(this);
+            try {
+                T operation;
+                while ((operation = waitForNextOperation()) != null) {
+                    runBatch(operation);
+                }
+            } finally {
+                currentWorker.remove();
+                workers.remove(this);
             }
-            shutDown();
         }
 
         private T waitForNextOperation() {
+            while (true) {
+                T operation = getNextOperation();
+                if (operation != null) {
+                    return operation;
+                }
+                operation = park();
+                if (operation != null) {
+                    return operation;
+                }
+                if (!pooled) {
+                    return null;
+                }
+                // Stop, unless an operation was added by a thread that saw this worker as still running
+                workerCount.decrementAndGet();
+                if (!hasQueuedOperations()) {
+                    return null;
+                }
+                workerCount.incrementAndGet();
+            }
+        }
+
+        /**
+         * Waits until an operation is available or the queue is no longer accepting work. Returns null in the latter case.
+         */
+        private T park() {
             lock.lock();
             try {
-                while (queueState == QueueState.Working && workQueue.isEmpty()) {
-                    try {
-                        workAvailable.await();
-                    } catch (InterruptedException e) {
-                        throw new UncheckedException(e);
+                idleWorkers++;
+                try {
+                    while (true) {
+                        T operation = getNextOperation();
+                        if (operation != null || queueState != QueueState.Working) {
+                            return operation;
+                        }
+                        try {
+                            workAvailable.await();
+                        } catch (InterruptedException e) {
+                            throw new UncheckedException(e);
+                        }
                     }
+                } finally {
+                    idleWorkers--;
                 }
-                return getNextOperation();
             } finally {
                 lock.unlock();
             }
@@ -217,11 +334,54 @@ class DefaultBuildOperationQueue<T extends BuildOperation> implements BuildOpera
         }
 
         private T getNextOperation() {
-            lock.lock();
-            try {
-                return workQueue.pollFirst();
-            } finally {
-                lock.unlock();
+            T operation;
+            synchronized (localOperations) {
+                operation = localOperations.pollLast();
+            }
+            if (operation == null) {
+                operation = submittedOperations.poll();
+            }
+            if (operation == null) {
+                operation = steal();
+            }
+            return operation;
+        }
+
+        private T steal() {
+            for (WorkerRunnable worker : workers) {
+                if (worker != this) {
+                    T operation = worker.pollOldest();
+                    if (operation != null) {
+                        return operation;
+                    }
+                }
+            }
+            return null;
+        }
+
+        private void push(T operation) {
+            synchronized (localOperations) {
+                localOperations.addLast(operation);
+            }
+        }
+
+        private T pollOldest() {
+            synchronized (localOperations) {
+                return localOperations.pollFirst();
+            }
+        }
+
+        private boolean hasLocalOperations() {
+            synchronized (localOperations) {
+                return !localOperations.isEmpty();
+            }
+        }
+
+        private int clear() {
+            synchronized (localOperations) {
+                int count = localOperations.size();
+                localOperations.clear();
+                return count;
             }
         }
 
@@ -232,14 +392,5 @@ class DefaultBuildOperationQueue<T extends BuildOperation> implements BuildOpera
                 addFailure(t);
             }
         }
-
-        private void shutDown() {
-            lock.lock();
-            try {
-                workerCount--;
-            } finally {
-                lock.unlock();
-            }
-        }
     }
 }
@@ -21,7 +21,9 @@ import com.google.common.collect.Sets;
 import org.gradle.api.Transformer;
 import org.gradle.internal.UncheckedException;
 
+import javax.annotation.Nullable;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 
@@ -94,7 +96,7 @@ public class DefaultResourceLockCoordinationService implements ResourceLockCoord
         }
     }
 
-    private static class DefaultResourceLockState implements ResourceLockState {
+    static class DefaultResourceLockState implements ResourceLockState {
         private Set<ResourceLock> lockedResources;
         private Set<ResourceLock> unlockedResources;
         boolean rollback;
@@ -123,6 +125,10 @@ public class DefaultResourceLockCoordinationService implements ResourceLockCoord
             return unlockedResources != null && !unlockedResources.isEmpty();
         }
 
+        Set<ResourceLock> getUnlockedResources() {
+            return unlockedResources == null ? Collections.<ResourceLock>emptySet() : unlockedResources;
+        }
+
         @Override
         public void releaseLocks() {
             if (lockedResources != null) {
@@ -180,9 +186,10 @@ public class DefaultResourceLockCoordinationService implements ResourceLockCoord
         return unlock(Arrays.asList(resourceLocks));
     }
 
-    private static class AcquireLocks implements Transformer<ResourceLockState.Disposition, ResourceLockState> {
+    static class AcquireLocks implements Transformer<ResourceLockState.Disposition, ResourceLockState> {
         private final Iterable<? extends ResourceLock> resourceLocks;
         private final boolean blocking;
+        private ResourceLock blockedOn;
 
         AcquireLocks(Iterable<? extends ResourceLock> resourceLocks, boolean blocking) {
             this.resourceLocks = resourceLocks;
@@ -191,13 +198,23 @@ public class DefaultResourceLockCoordinationService implements ResourceLockCoord
 
         @Override
         public ResourceLockState.Disposition transform(ResourceLockState resourceLockState) {
+            blockedOn = null;
             for (ResourceLock resourceLock : resourceLocks) {
                 if (!resourceLock.tryLock()) {
+                    blockedOn = resourceLock;
                     return blocking ? ResourceLockState.Disposition.RETRY : ResourceLockState.Disposition.FAILED;
                 }
             }
             return ResourceLockState.Disposition.FINISHED;
         }
+
+        /**
+         * Returns the lock that could not be acquired by the most recent attempt, if any.
+         */
+        @Nullable
+        ResourceLock getBlockedOn() {
+            return blockedOn;
+        }
     }
 
     private static class ReleaseLocks implements Transformer<ResourceLockState.Disposition, ResourceLockState> {
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.resources;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A snapshot of the counters kept by a {@link TargetedResourceLockCoordinationService}.
+ */
+public class ResourceLockCoordinationStatistics {
+    public static final ResourceLockCoordinationStatistics EMPTY = new ResourceLockCoordinationStatistics(0, 0, 0, 0, 0, 0);
+
+    private final long stateLockAcquisitions;
+    private final long contendedStateLockAcquisitions;
+    private final long stateLockWaitTimeNanos;
+    private final long waits;
+    private final long targetedWaits;
+    private final long futileWakeups;
+
+    public ResourceLockCoordinationStatistics(long stateLockAcquisitions, long contendedStateLockAcquisitions, long stateLockWaitTimeNanos, long waits, long targetedWaits, long futileWakeups) {
+        this.stateLockAcquisitions = stateLockAcquisitions;
+        this.contendedStateLockAcquisitions = contendedStateLockAcquisitions;
+        this.stateLockWaitTimeNanos = stateLockWaitTimeNanos;
+        this.waits = waits;
+        this.targetedWaits = targetedWaits;
+        this.futileWakeups = futileWakeups;
+    }
+
+    /**
+     * The number of times a thread acquired the state lock.
+     */
+    public long getStateLockAcquisitions() {
+        return stateLockAcquisitions;
+    }
+
+    /**
+     * The number of times a thread had to block to acquire the state lock, because another thread held it.
+     */
+    public long getContendedStateLockAcquisitions() {
+        return contendedStateLockAcquisitions;
+    }
+
+    /**
+     * The total time threads spent blocked acquiring the state lock.
+     */
+    public long getStateLockWaitTime(TimeUnit unit) {
+        return unit.convert(stateLockWaitTimeNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * The number of times a thread waited for the resource lock state to change before retrying.
+     */
+    public long getWaits() {
+        return waits;
+    }
+
+    /**
+     * The number of those waits that only waited for a specific resource lock to be released.
+     */
+    public long getTargetedWaits() {
+        return targetedWaits;
+    }
+
+    /**
+     * The number of times a waiting thread was woken up, only to find that it still could not make progress.
+     */
+    public long getFutileWakeups() {
+        return futileWakeups;
+    }
+
+    /**
+     * Returns the change in each counter since the given snapshot was taken.
+     */
+    public ResourceLockCoordinationStatistics since(ResourceLockCoordinationStatistics previous) {
+        return new ResourceLockCoordinationStatistics(
+            stateLockAcquisitions - previous.stateLockAcquisitions,
+            contendedStateLockAcquisitions - previous.contendedStateLockAcquisitions,
+            stateLockWaitTimeNanos - previous.stateLockWaitTimeNanos,
+            waits - previous.waits,
+            targetedWaits - previous.targetedWaits,
+            futileWakeups - previous.futileWakeups);
+    }
+
+    @Override
+    public String toString() {
+        return "state lock acquisitions: " + stateLockAcquisitions + " (" + contendedStateLockAcquisitions + " contended, "
+            + getStateLockWaitTime(TimeUnit.MILLISECONDS) + "ms blocked), waits: " + waits + " (" + targetedWaits + " targeted), futile wakeups: " + futileWakeups;
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.resources;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.gradle.api.Transformer;
+import org.gradle.internal.UncheckedException;
+
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A {@link ResourceLockCoordinationService} that wakes up waiting threads selectively, rather than waking up every waiting thread whenever any lock is released.
+ *
+ * <p>A thread that is blocked acquiring locks using {@link DefaultResourceLockCoordinationService#lock(Iterable)} waits in a queue for the exclusive lock that
+ * it could not acquire, and is only woken up when that lock is released. Other threads that ask to retry wait for any change to the resource lock state, as
+ * with {@link DefaultResourceLockCoordinationService}. Transforms are still run one at a time, as their callers rely on this to protect their own state.</p>
+ *
+ * <p>Keeps counters of how often the state lock is contended and how often threads wait, see {@link #getStatistics()}.</p>
+ */
+public class TargetedResourceLockCoordinationService implements ResourceLockCoordinationService {
+    public static final String ENABLED_PROPERTY = "org.gradle.internal.resources.targeted-wakeups";
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition stateChanged = lock.newCondition();
+    private final Map<ResourceLock, WaitQueue> waitQueues = Maps.newIdentityHashMap();
+    private int waitingForStateChange;
+    private final ThreadLocal<List<ResourceLockState>> currentState = new ThreadLocal<List<ResourceLockState>>() {
+        @Override
+        protected List<ResourceLockState> initialValue() {
+            return Lists.newArrayList();
+        }
+    };
+
+    // Guarded by lock
+    private long stateLockAcquisitions;
+    private long contendedStateLockAcquisitions;
+    private long stateLockWaitTimeNanos;
+    private long waits;
+    private long targetedWaits;
+    private long futileWakeups;
+
+    @Override
+    public boolean withStateLock(Transformer<ResourceLockState.Disposition, ResourceLockState> stateLockAction) {
+        boolean woken = false;
+        while (true) {
+            DefaultResourceLockCoordinationService.DefaultResourceLockState resourceLockState = new DefaultResourceLockCoordinationService.DefaultResourceLockState();
+            ResourceLockState.Disposition disposition;
+            acquireStateLock();
+            try {
+                currentState.get().add(resourceLockState);
+                disposition = stateLockAction.transform(resourceLockState);
+
+                switch (disposition) {
+                    case RETRY:
+                        resourceLockState.releaseLocks();
+                        notifyUnlocked(resourceLockState, false);
+                        if (woken) {
+                            futileWakeups++;
+                        }
+                        await(blockedOn(stateLockAction));
+                        woken = true;
+                        break;
+                    case FINISHED:
+                        notifyUnlocked(resourceLockState, true);
+                        return true;
+                    case FAILED:
+                        resourceLockState.releaseLocks();
+                        notifyUnlocked(resourceLockState, false);
+                        return false;
+                    default:
+                        throw new IllegalArgumentException("Unhandled disposition type: " + disposition.name());
+                }
+            } catch (Throwable t) {
+                resourceLockState.releaseLocks();
+                notifyUnlocked(resourceLockState, false);
+                throw UncheckedException.throwAsUncheckedException(t);
+            } finally {
+                currentState.get().remove(resourceLockState);
+                lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public ResourceLockState getCurrent() {
+        if (!currentState.get().isEmpty()) {
+            int numStates = currentState.get().size();
+            return currentState.get().get(numStates - 1);
+        } else {
+            return null;
+        }
+    }
+
+    @Override
+    public void notifyStateChange() {
+        acquireStateLock();
+        try {
+            signalStateChanged();
+            for (WaitQueue waitQueue : waitQueues.values()) {
+                waitQueue.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public ResourceLockCoordinationStatistics getStatistics() {
+        lock.lock();
+        try {
+            return new ResourceLockCoordinationStatistics(stateLockAcquisitions, contendedStateLockAcquisitions, stateLockWaitTimeNanos, waits, targetedWaits, futileWakeups);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void acquireStateLock() {
+        // Only measure the time taken when another thread holds the lock, which keeps the uncontended case to a single compare-and-set
+        if (!lock.tryLock()) {
+            long start = System.nanoTime();
+            lock.lock();
+            contendedStateLockAcquisitions++;
+            stateLockWaitTimeNanos += System.nanoTime() - start;
+        }
+        stateLockAcquisitions++;
+    }
+
+    /**
+     * Wakes up the threads waiting for the given resource lock state to release its locks. Threads waiting for any change are only woken up
+     * when the transform finished, as {@link DefaultResourceLockCoordinationService} does.
+     */
+    private void notifyUnlocked(DefaultResourceLockCoordinationService.DefaultResourceLockState resourceLockState, boolean finished) {
+        if (!resourceLockState.hasUnlockedResources()) {
+            return;
+        }
+        for (ResourceLock resourceLock : resourceLockState.getUnlockedResources()) {
+            WaitQueue waitQueue = waitQueues.get(resourceLock);
+            if (waitQueue != null) {
+                waitQueue.signal();
+            }
+        }
+        if (finished) {
+            signalStateChanged();
+        }
+    }
+
+    private void signalStateChanged() {
+        if (waitingForStateChange > 0) {
+            stateChanged.signalAll();
+        }
+    }
+
+    private void await(@Nullable ResourceLock blockedOn) {
+        waits++;
+        try {
+            if (blockedOn != null) {
+                targetedWaits++;
+                WaitQueue waitQueue = waitQueues.get(blockedOn);
+                if (waitQueue == null) {
+                    waitQueue = new WaitQueue(lock.newCondition());
+                    waitQueues.put(blockedOn, waitQueue);
+                }
+                waitQueue.waiting++;
+                try {
+                    waitQueue.condition.await();
+                } finally {
+                    if (--waitQueue.waiting == 0) {
+                        waitQueues.remove(blockedOn);
+                    }
+                }
+            } else {
+                waitingForStateChange++;
+                try {
+                    stateChanged.await();
+                } finally {
+                    waitingForStateChange--;
+                }
+            }
+        } catch (InterruptedException e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        }
+    }
+
+    /**
+     * Returns the lock that the given transform is waiting for, when it is known that the transform can only make progress once that lock is released.
+     */
+    @Nullable
+    private static ResourceLock blockedOn(Transformer<ResourceLockState.Disposition, ResourceLockState> stateLockAction) {
+        if (stateLockAction instanceof DefaultResourceLockCoordinationService.AcquireLocks) {
+            ResourceLock blockedOn = ((DefaultResourceLockCoordinationService.AcquireLocks) stateLockAction).getBlockedOn();
+            // Other kinds of locks, such as worker leases, can become available without being released
+            if (blockedOn instanceof ExclusiveAccessResourceLock) {
+                return blockedOn;
+            }
+        }
+        return null;
+    }
+
+    private static class WaitQueue {
+        final Condition condition;
+        int waiting;
+
+        WaitQueue(Condition condition) {
+            this.condition = condition;
+        }
+
+        void signal() {
+            condition.signalAll();
+        }
+    }
+}
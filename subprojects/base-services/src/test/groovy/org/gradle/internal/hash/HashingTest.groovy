@@ -0,0 +1,139 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.hash
+
+import com.google.common.base.Charsets
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.nio.ByteBuffer
+
+class HashingTest extends Specification {
+    def bytes = "some bytes to hash".bytes
+
+    def "hashes remaining bytes of a heap buffer"() {
+        def buffer = ByteBuffer.wrap(bytes)
+        buffer.position(5)
+        def hasher = Hashing.md5().newHasher()
+
+        when:
+        hasher.putBytes(buffer)
+
+        then:
+        !buffer.hasRemaining()
+        hasher.hash() == Hashing.md5().hashBytes(Arrays.copyOfRange(bytes, 5, bytes.length))
+    }
+
+    def "hashes remaining bytes of a direct buffer"() {
+        def buffer = ByteBuffer.allocateDirect(bytes.length)
+        buffer.put(bytes)
+        buffer.flip()
+        def hasher = Hashing.md5().newHasher()
+
+        when:
+        hasher.putBytes(buffer)
+
+        then:
+        !buffer.hasRemaining()
+        hasher.hash() == Hashing.md5().hashBytes(bytes)
+    }
+
+    def "cannot feed a buffer into a hasher that has already produced its hash"() {
+        def hasher = Hashing.md5().newHasher()
+        hasher.hash()
+
+        when:
+        hasher.putBytes(ByteBuffer.wrap(bytes))
+
+        then:
+        thrown(IllegalStateException)
+    }
+
+    @Unroll
+    def "murmur3 produces the same hash as Guava for #length bytes"() {
+        def input = new byte[length]
+        new Random(length).nextBytes(input)
+
+        expect:
+        Hashing.murmur3().hashBytes(input).toByteArray() == com.google.common.hash.Hashing.murmur3_128().hashBytes(input).asBytes()
+
+        where:
+        length << [0, 1, 7, 8, 15, 16, 17, 31, 32, 33, 1000, 65536]
+    }
+
+    def "murmur3 produces the same hash as Guava for mixed primitives"() {
+        def hasher = Hashing.murmur3().newHasher()
+        def guavaHasher = com.google.common.hash.Hashing.murmur3_128().newHasher()
+
+        when:
+        hasher.putInt(123)
+        guavaHasher.putInt(123)
+        hasher.putString("some string")
+        guavaHasher.putString("some string", Charsets.UTF_8)
+        hasher.putLong(456L)
+        guavaHasher.putLong(456L)
+        hasher.putByte((byte) 7)
+        guavaHasher.putByte((byte) 7)
+        hasher.putBoolean(true)
+        guavaHasher.putBoolean(true)
+        hasher.putDouble(1.5d)
+        guavaHasher.putDouble(1.5d)
+        hasher.putBytes(ByteBuffer.wrap(bytes))
+        guavaHasher.putBytes(bytes)
+
+        then:
+        hasher.hash().toByteArray() == guavaHasher.hash().asBytes()
+    }
+
+    def "murmur3 hashes remaining bytes of a direct buffer"() {
+        def buffer = ByteBuffer.allocateDirect(bytes.length)
+        buffer.put(bytes)
+        buffer.flip()
+        def hasher = Hashing.murmur3().newHasher()
+
+        when:
+        hasher.putBytes(buffer)
+
+        then:
+        !buffer.hasRemaining()
+        hasher.hash() == Hashing.murmur3().hashBytes(bytes)
+    }
+
+    def "selects hash algorithm from system property"() {
+        def property = "org.gradle.internal.hash.test"
+
+        expect:
+        HashAlgorithm.fromSystemProperty(property, HashAlgorithm.MD5) == HashAlgorithm.MD5
+
+        when:
+        System.setProperty(property, "murmur3-128")
+
+        then:
+        HashAlgorithm.fromSystemProperty(property, HashAlgorithm.MD5) == HashAlgorithm.MURMUR3_128
+
+        when:
+        System.setProperty(property, "unknown")
+        HashAlgorithm.fromSystemProperty(property, HashAlgorithm.MD5)
+
+        then:
+        def e = thrown(IllegalArgumentException)
+        e.message == "Unknown hash algorithm 'unknown' specified by system property 'org.gradle.internal.hash.test'."
+
+        cleanup:
+        System.clearProperty(property)
+    }
+}
@@ -21,11 +21,14 @@ import org.gradle.internal.concurrent.ParallelismConfigurationManagerFixture
 import org.gradle.internal.resources.DefaultResourceLockCoordinationService
 import org.gradle.internal.work.DefaultWorkerLeaseService
 import org.gradle.internal.work.WorkerLeaseService
+import org.gradle.test.fixtures.ConcurrentTestUtil
 import spock.lang.Specification
 import spock.lang.Unroll
 
 import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executor
 import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
 
 class DefaultBuildOperationQueueTest extends Specification {
 
@@ -61,8 +64,12 @@ class DefaultBuildOperationQueueTest extends Specification {
     WorkerLeaseService workerRegistry
 
     void setupQueue(int threads) {
+        setupQueue(threads, Executors.newFixedThreadPool(threads), new SimpleWorker())
+    }
+
+    void setupQueue(int threads, Executor executor, BuildOperationQueue.QueueWorker<TestBuildOperation> worker) {
         workerRegistry = new DefaultWorkerLeaseService(new DefaultResourceLockCoordinationService(), new ParallelismConfigurationManagerFixture(true, threads)) {};
-        operationQueue = new DefaultBuildOperationQueue(workerRegistry, Executors.newFixedThreadPool(threads), new SimpleWorker())
+        operationQueue = new DefaultBuildOperationQueue(workerRegistry, executor, worker)
     }
 
     def "cleanup"() {
@@ -97,6 +104,68 @@ class DefaultBuildOperationQueueTest extends Specification {
         5    | 10
     }
 
+    def "reuses an idle worker instead of starting a new one"() {
+        given:
+        def delegate = Executors.newFixedThreadPool(4)
+        def workersStarted = new AtomicInteger()
+        def executor = { Runnable runnable ->
+            workersStarted.incrementAndGet()
+            delegate.execute(runnable)
+        } as Executor
+        setupQueue(4, executor, new SimpleWorker())
+        def success = Mock(TestBuildOperation)
+
+        when:
+        3.times {
+            operationQueue.add(success)
+            ConcurrentTestUtil.poll {
+                assert operationQueue.idleWorkers == 1
+            }
+        }
+        operationQueue.waitForCompletion()
+
+        then:
+        3 * success.run(_)
+        workersStarted.get() == 1
+
+        cleanup:
+        delegate.shutdown()
+    }
+
+    @Unroll
+    def "executes operations added by running operations with #threads threads"() {
+        given:
+        def executed = new AtomicInteger()
+        def worker = new BuildOperationQueue.QueueWorker<TestBuildOperation>() {
+            void execute(TestBuildOperation operation) {
+                executed.incrementAndGet()
+                if (operation instanceof Parent) {
+                    3.times { operationQueue.add(new Success()) }
+                }
+            }
+
+            String getDisplayName() {
+                return "parent worker"
+            }
+        }
+        setupQueue(threads, Executors.newFixedThreadPool(threads), worker)
+
+        when:
+        10.times { operationQueue.add(new Parent()) }
+        operationQueue.waitForCompletion()
+
+        then:
+        executed.get() == 40
+
+        where:
+        threads << [1, 4, 10]
+    }
+
+    static class Parent extends TestBuildOperation {
+        void run(BuildOperationContext buildOperationContext) {
+        }
+    }
+
     def "cannot use operation queue once it has completed"() {
         given:
         setupQueue(1)
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.resources
+
+import org.gradle.api.Action
+import org.gradle.api.Transformer
+import org.gradle.test.fixtures.ConcurrentTestUtil
+import org.gradle.test.fixtures.concurrent.ConcurrentSpec
+
+import static org.gradle.internal.resources.DefaultResourceLockCoordinationService.lock
+import static org.gradle.internal.resources.DefaultResourceLockCoordinationService.unlock
+import static org.gradle.internal.resources.ResourceLockState.Disposition.FINISHED
+import static org.gradle.internal.resources.ResourceLockState.Disposition.RETRY
+
+class TargetedResourceLockCoordinationServiceTest extends ConcurrentSpec {
+    def coordinationService = new TargetedResourceLockCoordinationService()
+
+    def "thread blocked acquiring a lock is only woken up when that lock is released"() {
+        def lock1 = exclusiveLock("lock1")
+        def lock2 = exclusiveLock("lock2")
+
+        when:
+        async {
+            coordinationService.withStateLock(lock(lock1, lock2))
+            start {
+                coordinationService.withStateLock(lock(lock1))
+                instant.acquired
+                coordinationService.withStateLock(unlock(lock1))
+            }
+
+            ConcurrentTestUtil.poll {
+                assert coordinationService.statistics.targetedWaits == 1
+            }
+            coordinationService.withStateLock(unlock(lock2))
+            coordinationService.withStateLock(unlock(lock1))
+            thread.blockUntil.acquired
+        }
+
+        then:
+        def statistics = coordinationService.statistics
+        statistics.waits == 1
+        statistics.targetedWaits == 1
+        statistics.futileWakeups == 0
+    }
+
+    def "thread that is not blocked on a specific lock is woken up by any change"() {
+        def lock1 = exclusiveLock("lock1")
+        def ready = false
+
+        when:
+        async {
+            start {
+                coordinationService.withStateLock(new Transformer<ResourceLockState.Disposition, ResourceLockState>() {
+                    @Override
+                    ResourceLockState.Disposition transform(ResourceLockState resourceLockState) {
+                        return ready ? FINISHED : RETRY
+                    }
+                })
+                instant.finished
+            }
+
+            ConcurrentTestUtil.poll {
+                assert coordinationService.statistics.waits == 1
+            }
+            coordinationService.withStateLock(lock(lock1))
+            coordinationService.withStateLock(new Transformer<ResourceLockState.Disposition, ResourceLockState>() {
+                @Override
+                ResourceLockState.Disposition transform(ResourceLockState resourceLockState) {
+                    ready = true
+                    return FINISHED
+                }
+            })
+            coordinationService.withStateLock(unlock(lock1))
+            thread.blockUntil.finished
+        }
+
+        then:
+        def statistics = coordinationService.statistics
+        statistics.waits == 1
+        statistics.targetedWaits == 0
+        statistics.futileWakeups == 0
+    }
+
+    def "can notify all waiting threads of a state change"() {
+        def attempts = 0
+
+        when:
+        async {
+            start {
+                coordinationService.withStateLock(new Transformer<ResourceLockState.Disposition, ResourceLockState>() {
+                    @Override
+                    ResourceLockState.Disposition transform(ResourceLockState resourceLockState) {
+                        return attempts++ < 2 ? RETRY : FINISHED
+                    }
+                })
+                instant.finished
+            }
+
+            ConcurrentTestUtil.poll {
+                assert coordinationService.statistics.waits == 1
+            }
+            coordinationService.notifyStateChange()
+            ConcurrentTestUtil.poll {
+                assert coordinationService.statistics.waits == 2
+            }
+            coordinationService.notifyStateChange()
+            thread.blockUntil.finished
+        }
+
+        then:
+        def statistics = coordinationService.statistics
+        statistics.waits == 2
+        statistics.futileWakeups == 1
+    }
+
+    def "counts state lock acquisitions"() {
+        when:
+        3.times {
+            coordinationService.withStateLock(new Transformer<ResourceLockState.Disposition, ResourceLockState>() {
+                @Override
+                ResourceLockState.Disposition transform(ResourceLockState resourceLockState) {
+                    return FINISHED
+                }
+            })
+        }
+
+        then:
+        def statistics = coordinationService.statistics
+        statistics.stateLockAcquisitions == 3
+        statistics.contendedStateLockAcquisitions == 0
+        statistics.since(ResourceLockCoordinationStatistics.EMPTY).stateLockAcquisitions == 3
+    }
+
+    ExclusiveAccessResourceLock exclusiveLock(String displayName) {
+        return new ExclusiveAccessResourceLock(displayName, coordinationService, Mock(Action), Mock(Action))
+    }
+}
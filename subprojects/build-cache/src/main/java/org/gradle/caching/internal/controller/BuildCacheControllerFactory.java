@@ -29,8 +29,11 @@ import org.gradle.caching.internal.FinalizeBuildCacheConfigurationBuildOperation
 import org.gradle.caching.internal.controller.service.BuildCacheServiceRole;
 import org.gradle.caching.internal.controller.service.BuildCacheServicesConfiguration;
 import org.gradle.internal.Cast;
+import org.gradle.internal.concurrent.ExecutorFactory;
+import org.gradle.internal.concurrent.ManagedExecutor;
 import org.gradle.internal.operations.BuildOperationContext;
 import org.gradle.internal.operations.BuildOperationExecutor;
+import org.gradle.internal.operations.BuildOperationRef;
 import org.gradle.internal.operations.CallableBuildOperation;
 import org.gradle.internal.operations.BuildOperationDescriptor;
 import org.gradle.internal.reflect.Instantiator;
@@ -48,6 +51,14 @@ public final class BuildCacheControllerFactory {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(BuildCacheControllerFactory.class);
 
+    /**
+     * When set to true, tasks only pack their entries and the entries are stored in the build caches in the background.
+     * The build waits for the pending stores to complete once it has finished.
+     */
+    public static final String ASYNC_STORE_PROPERTY = "org.gradle.internal.build-cache.async-store";
+
+    private static final int STORE_THREADS = 4;
+
     public enum BuildCacheMode {
         ENABLED, DISABLED
     }
@@ -64,7 +75,9 @@ public final class BuildCacheControllerFactory {
         final BuildCacheMode buildCacheState,
         final RemoteAccessMode remoteAccessMode,
         final boolean logStackTraces,
-        final Instantiator instantiator
+        final Instantiator instantiator,
+        final ExecutorFactory executorFactory,
+        @Nullable final BuildOperationRef backgroundStoreParent
     ) {
         return buildOperationExecutor.call(new CallableBuildOperation<BuildCacheController>() {
             @Override
@@ -110,11 +123,17 @@ public final class BuildCacheControllerFactory {
                         remote, remoteDescribedService == null ? null : remoteDescribedService.service
                     );
 
+                    ManagedExecutor storeExecutor = Boolean.getBoolean(ASYNC_STORE_PROPERTY)
+                        ? executorFactory.create("Build cache store", STORE_THREADS)
+                        : null;
+
                     return new DefaultBuildCacheController(
                         config,
                         buildOperationExecutor,
                         gradleUserHomeDir,
-                        logStackTraces
+                        logStackTraces,
+                        storeExecutor,
+                        backgroundStoreParent
                     );
                 }
             }
@@ -43,10 +43,15 @@ import org.gradle.caching.local.internal.DefaultBuildCacheTempFileStore;
 import org.gradle.caching.local.internal.LocalBuildCacheService;
 import org.gradle.internal.UncheckedException;
 import org.gradle.internal.concurrent.CompositeStoppable;
+import org.gradle.internal.concurrent.ManagedExecutor;
 import org.gradle.internal.operations.BuildOperationContext;
 import org.gradle.internal.operations.BuildOperationExecutor;
+import org.gradle.internal.operations.BuildOperationRef;
 import org.gradle.internal.operations.RunnableBuildOperation;
 import org.gradle.internal.operations.BuildOperationDescriptor;
+import org.gradle.util.GFileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
 import java.io.File;
@@ -55,9 +60,33 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class DefaultBuildCacheController implements BuildCacheController {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(DefaultBuildCacheController.class);
+
+    /**
+     * The maximum number of packed entries that can wait to be stored in the background.
+     * Once reached, storing another entry blocks until one of the pending entries has been stored.
+     */
+    @VisibleForTesting
+    static final int MAX_PENDING_STORES = 16;
+
+    /**
+     * The suffix of packed entries waiting to be stored in the background, which are kept next to the temp files of the build cache.
+     */
+    @VisibleForTesting
+    static final String PENDING_STORE_SUFFIX = ".pending";
+
+    /**
+     * Pending stores older than this were left behind by a build that did not finish storing them. Younger ones may belong to another build using the same cache.
+     */
+    private static final long STALE_PENDING_STORE_AGE_MILLIS = TimeUnit.HOURS.toMillis(1);
+
     @VisibleForTesting
     final BuildCacheServiceHandle legacyLocal;
 
@@ -70,6 +99,13 @@ public class DefaultBuildCacheController implements BuildCacheController {
     private final BuildCacheTempFileStore tmp;
     private final BuildOperationExecutor buildOperationExecutor;
 
+    @Nullable
+    private final ManagedExecutor storeExecutor;
+    @Nullable
+    private final BuildOperationRef backgroundStoreParent;
+    private final Semaphore pendingStores = new Semaphore(MAX_PENDING_STORES);
+    private final AtomicBoolean stalePendingStoresDeleted = new AtomicBoolean();
+
     private boolean closed;
 
     public DefaultBuildCacheController(
@@ -77,8 +113,25 @@ public class DefaultBuildCacheController implements BuildCacheController {
         BuildOperationExecutor buildOperationExecutor,
         File gradleUserHomeDir,
         boolean logStackTraces
+    ) {
+        this(config, buildOperationExecutor, gradleUserHomeDir, logStackTraces, null, null);
+    }
+
+    /**
+     * @param storeExecutor when not null, packed entries are stored in the build caches using this executor, rather than on the thread that stores the entry.
+     * @param backgroundStoreParent the build operation that the operations storing entries in the background belong to. It must keep running until {@link #finishPendingStores()} returns.
+     */
+    public DefaultBuildCacheController(
+        BuildCacheServicesConfiguration config,
+        BuildOperationExecutor buildOperationExecutor,
+        File gradleUserHomeDir,
+        boolean logStackTraces,
+        @Nullable ManagedExecutor storeExecutor,
+        @Nullable BuildOperationRef backgroundStoreParent
     ) {
         this.buildOperationExecutor = buildOperationExecutor;
+        this.storeExecutor = storeExecutor;
+        this.backgroundStoreParent = backgroundStoreParent;
 
         if (config.local instanceof LocalBuildCacheService) {
             LocalBuildCacheService castLocal = (LocalBuildCacheService) config.local;
@@ -202,6 +255,11 @@ public class DefaultBuildCacheController implements BuildCacheController {
             return;
         }
 
+        if (storeExecutor != null) {
+            storeInBackground(command, storeExecutor);
+            return;
+        }
+
         final BuildCacheKey key = command.getKey();
         final Pack pack = new Pack(command);
 
@@ -209,22 +267,123 @@ public class DefaultBuildCacheController implements BuildCacheController {
             @Override
             public void execute(File file) {
                 pack.execute(file);
+                storePacked(key, file);
+            }
+        });
+    }
 
-                if (legacyLocal.canStore()) {
-                    legacyLocal.store(key, new StoreTarget(file));
-                }
+    /**
+     * Packs the entry on the calling thread, as the outputs it is packed from may change once the caller has finished with them,
+     * and then stores the packed entry using the given executor.
+     *
+     * <p>The entry is packed into a temp file of the build cache, so that it is written under the lock of the local cache and next to it, and then renamed
+     * so that it outlives the temp file until it has been stored.</p>
+     */
+    private void storeInBackground(BuildCacheStoreCommand command, ManagedExecutor executor) {
+        final BuildCacheKey key = command.getKey();
+        try {
+            pendingStores.acquire();
+        } catch (InterruptedException e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        }
 
-                if (remote.canStore()) {
-                    remote.store(key, new StoreTarget(file));
+        final File[] pendingStore = new File[1];
+        try {
+            final Pack pack = new Pack(command);
+            tmp.withTempFile(key, new Action<File>() {
+                @Override
+                public void execute(File file) {
+                    deleteStalePendingStores(file.getParentFile());
+                    pack.execute(file);
+                    File pendingStoreFile = new File(file.getParentFile(), file.getName() + PENDING_STORE_SUFFIX);
+                    if (!file.renameTo(pendingStoreFile)) {
+                        throw new UncheckedIOException(String.format("Could not move packed build cache entry %s to %s", file, pendingStoreFile));
+                    }
+                    pendingStore[0] = pendingStoreFile;
                 }
-
-                if (local.canStore()) {
-                    local.store(key, file);
+            });
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        storePendingStore(key, pendingStore[0]);
+                    } catch (Exception e) {
+                        LOGGER.warn("Failed to store cache entry {}", key.getDisplayName(), e);
+                    } finally {
+                        GFileUtils.deleteQuietly(pendingStore[0]);
+                        pendingStores.release();
+                    }
                 }
+            });
+        } catch (RuntimeException e) {
+            GFileUtils.deleteQuietly(pendingStore[0]);
+            pendingStores.release();
+            if (e instanceof RejectedExecutionException) {
+                LOGGER.warn("Not storing cache entry {} as the build cache is closed", key.getDisplayName());
+                return;
+            }
+            throw e;
+        }
+    }
+
+    private void storePendingStore(final BuildCacheKey key, final File file) {
+        buildOperationExecutor.run(new RunnableBuildOperation() {
+            @Override
+            public void run(BuildOperationContext context) {
+                storePacked(key, file);
+            }
+
+            @Override
+            public BuildOperationDescriptor.Builder description() {
+                return BuildOperationDescriptor.displayName("Store build cache entry " + key + " in the background")
+                    .progressDisplayName("Storing build cache entry")
+                    .parent(backgroundStoreParent);
             }
         });
     }
 
+    /**
+     * Waits for the entries that are being stored in the background to be stored. Called before the build operation that the background stores belong to finishes.
+     */
+    public void finishPendingStores() {
+        pendingStores.acquireUninterruptibly(MAX_PENDING_STORES);
+        pendingStores.release(MAX_PENDING_STORES);
+    }
+
+    /**
+     * Deletes the pending stores that a previous build left behind in the given temp directory, once per build.
+     */
+    private void deleteStalePendingStores(File tempDir) {
+        if (tempDir == null || !stalePendingStoresDeleted.compareAndSet(false, true)) {
+            return;
+        }
+        File[] files = tempDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        long minimumTimestamp = System.currentTimeMillis() - STALE_PENDING_STORE_AGE_MILLIS;
+        for (File file : files) {
+            if (file.getName().endsWith(PENDING_STORE_SUFFIX) && file.lastModified() < minimumTimestamp) {
+                LOGGER.debug("Deleting stale pending build cache store {}", file);
+                GFileUtils.deleteQuietly(file);
+            }
+        }
+    }
+
+    private void storePacked(BuildCacheKey key, File file) {
+        if (legacyLocal.canStore()) {
+            legacyLocal.store(key, new StoreTarget(file));
+        }
+
+        if (remote.canStore()) {
+            remote.store(key, new StoreTarget(file));
+        }
+
+        if (local.canStore()) {
+            local.store(key, file);
+        }
+    }
+
     private class Pack implements Action<File> {
 
         private final BuildCacheStoreCommand command;
@@ -263,7 +422,8 @@ public class DefaultBuildCacheController implements BuildCacheController {
     public void close() {
         if (!closed) {
             closed = true;
-            CompositeStoppable.stoppable(legacyLocal, local, remote).stop();
+            // Waits for the pending stores to complete before the build caches are closed
+            CompositeStoppable.stoppable(storeExecutor, legacyLocal, local, remote).stop();
         }
     }
 
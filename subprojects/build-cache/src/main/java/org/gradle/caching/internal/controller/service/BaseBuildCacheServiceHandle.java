@@ -34,7 +34,8 @@ public class BaseBuildCacheServiceHandle implements BuildCacheServiceHandle {
     private final boolean pushEnabled;
     private final boolean logStackTraces;
 
-    private boolean disabled;
+    // Entries may be stored from several threads
+    private volatile boolean disabled;
 
     public BaseBuildCacheServiceHandle(BuildCacheService service, boolean push, BuildCacheServiceRole role, boolean logStackTraces) {
         this.role = role;
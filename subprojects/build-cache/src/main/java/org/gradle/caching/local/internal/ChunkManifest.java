@@ -0,0 +1,111 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.local.internal;
+
+import com.google.common.collect.ImmutableList;
+import org.apache.commons.io.IOUtils;
+import org.gradle.internal.hash.HashCode;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * The list of chunks that make up a build cache entry stored by a {@link DirectoryBuildCacheService}, in order.
+ */
+class ChunkManifest {
+    static final String FILE_SUFFIX = ".manifest";
+
+    private static final int MAGIC = 0x4743434d;
+    // NOTE: This should be changed whenever we change the layout of a manifest
+    private static final int FORMAT = 1;
+
+    private final List<Chunk> chunks;
+
+    ChunkManifest(List<Chunk> chunks) {
+        this.chunks = ImmutableList.copyOf(chunks);
+    }
+
+    List<Chunk> getChunks() {
+        return chunks;
+    }
+
+    void writeTo(File file) throws IOException {
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            output.writeInt(MAGIC);
+            output.writeInt(FORMAT);
+            output.writeInt(chunks.size());
+            for (Chunk chunk : chunks) {
+                byte[] hash = chunk.getHash().toByteArray();
+                output.writeByte(hash.length);
+                output.write(hash);
+                output.writeInt(chunk.getLength());
+            }
+            output.flush();
+        } finally {
+            IOUtils.closeQuietly(output);
+        }
+    }
+
+    static ChunkManifest read(File file) throws IOException {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (input.readInt() != MAGIC) {
+                throw new IllegalStateException(String.format("Build cache manifest %s has an invalid header.", file));
+            }
+            int format = input.readInt();
+            if (format != FORMAT) {
+                throw new IllegalStateException(String.format("Build cache manifest %s has unsupported format version %d.", file, format));
+            }
+            int count = input.readInt();
+            ImmutableList.Builder<Chunk> chunks = ImmutableList.builder();
+            for (int i = 0; i < count; i++) {
+                byte[] hash = new byte[input.readUnsignedByte()];
+                input.readFully(hash);
+                chunks.add(new Chunk(HashCode.fromBytes(hash), input.readInt()));
+            }
+            return new ChunkManifest(chunks.build());
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+    }
+
+    static class Chunk {
+        private final HashCode hash;
+        private final int length;
+
+        Chunk(HashCode hash, int length) {
+            this.hash = hash;
+            this.length = length;
+        }
+
+        HashCode getHash() {
+            return hash;
+        }
+
+        int getLength() {
+            return length;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.local.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+/**
+ * Splits a stream into chunks at positions determined by the content around them, so that an insertion or a change
+ * in one place of the stream only changes the chunks around it, and the chunks before and after it stay the same.
+ *
+ * <p>Uses a gear hash over roughly the last 64 bytes: a chunk ends where the top bits of the hash are all zero.</p>
+ */
+class ContentDefinedChunker {
+    static final int MIN_CHUNK_SIZE = 2 * 1024;
+    static final int MAX_CHUNK_SIZE = 64 * 1024;
+    // 13 bits make chunks of about 8KB on average, on top of the minimum size
+    private static final long BOUNDARY_MASK = -1L << (64 - 13);
+    private static final int WINDOW_SIZE = 64;
+    private static final long[] GEAR = new long[256];
+
+    static {
+        // The table must be the same in every build, otherwise the chunks stored by different builds do not match
+        Random random = new Random(0x6765617248617368L);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    interface ChunkVisitor {
+        void visitChunk(byte[] buffer, int offset, int length) throws IOException;
+    }
+
+    private ContentDefinedChunker() {
+    }
+
+    /**
+     * Reads the given stream up to its end, and passes each chunk to the visitor in order. The buffer passed to the visitor is reused after it returns.
+     */
+    static void split(InputStream input, ChunkVisitor visitor) throws IOException {
+        byte[] buffer = new byte[MAX_CHUNK_SIZE];
+        int length = 0;
+        boolean endOfInput = false;
+        while (true) {
+            while (!endOfInput && length < buffer.length) {
+                int read = input.read(buffer, length, buffer.length - length);
+                if (read < 0) {
+                    endOfInput = true;
+                } else {
+                    length += read;
+                }
+            }
+            if (length == 0) {
+                return;
+            }
+            int chunkLength = findChunkEnd(buffer, length);
+            visitor.visitChunk(buffer, 0, chunkLength);
+            System.arraycopy(buffer, chunkLength, buffer, 0, length - chunkLength);
+            length -= chunkLength;
+        }
+    }
+
+    /**
+     * Returns the length of the chunk at the start of the buffer. The buffer is only ever partially filled at the end of the stream.
+     */
+    private static int findChunkEnd(byte[] buffer, int length) {
+        if (length <= MIN_CHUNK_SIZE) {
+            return length;
+        }
+        long hash = 0;
+        for (int i = MIN_CHUNK_SIZE - WINDOW_SIZE; i < length; i++) {
+            hash = (hash << 1) + GEAR[buffer[i] & 0xff];
+            if ((hash & BOUNDARY_MASK) == 0 && i >= MIN_CHUNK_SIZE) {
+                return i + 1;
+            }
+        }
+        return length;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.local.internal;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.gradle.cache.PersistentCache;
+import org.gradle.cache.internal.FixedAgeOldestCacheCleanup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deletes the entries of a {@link DirectoryBuildCacheService} that have not been used for a given age, and then the chunks that are no longer used by any of the remaining entries.
+ *
+ * <p>The references to each chunk are counted from the manifests every time, rather than being kept up to date on disk, as entries can also be removed by other means,
+ * such as by older Gradle versions cleaning up the same directory. Unused chunks are only deleted once they are as old as the entries being deleted, as a concurrent
+ * store may reuse or add a chunk before it writes the manifest referencing it.</p>
+ */
+public class DirectoryBuildCacheCleanup extends FixedAgeOldestCacheCleanup {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DirectoryBuildCacheCleanup.class);
+
+    private final long minimumTimestamp;
+
+    public DirectoryBuildCacheCleanup(long ageInDays) {
+        super(ageInDays);
+        this.minimumTimestamp = Math.max(0, System.currentTimeMillis() - TimeUnit.DAYS.toMillis(ageInDays));
+    }
+
+    @Override
+    protected List<File> findFilesToDelete(PersistentCache persistentCache, File[] filesEligibleForCleanup) {
+        File chunksDir = new File(persistentCache.getBaseDir(), DirectoryBuildCacheService.CHUNKS_DIR);
+        List<File> entries = Lists.newArrayListWithCapacity(filesEligibleForCleanup.length);
+        for (File file : filesEligibleForCleanup) {
+            if (!file.equals(chunksDir)) {
+                entries.add(file);
+            }
+        }
+
+        List<File> filesForDeletion = Lists.newArrayList(super.findFilesToDelete(persistentCache, entries.toArray(new File[0])));
+        if (!chunksDir.isDirectory()) {
+            return filesForDeletion;
+        }
+
+        Set<File> deletedEntries = Sets.newHashSet(filesForDeletion);
+        Set<String> referencedChunks = Sets.newHashSet();
+        for (File entry : entries) {
+            if (entry.getName().endsWith(ChunkManifest.FILE_SUFFIX) && !deletedEntries.contains(entry)) {
+                try {
+                    for (ChunkManifest.Chunk chunk : ChunkManifest.read(entry).getChunks()) {
+                        referencedChunks.add(chunk.getHash().toString());
+                    }
+                } catch (Exception e) {
+                    // The entry cannot be loaded either, so its chunks do not need to be kept
+                    LOGGER.debug("Could not read build cache manifest " + entry, e);
+                }
+            }
+        }
+
+        File[] chunkDirs = chunksDir.listFiles();
+        if (chunkDirs != null) {
+            for (File chunkDir : chunkDirs) {
+                File[] chunks = chunkDir.listFiles();
+                if (chunks == null) {
+                    continue;
+                }
+                for (File chunk : chunks) {
+                    if (!referencedChunks.contains(chunk.getName()) && chunk.lastModified() < minimumTimestamp) {
+                        filesForDeletion.add(chunk);
+                    }
+                }
+            }
+        }
+        return filesForDeletion;
+    }
+}
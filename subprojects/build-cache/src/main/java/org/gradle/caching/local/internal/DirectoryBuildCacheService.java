@@ -16,7 +16,9 @@
 
 package org.gradle.caching.local.internal;
 
+import com.google.common.collect.Lists;
 import com.google.common.io.Closer;
+import org.apache.commons.io.IOUtils;
 import org.gradle.api.Action;
 import org.gradle.api.UncheckedIOException;
 import org.gradle.cache.PersistentCache;
@@ -26,33 +28,60 @@ import org.gradle.caching.BuildCacheException;
 import org.gradle.caching.BuildCacheKey;
 import org.gradle.caching.BuildCacheService;
 import org.gradle.internal.UncheckedException;
+import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.hash.Hasher;
+import org.gradle.internal.hash.Hashing;
 import org.gradle.internal.resource.local.LocallyAvailableResource;
 import org.gradle.internal.resource.local.PathKeyFileStore;
 import org.gradle.util.GFileUtils;
 
 import javax.annotation.Nonnull;
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.attribute.FileTime;
+import java.util.List;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+/**
+ * Stores each build cache entry as a file named by its key.
+ *
+ * <p>When chunking is enabled, entries in the indexed format, which compresses each file on its own, are instead split into {@link ContentDefinedChunker content defined chunks},
+ * which are stored once under {@value #CHUNKS_DIR} and named by their hash, and each entry is stored as a {@link ChunkManifest} listing its chunks. Other entries are a single
+ * compressed stream, in which a small change alters all of the following bytes, so they are stored as a single file as they would not share any chunks.
+ * Entries stored either way can be loaded. The chunks that are no longer used by any entry are removed by {@link DirectoryBuildCacheCleanup}.</p>
+ */
 public class DirectoryBuildCacheService implements LocalBuildCacheService, BuildCacheService {
+    /**
+     * The first int of an entry in the indexed format, see {@code IndexedTaskOutputPacker}.
+     */
+    public static final int INDEXED_ENTRY_MAGIC = 0x47434549;
+    static final String CHUNKS_DIR = "chunks";
 
     private final PathKeyFileStore fileStore;
     private final PersistentCache persistentCache;
     private final BuildCacheTempFileStore tempFileStore;
     private final String failedFileSuffix;
+    private final boolean chunkEntries;
     private final ReadWriteLock lock = new ReentrantReadWriteLock();
 
     public DirectoryBuildCacheService(PathKeyFileStore fileStore, PersistentCache persistentCache, BuildCacheTempFileStore tempFileStore, String failedFileSuffix) {
+        this(fileStore, persistentCache, tempFileStore, failedFileSuffix, false);
+    }
+
+    public DirectoryBuildCacheService(PathKeyFileStore fileStore, PersistentCache persistentCache, BuildCacheTempFileStore tempFileStore, String failedFileSuffix, boolean chunkEntries) {
         this.fileStore = fileStore;
         this.persistentCache = persistentCache;
         this.tempFileStore = tempFileStore;
         this.failedFileSuffix = failedFileSuffix;
+        this.chunkEntries = chunkEntries;
     }
 
     private static class LoadAction implements Action<File> {
@@ -107,16 +136,25 @@ public class DirectoryBuildCacheService implements LocalBuildCacheService, Build
     }
 
     private void loadInsideLock(BuildCacheKey key, Action<? super File> reader) {
-        LocallyAvailableResource resource = fileStore.get(key.getHashCode());
-        if (resource == null) {
-            return;
+        LocallyAvailableResource resource = fileStore.get(key.getHashCode() + ChunkManifest.FILE_SUFFIX);
+        boolean chunked = resource != null;
+        if (!chunked) {
+            resource = fileStore.get(key.getHashCode());
+            if (resource == null) {
+                return;
+            }
         }
 
         File file = resource.getFile();
         touch(file);
 
         try {
-            reader.execute(file);
+            if (!chunked) {
+                reader.execute(file);
+            } else if (!loadChunksInsideLock(key, file, reader)) {
+                // Some chunks of the entry have been removed, for example by an older Gradle version cleaning up the cache directory
+                GFileUtils.deleteQuietly(file);
+            }
         } catch (Exception e) {
             // Try to move the file out of the way in case its permanently corrupt
             // Don't delete, so that it can be potentially used for debugging
@@ -129,6 +167,60 @@ public class DirectoryBuildCacheService implements LocalBuildCacheService, Build
         }
     }
 
+    private boolean loadChunksInsideLock(BuildCacheKey key, File manifestFile, final Action<? super File> reader) throws IOException {
+        final ChunkManifest manifest = ChunkManifest.read(manifestFile);
+        final List<File> chunkFiles = Lists.newArrayListWithCapacity(manifest.getChunks().size());
+        for (ChunkManifest.Chunk chunk : manifest.getChunks()) {
+            LocallyAvailableResource resource = fileStore.get(chunkPath(chunk.getHash()));
+            if (resource == null || resource.getFile().length() != chunk.getLength()) {
+                return false;
+            }
+            chunkFiles.add(resource.getFile());
+        }
+        touchChunksDir();
+
+        tempFileStore.withTempFile(key, new Action<File>() {
+            @Override
+            public void execute(@Nonnull File file) {
+                try {
+                    assembleChunks(manifest, chunkFiles, file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                reader.execute(file);
+            }
+        });
+        return true;
+    }
+
+    private static void assembleChunks(ChunkManifest manifest, List<File> chunkFiles, File target) throws IOException {
+        byte[] buffer = new byte[ContentDefinedChunker.MAX_CHUNK_SIZE];
+        OutputStream output = new FileOutputStream(target);
+        try {
+            for (int i = 0; i < chunkFiles.size(); i++) {
+                File chunkFile = chunkFiles.get(i);
+                Hasher hasher = Hashing.md5().newHasher();
+                InputStream input = new FileInputStream(chunkFile);
+                try {
+                    int read;
+                    while ((read = input.read(buffer)) >= 0) {
+                        hasher.putBytes(buffer, 0, read);
+                        output.write(buffer, 0, read);
+                    }
+                } finally {
+                    IOUtils.closeQuietly(input);
+                }
+                if (!hasher.hash().equals(manifest.getChunks().get(i).getHash())) {
+                    // The chunk is shared with other entries, so get rid of it
+                    GFileUtils.deleteQuietly(chunkFile);
+                    throw new IllegalStateException(String.format("Build cache chunk %s is corrupt.", chunkFile));
+                }
+            }
+        } finally {
+            IOUtils.closeQuietly(output);
+        }
+    }
+
     @Override
     public void store(final BuildCacheKey key, final BuildCacheEntryWriter result) throws BuildCacheException {
         tempFileStore.withTempFile(key, new Action<File>() {
@@ -168,7 +260,95 @@ public class DirectoryBuildCacheService implements LocalBuildCacheService, Build
     }
 
     private void storeInsideLock(BuildCacheKey key, File file) {
-        fileStore.move(key.getHashCode(), file);
+        try {
+            if (chunkEntries && isIndexedEntry(file)) {
+                storeChunksInsideLock(key, file);
+            } else {
+                fileStore.move(key.getHashCode(), file);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static boolean isIndexedEntry(File file) throws IOException {
+        DataInputStream input = new DataInputStream(new FileInputStream(file));
+        try {
+            return input.readInt() == INDEXED_ENTRY_MAGIC;
+        } catch (EOFException e) {
+            return false;
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+    }
+
+    private void storeChunksInsideLock(BuildCacheKey key, File file) throws IOException {
+        final List<ChunkManifest.Chunk> chunks = Lists.newArrayList();
+        InputStream input = new FileInputStream(file);
+        try {
+            ContentDefinedChunker.split(input, new ContentDefinedChunker.ChunkVisitor() {
+                @Override
+                public void visitChunk(final byte[] buffer, final int offset, final int length) {
+                    Hasher hasher = Hashing.md5().newHasher();
+                    hasher.putBytes(buffer, offset, length);
+                    HashCode hash = hasher.hash();
+                    String chunkPath = chunkPath(hash);
+                    LocallyAvailableResource existingChunk = fileStore.get(chunkPath);
+                    if (existingChunk != null) {
+                        // Mark as recently used, so that a concurrent cleanup does not remove the chunk before the manifest referencing it is written
+                        touch(existingChunk.getFile());
+                    } else {
+                        fileStore.add(chunkPath, new Action<File>() {
+                            @Override
+                            public void execute(@Nonnull File chunkFile) {
+                                try {
+                                    OutputStream output = new FileOutputStream(chunkFile);
+                                    try {
+                                        output.write(buffer, offset, length);
+                                    } finally {
+                                        output.close();
+                                    }
+                                } catch (IOException e) {
+                                    throw new UncheckedIOException(e);
+                                }
+                            }
+                        });
+                    }
+                    chunks.add(new ChunkManifest.Chunk(hash, length));
+                }
+            });
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+
+        final ChunkManifest manifest = new ChunkManifest(chunks);
+        fileStore.add(key.getHashCode() + ChunkManifest.FILE_SUFFIX, new Action<File>() {
+            @Override
+            public void execute(@Nonnull File manifestFile) {
+                try {
+                    manifest.writeTo(manifestFile);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        });
+        touchChunksDir();
+    }
+
+    /**
+     * Keeps the chunks directory at least as recent as the most recently used entry, so that older Gradle versions, which age out everything
+     * in the cache directory, only remove the chunks once they have removed all the entries using them.
+     */
+    private void touchChunksDir() {
+        File chunksDir = new File(persistentCache.getBaseDir(), CHUNKS_DIR);
+        if (chunksDir.isDirectory()) {
+            touch(chunksDir);
+        }
+    }
+
+    static String chunkPath(HashCode hash) {
+        String name = hash.toString();
+        return CHUNKS_DIR + "/" + name.substring(0, 2) + "/" + name;
     }
 
     @Override
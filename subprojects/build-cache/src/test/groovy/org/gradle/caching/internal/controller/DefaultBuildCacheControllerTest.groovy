@@ -23,11 +23,17 @@ import org.gradle.caching.BuildCacheKey
 import org.gradle.caching.BuildCacheService
 import org.gradle.caching.internal.controller.service.BuildCacheServicesConfiguration
 import org.gradle.caching.local.internal.LocalBuildCacheService
+import org.gradle.internal.concurrent.DefaultExecutorFactory
+import org.gradle.internal.concurrent.ManagedExecutor
+import org.gradle.internal.operations.BuildOperationRef
+import org.gradle.internal.operations.OperationIdentifier
 import org.gradle.internal.operations.TestBuildOperationExecutor
 import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
 import org.gradle.testing.internal.util.Specification
 import org.junit.Rule
 
+import java.util.concurrent.TimeUnit
+
 class DefaultBuildCacheControllerTest extends Specification {
 
     def key = Mock(BuildCacheKey) {
@@ -85,6 +91,10 @@ class DefaultBuildCacheControllerTest extends Specification {
     interface Local extends BuildCacheService, LocalBuildCacheService {}
 
     BuildCacheController getController() {
+        createController(null)
+    }
+
+    DefaultBuildCacheController createController(ManagedExecutor storeExecutor, BuildOperationRef backgroundStoreParent = null) {
         new DefaultBuildCacheController(
             new BuildCacheServicesConfiguration(
                 legacyLocal ?: local, localPush,
@@ -92,7 +102,9 @@ class DefaultBuildCacheControllerTest extends Specification {
             ),
             operations,
             tmpDir.file("dir"),
-            false
+            false,
+            storeExecutor,
+            backgroundStoreParent
         )
     }
 
@@ -122,6 +134,94 @@ class DefaultBuildCacheControllerTest extends Specification {
         1 * local.storeLocally(key, _)
     }
 
+    def "stores packed entries in the background when a store executor is provided"() {
+        given:
+        def controller = createController(new DefaultExecutorFactory().create("build cache store"))
+        def storeThread = null
+
+        when:
+        controller.store(storeCommand)
+        controller.close()
+
+        then:
+        1 * remote.store(key, _) >> { BuildCacheKey key, BuildCacheEntryWriter writer ->
+            storeThread = Thread.currentThread()
+            writer.writeTo(new ByteArrayOutputStream())
+        }
+        1 * local.storeLocally(key, _)
+        1 * local.withTempFile(key, _) >> { key, action -> withCacheTempFile(action) }
+
+        and:
+        storeThread != null && storeThread != Thread.currentThread()
+        operations.log.descriptors[0].displayName == "Pack build cache entry $key"
+        operations.log.descriptors*.displayName.contains("Store build cache entry $key in the background".toString())
+        tmpDir.file("cache").list().length == 0
+    }
+
+    def "reports failure to store packed entry in the background as a failed operation"() {
+        given:
+        def controller = createController(new DefaultExecutorFactory().create("build cache store"))
+        def failure = new RuntimeException("store failed")
+        local.withTempFile(key, _) >> { key, action -> withCacheTempFile(action) }
+
+        when:
+        controller.store(storeCommand)
+        controller.close()
+
+        then:
+        1 * local.storeLocally(key, _) >> { throw failure }
+        operations.log.records.find { it.descriptor.displayName == "Store build cache entry $key in the background".toString() }.failure == failure
+        tmpDir.file("cache").list().length == 0
+    }
+
+    def "stores packed entries in the background as children of the given build operation"() {
+        given:
+        def parent = Stub(BuildOperationRef) {
+            getId() >> new OperationIdentifier(42)
+        }
+        def controller = createController(new DefaultExecutorFactory().create("build cache store"), parent)
+        local.withTempFile(key, _) >> { key, action -> withCacheTempFile(action) }
+
+        when:
+        controller.store(storeCommand)
+        controller.finishPendingStores()
+
+        then:
+        1 * local.storeLocally(key, _)
+        operations.log.descriptors.find { it.displayName == "Store build cache entry $key in the background".toString() }.parentId == new OperationIdentifier(42)
+        tmpDir.file("cache").list().length == 0
+
+        cleanup:
+        controller.close()
+    }
+
+    def "deletes stale pending stores before storing packed entries in the background"() {
+        given:
+        def controller = createController(new DefaultExecutorFactory().create("build cache store"))
+        def stalePendingStore = tmpDir.file("cache/stale.part" + DefaultBuildCacheController.PENDING_STORE_SUFFIX) << "stale"
+        stalePendingStore.lastModified = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1)
+        def recentPendingStore = tmpDir.file("cache/recent.part" + DefaultBuildCacheController.PENDING_STORE_SUFFIX) << "recent"
+        local.withTempFile(key, _) >> { key, action -> withCacheTempFile(action) }
+
+        when:
+        controller.store(storeCommand)
+        controller.close()
+
+        then:
+        !stalePendingStore.exists()
+        recentPendingStore.exists()
+    }
+
+    private void withCacheTempFile(Action<? super File> action) {
+        def file = tmpDir.file("cache/key-1.part")
+        file.parentFile.mkdirs()
+        try {
+            action.execute(file)
+        } finally {
+            file.delete()
+        }
+    }
+
     def "does not store to local if local push is disabled"() {
         given:
         localPush = false
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.tasks
+
+import groovy.io.FileType
+import org.gradle.api.internal.cache.StringInterner
+import org.gradle.api.internal.changedetection.state.DirContentSnapshot
+import org.gradle.api.internal.changedetection.state.FileContentSnapshot
+import org.gradle.api.internal.changedetection.state.FileHashSnapshot
+import org.gradle.api.internal.tasks.OriginTaskExecutionMetadata
+import org.gradle.api.internal.tasks.OutputType
+import org.gradle.api.internal.tasks.ResolvedTaskOutputFilePropertySpec
+import org.gradle.caching.internal.tasks.origin.TaskOutputOriginReader
+import org.gradle.caching.internal.tasks.origin.TaskOutputOriginWriter
+import org.gradle.internal.concurrent.DefaultExecutorFactory
+import org.gradle.internal.hash.DefaultStreamHasher
+import org.gradle.internal.hash.HashCode
+import org.gradle.internal.hash.Hashing
+import org.gradle.internal.id.UniqueId
+import org.gradle.internal.nativeplatform.filesystem.FileSystem
+import org.gradle.test.fixtures.file.CleanupTestDirectory
+import org.gradle.test.fixtures.file.TestFile
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import static org.gradle.api.internal.tasks.OutputType.DIRECTORY
+import static org.gradle.api.internal.tasks.OutputType.FILE
+
+@CleanupTestDirectory
+class IndexedTaskOutputPackerTest extends Specification {
+    @Rule
+    TestNameTestDirectoryProvider temporaryFolder = new TestNameTestDirectoryProvider()
+    def originMetadata = new OriginTaskExecutionMetadata(UniqueId.generate(), 1234)
+    def readOrigin = Stub(TaskOutputOriginReader) {
+        execute(_) >> originMetadata
+    }
+    def writeOrigin = Stub(TaskOutputOriginWriter)
+
+    def fileSystem = Stub(FileSystem) {
+        getUnixMode(_) >> 0644
+    }
+    def streamHasher = new DefaultStreamHasher({ Hashing.md5().newHasher() })
+    def stringInterner = new StringInterner()
+    def legacyPacker = new GZipTaskOutputPacker(new TarTaskOutputPacker(fileSystem, streamHasher, stringInterner))
+    def executor = new DefaultExecutorFactory().create("test", 2)
+    def packer = new IndexedTaskOutputPacker(legacyPacker, fileSystem, streamHasher, stringInterner, executor)
+
+    def cleanup() {
+        packer.close()
+    }
+
+    def "can pack task output directory"() {
+        def sourceOutputDir = temporaryFolder.file("source").createDir()
+        sourceOutputDir.file("subdir/data.txt") << "output"
+        sourceOutputDir.file("empty").createDir()
+        100.times { sourceOutputDir.file("many/file-${it}.txt") << "content ${it}" }
+        def targetOutputDir = temporaryFolder.file("target")
+
+        when:
+        def result = unpack(pack(prop(DIRECTORY, sourceOutputDir)), prop(DIRECTORY, targetOutputDir))
+
+        then:
+        targetOutputDir.file("subdir/data.txt").text == "output"
+        targetOutputDir.file("empty").directory
+        100.times { assert targetOutputDir.file("many/file-${it}.txt").text == "content ${it}" }
+        result.originMetadata == originMetadata
+        result.entries == 106
+        result.snapshots.get("test")*.path == ([targetOutputDir] + descendants(targetOutputDir))*.absolutePath
+    }
+
+    def "can pack single task output file larger than the unpacking buffer"() {
+        def sourceOutputFile = temporaryFolder.file("source.bin")
+        def content = new byte[3 * 1024 * 1024]
+        new Random(1).nextBytes(content)
+        sourceOutputFile.bytes = content
+        def targetOutputFile = temporaryFolder.file("target.bin")
+
+        when:
+        def result = unpack(pack(prop(FILE, sourceOutputFile)), prop(FILE, targetOutputFile))
+
+        then:
+        targetOutputFile.bytes == content
+        result.snapshots.get("test")*.content*.contentMd5 == [TestFile.md5(sourceOutputFile)]
+    }
+
+    @Unroll
+    def "can pack task output with missing #type"() {
+        def targetOutput = temporaryFolder.file("target")
+        targetOutput.text = "pre-existing"
+
+        when:
+        def result = unpack(pack(prop(type, temporaryFolder.file("source"))), prop(type, targetOutput))
+
+        then:
+        !targetOutput.exists()
+        result.snapshots.get("test").empty
+
+        where:
+        type << [FILE, DIRECTORY]
+    }
+
+    def "leaves unchanged files alone and removes stale files"() {
+        def sourceOutputDir = temporaryFolder.file("source").createDir()
+        sourceOutputDir.file("unchanged.txt") << "unchanged"
+        sourceOutputDir.file("changed.txt") << "new content"
+        def targetOutputDir = temporaryFolder.file("target").createDir()
+        def unchangedFile = targetOutputDir.file("unchanged.txt") << "unchanged"
+        unchangedFile.lastModified = 1000000
+        def changedFile = targetOutputDir.file("changed.txt") << "old content"
+        def staleFile = targetOutputDir.file("stale.txt") << "stale"
+        def staleDir = targetOutputDir.file("stale-dir/nested").createDir()
+
+        when:
+        unpack(pack(prop(DIRECTORY, sourceOutputDir)), prop(DIRECTORY, targetOutputDir))
+
+        then:
+        unchangedFile.text == "unchanged"
+        unchangedFile.lastModified() == 1000000
+        changedFile.text == "new content"
+        !staleFile.exists()
+        !staleDir.parentFile.exists()
+    }
+
+    def "can unpack entries in the previous format"() {
+        def sourceOutputDir = temporaryFolder.file("source").createDir()
+        sourceOutputDir.file("data.txt") << "output"
+        def targetOutputDir = temporaryFolder.file("target")
+        def output = new ByteArrayOutputStream()
+        def property = prop(DIRECTORY, sourceOutputDir)
+        legacyPacker.pack([property.property] as SortedSet, ["test": property.outputSnapshots], output, writeOrigin)
+
+        when:
+        def result = unpack(output.toByteArray(), prop(DIRECTORY, targetOutputDir))
+
+        then:
+        targetOutputDir.file("data.txt").text == "output"
+        result.originMetadata == originMetadata
+    }
+
+    def "fails when the content of a file does not match its hash"() {
+        def sourceOutputFile = temporaryFolder.file("source.txt") << "output"
+        def property = new PropertyDefinition(new ResolvedTaskOutputFilePropertySpec("test", FILE, sourceOutputFile), [(sourceOutputFile.absolutePath): new FileHashSnapshot(HashCode.fromInt(1))])
+        def targetOutputFile = temporaryFolder.file("target.txt")
+
+        when:
+        unpack(pack(property), prop(FILE, targetOutputFile))
+
+        then:
+        def ex = thrown IllegalStateException
+        ex.message == "Cached result format error, content of '${targetOutputFile}' does not match its hash."
+    }
+
+    byte[] pack(PropertyDefinition... propertyDefs) {
+        def output = new ByteArrayOutputStream()
+        def propertySpecs = propertyDefs*.property as SortedSet
+        def outputSnapshots = propertyDefs.collectEntries { propertyDef ->
+            return [(propertyDef.property.propertyName): propertyDef.outputSnapshots]
+        }
+        packer.pack(propertySpecs, outputSnapshots, output, writeOrigin)
+        return output.toByteArray()
+    }
+
+    TaskOutputPacker.UnpackResult unpack(byte[] input, PropertyDefinition... propertyDefs) {
+        def propertySpecs = propertyDefs*.property as SortedSet
+        return packer.unpack(propertySpecs, new ByteArrayInputStream(input), readOrigin)
+    }
+
+    private static List<File> descendants(File dir) {
+        def descendants = []
+        dir.traverse(type: FileType.ANY, sort: { a, b -> a.name <=> b.name }) { descendants += it }
+        return descendants
+    }
+
+    def prop(String name = "test", OutputType type, File output) {
+        Map<String, FileContentSnapshot> snapshots = [:]
+        if (output.exists()) {
+            if (type == FILE) {
+                snapshots[output.absolutePath] = new FileHashSnapshot(TestFile.md5(output))
+            } else {
+                ([output] + descendants(output)).each { File file ->
+                    snapshots[file.absolutePath] = file.directory ? DirContentSnapshot.INSTANCE : new FileHashSnapshot(TestFile.md5(file))
+                }
+            }
+        }
+        return new PropertyDefinition(new ResolvedTaskOutputFilePropertySpec(name, type, output), snapshots)
+    }
+
+    private static class PropertyDefinition {
+        ResolvedTaskOutputFilePropertySpec property
+        Map<String, FileContentSnapshot> outputSnapshots
+
+        PropertyDefinition(ResolvedTaskOutputFilePropertySpec property, Map<String, FileContentSnapshot> outputSnapshots) {
+            this.property = property
+            this.outputSnapshots = outputSnapshots
+        }
+    }
+}
@@ -92,7 +92,8 @@ class TaskOutputCacheCommandFactoryTest extends Specification {
         def result = load.load(input)
 
         then:
-        1 * taskOutputsGenerationListener.beforeTaskOutputChanged()
+        1 * taskProperties.getLocalStateFiles() >> localStateFiles
+        1 * taskOutputsGenerationListener.beforeTaskOutputChanged(_ as Iterable)
         1 * originFactory.createReader(task)
 
         then:
@@ -134,7 +135,8 @@ class TaskOutputCacheCommandFactoryTest extends Specification {
         command.load(input)
 
         then:
-        1 * taskOutputsGenerationListener.beforeTaskOutputChanged()
+        1 * taskProperties.getLocalStateFiles() >> localStateFiles
+        1 * taskOutputsGenerationListener.beforeTaskOutputChanged(_ as Iterable)
         1 * originFactory.createReader(task)
 
         then:
@@ -169,7 +171,9 @@ class TaskOutputCacheCommandFactoryTest extends Specification {
         command.load(input)
 
         then:
-        1 * taskOutputsGenerationListener.beforeTaskOutputChanged()
+        1 * outputProperties.iterator() >> [].iterator()
+        1 * taskProperties.getLocalStateFiles() >> localStateFiles
+        1 * taskOutputsGenerationListener.beforeTaskOutputChanged(_ as Iterable)
         1 * originFactory.createReader(task)
 
         then:
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.local.internal
+
+import org.gradle.cache.PersistentCache
+import org.gradle.internal.hash.HashCode
+import org.gradle.test.fixtures.file.TestFile
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+import java.util.concurrent.TimeUnit
+
+class DirectoryBuildCacheCleanupTest extends Specification {
+    @Rule TestNameTestDirectoryProvider temporaryFolder = new TestNameTestDirectoryProvider()
+    def cacheDir = temporaryFolder.file("cache-dir").createDir()
+    def persistentCache = Stub(PersistentCache) {
+        getBaseDir() >> cacheDir
+    }
+    def cleanupAction = new DirectoryBuildCacheCleanup(1)
+    def fiveDaysAgo = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(5)
+
+    def "deletes chunks only used by old entries"() {
+        def sharedChunk = createChunk(HashCode.fromInt(1))
+        def oldChunk = createChunk(HashCode.fromInt(2), fiveDaysAgo)
+        def newChunk = createChunk(HashCode.fromInt(3))
+        def unusedChunk = createChunk(HashCode.fromInt(4), fiveDaysAgo)
+        def oldEntry = createManifest("old", fiveDaysAgo, HashCode.fromInt(1), HashCode.fromInt(2))
+        def newEntry = createManifest("new", System.currentTimeMillis(), HashCode.fromInt(1), HashCode.fromInt(3))
+        def chunksDir = cacheDir.file(DirectoryBuildCacheService.CHUNKS_DIR)
+        chunksDir.lastModified = fiveDaysAgo
+
+        when:
+        def filesToDelete = cleanupAction.findFilesToDelete(persistentCache, [oldEntry, newEntry, chunksDir] as File[])
+
+        then:
+        filesToDelete as Set == [oldEntry, oldChunk, unusedChunk] as Set
+        !filesToDelete.contains(sharedChunk)
+        !filesToDelete.contains(newChunk)
+    }
+
+    def "deletes old entries stored without chunks"() {
+        def oldEntry = cacheDir.file("old") << "content"
+        oldEntry.lastModified = fiveDaysAgo
+        def newEntry = cacheDir.file("new") << "content"
+
+        expect:
+        cleanupAction.findFilesToDelete(persistentCache, [oldEntry, newEntry] as File[]) == [oldEntry]
+    }
+
+    def "keeps recent chunks not used by any entry yet"() {
+        def usedChunk = createChunk(HashCode.fromInt(1), fiveDaysAgo)
+        def recentChunk = createChunk(HashCode.fromInt(2))
+        def entry = createManifest("entry", System.currentTimeMillis(), HashCode.fromInt(1))
+
+        expect:
+        cleanupAction.findFilesToDelete(persistentCache, [entry, cacheDir.file(DirectoryBuildCacheService.CHUNKS_DIR)] as File[]).empty
+        usedChunk.file
+        recentChunk.file
+    }
+
+    def "deletes chunks of unreadable entries"() {
+        def chunk = createChunk(HashCode.fromInt(1), fiveDaysAgo)
+        def entry = cacheDir.file("corrupt" + ChunkManifest.FILE_SUFFIX) << "corrupt"
+
+        expect:
+        cleanupAction.findFilesToDelete(persistentCache, [entry, cacheDir.file(DirectoryBuildCacheService.CHUNKS_DIR)] as File[]) == [chunk]
+    }
+
+    private TestFile createChunk(HashCode hash, long timestamp = System.currentTimeMillis()) {
+        def chunkFile = cacheDir.file(DirectoryBuildCacheService.chunkPath(hash)) << "chunk"
+        chunkFile.lastModified = timestamp
+        return chunkFile
+    }
+
+    private TestFile createManifest(String key, long timestamp, HashCode... chunks) {
+        def manifestFile = cacheDir.file(key + ChunkManifest.FILE_SUFFIX)
+        new ChunkManifest(chunks.collect { new ChunkManifest.Chunk(it, 5) }).writeTo(manifestFile)
+        manifestFile.lastModified = timestamp
+        return manifestFile
+    }
+}
@@ -17,8 +17,10 @@
 package org.gradle.caching.local.internal
 
 import org.gradle.cache.PersistentCache
+import org.gradle.caching.BuildCacheEntryReader
 import org.gradle.caching.BuildCacheEntryWriter
 import org.gradle.caching.BuildCacheKey
+import org.gradle.internal.resource.local.DefaultPathKeyFileStore
 import org.gradle.internal.resource.local.PathKeyFileStore
 import org.gradle.test.fixtures.file.CleanupTestDirectory
 import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
@@ -34,6 +36,7 @@ class DirectoryBuildCacheServiceTest extends Specification {
     def fileStore = Mock(PathKeyFileStore)
     def persistentCache = Mock(PersistentCache) {
         getBaseDir() >> cacheDir
+        withFileLock(_ as Runnable) >> { Runnable action -> action.run() }
     }
     def tempFileStore = new DefaultBuildCacheTempFileStore(cacheDir)
     def service = new DirectoryBuildCacheService(fileStore, persistentCache, tempFileStore, ".failed")
@@ -68,4 +71,136 @@ class DirectoryBuildCacheServiceTest extends Specification {
         cacheDir.listFiles() as List == []
         1 * key.getHashCode() >> hashCode
     }
+
+    def "stores entries as chunks shared between entries"() {
+        def chunkedService = new DirectoryBuildCacheService(new DefaultPathKeyFileStore(cacheDir), persistentCache, tempFileStore, ".failed", true)
+        def random = new Random(1)
+        def content = new byte[1024 * 1024]
+        random.nextBytes(content)
+        System.arraycopy(indexedEntry(), 0, content, 0, 4)
+        def changedContent = content.clone() as byte[]
+        changedContent[512 * 1024] = (byte) (changedContent[512 * 1024] + 1)
+
+        when:
+        chunkedService.store(key("1234"), writer(content))
+        def chunksSize = chunksSize()
+        chunkedService.store(key("5678"), writer(changedContent))
+
+        then:
+        cacheDir.file("1234.manifest").file
+        cacheDir.file("5678.manifest").file
+        !cacheDir.file("1234").exists()
+        chunksSize >= content.length
+        chunksSize() - chunksSize < ContentDefinedChunker.MAX_CHUNK_SIZE * 2
+        load(chunkedService, key("1234")) == content
+        load(chunkedService, key("5678")) == changedContent
+    }
+
+    def "treats entry with missing chunks as a miss"() {
+        def chunkedService = new DirectoryBuildCacheService(new DefaultPathKeyFileStore(cacheDir), persistentCache, tempFileStore, ".failed", true)
+        chunkedService.store(key("1234"), writer(indexedEntry("content")))
+
+        when:
+        cacheDir.file(DirectoryBuildCacheService.CHUNKS_DIR).deleteDir()
+
+        then:
+        load(chunkedService, key("1234")) == null
+        !cacheDir.file("1234.manifest").exists()
+    }
+
+    def "moves entry with corrupt chunk out of the way"() {
+        def chunkedService = new DirectoryBuildCacheService(new DefaultPathKeyFileStore(cacheDir), persistentCache, tempFileStore, ".failed", true)
+        chunkedService.store(key("1234"), writer(indexedEntry("content")))
+        def chunk = cacheDir.file(DirectoryBuildCacheService.CHUNKS_DIR).listFiles()[0].listFiles()[0]
+        chunk.text = "corrupt"
+
+        when:
+        load(chunkedService, key("1234"))
+
+        then:
+        def ex = thrown IllegalStateException
+        ex.message == "Build cache chunk ${chunk} is corrupt."
+        !chunk.exists()
+        !cacheDir.file("1234.manifest").exists()
+        cacheDir.file("1234.manifest.failed").file
+    }
+
+    def "stores entries not in the indexed format without chunks"() {
+        def chunkedService = new DirectoryBuildCacheService(new DefaultPathKeyFileStore(cacheDir), persistentCache, tempFileStore, ".failed", true)
+
+        when:
+        chunkedService.store(key("1234"), writer("content".bytes))
+        chunkedService.store(key("5678"), writer(new byte[2]))
+
+        then:
+        cacheDir.file("1234").file
+        cacheDir.file("5678").file
+        !cacheDir.file(DirectoryBuildCacheService.CHUNKS_DIR).exists()
+        load(chunkedService, key("1234")) == "content".bytes
+    }
+
+    def "marks reused chunks as recently used"() {
+        def chunkedService = new DirectoryBuildCacheService(new DefaultPathKeyFileStore(cacheDir), persistentCache, tempFileStore, ".failed", true)
+        chunkedService.store(key("1234"), writer(indexedEntry("content")))
+        def chunk = cacheDir.file(DirectoryBuildCacheService.CHUNKS_DIR).listFiles()[0].listFiles()[0]
+        chunk.lastModified = 1000000
+
+        when:
+        chunkedService.store(key("5678"), writer(indexedEntry("content")))
+
+        then:
+        chunk.lastModified() > 1000000
+    }
+
+    def "loads entries stored without chunks"() {
+        def fileStore = new DefaultPathKeyFileStore(cacheDir)
+        new DirectoryBuildCacheService(fileStore, persistentCache, tempFileStore, ".failed", false).store(key("1234"), writer("content".bytes))
+
+        expect:
+        cacheDir.file("1234").file
+        load(new DirectoryBuildCacheService(fileStore, persistentCache, tempFileStore, ".failed", true), key("1234")) == "content".bytes
+    }
+
+    private BuildCacheKey key(String hashCode) {
+        return Stub(BuildCacheKey) {
+            getHashCode() >> hashCode
+        }
+    }
+
+    private static byte[] indexedEntry(String content = "") {
+        def output = new ByteArrayOutputStream()
+        new DataOutputStream(output).writeInt(DirectoryBuildCacheService.INDEXED_ENTRY_MAGIC)
+        output.write(content.bytes)
+        return output.toByteArray()
+    }
+
+    private static BuildCacheEntryWriter writer(byte[] content) {
+        return new BuildCacheEntryWriter() {
+            @Override
+            void writeTo(OutputStream output) throws IOException {
+                output.write(content)
+            }
+
+            @Override
+            long getSize() {
+                return content.length
+            }
+        }
+    }
+
+    private static byte[] load(DirectoryBuildCacheService service, BuildCacheKey key) {
+        byte[] result = null
+        service.load(key, { InputStream input -> result = input.bytes } as BuildCacheEntryReader)
+        return result
+    }
+
+    private long chunksSize() {
+        long size = 0
+        cacheDir.file(DirectoryBuildCacheService.CHUNKS_DIR).eachFileRecurse { File file ->
+            if (file.file) {
+                size += file.length()
+            }
+        }
+        return size
+    }
 }
@@ -181,4 +181,18 @@ class WatchServiceFileWatcherBackingTest extends AbstractFileWatcherTest {
         }
         0 * watchService.take()
     }
+
+    def "cannot deliver pending events once stopped"() {
+        given:
+        def listener = Mock(FileWatcherListener)
+        def watchService = FileSystems.getDefault().newWatchService()
+        def fileWatcher = new WatchServiceFileWatcherBacking(onError, listener, watchService, fileSystem).start(executorService)
+
+        when:
+        fileWatcher.stop()
+
+        then:
+        !fileWatcher.deliverPendingEvents()
+        0 * listener._
+    }
 }
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state;
+
+import org.apache.commons.io.FileUtils;
+import org.gradle.api.Transformer;
+import org.gradle.api.internal.cache.StringInterner;
+import org.gradle.cache.PersistentIndexedCache;
+import org.gradle.internal.hash.DefaultContentHasherFactory;
+import org.gradle.internal.hash.DefaultFileHasher;
+import org.gradle.internal.hash.DefaultStreamHasher;
+import org.gradle.internal.nativeintegration.filesystem.FileSystem;
+import org.gradle.internal.serialize.Serializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measures hashing a set of files through {@link CachingFileHasher}, when the hashes are already cached (warm) and when every file has to be read (cold).
+ */
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@State(Scope.Benchmark)
+@SuppressWarnings("Since15")
+public class CachingFileHasherBenchmark {
+    @Param({"100", "1000"})
+    int fileCount;
+
+    @Param({"1024", "65536"})
+    int fileSize;
+
+    File tempDir;
+    List<File> files;
+    FileSystem fileSystem;
+    DefaultFileHasher delegate;
+    FileTimeStampInspector timeStampInspector;
+    CachingFileHasher warmHasher;
+    CachingFileHasher coldHasher;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        tempDir = Files.createTempDirectory("caching-file-hasher").toFile();
+        fileSystem = SyntheticFileTree.fileSystem(tempDir);
+        files = SyntheticFileTree.create(new File(tempDir, "files"), 1, 0, fileCount, fileSize);
+        delegate = new DefaultFileHasher(new DefaultStreamHasher(new DefaultContentHasherFactory()));
+        timeStampInspector = new FileTimeStampInspector(new File(tempDir, "work")) {
+        };
+        warmHasher = createHasher();
+        for (File file : files) {
+            warmHasher.hash(file);
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void setupInvocation() {
+        coldHasher = createHasher();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        FileUtils.forceDelete(tempDir);
+    }
+
+    @Benchmark
+    public void warm(Blackhole blackhole) {
+        hashAll(warmHasher, blackhole);
+    }
+
+    @Benchmark
+    public void cold(Blackhole blackhole) {
+        hashAll(coldHasher, blackhole);
+    }
+
+    private void hashAll(CachingFileHasher hasher, Blackhole blackhole) {
+        for (File file : files) {
+            blackhole.consume(hasher.hash(file));
+        }
+    }
+
+    private CachingFileHasher createHasher() {
+        return new CachingFileHasher(delegate, new InMemoryTaskHistoryStore(), new StringInterner(), timeStampInspector, "fileHashes", fileSystem);
+    }
+
+    private static class InMemoryTaskHistoryStore implements TaskHistoryStore {
+        @Override
+        public <K, V> PersistentIndexedCache<K, V> createCache(String name, Class<K> keyType, Serializer<V> valueSerializer, int maxEntriesToKeepInMemory, boolean cacheInMemoryForShortLivedProcesses) {
+            return new InMemoryIndexedCache<K, V>();
+        }
+    }
+
+    private static class InMemoryIndexedCache<K, V> implements PersistentIndexedCache<K, V> {
+        private final Map<K, V> entries = new HashMap<K, V>();
+
+        @Override
+        public V get(K key) {
+            return entries.get(key);
+        }
+
+        @Override
+        public V get(K key, Transformer<? extends V, ? super K> producer) {
+            V value = entries.get(key);
+            if (value == null) {
+                value = producer.transform(key);
+                entries.put(key, value);
+            }
+            return value;
+        }
+
+        @Override
+        public void put(K key, V value) {
+            entries.put(key, value);
+        }
+
+        @Override
+        public void remove(K key) {
+            entries.remove(key);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state;
+
+import org.gradle.api.internal.changedetection.rules.TaskStateChange;
+import org.gradle.internal.hash.HashCode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Measures comparing a file collection snapshot with the snapshot from a previous execution, and calculating the hash of a snapshot.
+ */
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@State(Scope.Benchmark)
+public class DefaultFileCollectionSnapshotBenchmark {
+    @Param({"100", "10000"})
+    int fileCount;
+
+    @Param({"ORDERED", "UNORDERED"})
+    TaskFilePropertyCompareStrategy compareStrategy;
+
+    @Param({"none", "modified", "added"})
+    String change;
+
+    Map<String, NormalizedFileSnapshot> previousSnapshots;
+    Map<String, NormalizedFileSnapshot> currentSnapshots;
+    DefaultFileCollectionSnapshot previous;
+    DefaultFileCollectionSnapshot current;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        previousSnapshots = createSnapshots(fileCount);
+        currentSnapshots = createSnapshots(fileCount);
+        String lastPath = path(fileCount - 1);
+        if (change.equals("modified")) {
+            currentSnapshots.put(lastPath, new NonNormalizedFileSnapshot(lastPath, new FileHashSnapshot(HashCode.fromInt(-1))));
+        } else if (change.equals("added")) {
+            String addedPath = path(fileCount);
+            currentSnapshots.put(addedPath, new NonNormalizedFileSnapshot(addedPath, new FileHashSnapshot(HashCode.fromInt(fileCount))));
+        }
+        previous = new DefaultFileCollectionSnapshot(previousSnapshots, compareStrategy, true);
+        current = new DefaultFileCollectionSnapshot(currentSnapshots, compareStrategy, true);
+    }
+
+    @Benchmark
+    public void iterateContentChanges(Blackhole blackhole) {
+        Iterator<TaskStateChange> changes = current.iterateContentChangesSince(previous, "Input", true);
+        while (changes.hasNext()) {
+            blackhole.consume(changes.next());
+        }
+    }
+
+    @Benchmark
+    public void calculateHash(Blackhole blackhole) {
+        // Use a new instance, as the hash is cached once calculated
+        blackhole.consume(new DefaultFileCollectionSnapshot(currentSnapshots, compareStrategy, true).getHash());
+    }
+
+    private static Map<String, NormalizedFileSnapshot> createSnapshots(int count) {
+        Map<String, NormalizedFileSnapshot> snapshots = new LinkedHashMap<String, NormalizedFileSnapshot>();
+        for (int i = 0; i < count; i++) {
+            String path = path(i);
+            snapshots.put(path, new NonNormalizedFileSnapshot(path, new FileHashSnapshot(HashCode.fromInt(i))));
+        }
+        return snapshots;
+    }
+
+    private static String path(int index) {
+        return "/some/project/src/main/java/org/example/package" + (index % 100) + "/File" + index + ".java";
+    }
+}
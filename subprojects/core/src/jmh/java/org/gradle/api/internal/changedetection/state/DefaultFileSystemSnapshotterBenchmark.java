@@ -0,0 +1,100 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state;
+
+import org.apache.commons.io.FileUtils;
+import org.gradle.api.internal.cache.StringInterner;
+import org.gradle.api.internal.file.collections.DefaultDirectoryFileTreeFactory;
+import org.gradle.api.tasks.util.internal.PatternSets;
+import org.gradle.internal.classpath.CachedJarFileStore;
+import org.gradle.internal.hash.DefaultContentHasherFactory;
+import org.gradle.internal.hash.DefaultFileHasher;
+import org.gradle.internal.hash.DefaultStreamHasher;
+import org.gradle.internal.nativeintegration.filesystem.FileSystem;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+
+/**
+ * Measures snapshotting a synthetic directory tree, using an empty {@link FileSystemMirror} for each snapshot so that the tree is walked and hashed every time.
+ */
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@State(Scope.Benchmark)
+@SuppressWarnings("Since15")
+public class DefaultFileSystemSnapshotterBenchmark {
+    private static final int BREADTH = 4;
+    private static final int FILES_PER_DIRECTORY = 10;
+
+    @Param({"3", "5"})
+    int depth;
+
+    @Param({"1024"})
+    int fileSize;
+
+    @Param({"1", "4"})
+    int maxWorkerCount;
+
+    File tempDir;
+    File rootDir;
+    FileSystem fileSystem;
+    ParallelDirectoryWalker walker;
+    DefaultFileSystemSnapshotter snapshotter;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        tempDir = Files.createTempDirectory("file-system-snapshotter").toFile();
+        fileSystem = SyntheticFileTree.fileSystem(tempDir);
+        rootDir = new File(tempDir, "tree");
+        SyntheticFileTree.create(rootDir, depth, BREADTH, FILES_PER_DIRECTORY, fileSize);
+        walker = new ParallelDirectoryWalker(fileSystem, maxWorkerCount);
+    }
+
+    @Setup(Level.Invocation)
+    public void setupInvocation() {
+        DefaultFileHasher hasher = new DefaultFileHasher(new DefaultStreamHasher(new DefaultContentHasherFactory()));
+        DefaultDirectoryFileTreeFactory directoryFileTreeFactory = new DefaultDirectoryFileTreeFactory(PatternSets.getNonCachingPatternSetFactory(), fileSystem);
+        DefaultFileSystemMirror fileSystemMirror = new DefaultFileSystemMirror(Collections.<CachedJarFileStore>emptyList());
+        snapshotter = new DefaultFileSystemSnapshotter(hasher, new StringInterner(), fileSystem, directoryFileTreeFactory, fileSystemMirror, walker);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        walker.close();
+        FileUtils.forceDelete(tempDir);
+    }
+
+    @Benchmark
+    public void snapshotDirectoryTree(Blackhole blackhole) {
+        FileTreeSnapshot snapshot = snapshotter.snapshotDirectoryTree(rootDir);
+        blackhole.consume(snapshot.getDescendants());
+    }
+}
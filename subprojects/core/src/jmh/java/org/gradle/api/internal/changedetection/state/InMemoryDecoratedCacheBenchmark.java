@@ -0,0 +1,139 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.gradle.api.Transformer;
+import org.gradle.cache.FileLock;
+import org.gradle.cache.internal.MultiProcessSafeAsyncPersistentIndexedCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Measures lookups of entries that are held in memory by {@link InMemoryDecoratedCache}, so that the backing cache is never used.
+ */
+@Fork(1)
+@Threads(4)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@State(Scope.Benchmark)
+public class InMemoryDecoratedCacheBenchmark {
+    @Param({"1000", "100000"})
+    int entryCount;
+
+    InMemoryDecoratedCache<String, String> cache;
+    String[] keys;
+    AtomicInteger next = new AtomicInteger();
+    Runnable completion = new Runnable() {
+        @Override
+        public void run() {
+        }
+    };
+    Transformer<String, String> producer = new Transformer<String, String>() {
+        @Override
+        public String transform(String key) {
+            throw new IllegalStateException("Entry for " + key + " should be in memory.");
+        }
+    };
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Cache<Object, Object> inMemoryCache = CacheBuilder.newBuilder().maximumSize(entryCount).build();
+        cache = new InMemoryDecoratedCache<String, String>(new BackingCache(), inMemoryCache, "benchmark", new AtomicReference<FileLock.State>());
+        keys = new String[entryCount];
+        for (int i = 0; i < entryCount; i++) {
+            keys[i] = "/some/path/to/file-" + i;
+            cache.putLater(keys[i], "value-" + i, completion);
+        }
+    }
+
+    @Benchmark
+    public void get(Blackhole blackhole) {
+        blackhole.consume(cache.get(nextKey()));
+    }
+
+    @Benchmark
+    public void getWithProducer(Blackhole blackhole) {
+        blackhole.consume(cache.get(nextKey(), producer, completion));
+    }
+
+    private String nextKey() {
+        return keys[(next.getAndIncrement() & Integer.MAX_VALUE) % entryCount];
+    }
+
+    private static class BackingCache implements MultiProcessSafeAsyncPersistentIndexedCache<String, String> {
+        private final ConcurrentMap<String, String> entries = new ConcurrentHashMap<String, String>();
+
+        @Override
+        public String get(String key) {
+            return entries.get(key);
+        }
+
+        @Override
+        public String get(String key, Transformer<? extends String, ? super String> producer, Runnable completion) {
+            try {
+                String value = entries.get(key);
+                if (value == null) {
+                    value = producer.transform(key);
+                    entries.put(key, value);
+                }
+                return value;
+            } finally {
+                completion.run();
+            }
+        }
+
+        @Override
+        public void putLater(String key, String value, Runnable completion) {
+            entries.put(key, value);
+            completion.run();
+        }
+
+        @Override
+        public void removeLater(String key, Runnable completion) {
+            entries.remove(key);
+            completion.run();
+        }
+
+        @Override
+        public void afterLockAcquire(FileLock.State currentCacheState) {
+        }
+
+        @Override
+        public void finishWork() {
+        }
+
+        @Override
+        public void beforeLockRelease(FileLock.State currentCacheState) {
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state;
+
+import org.gradle.internal.nativeintegration.filesystem.FileSystem;
+import org.gradle.internal.nativeintegration.services.NativeServices;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Creates directory trees with a fixed shape and pseudo-random content, so that benchmark runs are comparable.
+ */
+class SyntheticFileTree {
+    private SyntheticFileTree() {
+    }
+
+    static FileSystem fileSystem(File tempDir) {
+        NativeServices.initialize(new File(tempDir, "native"), false);
+        return NativeServices.getInstance().get(FileSystem.class);
+    }
+
+    /**
+     * Creates a tree of the given depth, where each directory contains {@code breadth} sub-directories and {@code filesPerDirectory} files.
+     *
+     * @return The files that were created.
+     */
+    static List<File> create(File rootDir, int depth, int breadth, int filesPerDirectory, int fileSize) throws IOException {
+        List<File> files = new ArrayList<File>();
+        create(rootDir, depth, breadth, filesPerDirectory, new byte[fileSize], new Random(1234L), files);
+        return files;
+    }
+
+    private static void create(File dir, int depth, int breadth, int filesPerDirectory, byte[] content, Random random, List<File> files) throws IOException {
+        if (!dir.mkdirs() && !dir.isDirectory()) {
+            throw new IOException("Could not create directory " + dir);
+        }
+        for (int i = 0; i < filesPerDirectory; i++) {
+            File file = new File(dir, "file-" + i + ".txt");
+            random.nextBytes(content);
+            FileOutputStream outputStream = new FileOutputStream(file);
+            try {
+                outputStream.write(content);
+            } finally {
+                outputStream.close();
+            }
+            files.add(file);
+        }
+        if (depth > 1) {
+            for (int i = 0; i < breadth; i++) {
+                create(new File(dir, "dir-" + i), depth - 1, breadth, filesPerDirectory, content, random, files);
+            }
+        }
+    }
+}
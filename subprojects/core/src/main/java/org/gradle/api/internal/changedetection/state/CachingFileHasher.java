@@ -39,9 +39,17 @@ public class CachingFileHasher implements FileHasher {
     private final FileTimeStampInspector timestampInspector;
 
     public CachingFileHasher(FileHasher delegate, TaskHistoryStore store, StringInterner stringInterner, FileTimeStampInspector timestampInspector, String cacheName, FileSystem fileSystem) {
+        this(delegate, store.createCache(cacheName, String.class, new FileInfoSerializer(), 400000, true), stringInterner, timestampInspector, fileSystem);
+    }
+
+    public CachingFileHasher(FileHasher delegate, CrossBuildFileHashCache store, StringInterner stringInterner, FileTimeStampInspector timestampInspector, String cacheName, FileSystem fileSystem) {
+        this(delegate, store.createFileInfoCache(cacheName, new FileInfoSerializer()), stringInterner, timestampInspector, fileSystem);
+    }
+
+    private CachingFileHasher(FileHasher delegate, PersistentIndexedCache<String, FileInfo> cache, StringInterner stringInterner, FileTimeStampInspector timestampInspector, FileSystem fileSystem) {
         this.delegate = delegate;
         this.fileSystem = fileSystem;
-        this.cache = store.createCache(cacheName, String.class, new FileInfoSerializer(), 400000, true);
+        this.cache = cache;
         this.stringInterner = stringInterner;
         this.timestampInspector = timestampInspector;
     }
@@ -80,7 +88,7 @@ public class CachingFileHasher implements FileHasher {
         if (timestampInspector.timestampCanBeUsedToDetectFileChange(absolutePath, timestamp)) {
             FileInfo info = cache.get(absolutePath);
 
-            if (info != null && length == info.length && timestamp == info.timestamp) {
+            if (info != null && length == info.getLength() && timestamp == info.getTimestamp()) {
                 return info;
             }
         }
@@ -110,9 +118,17 @@ public class CachingFileHasher implements FileHasher {
         public HashCode getHash() {
             return hash;
         }
+
+        public long getLength() {
+            return length;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
     }
 
-    private static class FileInfoSerializer extends AbstractSerializer<FileInfo> {
+    static class FileInfoSerializer extends AbstractSerializer<FileInfo> {
         private final HashCodeSerializer hashCodeSerializer = new HashCodeSerializer();
 
         public FileInfo read(Decoder decoder) throws Exception {
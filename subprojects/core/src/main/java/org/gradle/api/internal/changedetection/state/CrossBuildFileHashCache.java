@@ -16,24 +16,41 @@
 
 package org.gradle.api.internal.changedetection.state;
 
+import org.gradle.api.internal.changedetection.state.CachingFileHasher.FileInfo;
 import org.gradle.cache.CacheBuilder;
 import org.gradle.cache.CacheRepository;
 import org.gradle.cache.FileLockManager;
 import org.gradle.cache.PersistentCache;
 import org.gradle.cache.PersistentIndexedCache;
 import org.gradle.cache.PersistentIndexedCacheParameters;
+import org.gradle.internal.concurrent.CompositeStoppable;
 import org.gradle.internal.serialize.Serializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import static org.gradle.cache.internal.filelock.LockOptionsBuilder.mode;
 
 public class CrossBuildFileHashCache implements Closeable, TaskHistoryStore {
+    /**
+     * When set to true, file hashes are stored in a memory-mapped table instead of an indexed cache. Experimental.
+     *
+     * @see MappedFileInfoCache for the limitations of the table.
+     */
+    public static final String MAPPED_FILE_HASHES_PROPERTY = "org.gradle.internal.filehashes.mapped";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CrossBuildFileHashCache.class);
+    private static final int FILE_HASH_TABLE_CAPACITY = 1 << 19;
+
     private final PersistentCache cache;
     private final InMemoryCacheDecoratorFactory inMemoryCacheDecoratorFactory;
+    private final List<Closeable> mappedCaches = new CopyOnWriteArrayList<Closeable>();
 
     public CrossBuildFileHashCache(@Nullable File cacheDir, CacheRepository repository, InMemoryCacheDecoratorFactory inMemoryCacheDecoratorFactory) {
         this.inMemoryCacheDecoratorFactory = inMemoryCacheDecoratorFactory;
@@ -51,8 +68,25 @@ public class CrossBuildFileHashCache implements Closeable, TaskHistoryStore {
         return cache.createCache(parameters);
     }
 
+    /**
+     * Creates the cache used by {@link CachingFileHasher}. Uses a memory-mapped table that can be accessed without locking and shared with other processes, when enabled and possible.
+     */
+    PersistentIndexedCache<String, FileInfo> createFileInfoCache(String cacheName, Serializer<FileInfo> valueSerializer) {
+        if (Boolean.getBoolean(MAPPED_FILE_HASHES_PROPERTY)) {
+            File tableFile = new File(cache.getBaseDir(), cacheName + ".table");
+            try {
+                MappedFileInfoCache mappedCache = MappedFileInfoCache.open(tableFile, FILE_HASH_TABLE_CAPACITY);
+                mappedCaches.add(mappedCache);
+                return mappedCache;
+            } catch (IOException e) {
+                LOGGER.debug("Could not map file hash table " + tableFile + ", using an indexed cache instead.", e);
+            }
+        }
+        return createCache(cacheName, String.class, valueSerializer, 400000, true);
+    }
+
     @Override
     public void close() throws IOException {
-        cache.close();
+        CompositeStoppable.stoppable(mappedCaches).add(cache).stop();
     }
 }
@@ -16,34 +16,76 @@
 
 package org.gradle.api.internal.changedetection.state;
 
+import com.google.common.collect.Sets;
+import org.gradle.api.Action;
+import org.gradle.api.internal.file.FileSystemSubset;
 import org.gradle.api.internal.tasks.execution.TaskOutputChangesListener;
 import org.gradle.initialization.RootBuildLifecycleListener;
 import org.gradle.internal.classpath.CachedJarFileStore;
+import org.gradle.internal.concurrent.Stoppable;
 import org.gradle.internal.file.DefaultFileHierarchySet;
 import org.gradle.internal.file.FileHierarchySet;
+import org.gradle.internal.filewatch.FileWatcher;
+import org.gradle.internal.filewatch.FileWatcherEvent;
+import org.gradle.internal.filewatch.FileWatcherFactory;
+import org.gradle.internal.filewatch.FileWatcherListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
 import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * See {@link DefaultFileSystemSnapshotter} for some more details
+ *
+ * <p>When created with a {@link FileWatcherFactory}, the mirror retains its state between builds. Every location that is added to the mirror is watched
+ * for changes before it is snapshotted and state for a location is discarded when a change to it is reported. Pending changes are applied at the start and end of
+ * each build. When the watcher reports an overflow or a location that is no longer watched, fails, stops or cannot deliver all pending changes, all state is discarded.</p>
+ *
+ * <p>Every invalidation of state changes the invalidation generation of the mirror. Snapshots taken ahead of their use are only added when the generation did
+ * not change while they were taken.</p>
  */
-public class DefaultFileSystemMirror implements FileSystemMirror, TaskOutputChangesListener, RootBuildLifecycleListener {
-    // Maps from interned absolute path for a file to known details for the file.
-    private final Map<String, FileSnapshot> files = new ConcurrentHashMap<String, FileSnapshot>();
-    private final Map<String, FileSnapshot> cacheFiles = new ConcurrentHashMap<String, FileSnapshot>();
-    // Maps from interned absolute path for a directory to known details for the directory.
-    private final Map<String, FileTreeSnapshot> trees = new ConcurrentHashMap<String, FileTreeSnapshot>();
-    private final Map<String, FileTreeSnapshot> cacheTrees = new ConcurrentHashMap<String, FileTreeSnapshot>();
-    // Maps from interned absolute path to a snapshot
-    private final Map<String, Snapshot> snapshots = new ConcurrentHashMap<String, Snapshot>();
-    private final Map<String, Snapshot> cacheSnapshots = new ConcurrentHashMap<String, Snapshot>();
+public class DefaultFileSystemMirror implements FileSystemMirror, TaskOutputChangesListener, RootBuildLifecycleListener, Stoppable {
+    /**
+     * When set to true, the file system mirror uses file watching to retain state between builds in the same process.
+     */
+    public static final String RETAIN_STATE_PROPERTY = "org.gradle.internal.filesystem.mirror.retain";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DefaultFileSystemMirror.class);
+
+    // Known details for files, directory trees and content snapshots, by interned absolute path.
+    private final FileSystemMirrorTrie state = new FileSystemMirrorTrie();
+    private final FileSystemMirrorTrie cacheState = new FileSystemMirrorTrie();
     private final FileHierarchySet cachedDirectories;
+    private final AtomicLong generation = new AtomicLong();
+    @Nullable
+    private final FileWatcherFactory fileWatcherFactory;
+    private final Object watchLock = new Object();
+    // Guarded by watchLock
+    private FileWatcher fileWatcher;
+    // Guarded by watchLock
+    private FileHierarchySet watchedRoots = DefaultFileHierarchySet.of();
+    // Set by the watcher thread, which must not acquire watchLock as it holds the watcher's lock while delivering events
+    private volatile boolean eventsLost;
+    // Locations changed during the current build. A snapshot taken before such a change may have been added after the change was reported.
+    private final Set<String> changedDuringBuild = Sets.newConcurrentHashSet();
+    // Locations that were only watched after they were snapshotted during the current build
+    private final Set<String> watchedAfterSnapshot = Sets.newConcurrentHashSet();
 
     public DefaultFileSystemMirror(List<CachedJarFileStore> fileStores) {
+        this(fileStores, null);
+    }
+
+    /**
+     * @param fileWatcherFactory when not null, used to watch the locations added to this mirror so that state can be retained between builds.
+     */
+    public DefaultFileSystemMirror(List<CachedJarFileStore> fileStores, @Nullable FileWatcherFactory fileWatcherFactory) {
+        this.fileWatcherFactory = fileWatcherFactory;
         FileHierarchySet cachedDirectories = DefaultFileHierarchySet.of();
         for (CachedJarFileStore fileStore : fileStores) {
             for (File file : fileStore.getFileStoreRoots()) {
@@ -53,88 +95,235 @@ public class DefaultFileSystemMirror implements FileSystemMirror, TaskOutputChan
         this.cachedDirectories = cachedDirectories;
     }
 
+    @Override
+    public void beforeSnapshot(String path) {
+        // Watch before the location is inspected, so that a change made while it is inspected is reported
+        if (!cachedDirectories.contains(path)) {
+            watch(path);
+        }
+    }
+
     @Nullable
     @Override
     public FileSnapshot getFile(String path) {
-        // Could potentially also look whether we have the details for an ancestor directory tree
         // Could possibly infer that the path refers to a directory, if we have details for a descendant path (and it's not a missing file)
-        if (cachedDirectories.contains(path)) {
-            return cacheFiles.get(path);
-        } else {
-            return files.get(path);
-        }
+        return stateFor(path).getFile(path);
     }
 
     @Override
     public void putFile(FileSnapshot file) {
         if (cachedDirectories.contains(file.getPath())) {
-            cacheFiles.put(file.getPath(), file);
+            cacheState.putFile(file);
         } else {
-            files.put(file.getPath(), file);
+            state.putFile(file);
+            watchAfterSnapshot(file.getPath());
         }
     }
 
     @Nullable
     @Override
     public Snapshot getContent(String path) {
-        if (cachedDirectories.contains(path)) {
-            return cacheSnapshots.get(path);
-        } else {
-            return snapshots.get(path);
-        }
+        return stateFor(path).getContent(path);
     }
 
     @Override
     public void putContent(String path, Snapshot snapshot) {
         if (cachedDirectories.contains(path)) {
-            cacheSnapshots.put(path, snapshot);
+            cacheState.putContent(path, snapshot);
         } else {
-            snapshots.put(path, snapshot);
+            state.putContent(path, snapshot);
+            watchAfterSnapshot(path);
         }
     }
 
     @Nullable
     @Override
     public FileTreeSnapshot getDirectoryTree(String path) {
-        // Could potentially also look whether we have the details for an ancestor directory tree
         // Could possibly also short-circuit some scanning if we have details for some sub trees
-        if (cachedDirectories.contains(path)) {
-            return cacheTrees.get(path);
-        } else {
-            return trees.get(path);
-        }
+        return stateFor(path).getDirectoryTree(path);
     }
 
     @Override
     public void putDirectory(FileTreeSnapshot directory) {
         if (cachedDirectories.contains(directory.getPath())) {
-            cacheTrees.put(directory.getPath(), directory);
+            cacheState.putDirectory(directory);
         } else {
-            trees.put(directory.getPath(), directory);
+            state.putDirectory(directory);
+            watchAfterSnapshot(directory.getPath());
         }
     }
 
+    @Override
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    @Override
+    public void putDirectory(FileTreeSnapshot directory, long generation) {
+        if (cachedDirectories.contains(directory.getPath())) {
+            // Append-only caches are not invalidated
+            cacheState.putDirectory(directory);
+            return;
+        }
+        if (this.generation.get() != generation) {
+            return;
+        }
+        state.putDirectory(directory);
+        watchAfterSnapshot(directory.getPath());
+        // An invalidation that started before the directory was added may not have seen it
+        if (this.generation.get() != generation) {
+            invalidate(directory.getPath());
+        }
+    }
+
+    private FileSystemMirrorTrie stateFor(String path) {
+        return cachedDirectories.contains(path) ? cacheState : state;
+    }
+
     @Override
     public void beforeTaskOutputChanged() {
-        // When the task outputs are generated, throw away all state for files that do not live in an append-only cache.
-        // This is intentionally very simple, to be improved later
-        files.clear();
-        trees.clear();
-        snapshots.clear();
+        // When the task outputs are generated in unknown locations, throw away all state for files that do not live in an append-only cache.
+        discardNonCacheState();
+    }
+
+    @Override
+    public void beforeTaskOutputChanged(Iterable<String> affectedOutputPaths) {
+        // Only throw away the state for the affected locations
+        for (String path : affectedOutputPaths) {
+            if (!cachedDirectories.contains(path)) {
+                invalidate(path);
+            }
+        }
     }
 
     @Override
     public void afterStart() {
+        if (fileWatcherFactory == null) {
+            return;
+        }
+        synchronized (watchLock) {
+            if (fileWatcher != null && !fileWatcher.deliverPendingEvents()) {
+                // Changes made since the previous build may not have been reported
+                LOGGER.debug("Could not receive all pending file system events, discarding file system state.");
+                fileWatcher.stop();
+                fileWatcher = null;
+                watchedRoots = DefaultFileHierarchySet.of();
+            }
+            if (fileWatcher == null) {
+                // State gathered without a watcher in place cannot be trusted
+                discardNonCacheState();
+                eventsLost = false;
+                fileWatcher = fileWatcherFactory.watch(new Action<Throwable>() {
+                    @Override
+                    public void execute(Throwable throwable) {
+                        LOGGER.debug("Failed to watch the file system, discarding file system state.", throwable);
+                        onEventsLost();
+                    }
+                }, new FileWatcherListener() {
+                    @Override
+                    public void onChange(FileWatcher watcher, FileWatcherEvent event) {
+                        if (event.getType() == FileWatcherEvent.Type.UNDEFINED || event.getFile() == null) {
+                            LOGGER.debug("File system events have been lost, discarding file system state.");
+                            onEventsLost();
+                        } else {
+                            String path = event.getFile().getAbsolutePath();
+                            changedDuringBuild.add(path);
+                            invalidate(path);
+                        }
+                    }
+                });
+            }
+        }
     }
 
     @Override
     public void beforeComplete() {
+        cacheState.clear();
+        synchronized (watchLock) {
+            if (fileWatcher != null && fileWatcher.deliverPendingEvents() && !eventsLost) {
+                // Keep the state for watched locations for the next build, except for the state that may have been added without the watcher noticing a change
+                invalidateAll(changedDuringBuild);
+                invalidateAll(watchedAfterSnapshot);
+                return;
+            }
+        }
         // We throw away all state between builds
-        files.clear();
-        cacheFiles.clear();
-        trees.clear();
-        cacheTrees.clear();
-        snapshots.clear();
-        cacheSnapshots.clear();
+        stopWatching();
+    }
+
+    @Override
+    public void stop() {
+        stopWatching();
+    }
+
+    private void watchAfterSnapshot(String path) {
+        if (watch(path)) {
+            // A change made between inspecting the location and watching it is not reported
+            watchedAfterSnapshot.add(path);
+        }
+    }
+
+    /**
+     * Starts watching the given location, when not already watched.
+     *
+     * @return true if the location was not watched before.
+     */
+    private boolean watch(String path) {
+        if (fileWatcherFactory == null) {
+            return false;
+        }
+        synchronized (watchLock) {
+            if (fileWatcher == null || eventsLost || watchedRoots.contains(path)) {
+                return false;
+            }
+            File root = new File(path);
+            try {
+                fileWatcher.watch(FileSystemSubset.builder().add(root).build());
+                watchedRoots = watchedRoots.plus(root);
+                return true;
+            } catch (IOException e) {
+                LOGGER.debug("Could not watch " + path + ", discarding file system state.", e);
+                onEventsLost();
+                return false;
+            }
+        }
+    }
+
+    private void stopWatching() {
+        synchronized (watchLock) {
+            if (fileWatcher != null) {
+                fileWatcher.stop();
+                fileWatcher = null;
+            }
+            watchedRoots = DefaultFileHierarchySet.of();
+            discardNonCacheState();
+        }
+    }
+
+    /**
+     * Discards all state for watched locations. The state gathered from now on is discarded at the end of the build.
+     */
+    private void onEventsLost() {
+        eventsLost = true;
+        discardNonCacheState();
+    }
+
+    private void invalidateAll(Set<String> paths) {
+        for (Iterator<String> iterator = paths.iterator(); iterator.hasNext();) {
+            invalidate(iterator.next());
+            iterator.remove();
+        }
+    }
+
+    private void invalidate(String path) {
+        generation.incrementAndGet();
+        state.invalidate(path);
+    }
+
+    private void discardNonCacheState() {
+        generation.incrementAndGet();
+        state.clear();
+        changedDuringBuild.clear();
+        watchedAfterSnapshot.clear();
     }
 }
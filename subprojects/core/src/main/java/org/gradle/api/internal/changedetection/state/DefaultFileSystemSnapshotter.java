@@ -63,17 +63,19 @@ public class DefaultFileSystemSnapshotter implements FileSystemSnapshotter {
     private final FileSystem fileSystem;
     private final DirectoryFileTreeFactory directoryFileTreeFactory;
     private final FileSystemMirror fileSystemMirror;
+    private final ParallelDirectoryWalker parallelDirectoryWalker;
     private final ProducerGuard<String> producingSelfSnapshots = ProducerGuard.striped();
     private final ProducerGuard<String> producingTrees = ProducerGuard.striped();
     private final ProducerGuard<String> producingAllSnapshots = ProducerGuard.striped();
     private final DefaultGenericFileCollectionSnapshotter snapshotter;
 
-    public DefaultFileSystemSnapshotter(FileHasher hasher, StringInterner stringInterner, FileSystem fileSystem, DirectoryFileTreeFactory directoryFileTreeFactory, FileSystemMirror fileSystemMirror) {
+    public DefaultFileSystemSnapshotter(FileHasher hasher, StringInterner stringInterner, FileSystem fileSystem, DirectoryFileTreeFactory directoryFileTreeFactory, FileSystemMirror fileSystemMirror, ParallelDirectoryWalker parallelDirectoryWalker) {
         this.hasher = hasher;
         this.stringInterner = stringInterner;
         this.fileSystem = fileSystem;
         this.directoryFileTreeFactory = directoryFileTreeFactory;
         this.fileSystemMirror = fileSystemMirror;
+        this.parallelDirectoryWalker = parallelDirectoryWalker;
         snapshotter = new DefaultGenericFileCollectionSnapshotter(stringInterner, directoryFileTreeFactory, this);
     }
 
@@ -95,6 +97,7 @@ public class DefaultFileSystemSnapshotter implements FileSystemSnapshotter {
             public FileSnapshot create() {
                 FileSnapshot snapshot = fileSystemMirror.getFile(path);
                 if (snapshot == null) {
+                    fileSystemMirror.beforeSnapshot(path);
                     snapshot = calculateDetails(file);
                     fileSystemMirror.putFile(snapshot);
                 }
@@ -112,6 +115,7 @@ public class DefaultFileSystemSnapshotter implements FileSystemSnapshotter {
             public Snapshot create() {
                 Snapshot snapshot = fileSystemMirror.getContent(path);
                 if (snapshot == null) {
+                    fileSystemMirror.beforeSnapshot(path);
                     FileCollectionSnapshot fileCollectionSnapshot = snapshotter.snapshot(new SimpleFileCollection(file), InputPathNormalizationStrategy.ABSOLUTE, InputNormalizationStrategy.NOT_CONFIGURED);
                     DefaultBuildCacheHasher hasher = new DefaultBuildCacheHasher();
                     fileCollectionSnapshot.appendToHasher(hasher);
@@ -146,6 +150,25 @@ public class DefaultFileSystemSnapshotter implements FileSystemSnapshotter {
         });
     }
 
+    @Override
+    public void preSnapshotDirectoryTree(final File dir) {
+        final String path = dir.getAbsolutePath();
+        if (fileSystemMirror.getDirectoryTree(path) != null) {
+            return;
+        }
+        producingTrees.guardByKey(path, new Factory<Void>() {
+            @Override
+            public Void create() {
+                if (fileSystemMirror.getDirectoryTree(path) == null) {
+                    // Any invalidation while the tree is walked may have been missed by the walk
+                    long generation = fileSystemMirror.getGeneration();
+                    fileSystemMirror.putDirectory(snapshot(directoryFileTreeFactory.create(dir)), generation);
+                }
+                return null;
+            }
+        });
+    }
+
     /*
      * For simplicity this only caches trees without includes/excludes. However, if it is asked
      * to snapshot a filtered tree, it will try to find a snapshot for the underlying
@@ -187,15 +210,25 @@ public class DefaultFileSystemSnapshotter implements FileSystemSnapshotter {
     }
 
     private FileTreeSnapshot snapshotAndCache(DirectoryFileTree directoryTree) {
-        String path = internPath(directoryTree.getDir());
-        List<FileSnapshot> elements = Lists.newArrayList();
-        directoryTree.visit(new FileVisitorImpl(elements));
-        ImmutableList<FileSnapshot> descendants = ImmutableList.copyOf(elements);
-        DirectoryTreeDetails snapshot = new DirectoryTreeDetails(path, descendants);
+        FileTreeSnapshot snapshot = snapshot(directoryTree);
         fileSystemMirror.putDirectory(snapshot);
         return snapshot;
     }
 
+    private FileTreeSnapshot snapshot(DirectoryFileTree directoryTree) {
+        String path = internPath(directoryTree.getDir());
+        fileSystemMirror.beforeSnapshot(path);
+        List<FileSnapshot> elements;
+        if (parallelDirectoryWalker.isParallel() && directoryTree.getDir().isDirectory()) {
+            elements = parallelDirectoryWalker.walk(directoryTree.getDir(), directoryTree.getPatterns().getAsSpec(), new SnapshottingVisitor());
+        } else {
+            elements = Lists.newArrayList();
+            directoryTree.visit(new FileVisitorImpl(elements));
+        }
+        ImmutableList<FileSnapshot> descendants = ImmutableList.copyOf(elements);
+        return new DirectoryTreeDetails(path, descendants);
+    }
+
     /*
      * We don't reuse code between this and #snapshotAndCache, because we can avoid
      * some defensive copying when the result won't be shared.
@@ -280,6 +313,26 @@ public class DefaultFileSystemSnapshotter implements FileSystemSnapshotter {
         }
     }
 
+    private FileSnapshot directorySnapshot(FileVisitDetails dirDetails) {
+        return new DirectoryFileSnapshot(internPath(dirDetails.getFile()), dirDetails.getRelativePath(), false);
+    }
+
+    private FileSnapshot regularFileSnapshot(FileVisitDetails fileDetails) {
+        return new RegularFileSnapshot(internPath(fileDetails.getFile()), fileDetails.getRelativePath(), false, fileSnapshot(fileDetails));
+    }
+
+    private class SnapshottingVisitor implements ParallelDirectoryWalker.Visitor<FileSnapshot> {
+        @Override
+        public FileSnapshot visitDir(FileVisitDetails dirDetails) {
+            return directorySnapshot(dirDetails);
+        }
+
+        @Override
+        public FileSnapshot visitFile(FileVisitDetails fileDetails) {
+            return regularFileSnapshot(fileDetails);
+        }
+    }
+
     private class FileVisitorImpl implements FileVisitor {
         private final List<FileSnapshot> fileTreeElements;
 
@@ -289,12 +342,12 @@ public class DefaultFileSystemSnapshotter implements FileSystemSnapshotter {
 
         @Override
         public void visitDir(FileVisitDetails dirDetails) {
-            fileTreeElements.add(new DirectoryFileSnapshot(internPath(dirDetails.getFile()), dirDetails.getRelativePath(), false));
+            fileTreeElements.add(directorySnapshot(dirDetails));
         }
 
         @Override
         public void visitFile(FileVisitDetails fileDetails) {
-            fileTreeElements.add(new RegularFileSnapshot(internPath(fileDetails.getFile()), fileDetails.getRelativePath(), false, fileSnapshot(fileDetails)));
+            fileTreeElements.add(regularFileSnapshot(fileDetails));
         }
     }
 }
@@ -27,6 +27,11 @@ import javax.annotation.Nullable;
  */
 @ThreadSafe
 public interface FileSystemMirror {
+    /**
+     * Called before the given location is inspected to produce a snapshot that is added to this mirror.
+     */
+    void beforeSnapshot(String path);
+
     @Nullable
     FileSnapshot getFile(String path);
 
@@ -41,4 +46,14 @@ public interface FileSystemMirror {
     FileTreeSnapshot getDirectoryTree(String path);
 
     void putDirectory(FileTreeSnapshot directory);
+
+    /**
+     * Returns the current invalidation generation, which changes whenever state is invalidated.
+     */
+    long getGeneration();
+
+    /**
+     * Adds the given directory, unless state has been invalidated since the given generation was returned by {@link #getGeneration()}.
+     */
+    void putDirectory(FileTreeSnapshot directory, long generation);
 }
@@ -0,0 +1,255 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state;
+
+import com.google.common.collect.ImmutableList;
+import org.gradle.api.file.RelativePath;
+import org.gradle.internal.file.FileType;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Holds the known state of the file system, organized as a trie with one node per path segment.
+ *
+ * <p>Lookups for a location that is contained in an already snapshotted directory tree are answered from that tree.
+ * Invalidating a location discards the state for the location and all of its descendants, and any state of its ancestors that depends on the location.</p>
+ */
+class FileSystemMirrorTrie {
+    private final Node root = new Node();
+
+    @Nullable
+    public FileSnapshot getFile(String path) {
+        String[] segments = split(path);
+        Node node = root;
+        TreeWithDescendants ancestorTree = null;
+        for (String segment : segments) {
+            TreeWithDescendants tree = node.tree;
+            if (tree != null) {
+                ancestorTree = tree;
+            }
+            node = node.children.get(segment);
+            if (node == null) {
+                break;
+            }
+        }
+        FileSnapshot file = node == null ? null : node.file;
+        if (file != null) {
+            return file;
+        }
+        if (ancestorTree != null) {
+            FileSnapshot descendant = ancestorTree.getDescendant(path);
+            if (descendant != null) {
+                return asRoot(descendant);
+            }
+        }
+        return null;
+    }
+
+    public void putFile(FileSnapshot file) {
+        getOrCreate(file.getPath()).file = file;
+    }
+
+    @Nullable
+    public Snapshot getContent(String path) {
+        Node node = find(path);
+        return node == null ? null : node.content;
+    }
+
+    public void putContent(String path, Snapshot snapshot) {
+        getOrCreate(path).content = snapshot;
+    }
+
+    @Nullable
+    public FileTreeSnapshot getDirectoryTree(String path) {
+        String[] segments = split(path);
+        Node node = root;
+        TreeWithDescendants ancestorTree = null;
+        int ancestorDepth = 0;
+        for (int i = 0; i < segments.length; i++) {
+            TreeWithDescendants ancestor = node.tree;
+            if (ancestor != null) {
+                ancestorTree = ancestor;
+                ancestorDepth = i;
+            }
+            node = node.children.get(segments[i]);
+            if (node == null) {
+                break;
+            }
+        }
+        TreeWithDescendants tree = node == null ? null : node.tree;
+        if (tree != null) {
+            return tree.snapshot;
+        }
+        if (ancestorTree != null) {
+            FileSnapshot descendant = ancestorTree.getDescendant(path);
+            if (descendant != null && descendant.getType() == FileType.Directory) {
+                FileTreeSnapshot subtree = ancestorTree.subtree(path, segments.length - ancestorDepth);
+                putDirectory(subtree);
+                return subtree;
+            }
+        }
+        return null;
+    }
+
+    public void putDirectory(FileTreeSnapshot directory) {
+        getOrCreate(directory.getPath()).tree = new TreeWithDescendants(directory);
+    }
+
+    /**
+     * Discards the state of the given location and all of its descendants, and the directory trees and content snapshots of its ancestors.
+     */
+    public void invalidate(String path) {
+        String[] segments = split(path);
+        Node node = root;
+        for (int i = 0; i < segments.length - 1; i++) {
+            node.invalidateAncestor();
+            node = node.children.get(segments[i]);
+            if (node == null) {
+                return;
+            }
+        }
+        node.invalidateAncestor();
+        node.children.remove(segments[segments.length - 1]);
+    }
+
+    public void clear() {
+        root.children.clear();
+        root.invalidateAncestor();
+    }
+
+    @Nullable
+    private Node find(String path) {
+        Node node = root;
+        for (String segment : split(path)) {
+            node = node.children.get(segment);
+            if (node == null) {
+                return null;
+            }
+        }
+        return node;
+    }
+
+    private Node getOrCreate(String path) {
+        Node node = root;
+        for (String segment : split(path)) {
+            Node child = node.children.get(segment);
+            if (child == null) {
+                Node newChild = new Node();
+                child = node.children.putIfAbsent(segment, newChild);
+                if (child == null) {
+                    child = newChild;
+                }
+            }
+            node = child;
+        }
+        return node;
+    }
+
+    private static String[] split(String path) {
+        int length = path.length();
+        if (length > 1 && path.charAt(length - 1) == File.separatorChar) {
+            path = path.substring(0, length - 1);
+        }
+        return path.split(File.separator.equals("\\") ? "\\\\" : File.separator, -1);
+    }
+
+    /**
+     * Converts a descendant of a directory tree into a snapshot of the file as root.
+     */
+    private static FileSnapshot asRoot(FileSnapshot descendant) {
+        switch (descendant.getType()) {
+            case RegularFile:
+                return new RegularFileSnapshot(descendant.getPath(), new RelativePath(true, descendant.getName()), true, descendant.getContent());
+            case Directory:
+                return new DirectoryFileSnapshot(descendant.getPath(), new RelativePath(false, descendant.getName()), true);
+            default:
+                throw new IllegalArgumentException("Unexpected file type in directory tree: " + descendant.getType());
+        }
+    }
+
+    private static class Node {
+        final ConcurrentMap<String, Node> children = new ConcurrentHashMap<String, Node>(4);
+        volatile FileSnapshot file;
+        volatile TreeWithDescendants tree;
+        volatile Snapshot content;
+
+        void invalidateAncestor() {
+            // The type of an ancestor can change when a descendant is created, so discard everything
+            file = null;
+            tree = null;
+            content = null;
+        }
+    }
+
+    /**
+     * A directory tree snapshot, with an index of its descendants built on first use.
+     */
+    private static class TreeWithDescendants {
+        final FileTreeSnapshot snapshot;
+        private volatile Map<String, FileSnapshot> descendantsByPath;
+
+        TreeWithDescendants(FileTreeSnapshot snapshot) {
+            this.snapshot = snapshot;
+        }
+
+        @Nullable
+        FileSnapshot getDescendant(String path) {
+            Map<String, FileSnapshot> descendants = descendantsByPath;
+            if (descendants == null) {
+                descendants = new HashMap<String, FileSnapshot>(snapshot.getDescendants().size());
+                for (FileSnapshot descendant : snapshot.getDescendants()) {
+                    descendants.put(descendant.getPath(), descendant);
+                }
+                descendantsByPath = descendants;
+            }
+            return descendants.get(path);
+        }
+
+        /**
+         * Creates a snapshot of the tree rooted at the given descendant directory, which is the given number of segments below the root of this tree.
+         */
+        FileTreeSnapshot subtree(String path, int depth) {
+            String prefix = path + File.separatorChar;
+            ImmutableList.Builder<FileSnapshot> builder = ImmutableList.builder();
+            for (FileSnapshot descendant : snapshot.getDescendants()) {
+                if (descendant.getPath().startsWith(prefix)) {
+                    builder.add(relativize(descendant, depth));
+                }
+            }
+            return new DirectoryTreeDetails(path, builder.build());
+        }
+
+        private static FileSnapshot relativize(FileSnapshot descendant, int depth) {
+            String[] segments = descendant.getRelativePath().getSegments();
+            RelativePath relativePath = new RelativePath(descendant.getType() != FileType.Directory, Arrays.copyOfRange(segments, depth, segments.length));
+            switch (descendant.getType()) {
+                case RegularFile:
+                    return new RegularFileSnapshot(descendant.getPath(), relativePath, false, descendant.getContent());
+                case Directory:
+                    return new DirectoryFileSnapshot(descendant.getPath(), relativePath, false);
+                default:
+                    throw new IllegalArgumentException("Unexpected file type in directory tree: " + descendant.getType());
+            }
+        }
+    }
+}
@@ -52,6 +52,12 @@ public interface FileSystemSnapshotter {
      */
     FileTreeSnapshot snapshotDirectoryTree(File dir);
 
+    /**
+     * Snapshots the given directory ahead of its use, so that {@link #snapshotDirectoryTree(DirectoryFileTree)} can reuse the snapshot later. The snapshot is
+     * not kept when any file system state is invalidated while the directory is walked, as it may then be out of date.
+     */
+    void preSnapshotDirectoryTree(File dir);
+
     /**
      * Returns the current snapshot of the contents and meta-data of the given directory tree.
      */
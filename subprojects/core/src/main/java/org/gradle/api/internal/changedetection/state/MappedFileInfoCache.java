@@ -0,0 +1,290 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.api.internal.changedetection.state;
+
+import org.gradle.api.Transformer;
+import org.gradle.api.internal.changedetection.state.CachingFileHasher.FileInfo;
+import org.gradle.cache.PersistentIndexedCache;
+import org.gradle.internal.hash.HashCode;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A cache of file hashes, stored in a fixed size open-addressing hash table in a memory-mapped file.
+ *
+ * <p>Reads and writes do not acquire any locks, so that the table can be shared by all threads of this process and by other processes.
+ * Each record carries a checksum of its content, and a record that fails the check, for example because it is being written concurrently, is treated as absent.
+ * When there is no free slot for a key, an existing record is overwritten. As the cached values are always validated against the length and timestamp of the file,
+ * losing a record only costs hashing the file again.</p>
+ *
+ * <p>The table has some limitations, which is why it is only used when {@link CrossBuildFileHashCache#MAPPED_FILE_HASHES_PROPERTY} is set:</p>
+ * <ul>
+ *     <li>The file has a fixed size of 32 MB for the default capacity, in each directory that holds file hashes.</li>
+ *     <li>Records are written with plain puts to the mapped buffer, with no compare-and-swap and no ordering guarantee between the fields of a record.
+ *     A reader that sees the fields of a record in an inconsistent state relies on the checksum to reject it.</li>
+ *     <li>The JDK provides no way to release a mapping, so {@link #close()} only writes the table and closes the file. The mapping is released when the buffer is
+ *     garbage collected. Until then, Windows keeps the file locked, so that it and its directory cannot be deleted.</li>
+ * </ul>
+ */
+class MappedFileInfoCache implements PersistentIndexedCache<String, FileInfo>, Closeable {
+    private static final int MAGIC = 0x47464854;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int RECORD_SIZE = 64;
+    private static final int HASH_SIZE = 16;
+    private static final int MAX_PROBES = 8;
+
+    // Record layout
+    private static final int KEY_HIGH = 0;
+    private static final int KEY_LOW = 8;
+    private static final int LENGTH = 16;
+    private static final int TIMESTAMP = 24;
+    private static final int HASH = 32;
+    private static final int CHECKSUM = 48;
+
+    private final File file;
+    private final RandomAccessFile randomAccessFile;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+
+    private MappedFileInfoCache(File file, RandomAccessFile randomAccessFile, MappedByteBuffer buffer, int capacity) {
+        this.file = file;
+        this.randomAccessFile = randomAccessFile;
+        this.buffer = buffer;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Opens the table in the given file, creating it if required.
+     *
+     * @param capacity the number of records in the table. Must be a power of 2.
+     * @throws IOException when the file cannot be mapped or contains a table with a different layout.
+     */
+    public static MappedFileInfoCache open(File file, int capacity) throws IOException {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of 2.");
+        }
+        long size = HEADER_SIZE + (long) capacity * RECORD_SIZE;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Capacity " + capacity + " is too large.");
+        }
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            // Never shrink the file, as other processes may have it mapped
+            if (randomAccessFile.length() < size) {
+                randomAccessFile.setLength(size);
+            }
+            MappedByteBuffer buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            int magic = buffer.getInt(0);
+            if (magic == 0) {
+                // A new file, or one that is being initialized by another process using the same layout
+                buffer.putInt(4, VERSION);
+                buffer.putInt(8, capacity);
+                buffer.putInt(0, MAGIC);
+            } else if (magic != MAGIC || buffer.getInt(4) != VERSION || buffer.getInt(8) != capacity) {
+                throw new IOException("File " + file + " does not contain a compatible file hash table.");
+            }
+            return new MappedFileInfoCache(file, randomAccessFile, buffer, capacity);
+        } catch (IOException e) {
+            randomAccessFile.close();
+            throw e;
+        } catch (RuntimeException e) {
+            randomAccessFile.close();
+            throw e;
+        }
+    }
+
+    @Nullable
+    @Override
+    public FileInfo get(String key) {
+        long keyHigh = keyHigh(key);
+        long keyLow = keyLow(key);
+        int home = homeSlot(keyHigh);
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            int offset = offsetOf(home + probe);
+            long slotHigh = buffer.getLong(offset + KEY_HIGH);
+            long slotLow = buffer.getLong(offset + KEY_LOW);
+            if (slotHigh == 0 && slotLow == 0) {
+                return null;
+            }
+            if (slotHigh == keyHigh && slotLow == keyLow) {
+                return read(offset, keyHigh, keyLow);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public FileInfo get(String key, Transformer<? extends FileInfo, ? super String> producer) {
+        FileInfo value = get(key);
+        if (value == null) {
+            value = producer.transform(key);
+            put(key, value);
+        }
+        return value;
+    }
+
+    @Override
+    public void put(String key, FileInfo value) {
+        HashCode hash = value.getHash();
+        if (hash.length() != HASH_SIZE) {
+            // Only fixed size records are supported
+            remove(key);
+            return;
+        }
+        long keyHigh = keyHigh(key);
+        long keyLow = keyLow(key);
+        write(findSlotForWrite(keyHigh, keyLow), keyHigh, keyLow, value.getLength(), value.getTimestamp(), hash.toByteArray());
+    }
+
+    @Override
+    public void remove(String key) {
+        long keyHigh = keyHigh(key);
+        long keyLow = keyLow(key);
+        int home = homeSlot(keyHigh);
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            int offset = offsetOf(home + probe);
+            if (buffer.getLong(offset + KEY_HIGH) == keyHigh && buffer.getLong(offset + KEY_LOW) == keyLow) {
+                // Keep the key so that the probe sequence for other keys is not broken, but invalidate the record
+                buffer.putLong(offset + CHECKSUM, ~buffer.getLong(offset + CHECKSUM));
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffer.force();
+        randomAccessFile.close();
+    }
+
+    @Override
+    public String toString() {
+        return "memory-mapped file hash cache (" + file + ")";
+    }
+
+    private int findSlotForWrite(long keyHigh, long keyLow) {
+        int home = homeSlot(keyHigh);
+        int free = -1;
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            int offset = offsetOf(home + probe);
+            long slotHigh = buffer.getLong(offset + KEY_HIGH);
+            long slotLow = buffer.getLong(offset + KEY_LOW);
+            if (slotHigh == keyHigh && slotLow == keyLow) {
+                return offset;
+            }
+            if (slotHigh == 0 && slotLow == 0) {
+                return free >= 0 ? free : offset;
+            }
+            if (free < 0 && !isValid(offset, slotHigh, slotLow)) {
+                free = offset;
+            }
+        }
+        // No free slot, so evict a record
+        return free >= 0 ? free : offsetOf(home + (int) (keyLow & (MAX_PROBES - 1)));
+    }
+
+    @Nullable
+    private FileInfo read(int offset, long keyHigh, long keyLow) {
+        long length = buffer.getLong(offset + LENGTH);
+        long timestamp = buffer.getLong(offset + TIMESTAMP);
+        byte[] hash = new byte[HASH_SIZE];
+        for (int i = 0; i < HASH_SIZE; i++) {
+            hash[i] = buffer.get(offset + HASH + i);
+        }
+        long checksum = buffer.getLong(offset + CHECKSUM);
+        if (checksum != checksum(keyHigh, keyLow, length, timestamp, hash)) {
+            return null;
+        }
+        return new FileInfo(HashCode.fromBytes(hash), length, timestamp);
+    }
+
+    private boolean isValid(int offset, long keyHigh, long keyLow) {
+        return read(offset, keyHigh, keyLow) != null;
+    }
+
+    private void write(int offset, long keyHigh, long keyLow, long length, long timestamp, byte[] hash) {
+        // Invalidate the record first, so that readers do not see a mix of old and new values
+        buffer.putLong(offset + CHECKSUM, 0);
+        buffer.putLong(offset + KEY_HIGH, keyHigh);
+        buffer.putLong(offset + KEY_LOW, keyLow);
+        buffer.putLong(offset + LENGTH, length);
+        buffer.putLong(offset + TIMESTAMP, timestamp);
+        for (int i = 0; i < HASH_SIZE; i++) {
+            buffer.put(offset + HASH + i, hash[i]);
+        }
+        buffer.putLong(offset + CHECKSUM, checksum(keyHigh, keyLow, length, timestamp, hash));
+    }
+
+    private int homeSlot(long keyHigh) {
+        return (int) (keyHigh & (capacity - 1));
+    }
+
+    private int offsetOf(int slot) {
+        return HEADER_SIZE + (slot & (capacity - 1)) * RECORD_SIZE;
+    }
+
+    private static long keyHigh(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash = (hash ^ key.charAt(i)) * 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    private static long keyLow(String key) {
+        long hash = key.length();
+        for (int i = 0; i < key.length(); i++) {
+            hash = Long.rotateLeft(hash ^ key.charAt(i), 23) * 0x9e3779b97f4a7c15L;
+        }
+        // Zero is used to mark free slots
+        return mix(hash) | 1;
+    }
+
+    private static long checksum(long keyHigh, long keyLow, long length, long timestamp, byte[] hash) {
+        long checksum = combine(combine(combine(0x27d4eb2f165667c5L, keyHigh), keyLow), length);
+        checksum = combine(checksum, timestamp);
+        for (int i = 0; i < HASH_SIZE; i += 8) {
+            long value = 0;
+            for (int j = 0; j < 8; j++) {
+                value = (value << 8) | (hash[i + j] & 0xff);
+            }
+            checksum = combine(checksum, value);
+        }
+        // Zero is used to mark records that are being written
+        return mix(checksum) | 1;
+    }
+
+    private static long combine(long checksum, long value) {
+        return Long.rotateLeft(checksum ^ (value * 0xc2b2ae3d27d4eb4fL), 31) * 0x9e3779b97f4a7c15L;
+    }
+
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
@@ -0,0 +1,315 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state;
+
+import org.gradle.api.GradleException;
+import org.gradle.api.file.FileTreeElement;
+import org.gradle.api.file.FileVisitDetails;
+import org.gradle.api.file.RelativePath;
+import org.gradle.api.internal.file.DefaultFileVisitDetails;
+import org.gradle.api.internal.file.UnauthorizedFileVisitDetails;
+import org.gradle.api.specs.Spec;
+import org.gradle.concurrent.ParallelismConfiguration;
+import org.gradle.internal.concurrent.ParallelismConfigurationListener;
+import org.gradle.internal.concurrent.ParallelismConfigurationManager;
+import org.gradle.internal.nativeintegration.filesystem.FileSystem;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Walks a directory tree using a fork-join pool, processing each subdirectory and each batch of regular files as a separate task.
+ *
+ * <p>The results are assembled in the same order in which {@link org.gradle.api.internal.file.collections.jdk7.Jdk7DirectoryWalker} visits the elements of the tree,
+ * that is depth-first, with the children of each directory in the order they are listed by the file system. Symbolic links are followed.
+ * Elements are filtered by a spec in the same way, so that excluded directories are not descended into.</p>
+ *
+ * <p>When created for a {@link ParallelismConfigurationManager}, the walker follows changes to the maximum number of workers until it is closed.</p>
+ */
+public class ParallelDirectoryWalker implements ParallelismConfigurationListener, Closeable {
+    private static final int FILES_PER_TASK = 16;
+
+    private final FileSystem fileSystem;
+    private final ParallelismConfigurationManager parallelismConfigurationManager;
+    private final Object lock = new Object();
+    private int maxWorkerCount;
+    private ForkJoinPool pool;
+    private boolean stopped;
+
+    public ParallelDirectoryWalker(FileSystem fileSystem, int maxWorkerCount) {
+        this(fileSystem, maxWorkerCount, null);
+    }
+
+    public ParallelDirectoryWalker(FileSystem fileSystem, ParallelismConfigurationManager parallelismConfigurationManager) {
+        this(fileSystem, parallelismConfigurationManager.getParallelismConfiguration().getMaxWorkerCount(), parallelismConfigurationManager);
+        parallelismConfigurationManager.addListener(this);
+    }
+
+    private ParallelDirectoryWalker(FileSystem fileSystem, int maxWorkerCount, @Nullable ParallelismConfigurationManager parallelismConfigurationManager) {
+        this.fileSystem = fileSystem;
+        this.maxWorkerCount = maxWorkerCount;
+        this.parallelismConfigurationManager = parallelismConfigurationManager;
+    }
+
+    /**
+     * Returns true when walking a tree with this walker uses more than one thread.
+     */
+    public boolean isParallel() {
+        synchronized (lock) {
+            return maxWorkerCount > 1 && !stopped;
+        }
+    }
+
+    /**
+     * Visits the descendants of the given directory that satisfy the given spec, creating a snapshot for each of them. The snapshots of regular files are created concurrently.
+     */
+    public <T> List<T> walk(File rootDir, Spec<? super FileTreeElement> spec, Visitor<T> visitor) {
+        DirectoryTask<T> task = new DirectoryTask<T>(rootDir, RelativePath.EMPTY_ROOT, spec, visitor, new AtomicBoolean(), Collections.<Object>emptyList());
+        ForkJoinPool pool = getPool();
+        return pool == null ? task.invoke() : pool.invoke(task);
+    }
+
+    private ForkJoinPool getPool() {
+        synchronized (lock) {
+            if (pool == null && maxWorkerCount > 1 && !stopped) {
+                pool = new ForkJoinPool(maxWorkerCount);
+            }
+            return pool;
+        }
+    }
+
+    @Override
+    public void onParallelismConfigurationChange(ParallelismConfiguration parallelismConfiguration) {
+        ForkJoinPool oldPool;
+        synchronized (lock) {
+            if (parallelismConfiguration.getMaxWorkerCount() == maxWorkerCount) {
+                return;
+            }
+            maxWorkerCount = parallelismConfiguration.getMaxWorkerCount();
+            oldPool = pool;
+            pool = null;
+        }
+        if (oldPool != null) {
+            // Walks that are in progress complete using the old pool
+            oldPool.shutdown();
+        }
+    }
+
+    /**
+     * Stops following the parallelism configuration and shuts down the threads of this walker. Walks that are in progress complete, and later walks use the calling thread.
+     */
+    @Override
+    public void close() {
+        if (parallelismConfigurationManager != null) {
+            parallelismConfigurationManager.removeListener(this);
+        }
+        ForkJoinPool oldPool;
+        synchronized (lock) {
+            stopped = true;
+            oldPool = pool;
+            pool = null;
+        }
+        if (oldPool != null) {
+            oldPool.shutdown();
+        }
+    }
+
+    /**
+     * Creates the result for each element of a directory tree. Called concurrently from multiple threads.
+     */
+    public interface Visitor<T> {
+        T visitDir(FileVisitDetails dirDetails);
+
+        T visitFile(FileVisitDetails fileDetails);
+    }
+
+    private class DirectoryTask<T> extends RecursiveTask<List<T>> {
+        private final File dir;
+        private final RelativePath path;
+        private final Spec<? super FileTreeElement> spec;
+        private final Visitor<T> visitor;
+        private final AtomicBoolean stopFlag;
+        private final List<Object> ancestorKeys;
+
+        DirectoryTask(File dir, RelativePath path, Spec<? super FileTreeElement> spec, Visitor<T> visitor, AtomicBoolean stopFlag, List<Object> ancestorKeys) {
+            this.dir = dir;
+            this.path = path;
+            this.spec = spec;
+            this.visitor = visitor;
+            this.stopFlag = stopFlag;
+            this.ancestorKeys = ancestorKeys;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected List<T> compute() {
+            List<Object> keys = withKeyOf(dir, ancestorKeys);
+            // Each element is either a result, or a task that produces a list of results
+            List<Object> elements = new ArrayList<Object>();
+            List<ForkJoinTask<List<T>>> tasks = new ArrayList<ForkJoinTask<List<T>>>();
+            FilesTask<T> files = null;
+            for (Path child : listChildren(dir)) {
+                BasicFileAttributes attrs = readAttributes(child);
+                if (attrs == null) {
+                    // Could not be read, but is excluded
+                    continue;
+                }
+                if (attrs.isDirectory()) {
+                    if (attrs.fileKey() != null && keys.contains(attrs.fileKey())) {
+                        // A symbolic link that points to one of its ancestors
+                        continue;
+                    }
+                    FileVisitDetails details = details(child.toFile(), attrs, true);
+                    if (!spec.isSatisfiedBy(details)) {
+                        continue;
+                    }
+                    files = null;
+                    elements.add(visitor.visitDir(details));
+                    DirectoryTask<T> subdir = new DirectoryTask<T>(details.getFile(), details.getRelativePath(), spec, visitor, stopFlag, keys);
+                    elements.add(subdir);
+                    tasks.add(subdir);
+                } else {
+                    FileVisitDetails details = details(child.toFile(), attrs, false);
+                    if (!spec.isSatisfiedBy(details)) {
+                        continue;
+                    }
+                    if (files == null || files.isFull()) {
+                        files = new FilesTask<T>(visitor);
+                        elements.add(files);
+                        tasks.add(files);
+                    }
+                    files.add(details);
+                }
+            }
+            if (inForkJoinPool()) {
+                invokeAll(tasks);
+            } else {
+                for (ForkJoinTask<List<T>> task : tasks) {
+                    task.invoke();
+                }
+            }
+
+            List<T> results = new ArrayList<T>(elements.size());
+            for (Object element : elements) {
+                if (element instanceof ForkJoinTask) {
+                    results.addAll(((ForkJoinTask<List<T>>) element).join());
+                } else {
+                    results.add((T) element);
+                }
+            }
+            return results;
+        }
+
+        private List<Path> listChildren(File dir) {
+            List<Path> children = new ArrayList<Path>();
+            try {
+                DirectoryStream<Path> stream = Files.newDirectoryStream(dir.toPath());
+                try {
+                    for (Path child : stream) {
+                        children.add(child);
+                    }
+                } finally {
+                    stream.close();
+                }
+            } catch (IOException e) {
+                throw new GradleException(String.format("Could not list contents of directory '%s'.", dir), e);
+            }
+            return children;
+        }
+
+        /**
+         * Returns the attributes of the given file, or null when they cannot be read and the file is excluded by the spec.
+         */
+        @Nullable
+        private BasicFileAttributes readAttributes(Path file) {
+            try {
+                return Files.readAttributes(file, BasicFileAttributes.class);
+            } catch (IOException e) {
+                if (!spec.isSatisfiedBy(new UnauthorizedFileVisitDetails(file.toFile(), path.append(true, file.toFile().getName())))) {
+                    return null;
+                }
+                if (Files.isSymbolicLink(file)) {
+                    throw new GradleException(String.format("Could not list contents of '%s'. Couldn't follow symbolic link.", file), e);
+                }
+                throw new GradleException(String.format("Could not read path '%s'.", file), e);
+            }
+        }
+
+        private FileVisitDetails details(File file, BasicFileAttributes attrs, boolean isDirectory) {
+            RelativePath childPath = path.append(!isDirectory, file.getName());
+            return new DefaultFileVisitDetails(file, childPath, stopFlag, fileSystem, fileSystem, isDirectory, attrs.lastModifiedTime().toMillis(), attrs.size());
+        }
+    }
+
+    /**
+     * Returns the file keys of the given directory and its ancestors, used to detect symbolic link cycles.
+     */
+    private static List<Object> withKeyOf(File dir, List<Object> ancestorKeys) {
+        Object key;
+        try {
+            key = Files.readAttributes(dir.toPath(), BasicFileAttributes.class).fileKey();
+        } catch (IOException e) {
+            throw new GradleException(String.format("Could not read directory path '%s'.", dir), e);
+        }
+        if (key == null) {
+            return ancestorKeys;
+        }
+        List<Object> keys = new ArrayList<Object>(ancestorKeys.size() + 1);
+        keys.addAll(ancestorKeys);
+        keys.add(key);
+        return keys;
+    }
+
+    private static class FilesTask<T> extends RecursiveTask<List<T>> {
+        private final Visitor<T> visitor;
+        private final List<FileVisitDetails> files = new ArrayList<FileVisitDetails>(FILES_PER_TASK);
+
+        FilesTask(Visitor<T> visitor) {
+            this.visitor = visitor;
+        }
+
+        void add(FileVisitDetails fileDetails) {
+            files.add(fileDetails);
+        }
+
+        boolean isFull() {
+            return files.size() == FILES_PER_TASK;
+        }
+
+        @Override
+        protected List<T> compute() {
+            List<T> results = new ArrayList<T>(files.size());
+            for (FileVisitDetails file : files) {
+                results.add(visitor.visitFile(file));
+            }
+            return results;
+        }
+    }
+}
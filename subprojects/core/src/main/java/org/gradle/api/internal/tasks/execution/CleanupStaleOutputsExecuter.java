@@ -33,7 +33,9 @@ import org.gradle.internal.operations.BuildOperationDescriptor;
 import org.gradle.util.GFileUtils;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 public class CleanupStaleOutputsExecuter implements TaskExecuter {
@@ -68,7 +70,11 @@ public class CleanupStaleOutputsExecuter implements TaskExecuter {
             }
         }
         if (!filesToDelete.isEmpty()) {
-            taskOutputChangesListener.beforeTaskOutputChanged();
+            List<String> pathsToDelete = new ArrayList<String>(filesToDelete.size());
+            for (File file : filesToDelete) {
+                pathsToDelete.add(file.getAbsolutePath());
+            }
+            taskOutputChangesListener.beforeTaskOutputChanged(pathsToDelete);
             buildOperationExecutor.run(new RunnableBuildOperation() {
                 @Override
                 public void run(BuildOperationContext context) {
@@ -18,6 +18,7 @@ package org.gradle.api.internal.tasks.execution;
 import com.google.common.collect.Lists;
 import org.gradle.api.GradleException;
 import org.gradle.api.execution.TaskActionListener;
+import org.gradle.api.file.FileCollection;
 import org.gradle.api.internal.TaskInternal;
 import org.gradle.api.internal.tasks.ContextAwareTaskAction;
 import org.gradle.api.internal.tasks.TaskExecuter;
@@ -41,6 +42,7 @@ import org.gradle.internal.operations.BuildOperationRef;
 import org.gradle.internal.scopeids.id.BuildInvocationScopeId;
 import org.gradle.internal.work.AsyncWorkTracker;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -66,7 +68,13 @@ public class ExecuteActionsTaskExecuter implements TaskExecuter {
     public void execute(TaskInternal task, TaskStateInternal state, TaskExecutionContext context) {
         listener.beforeActions(task);
         if (task.hasTaskActions()) {
-            outputsGenerationListener.beforeTaskOutputChanged();
+            TaskProperties taskProperties = context.getTaskProperties();
+            if (taskProperties.hasDeclaredOutputs()) {
+                // Only the declared locations are expected to change
+                outputsGenerationListener.beforeTaskOutputChanged(absolutePaths(taskProperties.getOutputFiles(), taskProperties.getLocalStateFiles(), taskProperties.getDestroyableFiles()));
+            } else {
+                outputsGenerationListener.beforeTaskOutputChanged();
+            }
         }
         state.setExecuting(true);
         try {
@@ -157,6 +165,16 @@ public class ExecuteActionsTaskExecuter implements TaskExecuter {
         });
     }
 
+    private static List<String> absolutePaths(FileCollection... fileCollections) {
+        List<String> paths = new ArrayList<String>();
+        for (FileCollection files : fileCollections) {
+            for (File file : files) {
+                paths.add(file.getAbsolutePath());
+            }
+        }
+        return paths;
+    }
+
     @Contextual
     private static class MultipleTaskActionFailures extends DefaultMultiCauseException {
         public MultipleTaskActionFailures(String message, Throwable... causes) {
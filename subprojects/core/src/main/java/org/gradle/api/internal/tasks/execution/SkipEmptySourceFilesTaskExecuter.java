@@ -33,6 +33,8 @@ import org.gradle.internal.scopeids.id.BuildInvocationScopeId;
 import org.gradle.util.GFileUtils;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -69,7 +71,11 @@ public class SkipEmptySourceFilesTaskExecuter implements TaskExecuter {
                 if (!cleanupDirectories) {
                     LOGGER.info("No leftover directories for {} will be deleted since overlapping outputs were detected.", task);
                 }
-                taskOutputChangesListener.beforeTaskOutputChanged();
+                List<String> outputPaths = new ArrayList<String>(outputFiles.size());
+                for (File file : outputFiles) {
+                    outputPaths.add(file.getAbsolutePath());
+                }
+                taskOutputChangesListener.beforeTaskOutputChanged(outputPaths);
                 boolean deletedFiles = false;
                 boolean debugEnabled = LOGGER.isDebugEnabled();
 
@@ -22,4 +22,11 @@ public interface TaskOutputChangesListener {
      * This is for example just before the task actions are executed or the outputs are loaded from the cache.
      */
     void beforeTaskOutputChanged();
+
+    /**
+     * Invoked when the outputs for a task are about to change, and the changes are confined to the given locations and their descendants.
+     *
+     * @param affectedOutputPaths the absolute paths of the locations that are about to change.
+     */
+    void beforeTaskOutputChanged(Iterable<String> affectedOutputPaths);
 }
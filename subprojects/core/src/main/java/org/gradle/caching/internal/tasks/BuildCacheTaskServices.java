@@ -16,6 +16,8 @@
 
 package org.gradle.caching.internal.tasks;
 
+import org.gradle.BuildAdapter;
+import org.gradle.BuildResult;
 import org.gradle.StartParameter;
 import org.gradle.api.NonNullApi;
 import org.gradle.api.internal.GradleInternal;
@@ -28,10 +30,12 @@ import org.gradle.caching.internal.controller.BuildCacheController;
 import org.gradle.caching.internal.controller.BuildCacheControllerFactory;
 import org.gradle.caching.internal.controller.BuildCacheControllerFactory.BuildCacheMode;
 import org.gradle.caching.internal.controller.BuildCacheControllerFactory.RemoteAccessMode;
+import org.gradle.caching.internal.controller.DefaultBuildCacheController;
 import org.gradle.caching.internal.controller.RootBuildCacheControllerRef;
 import org.gradle.caching.internal.tasks.origin.TaskOutputOriginFactory;
 import org.gradle.initialization.buildsrc.BuildSourceBuilder;
 import org.gradle.internal.SystemProperties;
+import org.gradle.internal.concurrent.ExecutorFactory;
 import org.gradle.internal.hash.StreamHasher;
 import org.gradle.internal.nativeplatform.filesystem.FileSystem;
 import org.gradle.internal.operations.BuildOperationExecutor;
@@ -55,8 +59,18 @@ public class BuildCacheTaskServices {
 
     private static final Path ROOT_BUILD_SRC_PATH = Path.path(":" + BuildSourceBuilder.BUILD_SRC);
 
-    TaskOutputPacker createTaskResultPacker(FileSystem fileSystem, StreamHasher fileHasher, StringInterner stringInterner) {
-        return new GZipTaskOutputPacker(new TarTaskOutputPacker(fileSystem, fileHasher, stringInterner));
+    TaskOutputPacker createTaskResultPacker(FileSystem fileSystem, StreamHasher fileHasher, StringInterner stringInterner, ExecutorFactory executorFactory) {
+        TaskOutputPacker tarPacker = new GZipTaskOutputPacker(new TarTaskOutputPacker(fileSystem, fileHasher, stringInterner));
+        if (!IndexedTaskOutputPacker.isEnabled()) {
+            return tarPacker;
+        }
+        return new IndexedTaskOutputPacker(
+            tarPacker,
+            fileSystem,
+            fileHasher,
+            stringInterner,
+            executorFactory.create("Build cache entry unpacking", Runtime.getRuntime().availableProcessors())
+        );
     }
 
     TaskOutputOriginFactory createTaskOutputOriginFactory(
@@ -84,10 +98,11 @@ public class BuildCacheTaskServices {
         BuildOperationExecutor buildOperationExecutor,
         InstantiatorFactory instantiatorFactory,
         GradleInternal gradle,
-        RootBuildCacheControllerRef rootControllerRef
+        RootBuildCacheControllerRef rootControllerRef,
+        ExecutorFactory executorFactory
     ) {
         if (isRoot(gradle) || isRootBuildSrc(gradle) || isGradleBuildTaskRoot(rootControllerRef)) {
-            return doCreateBuildCacheController(serviceRegistry, buildCacheConfiguration, buildOperationExecutor, instantiatorFactory, gradle);
+            return doCreateBuildCacheController(serviceRegistry, buildCacheConfiguration, buildOperationExecutor, instantiatorFactory, gradle, executorFactory);
         } else {
             // must be an included build
             return rootControllerRef.getForNonRootBuild();
@@ -111,7 +126,7 @@ public class BuildCacheTaskServices {
         return gradle.getParent() == null;
     }
 
-    private BuildCacheController doCreateBuildCacheController(ServiceRegistry serviceRegistry, BuildCacheConfigurationInternal buildCacheConfiguration, BuildOperationExecutor buildOperationExecutor, InstantiatorFactory instantiatorFactory, GradleInternal gradle) {
+    private BuildCacheController doCreateBuildCacheController(ServiceRegistry serviceRegistry, BuildCacheConfigurationInternal buildCacheConfiguration, BuildOperationExecutor buildOperationExecutor, InstantiatorFactory instantiatorFactory, GradleInternal gradle, ExecutorFactory executorFactory) {
         StartParameter startParameter = gradle.getStartParameter();
         Path buildIdentityPath = gradle.getIdentityPath();
         File gradleUserHomeDir = gradle.getGradleUserHomeDir();
@@ -119,7 +134,7 @@ public class BuildCacheTaskServices {
         RemoteAccessMode remoteAccessMode = startParameter.isOffline() ? OFFLINE : ONLINE;
         boolean logStackTraces = startParameter.getShowStacktrace() != ShowStacktrace.INTERNAL_EXCEPTIONS;
 
-        return BuildCacheControllerFactory.create(
+        BuildCacheController controller = BuildCacheControllerFactory.create(
             buildOperationExecutor,
             buildIdentityPath,
             gradleUserHomeDir,
@@ -127,8 +142,26 @@ public class BuildCacheTaskServices {
             buildCacheMode,
             remoteAccessMode,
             logStackTraces,
-            instantiatorFactory.inject(serviceRegistry)
+            instantiatorFactory.inject(serviceRegistry),
+            executorFactory,
+            gradle.getBuildOperation()
         );
+        if (controller instanceof DefaultBuildCacheController) {
+            finishPendingStoresWhenBuildFinishes(gradle, (DefaultBuildCacheController) controller);
+        }
+        return controller;
+    }
+
+    /**
+     * Entries stored in the background belong to the build operation of the build, so they must be stored before that operation finishes rather than when the controller is closed.
+     */
+    private static void finishPendingStoresWhenBuildFinishes(GradleInternal gradle, final DefaultBuildCacheController controller) {
+        gradle.addBuildListener(new BuildAdapter() {
+            @Override
+            public void buildFinished(BuildResult result) {
+                controller.finishPendingStores();
+            }
+        });
     }
 
 }
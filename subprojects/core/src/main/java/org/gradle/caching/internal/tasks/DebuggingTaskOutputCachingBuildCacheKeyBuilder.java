@@ -71,6 +71,12 @@ public class DebuggingTaskOutputCachingBuildCacheKeyBuilder implements TaskOutpu
         delegate.appendOutputPropertyName(propertyName);
     }
 
+    @Override
+    public void appendCacheEntryFormat(int cacheEntryFormat) {
+        log("cacheEntryFormat", cacheEntryFormat);
+        delegate.appendCacheEntryFormat(cacheEntryFormat);
+    }
+
     @Override
     public TaskOutputCachingBuildCacheKey build() {
         return delegate.build();
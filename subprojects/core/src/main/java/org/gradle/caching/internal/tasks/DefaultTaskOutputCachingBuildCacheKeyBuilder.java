@@ -108,6 +108,11 @@ public class DefaultTaskOutputCachingBuildCacheKeyBuilder implements TaskOutputC
         hasher.putString(propertyName);
     }
 
+    @Override
+    public void appendCacheEntryFormat(int cacheEntryFormat) {
+        hasher.putInt(cacheEntryFormat);
+    }
+
     @Override
     public TaskOutputCachingBuildCacheKey build() {
         BuildCacheKeyInputs inputs = new BuildCacheKeyInputs(taskClass, classLoaderHash, actionClassLoaderHashes, actionTypes, inputHashes.build(), inputPropertiesLoadedByUnknownClassLoader.build(), outputPropertyNames.build());
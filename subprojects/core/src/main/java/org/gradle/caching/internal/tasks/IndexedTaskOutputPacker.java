@@ -0,0 +1,706 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.tasks;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.Futures;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.tools.zip.UnixStat;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.RelativePath;
+import org.gradle.api.internal.cache.StringInterner;
+import org.gradle.api.internal.changedetection.state.DirectoryFileSnapshot;
+import org.gradle.api.internal.changedetection.state.FileContentSnapshot;
+import org.gradle.api.internal.changedetection.state.FileHashSnapshot;
+import org.gradle.api.internal.changedetection.state.FileSnapshot;
+import org.gradle.api.internal.changedetection.state.RegularFileSnapshot;
+import org.gradle.api.internal.tasks.OriginTaskExecutionMetadata;
+import org.gradle.api.internal.tasks.OutputType;
+import org.gradle.api.internal.tasks.ResolvedTaskOutputFilePropertySpec;
+import org.gradle.api.internal.tasks.TaskFilePropertySpec;
+import org.gradle.caching.internal.tasks.origin.TaskOutputOriginReader;
+import org.gradle.caching.internal.tasks.origin.TaskOutputOriginWriter;
+import org.gradle.caching.local.internal.DirectoryBuildCacheService;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.concurrent.ManagedExecutor;
+import org.gradle.internal.file.FileType;
+import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.hash.StreamHasher;
+import org.gradle.internal.nativeplatform.filesystem.FileSystem;
+
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import static org.gradle.caching.internal.tasks.TaskOutputPackerUtils.makeDirectory;
+
+/**
+ * Packages task output into a cache entry where each file is compressed on its own, so that the files can be decompressed and written in parallel.
+ *
+ * <p>The entry starts with the origin metadata, followed by a record for the root of each output property and for each file and directory in an output directory.
+ * A record holds the path, type, Unix mode and, for files, the length and content hash of the file. The compressed content of a file follows its record as a
+ * sequence of length-prefixed chunks, so that it can be handed to another thread or skipped without decompressing it.</p>
+ *
+ * <p>When unpacking, files that already exist with the expected content are left in place, and any other files in an output directory are removed.
+ * Entries that were packed by the delegate are unpacked by the delegate.</p>
+ *
+ * <p>As the format of an entry is part of its cache key when this packer is enabled, see {@link #getCacheEntryFormat()}, entries packed by the delegate are only
+ * expected from caches that ignore the key.</p>
+ */
+@SuppressWarnings("Since15")
+public class IndexedTaskOutputPacker implements TaskOutputPacker, Closeable {
+    public static final String ENABLED_PROPERTY = "org.gradle.internal.build-cache.indexed-entries";
+
+    // "GCEI", does not clash with the magic number of a GZIP stream, and tells the local cache which entries are worth chunking
+    private static final int MAGIC = DirectoryBuildCacheService.INDEXED_ENTRY_MAGIC;
+    private static final byte END = 0;
+    private static final byte DIRECTORY = 1;
+    private static final byte FILE = 2;
+    private static final byte MISSING = 3;
+
+    @SuppressWarnings("OctalInteger")
+    private static final int FILE_PERMISSION_MASK = 0777;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Larger files are decompressed while they are read, rather than being buffered for another thread
+    private static final long MAX_PARALLEL_FILE_LENGTH = 1024 * 1024;
+    private static final int MAX_BUFFERED_BYTES = 32 * 1024 * 1024;
+    private static final ThreadLocal<byte[]> COPY_BUFFERS = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[BUFFER_SIZE];
+        }
+    };
+    private static final ThreadLocal<byte[]> CHUNK_BUFFERS = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[BUFFER_SIZE];
+        }
+    };
+
+    private final TaskOutputPacker delegate;
+    private final FileSystem fileSystem;
+    private final StreamHasher streamHasher;
+    private final StringInterner stringInterner;
+    private final ManagedExecutor executor;
+
+    public IndexedTaskOutputPacker(TaskOutputPacker delegate, FileSystem fileSystem, StreamHasher streamHasher, StringInterner stringInterner, ManagedExecutor executor) {
+        this.delegate = delegate;
+        this.fileSystem = fileSystem;
+        this.streamHasher = streamHasher;
+        this.stringInterner = stringInterner;
+        this.executor = executor;
+    }
+
+    /**
+     * Whether task outputs are packed into entries of this format.
+     */
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(ENABLED_PROPERTY);
+    }
+
+    /**
+     * Returns the format of the cache entries that are packed, which is part of the cache key of a task.
+     */
+    public static int getCacheEntryFormat() {
+        return isEnabled() ? INDEXED_CACHE_ENTRY_FORMAT : CACHE_ENTRY_FORMAT;
+    }
+
+    @Override
+    public PackResult pack(SortedSet<ResolvedTaskOutputFilePropertySpec> propertySpecs, Map<String, Map<String, FileContentSnapshot>> outputSnapshots, OutputStream output, TaskOutputOriginWriter writeOrigin) throws IOException {
+        DataOutputStream dataOutput = new DataOutputStream(new BufferedOutputStream(output, BUFFER_SIZE));
+        try {
+            dataOutput.writeInt(MAGIC);
+            dataOutput.writeInt(INDEXED_CACHE_ENTRY_FORMAT);
+            ByteArrayOutputStream metadata = new ByteArrayOutputStream();
+            writeOrigin.execute(metadata);
+            dataOutput.writeInt(metadata.size());
+            metadata.writeTo(dataOutput);
+            long entries = 1;
+            for (ResolvedTaskOutputFilePropertySpec propertySpec : propertySpecs) {
+                String propertyName = propertySpec.getPropertyName();
+                try {
+                    entries += packProperty(propertySpec, outputSnapshots.get(propertyName), dataOutput);
+                } catch (Exception ex) {
+                    throw new GradleException(String.format("Could not pack property '%s': %s", propertyName, ex.getMessage()), ex);
+                }
+            }
+            dataOutput.writeByte(END);
+            dataOutput.flush();
+            return new PackResult(entries);
+        } finally {
+            IOUtils.closeQuietly(dataOutput);
+        }
+    }
+
+    private long packProperty(ResolvedTaskOutputFilePropertySpec propertySpec, Map<String, FileContentSnapshot> outputSnapshots, DataOutputStream output) throws IOException {
+        String propertyName = propertySpec.getPropertyName();
+        File root = propertySpec.getOutputFile();
+        if (root == null) {
+            return 0;
+        }
+        if (outputSnapshots.isEmpty()) {
+            writeRecord(MISSING, propertyName, "", UnixStat.DEFAULT_FILE_PERM, output);
+            return 1;
+        }
+        switch (propertySpec.getOutputType()) {
+            case DIRECTORY:
+                return packDirectoryProperty(propertyName, root, outputSnapshots, output);
+            case FILE:
+                if (!root.isFile()) {
+                    throw new IllegalArgumentException(String.format("Expected '%s' to be a file", root));
+                }
+                packFile(propertyName, "", root, outputSnapshots.get(root.getAbsolutePath()), output);
+                return 1;
+            default:
+                throw new AssertionError();
+        }
+    }
+
+    private long packDirectoryProperty(String propertyName, File directory, Map<String, FileContentSnapshot> outputSnapshots, DataOutputStream output) throws IOException {
+        if (!directory.isDirectory()) {
+            throw new IllegalArgumentException(String.format("Expected '%s' to be a directory", directory));
+        }
+        writeRecord(DIRECTORY, propertyName, "", UnixStat.DEFAULT_DIR_PERM, output);
+        long entries = 1;
+
+        String rootAbsolutePath = directory.getAbsolutePath();
+        Path rootPath = directory.toPath();
+        for (Map.Entry<String, FileContentSnapshot> entry : outputSnapshots.entrySet()) {
+            String absolutePath = entry.getKey();
+            // We've already written the record for the property
+            if (absolutePath.equals(rootAbsolutePath)) {
+                continue;
+            }
+            File file = new File(absolutePath);
+            String relativePath = rootPath.relativize(file.toPath()).toString().replace(File.separatorChar, '/');
+            switch (entry.getValue().getType()) {
+                case RegularFile:
+                    packFile(propertyName, relativePath, file, entry.getValue(), output);
+                    break;
+                case Directory:
+                    writeRecord(DIRECTORY, propertyName, relativePath, fileSystem.getUnixMode(file), output);
+                    break;
+                case Missing:
+                    throw new IllegalStateException("File should not be missing: " + file);
+                default:
+                    throw new AssertionError();
+            }
+            entries++;
+        }
+        return entries;
+    }
+
+    private void packFile(String propertyName, String relativePath, File file, @Nullable FileContentSnapshot snapshot, DataOutputStream output) throws IOException {
+        // The content hash is known from the snapshot taken after the task executed
+        HashCode hash = snapshot != null && snapshot.getType() == FileType.RegularFile ? snapshot.getContentMd5() : hashFile(file);
+        writeRecord(FILE, propertyName, relativePath, fileSystem.getUnixMode(file), output);
+        output.writeLong(file.length());
+        byte[] hashBytes = hash.toByteArray();
+        output.writeByte(hashBytes.length);
+        output.write(hashBytes);
+
+        Deflater deflater = new Deflater();
+        try {
+            ChunkedOutputStream chunkedOutput = new ChunkedOutputStream(output);
+            DeflaterOutputStream deflaterOutput = new DeflaterOutputStream(chunkedOutput, deflater, BUFFER_SIZE);
+            InputStream input = new FileInputStream(file);
+            try {
+                IOUtils.copyLarge(input, deflaterOutput, COPY_BUFFERS.get());
+            } finally {
+                IOUtils.closeQuietly(input);
+            }
+            deflaterOutput.finish();
+            chunkedOutput.finish();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static void writeRecord(byte type, String propertyName, String relativePath, int mode, DataOutputStream output) throws IOException {
+        output.writeByte(type);
+        writeString(propertyName, output);
+        writeString(relativePath, output);
+        output.writeInt(mode);
+    }
+
+    private static void writeString(String value, DataOutputStream output) throws IOException {
+        byte[] bytes = value.getBytes(Charsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    @Override
+    public UnpackResult unpack(SortedSet<ResolvedTaskOutputFilePropertySpec> propertySpecs, InputStream input, TaskOutputOriginReader readOrigin) throws IOException {
+        BufferedInputStream bufferedInput = new BufferedInputStream(input, BUFFER_SIZE);
+        DataInputStream dataInput = new DataInputStream(bufferedInput);
+        bufferedInput.mark(4);
+        int magic;
+        try {
+            magic = dataInput.readInt();
+        } catch (EOFException e) {
+            magic = 0;
+        }
+        if (magic != MAGIC) {
+            bufferedInput.reset();
+            return delegate.unpack(propertySpecs, bufferedInput, readOrigin);
+        }
+        try {
+            int format = dataInput.readInt();
+            if (format != INDEXED_CACHE_ENTRY_FORMAT) {
+                throw new IllegalStateException("Cached result format error, unsupported format version: " + format);
+            }
+            return new Unpacker(propertySpecs, dataInput).unpack(readOrigin);
+        } finally {
+            IOUtils.closeQuietly(dataInput);
+        }
+    }
+
+    private HashCode hashFile(File file) throws IOException {
+        InputStream input = new FileInputStream(file);
+        try {
+            return streamHasher.hash(input);
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.stop();
+    }
+
+    /**
+     * Unpacks a single entry. The records are read on the calling thread, which also creates the directories, and the files are written by the executor.
+     */
+    private class Unpacker {
+        private final Map<String, ResolvedTaskOutputFilePropertySpec> propertySpecsMap;
+        private final DataInputStream input;
+        private final List<String> propertyNames = Lists.newArrayList();
+        private final List<Future<FileSnapshot>> snapshots = Lists.newArrayList();
+        // The paths unpacked into each output directory that existed before unpacking
+        private final Map<File, Set<String>> unpackedPaths = Maps.newLinkedHashMap();
+        private final Semaphore bufferedBytes = new Semaphore(MAX_BUFFERED_BYTES);
+
+        private Unpacker(SortedSet<ResolvedTaskOutputFilePropertySpec> propertySpecs, DataInputStream input) {
+            this.propertySpecsMap = Maps.uniqueIndex(propertySpecs, new Function<TaskFilePropertySpec, String>() {
+                @Override
+                public String apply(TaskFilePropertySpec propertySpec) {
+                    return propertySpec.getPropertyName();
+                }
+            });
+            this.input = input;
+        }
+
+        UnpackResult unpack(TaskOutputOriginReader readOrigin) throws IOException {
+            byte[] metadata = new byte[input.readInt()];
+            input.readFully(metadata);
+            OriginTaskExecutionMetadata originMetadata = readOrigin.execute(new ByteArrayInputStream(metadata));
+
+            long entries = 1;
+            try {
+                byte type;
+                while ((type = input.readByte()) != END) {
+                    entries++;
+                    String propertyName = readString();
+                    String childPath = readString();
+                    int mode = input.readInt();
+                    ResolvedTaskOutputFilePropertySpec propertySpec = propertySpecsMap.get(propertyName);
+                    if (propertySpec == null) {
+                        throw new IllegalStateException(String.format("No output property '%s' registered", propertyName));
+                    }
+                    unpackRecord(type, propertySpec, childPath, mode & FILE_PERMISSION_MASK);
+                }
+            } catch (IOException e) {
+                awaitFilesQuietly();
+                throw e;
+            } catch (RuntimeException e) {
+                awaitFilesQuietly();
+                throw e;
+            }
+
+            ImmutableListMultimap.Builder<String, FileSnapshot> propertyFileSnapshots = ImmutableListMultimap.builder();
+            List<FileSnapshot> fileSnapshots = awaitFiles();
+            for (int i = 0; i < fileSnapshots.size(); i++) {
+                propertyFileSnapshots.put(propertyNames.get(i), fileSnapshots.get(i));
+            }
+            for (Map.Entry<File, Set<String>> entry : unpackedPaths.entrySet()) {
+                removeStaleFiles(entry.getKey(), entry.getValue());
+            }
+            return new UnpackResult(originMetadata, entries, propertyFileSnapshots.build());
+        }
+
+        private void unpackRecord(byte type, ResolvedTaskOutputFilePropertySpec propertySpec, String childPath, int mode) throws IOException {
+            File propertyRoot = propertySpec.getOutputFile();
+            String propertyName = propertySpec.getPropertyName();
+            if (propertyRoot == null) {
+                throw new IllegalStateException("Optional property should have a value: " + propertyName);
+            }
+            boolean root = childPath.isEmpty();
+            OutputType outputType = propertySpec.getOutputType();
+            switch (type) {
+                case MISSING:
+                    if (!root) {
+                        throw new IllegalStateException("Cached result format error, missing output is not a property root: " + childPath);
+                    }
+                    if (!makeDirectory(propertyRoot.getParentFile())) {
+                        // Make sure output is removed if it exists already
+                        if (propertyRoot.exists()) {
+                            FileUtils.forceDelete(propertyRoot);
+                        }
+                    }
+                    break;
+                case DIRECTORY:
+                    File directory;
+                    if (root) {
+                        if (outputType != OutputType.DIRECTORY) {
+                            throw new IllegalStateException("Property should be an output directory property: " + propertyName);
+                        }
+                        if (!makeDirectory(propertyRoot)) {
+                            unpackedPaths.put(propertyRoot, Sets.<String>newHashSet());
+                        }
+                        directory = propertyRoot;
+                    } else {
+                        directory = new File(propertyRoot, childPath);
+                        recordUnpacked(propertyRoot, directory);
+                        makeDirectory(directory);
+                    }
+                    fileSystem.chmod(directory, mode);
+                    String internedPath = stringInterner.intern(directory.getAbsolutePath());
+                    RelativePath relativePath = root ? RelativePath.parse(false, directory.getName()) : RelativePath.parse(false, childPath);
+                    add(propertyName, Futures.<FileSnapshot>immediateFuture(new DirectoryFileSnapshot(internedPath, relativePath, root)));
+                    break;
+                case FILE:
+                    File file;
+                    if (root) {
+                        if (outputType == OutputType.DIRECTORY) {
+                            throw new IllegalStateException("Property should be an output file property: " + propertyName);
+                        }
+                        makeDirectory(propertyRoot.getParentFile());
+                        file = propertyRoot;
+                    } else {
+                        file = new File(propertyRoot, childPath);
+                        recordUnpacked(propertyRoot, file);
+                    }
+                    if (file.isDirectory()) {
+                        FileUtils.forceDelete(file);
+                    }
+                    unpackFile(propertyName, new FileRecord(file, root ? RelativePath.parse(true, file.getName()) : RelativePath.parse(true, childPath), root, mode, input.readLong(), readHash()));
+                    break;
+                default:
+                    throw new IllegalStateException("Cached result format error, unknown record type: " + type);
+            }
+        }
+
+        private void unpackFile(String propertyName, final FileRecord record) throws IOException {
+            ChunkedInputStream content = new ChunkedInputStream(input);
+            if (record.length > MAX_PARALLEL_FILE_LENGTH) {
+                FileSnapshot snapshot = record.unpack(content);
+                content.skipRemaining();
+                add(propertyName, Futures.immediateFuture(snapshot));
+                return;
+            }
+
+            final byte[] compressedContent = ByteStreams.toByteArray(content);
+            if (compressedContent.length > MAX_BUFFERED_BYTES) {
+                add(propertyName, Futures.immediateFuture(record.unpack(new ByteArrayInputStream(compressedContent))));
+                return;
+            }
+            try {
+                bufferedBytes.acquire(compressedContent.length);
+            } catch (InterruptedException e) {
+                throw UncheckedException.throwAsUncheckedException(e);
+            }
+            try {
+                add(propertyName, executor.submit(new Callable<FileSnapshot>() {
+                    @Override
+                    public FileSnapshot call() throws Exception {
+                        try {
+                            return record.unpack(new ByteArrayInputStream(compressedContent));
+                        } finally {
+                            bufferedBytes.release(compressedContent.length);
+                        }
+                    }
+                }));
+            } catch (RuntimeException e) {
+                bufferedBytes.release(compressedContent.length);
+                throw e;
+            }
+        }
+
+        private void add(String propertyName, Future<FileSnapshot> snapshot) {
+            propertyNames.add(propertyName);
+            snapshots.add(snapshot);
+        }
+
+        private void recordUnpacked(File propertyRoot, File file) {
+            Set<String> paths = unpackedPaths.get(propertyRoot);
+            if (paths != null) {
+                paths.add(file.getAbsolutePath());
+            }
+        }
+
+        private List<FileSnapshot> awaitFiles() throws IOException {
+            List<FileSnapshot> result = Lists.newArrayListWithCapacity(snapshots.size());
+            Throwable failure = null;
+            for (Future<FileSnapshot> snapshot : snapshots) {
+                try {
+                    result.add(snapshot.get());
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause();
+                    }
+                } catch (InterruptedException e) {
+                    throw UncheckedException.throwAsUncheckedException(e);
+                }
+            }
+            if (failure != null) {
+                if (failure instanceof IOException) {
+                    throw (IOException) failure;
+                }
+                throw UncheckedException.throwAsUncheckedException(failure);
+            }
+            return result;
+        }
+
+        /**
+         * Waits for the files that are being written, so that the outputs can be cleaned up after a failure.
+         */
+        private void awaitFilesQuietly() {
+            for (Future<FileSnapshot> snapshot : snapshots) {
+                try {
+                    snapshot.get();
+                } catch (Exception e) {
+                    // Ignore, as the failure that is being reported happened first
+                }
+            }
+        }
+
+        private void removeStaleFiles(File directory, Set<String> unpacked) throws IOException {
+            File[] children = directory.listFiles();
+            if (children == null) {
+                return;
+            }
+            for (File child : children) {
+                if (!unpacked.contains(child.getAbsolutePath())) {
+                    FileUtils.forceDelete(child);
+                } else if (child.isDirectory()) {
+                    removeStaleFiles(child, unpacked);
+                }
+            }
+        }
+
+        private String readString() throws IOException {
+            byte[] bytes = new byte[input.readInt()];
+            input.readFully(bytes);
+            return new String(bytes, Charsets.UTF_8);
+        }
+
+        private HashCode readHash() throws IOException {
+            byte[] bytes = new byte[input.readUnsignedByte()];
+            input.readFully(bytes);
+            return HashCode.fromBytes(bytes);
+        }
+    }
+
+    private class FileRecord {
+        private final File file;
+        private final RelativePath relativePath;
+        private final boolean root;
+        private final int mode;
+        private final long length;
+        private final HashCode hash;
+
+        FileRecord(File file, RelativePath relativePath, boolean root, int mode, long length, HashCode hash) {
+            this.file = file;
+            this.relativePath = relativePath;
+            this.root = root;
+            this.mode = mode;
+            this.length = length;
+            this.hash = hash;
+        }
+
+        FileSnapshot unpack(InputStream compressedContent) throws IOException {
+            if (!hasExpectedContent()) {
+                Inflater inflater = new Inflater();
+                try {
+                    InputStream content = new InflaterInputStream(compressedContent, inflater, BUFFER_SIZE);
+                    OutputStream output = new FileOutputStream(file);
+                    HashCode actualHash;
+                    try {
+                        actualHash = streamHasher.hashCopy(content, output);
+                    } finally {
+                        IOUtils.closeQuietly(output);
+                    }
+                    if (!actualHash.equals(hash)) {
+                        throw new IllegalStateException(String.format("Cached result format error, content of '%s' does not match its hash.", file));
+                    }
+                } finally {
+                    inflater.end();
+                }
+            }
+            fileSystem.chmod(file, mode);
+            String internedPath = stringInterner.intern(file.getAbsolutePath());
+            return new RegularFileSnapshot(internedPath, relativePath, root, new FileHashSnapshot(hash, file.lastModified()));
+        }
+
+        private boolean hasExpectedContent() throws IOException {
+            return file.isFile() && file.length() == length && hashFile(file).equals(hash);
+        }
+    }
+
+    /**
+     * Writes the content as a sequence of chunks, each preceded by its length, followed by an empty chunk.
+     */
+    private static class ChunkedOutputStream extends OutputStream {
+        private final DataOutputStream output;
+        private final byte[] buffer = CHUNK_BUFFERS.get();
+        private int count;
+
+        ChunkedOutputStream(DataOutputStream output) {
+            this.output = output;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length) {
+                writeChunk();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            while (length > 0) {
+                if (count == buffer.length) {
+                    writeChunk();
+                }
+                int copied = Math.min(length, buffer.length - count);
+                System.arraycopy(bytes, offset, buffer, count, copied);
+                count += copied;
+                offset += copied;
+                length -= copied;
+            }
+        }
+
+        private void writeChunk() throws IOException {
+            if (count > 0) {
+                output.writeInt(count);
+                output.write(buffer, 0, count);
+                count = 0;
+            }
+        }
+
+        void finish() throws IOException {
+            writeChunk();
+            output.writeInt(0);
+        }
+    }
+
+    /**
+     * Reads content written by {@link ChunkedOutputStream}. Does not close the underlying stream.
+     */
+    private static class ChunkedInputStream extends InputStream {
+        private final DataInputStream input;
+        private int remaining;
+        private boolean finished;
+
+        ChunkedInputStream(DataInputStream input) {
+            this.input = input;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!nextChunk()) {
+                return -1;
+            }
+            remaining--;
+            return input.readUnsignedByte();
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (!nextChunk()) {
+                return -1;
+            }
+            int read = input.read(bytes, offset, Math.min(length, remaining));
+            if (read < 0) {
+                throw new EOFException();
+            }
+            remaining -= read;
+            return read;
+        }
+
+        void skipRemaining() throws IOException {
+            while (nextChunk()) {
+                IOUtils.skipFully(input, remaining);
+                remaining = 0;
+            }
+        }
+
+        private boolean nextChunk() throws IOException {
+            while (remaining == 0) {
+                if (finished) {
+                    return false;
+                }
+                int length = input.readInt();
+                if (length < 0) {
+                    throw new IllegalStateException("Cached result format error, invalid chunk length: " + length);
+                }
+                if (length == 0) {
+                    finished = true;
+                }
+                remaining = length;
+            }
+            return true;
+        }
+    }
+}
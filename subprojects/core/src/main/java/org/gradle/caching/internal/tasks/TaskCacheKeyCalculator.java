@@ -30,9 +30,11 @@ import java.util.SortedSet;
 public class TaskCacheKeyCalculator {
 
     private final boolean buildCacheDebugLogging;
+    private final int cacheEntryFormat;
 
-    public TaskCacheKeyCalculator(boolean buildCacheDebugLogging) {
+    public TaskCacheKeyCalculator(boolean buildCacheDebugLogging, int cacheEntryFormat) {
         this.buildCacheDebugLogging = buildCacheDebugLogging;
+        this.cacheEntryFormat = cacheEntryFormat;
     }
 
     public TaskOutputCachingBuildCacheKey calculate(TaskInternal task, TaskExecution execution) {
@@ -66,6 +68,11 @@ public class TaskCacheKeyCalculator {
             builder.appendOutputPropertyName(cacheableOutputPropertyName);
         }
 
+        // Keys of entries in the default format do not include it, so that they do not change
+        if (cacheEntryFormat != TaskOutputPacker.CACHE_ENTRY_FORMAT) {
+            builder.appendCacheEntryFormat(cacheEntryFormat);
+        }
+
         return builder.build();
     }
 }
@@ -53,6 +53,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -115,7 +116,7 @@ public class TaskOutputCacheCommandFactory {
 
         @Override
         public BuildCacheLoadCommand.Result<OriginTaskExecutionMetadata> load(InputStream input) {
-            taskOutputChangesListener.beforeTaskOutputChanged();
+            taskOutputChangesListener.beforeTaskOutputChanged(getAffectedPaths());
             final TaskOutputPacker.UnpackResult unpackResult;
             try {
                 unpackResult = packer.unpack(outputProperties, input, taskOutputOriginFactory.createReader(task));
@@ -148,6 +149,20 @@ public class TaskOutputCacheCommandFactory {
             };
         }
 
+        private List<String> getAffectedPaths() {
+            List<String> affectedPaths = new ArrayList<String>();
+            for (ResolvedTaskOutputFilePropertySpec outputProperty : outputProperties) {
+                File outputFile = outputProperty.getOutputFile();
+                if (outputFile != null) {
+                    affectedPaths.add(outputFile.getAbsolutePath());
+                }
+            }
+            for (File localStateFile : taskProperties.getLocalStateFiles()) {
+                affectedPaths.add(localStateFile.getAbsolutePath());
+            }
+            return affectedPaths;
+        }
+
         private void updateSnapshots(ImmutableListMultimap<String, FileSnapshot> propertiesFileSnapshots, OriginTaskExecutionMetadata originMetadata) {
             ImmutableSortedMap.Builder<String, FileCollectionSnapshot> propertySnapshotsBuilder = ImmutableSortedMap.naturalOrder();
             for (ResolvedTaskOutputFilePropertySpec property : outputProperties) {
@@ -30,6 +30,8 @@ public interface TaskOutputCachingBuildCacheKeyBuilder {
 
     void appendOutputPropertyName(String propertyName);
 
+    void appendCacheEntryFormat(int cacheEntryFormat);
+
     TaskOutputCachingBuildCacheKey build();
 
     void inputPropertyLoadedByUnknownClassLoader(String propertyName);
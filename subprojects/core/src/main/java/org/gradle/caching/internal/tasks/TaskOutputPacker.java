@@ -39,6 +39,10 @@ public interface TaskOutputPacker {
     // - any major changes of the layout of a cache entry
     int CACHE_ENTRY_FORMAT = 1;
 
+    // Format version of cache entries where each file is compressed on its own, see IndexedTaskOutputPacker
+    // NOTE: This should be changed whenever we change the layout of such a cache entry
+    int INDEXED_CACHE_ENTRY_FORMAT = 2;
+
     PackResult pack(SortedSet<ResolvedTaskOutputFilePropertySpec> propertySpecs, Map<String, Map<String, FileContentSnapshot>> outputSnapshots, OutputStream output, TaskOutputOriginWriter writeOrigin) throws IOException;
 
     class PackResult {
@@ -24,6 +24,7 @@ import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.primitives.Ints;
 import org.gradle.api.Action;
 import org.gradle.api.BuildCancelledException;
 import org.gradle.api.CircularReferenceException;
@@ -31,15 +32,25 @@ import org.gradle.api.Project;
 import org.gradle.api.Task;
 import org.gradle.api.Transformer;
 import org.gradle.api.UncheckedIOException;
+import org.gradle.api.file.Directory;
 import org.gradle.api.file.FileCollection;
 import org.gradle.api.internal.GradleInternal;
 import org.gradle.api.internal.TaskInternal;
+import org.gradle.api.internal.changedetection.state.FileSystemSnapshotter;
 import org.gradle.api.internal.project.ProjectInternal;
 import org.gradle.api.internal.tasks.CachingTaskDependencyResolveContext;
 import org.gradle.api.internal.tasks.TaskContainerInternal;
+import org.gradle.api.internal.tasks.TaskExecutionOutcome;
+import org.gradle.api.internal.tasks.TaskInputFilePropertySpec;
+import org.gradle.api.internal.tasks.TaskPropertyFileCollection;
+import org.gradle.api.internal.tasks.TaskPropertyUtils;
+import org.gradle.api.internal.tasks.ValidatingValue;
 import org.gradle.api.internal.tasks.execution.DefaultTaskProperties;
 import org.gradle.api.internal.tasks.execution.TaskProperties;
+import org.gradle.api.internal.tasks.properties.GetInputFilesVisitor;
 import org.gradle.api.internal.tasks.properties.PropertyWalker;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
 import org.gradle.api.specs.Spec;
 import org.gradle.api.specs.Specs;
 import org.gradle.execution.MultipleBuildFailures;
@@ -58,6 +69,9 @@ import org.gradle.internal.resources.ResourceLock;
 import org.gradle.internal.resources.ResourceLockCoordinationService;
 import org.gradle.internal.resources.ResourceLockState;
 import org.gradle.internal.service.ServiceRegistry;
+import org.gradle.internal.time.Clock;
+import org.gradle.internal.time.Time;
+import org.gradle.internal.time.Timer;
 import org.gradle.internal.work.WorkerLeaseRegistry.WorkerLease;
 import org.gradle.internal.work.WorkerLeaseService;
 import org.gradle.util.CollectionUtils;
@@ -71,13 +85,13 @@ import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -93,24 +107,49 @@ import static org.gradle.internal.resources.ResourceLockState.Disposition.*;
  * methods.
  */
 public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
+    /**
+     * When set to true, idle task workers snapshot the input directories of tasks that will be ready to execute once the tasks that are currently running complete.
+     * The getters of the input file properties of these tasks are then evaluated twice, once ahead of the task's execution and once when it executes.
+     */
+    public static final String PRE_SNAPSHOT_INPUTS_PROPERTY = "org.gradle.internal.tasks.pre-snapshot-inputs";
+
+    private static final Logger LOGGER = Logging.getLogger(DefaultTaskExecutionPlan.class);
+    private static final Comparator<TaskInfo> QUEUE_ORDER = new Comparator<TaskInfo>() {
+        @Override
+        public int compare(TaskInfo left, TaskInfo right) {
+            return Ints.compare(left.getQueuePosition(), right.getQueuePosition());
+        }
+    };
+
     private final Set<TaskInfo> tasksInUnknownState = new LinkedHashSet<TaskInfo>();
     private final Set<TaskInfo> entryTasks = new LinkedHashSet<TaskInfo>();
     private final LinkedHashMap<Task, TaskInfo> executionPlan = new LinkedHashMap<Task, TaskInfo>();
-    private final List<TaskInfo> executionQueue = new LinkedList<TaskInfo>();
+    private final List<TaskInfo> executionQueue = new ArrayList<TaskInfo>();
     private final Map<Project, ResourceLock> projectLocks = Maps.newHashMap();
     private final TaskFailureCollector failureCollector = new TaskFailureCollector();
     private final TaskInfoFactory nodeFactory = new TaskInfoFactory(failureCollector);
     private Spec<? super Task> filter = Specs.satisfyAll();
 
     private TaskFailureHandler failureHandler = new RethrowingFailureHandler();
+    private TaskDurationRepository taskDurations;
 
     private final BuildCancellationToken cancellationToken;
     private final Set<TaskInfo> runningTasks = Sets.newIdentityHashSet();
     private final Set<Task> filteredTasks = Sets.newIdentityHashSet();
     private final Map<TaskInfo, TaskMutationInfo> taskMutations = Maps.newIdentityHashMap();
-    private final Map<File, String> canonicalizedFileCache = Maps.newIdentityHashMap();
+    private final Map<File, String> canonicalizedFileCache = Maps.newHashMap();
+    private final PathOverlapIndex<TaskInfo> runningTaskMutations = new PathOverlapIndex<TaskInfo>();
+    private final PathOverlapIndex<TaskMutationInfo> resolvedTaskOutputs = new PathOverlapIndex<TaskMutationInfo>();
     private final Map<Pair<TaskInfo, TaskInfo>, Boolean> reachableCache = Maps.newHashMap();
-    private final Set<TaskInfo> dependenciesCompleteCache = Sets.newHashSet();
+    private final Set<TaskInfo> pendingTasks = Sets.newIdentityHashSet();
+    private final TreeSet<TaskInfo> readyTasks = new TreeSet<TaskInfo>(QUEUE_ORDER);
+    private final List<TaskInfo> tasksWithExternalDependencies = new ArrayList<TaskInfo>();
+    private final Map<String, List<TaskWorkerWait>> workerWaits = Maps.newLinkedHashMap();
+    private final boolean preSnapshotInputs = Boolean.getBoolean(PRE_SNAPSHOT_INPUTS_PROPERTY);
+    private final TreeSet<TaskInfo> preSnapshotCandidates = new TreeSet<TaskInfo>(QUEUE_ORDER);
+    private final Set<TaskInfo> preSnapshotCandidatesSeen = Sets.newIdentityHashSet();
+    private TaskWorkerWait.Reason blockedReason;
+    private boolean recordWorkerWaits;
     private final ResourceLockCoordinationService coordinationService;
     private final WorkerLeaseService workerLeaseService;
     private final GradleInternal gradle;
@@ -359,7 +398,67 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
         }
         executionQueue.clear();
         executionQueue.addAll(executionPlan.values());
+        initializeReadyQueue();
+    }
 
+    /**
+     * Counts the incomplete dependencies of each task in the execution queue, and collects the tasks that can start straight away. From then on the
+     * counts are updated as tasks complete, so that selecting the next task only needs to look at the tasks that are ready to run.
+     */
+    private void initializeReadyQueue() {
+        pendingTasks.clear();
+        readyTasks.clear();
+        tasksWithExternalDependencies.clear();
+        int position = 0;
+        for (TaskInfo node : executionQueue) {
+            node.resetDependents(position++);
+        }
+        for (TaskInfo node : executionQueue) {
+            for (TaskInfo dependency : Iterables.concat(node.getDependencySuccessors(), node.getMustSuccessors())) {
+                if (executionPlan.containsKey(dependency.getTask())) {
+                    dependency.addDependent(node);
+                }
+            }
+        }
+        for (TaskInfo node : executionQueue) {
+            if (node.isReady()) {
+                pendingTasks.add(node);
+                enqueueIfReady(node);
+            }
+        }
+    }
+
+    private void enqueueIfReady(TaskInfo node) {
+        if (node.isReady() && !node.hasIncompleteDependencies()) {
+            // Dependencies outside of the execution plan, such as tasks of included builds, do not notify this plan when they complete
+            if (node.allDependenciesComplete()) {
+                readyTasks.add(node);
+            } else {
+                tasksWithExternalDependencies.add(node);
+            }
+        }
+    }
+
+    private void dequeue(TaskInfo node) {
+        pendingTasks.remove(node);
+        readyTasks.remove(node);
+        tasksWithExternalDependencies.remove(node);
+    }
+
+    private void notifyDependentsOfCompletion(TaskInfo node) {
+        for (TaskInfo dependent : node.getDependents()) {
+            if (dependent.dependencyCompleted()) {
+                enqueueIfReady(dependent);
+            }
+        }
+    }
+
+    private void notifyDependentsOfEnforcement(TaskInfo node) {
+        for (TaskInfo dependent : node.getDependents()) {
+            dependent.dependencyEnforced();
+            readyTasks.remove(dependent);
+            tasksWithExternalDependencies.remove(dependent);
+        }
     }
 
     @Override
@@ -530,9 +629,17 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
                 failureCollector.clearFailures();
                 taskMutations.clear();
                 canonicalizedFileCache.clear();
+                runningTaskMutations.clear();
+                resolvedTaskOutputs.clear();
                 reachableCache.clear();
-                dependenciesCompleteCache.clear();
+                pendingTasks.clear();
+                readyTasks.clear();
+                tasksWithExternalDependencies.clear();
+                workerWaits.clear();
+                preSnapshotCandidates.clear();
+                preSnapshotCandidatesSeen.clear();
                 runningTasks.clear();
+                taskDurations = null;
                 return FINISHED;
             }
         });
@@ -555,13 +662,118 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
         this.failureHandler = handler;
     }
 
+    /**
+     * Sets whether the periods of time during which the workers wait for a task to execute are recorded, see {@link #getWorkerWaits()}. Not recorded by default.
+     */
+    public void recordWorkerWaits(boolean recordWorkerWaits) {
+        this.recordWorkerWaits = recordWorkerWaits;
+    }
+
+    /**
+     * Uses the durations of the previous executions of the tasks to order the tasks of this plan, so that the tasks with the longest chain of work
+     * that must follow them are started first, and records the duration of each task executed by this plan in the given repository.
+     *
+     * @param prioritizeCriticalPath When false, the repository is ignored, so that no durations are read or recorded.
+     */
+    public void useTaskDurations(TaskDurationRepository taskDurations, boolean prioritizeCriticalPath) {
+        if (prioritizeCriticalPath) {
+            this.taskDurations = taskDurations;
+            prioritizeCriticalPath();
+        }
+    }
+
+    /**
+     * Orders the execution queue by the length of the longest path from each task to the end of the graph, using the duration of the previous execution
+     * of each task as its weight. The queue remains a valid execution order, as a task is always ranked higher than the tasks that must run after it.
+     * Tasks that are scheduled because of an earlier requested task are kept ahead of those for later requested tasks, so that for example the tasks for
+     * {@code clean build} still start with {@code clean}.
+     */
+    private void prioritizeCriticalPath() {
+        List<TaskInfo> nodes = new ArrayList<TaskInfo>(executionPlan.values());
+        final Map<TaskInfo, Long> durations = Maps.newIdentityHashMap();
+        long totalKnownDuration = 0;
+        for (TaskInfo node : nodes) {
+            Long duration = taskDurations.getDuration(node.getTask());
+            if (duration != null) {
+                durations.put(node, Math.max(1, duration));
+                totalKnownDuration += Math.max(1, duration);
+            }
+        }
+        // Assume that tasks that have not been executed before take as long as the average task
+        long defaultDuration = durations.isEmpty() ? 1 : Math.max(1, totalKnownDuration / durations.size());
+
+        final Map<TaskInfo, Long> criticalPathLengths = Maps.newIdentityHashMap();
+        final Map<TaskInfo, Integer> segments = Maps.newIdentityHashMap();
+        final Map<TaskInfo, Integer> positions = Maps.newIdentityHashMap();
+        Map<TaskInfo, List<TaskInfo>> followingTasks = Maps.newIdentityHashMap();
+        int segment = 0;
+        for (int i = 0; i < nodes.size(); i++) {
+            TaskInfo node = nodes.get(i);
+            segments.put(node, segment);
+            positions.put(node, i);
+            if (entryTasks.contains(node)) {
+                segment++;
+            }
+            for (TaskInfo predecessor : Iterables.concat(node.getDependencySuccessors(), node.getMustSuccessors(), node.getShouldSuccessors())) {
+                List<TaskInfo> following = followingTasks.get(predecessor);
+                if (following == null) {
+                    following = new ArrayList<TaskInfo>();
+                    followingTasks.put(predecessor, following);
+                }
+                following.add(node);
+            }
+        }
+
+        // The plan is in execution order, so visit it backwards to calculate the length of the following tasks before that of the tasks they follow
+        for (int i = nodes.size() - 1; i >= 0; i--) {
+            TaskInfo node = nodes.get(i);
+            long longestFollowingPath = 0;
+            List<TaskInfo> following = followingTasks.get(node);
+            if (following != null) {
+                for (TaskInfo followingTask : following) {
+                    longestFollowingPath = Math.max(longestFollowingPath, criticalPathLengths.get(followingTask));
+                }
+            }
+            Long duration = durations.get(node);
+            criticalPathLengths.put(node, (duration == null ? defaultDuration : duration) + longestFollowingPath);
+        }
+
+        List<TaskInfo> queue = new ArrayList<TaskInfo>(executionQueue);
+        Collections.sort(queue, new Comparator<TaskInfo>() {
+            @Override
+            public int compare(TaskInfo left, TaskInfo right) {
+                int result = segments.get(left).compareTo(segments.get(right));
+                if (result == 0) {
+                    result = criticalPathLengths.get(right).compareTo(criticalPathLengths.get(left));
+                }
+                if (result == 0) {
+                    result = positions.get(left).compareTo(positions.get(right));
+                }
+                return result;
+            }
+        });
+        executionQueue.clear();
+        executionQueue.addAll(queue);
+        initializeReadyQueue();
+    }
+
     @Override
     public boolean executeWithTask(final WorkerLease workerLease, final Action<TaskInternal> taskExecution) {
         final AtomicReference<TaskInfo> selected = new AtomicReference<TaskInfo>();
         final AtomicBoolean workRemaining = new AtomicBoolean();
+        final AtomicReference<TaskInfo> preSnapshot = new AtomicReference<TaskInfo>();
+        final Clock clock = recordWorkerWaits ? Time.clock() : null;
+        final long requestedTime = clock != null ? clock.getCurrentTime() : 0;
         coordinationService.withStateLock(new Transformer<ResourceLockState.Disposition, ResourceLockState>() {
+            private TaskWorkerWait.Reason waitingFor = TaskWorkerWait.Reason.STATE_LOCK;
+            private long waitStartTime = requestedTime;
+
             @Override
             public ResourceLockState.Disposition transform(ResourceLockState resourceLockState) {
+                if (clock != null) {
+                    recordWait(waitingFor, waitStartTime, clock.getCurrentTime());
+                }
+
                 if (cancellationToken.isCancellationRequested()) {
                     if (abortExecution()) {
                         tasksCancelled = true;
@@ -574,7 +786,7 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
                 }
 
                 if (allProjectsLocked()) {
-                    return RETRY;
+                    return retry(TaskWorkerWait.Reason.PROJECT_LOCK);
                 }
 
                 try {
@@ -585,55 +797,258 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
                 }
 
                 if (selected.get() == null && workRemaining.get()) {
-                    return RETRY;
+                    if (preSnapshotInputs) {
+                        preSnapshot.set(selectTaskToPreSnapshot(workerLease));
+                        if (preSnapshot.get() != null) {
+                            return FINISHED;
+                        }
+                    }
+                    return retry(blockedReason);
                 } else {
                     return FINISHED;
                 }
             }
+
+            private ResourceLockState.Disposition retry(TaskWorkerWait.Reason reason) {
+                if (clock != null) {
+                    waitingFor = reason;
+                    waitStartTime = clock.getCurrentTime();
+                }
+                return RETRY;
+            }
         });
 
+        TaskInfo taskToPreSnapshot = preSnapshot.get();
+        if (taskToPreSnapshot != null) {
+            preSnapshotInputs(taskToPreSnapshot, workerLease);
+            return true;
+        }
+
         TaskInfo selectedTask = selected.get();
         execute(selectedTask, workerLease, taskExecution);
         return workRemaining.get();
     }
 
-    private TaskInfo selectNextTask(final WorkerLease workerLease) {
+    /**
+     * Selects a task whose inputs can be snapshotted while the tasks it depends on are still running, and locks its project and the given worker lease.
+     */
+    @Nullable
+    private TaskInfo selectTaskToPreSnapshot(final WorkerLease workerLease) {
         final AtomicReference<TaskInfo> selected = new AtomicReference<TaskInfo>();
-        final Iterator<TaskInfo> iterator = executionQueue.iterator();
+        Iterator<TaskInfo> iterator = preSnapshotCandidates.iterator();
         while (iterator.hasNext()) {
             final TaskInfo taskInfo = iterator.next();
-            if (taskInfo.isReady() && allDependenciesComplete(taskInfo)) {
-                coordinationService.withStateLock(new Transformer<ResourceLockState.Disposition, ResourceLockState>() {
+            if (!pendingTasks.contains(taskInfo) || !taskInfo.hasIncompleteDependencies()) {
+                // Has started or is ready to start, so will snapshot its own inputs
+                iterator.remove();
+                continue;
+            }
+            coordinationService.withStateLock(new Transformer<ResourceLockState.Disposition, ResourceLockState>() {
+                @Override
+                public ResourceLockState.Disposition transform(ResourceLockState resourceLockState) {
+                    // Resolving the inputs of a task may use the project's mutable state
+                    if (!getProjectLock(taskInfo).tryLock() || !workerLease.tryLock()) {
+                        return FAILED;
+                    }
+                    selected.set(taskInfo);
+                    return FINISHED;
+                }
+            });
+            if (selected.get() != null) {
+                iterator.remove();
+                break;
+            }
+        }
+        return selected.get();
+    }
+
+    /**
+     * Snapshots the input directories of the given task into the file system mirror, where the task history finds them once the task executes.
+     * Only directories that are not under the project's build directory and that do not overlap the outputs of running tasks are snapshotted, as
+     * these are unlikely to change before the task executes. Any other inputs, such as dependency resolution results, are left to the task.
+     * See {@link #resolveInputDirectories(TaskInternal, ServiceRegistry)} for which input properties are considered.
+     *
+     * <p>The project lock is only held while the input directories are resolved, and is released before they are walked.</p>
+     */
+    private void preSnapshotInputs(final TaskInfo taskInfo, final WorkerLease workerLease) {
+        TaskInternal task = taskInfo.getTask();
+        try {
+            ServiceRegistry serviceRegistry = ((ProjectInternal) task.getProject()).getServices();
+            FileSystemSnapshotter fileSystemSnapshotter = serviceRegistry.get(FileSystemSnapshotter.class);
+            List<File> inputDirectories;
+            try {
+                inputDirectories = resolveInputDirectories(task, serviceRegistry);
+            } finally {
+                coordinationService.withStateLock(unlock(getProjectLock(taskInfo)));
+            }
+            for (File dir : inputDirectories) {
+                if (dir.isDirectory() && !overlapsRunningTaskMutations(dir)) {
+                    // Snapshot the whole directory, so that the snapshot can be cached and then filtered for the task
+                    fileSystemSnapshotter.preSnapshotDirectoryTree(dir);
+                }
+            }
+        } catch (Exception e) {
+            // Any problem is reported when the task executes
+            LOGGER.debug("Could not snapshot the inputs of {} ahead of its execution.", task, e);
+        } finally {
+            coordinationService.withStateLock(unlock(workerLease));
+        }
+    }
+
+    /**
+     * Resolves the input directories of the given task that are known before the task executes. Only input file properties whose value is an absolute
+     * {@link File} or a {@link Directory} are considered, so that no providers, closures or file collections, such as configurations, are resolved early.
+     *
+     * <p>The getters of the task's input file properties, and of its nested beans, are called here and again when the task executes, so they may be evaluated twice.</p>
+     */
+    private static List<File> resolveInputDirectories(TaskInternal task, ServiceRegistry serviceRegistry) {
+        PropertyWalker propertyWalker = serviceRegistry.get(PropertyWalker.class);
+        String buildDirPath = task.getProject().getBuildDir().getAbsolutePath();
+        GetInputFilesVisitor inputFilesVisitor = new GetInputFilesVisitor();
+        TaskPropertyUtils.visitProperties(propertyWalker, task, inputFilesVisitor);
+        List<File> inputDirectories = new ArrayList<File>();
+        for (TaskInputFilePropertySpec inputFileProperty : inputFilesVisitor.getFileProperties()) {
+            File dir = getPlainFile(inputFileProperty);
+            if (dir != null) {
+                String path = dir.getAbsolutePath();
+                if (!path.equals(buildDirPath) && !path.startsWith(buildDirPath + File.separator)) {
+                    inputDirectories.add(dir);
+                }
+            }
+        }
+        return inputDirectories;
+    }
+
+    @Nullable
+    private static File getPlainFile(TaskInputFilePropertySpec inputFileProperty) {
+        FileCollection propertyFiles = inputFileProperty.getPropertyFiles();
+        if (!(propertyFiles instanceof TaskPropertyFileCollection)) {
+            return null;
+        }
+        Object value = ((TaskPropertyFileCollection) propertyFiles).getPaths();
+        if (value instanceof ValidatingValue) {
+            value = ((ValidatingValue) value).call();
+        }
+        if (value instanceof File && ((File) value).isAbsolute()) {
+            return (File) value;
+        }
+        if (value instanceof Directory) {
+            return ((Directory) value).getAsFile();
+        }
+        return null;
+    }
+
+    private boolean overlapsRunningTaskMutations(File dir) {
+        final String path;
+        try {
+            path = dir.getCanonicalPath();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        final AtomicBoolean overlaps = new AtomicBoolean();
+        coordinationService.withStateLock(new Transformer<ResourceLockState.Disposition, ResourceLockState>() {
+            @Override
+            public ResourceLockState.Disposition transform(ResourceLockState resourceLockState) {
+                overlaps.set(!runningTaskMutations.visitOverlapping(path, new PathOverlapIndex.Visitor<TaskInfo>() {
                     @Override
-                    public ResourceLockState.Disposition transform(ResourceLockState resourceLockState) {
-                        ResourceLock projectLock = getProjectLock(taskInfo);
-                        TaskMutationInfo taskMutationInfo = getResolvedTaskMutationInfo(taskInfo);
+                    public boolean visit(TaskInfo runningTask, String overlappingPath) {
+                        return false;
+                    }
+                }));
+                return FINISHED;
+            }
+        });
+        return overlaps.get();
+    }
 
-                        // TODO: convert output file checks to a resource lock
-                        if (!projectLock.tryLock() || !workerLease.tryLock() || !canRunWithCurrentlyExecutedTasks(taskInfo, taskMutationInfo)) {
-                            return FAILED;
-                        }
+    private TaskInfo selectNextTask(final WorkerLease workerLease) {
+        pollTasksWithExternalDependencies();
+        blockedReason = null;
+        final AtomicReference<TaskInfo> selected = new AtomicReference<TaskInfo>();
+        final Iterator<TaskInfo> iterator = readyTasks.iterator();
+        while (iterator.hasNext()) {
+            final TaskInfo taskInfo = iterator.next();
+            coordinationService.withStateLock(new Transformer<ResourceLockState.Disposition, ResourceLockState>() {
+                @Override
+                public ResourceLockState.Disposition transform(ResourceLockState resourceLockState) {
+                    ResourceLock projectLock = getProjectLock(taskInfo);
+                    TaskMutationInfo taskMutationInfo = getResolvedTaskMutationInfo(taskInfo);
 
-                        selected.set(taskInfo);
-                        if (taskInfo.allDependenciesSuccessful()) {
-                            recordTaskStarted(taskInfo);
-                            taskInfo.startExecution();
-                        } else {
-                            taskInfo.skipExecution();
-                        }
-                        iterator.remove();
-                        return FINISHED;
+                    // TODO: convert output file checks to a resource lock
+                    if (!projectLock.tryLock()) {
+                        return blockedOn(TaskWorkerWait.Reason.PROJECT_LOCK);
+                    }
+                    if (!workerLease.tryLock()) {
+                        return blockedOn(TaskWorkerWait.Reason.WORKER_LEASE);
+                    }
+                    if (!canRunWithCurrentlyExecutedTasks(taskInfo, taskMutationInfo)) {
+                        return blockedOn(TaskWorkerWait.Reason.OUTPUT_OVERLAP);
                     }
-                });
 
-                if (selected.get() != null) {
-                    break;
+                    selected.set(taskInfo);
+                    iterator.remove();
+                    pendingTasks.remove(taskInfo);
+                    if (taskInfo.allDependenciesSuccessful()) {
+                        recordTaskStarted(taskInfo);
+                        taskInfo.startExecution();
+                    } else {
+                        taskInfo.skipExecution();
+                        notifyDependentsOfCompletion(taskInfo);
+                    }
+                    return FINISHED;
                 }
+            });
+
+            if (selected.get() != null) {
+                break;
             }
         }
+        if (blockedReason == null) {
+            blockedReason = TaskWorkerWait.Reason.DEPENDENCIES;
+        }
         return selected.get();
     }
 
+    private ResourceLockState.Disposition blockedOn(TaskWorkerWait.Reason reason) {
+        // Report the reason why the task with the highest priority could not be started
+        if (blockedReason == null) {
+            blockedReason = reason;
+        }
+        return FAILED;
+    }
+
+    private void recordWait(TaskWorkerWait.Reason reason, long startTime, long endTime) {
+        if (endTime <= startTime) {
+            return;
+        }
+        String workerName = Thread.currentThread().getName();
+        List<TaskWorkerWait> waits = workerWaits.get(workerName);
+        if (waits == null) {
+            waits = Lists.newArrayList();
+            workerWaits.put(workerName, waits);
+        }
+        waits.add(new TaskWorkerWait(reason, startTime, endTime));
+    }
+
+    /**
+     * Returns the periods of time during which each worker thread waited for a task to execute, since this plan was last cleared.
+     * Empty unless recording is enabled, see {@link #recordWorkerWaits(boolean)}. Should only be called once all workers have finished.
+     */
+    public Map<String, List<TaskWorkerWait>> getWorkerWaits() {
+        return Maps.newLinkedHashMap(workerWaits);
+    }
+
+    private void pollTasksWithExternalDependencies() {
+        Iterator<TaskInfo> iterator = tasksWithExternalDependencies.iterator();
+        while (iterator.hasNext()) {
+            TaskInfo taskInfo = iterator.next();
+            if (taskInfo.allDependenciesComplete()) {
+                iterator.remove();
+                readyTasks.add(taskInfo);
+            }
+        }
+    }
+
     private TaskMutationInfo getResolvedTaskMutationInfo(TaskInfo taskInfo) {
         TaskInternal task = taskInfo.getTask();
         TaskMutationInfo taskMutationInfo = taskMutations.get(taskInfo);
@@ -649,6 +1064,9 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
             taskMutationInfo.hasOutputs = taskProperties.hasDeclaredOutputs();
             taskMutationInfo.hasLocalState = !taskProperties.getLocalStateFiles().isEmpty();
             taskMutationInfo.resolved = true;
+            for (String outputPath : taskMutationInfo.outputPaths) {
+                resolvedTaskOutputs.add(outputPath, taskMutationInfo);
+            }
         }
         return taskMutationInfo;
     }
@@ -659,11 +1077,16 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
         }
         try {
             if (!selectedTask.isComplete()) {
+                Timer timer = Time.startTimer();
                 try {
                     taskExecution.execute(selectedTask.getTask());
                 } catch (Throwable e) {
                     selectedTask.setExecutionFailure(e);
                 }
+                // Up-to-date, cached and skipped tasks say nothing about how long the task takes to execute
+                if (taskDurations != null && !selectedTask.isFailed() && selectedTask.getTask().getState().getOutcome() == TaskExecutionOutcome.EXECUTED) {
+                    taskDurations.recordDuration(selectedTask.getTask(), timer.getElapsedMillis());
+                }
             }
         } finally {
             coordinationService.withStateLock(new Transformer<ResourceLockState.Disposition, ResourceLockState>() {
@@ -678,19 +1101,6 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
         }
     }
 
-    private boolean allDependenciesComplete(TaskInfo taskInfo) {
-        if (dependenciesCompleteCache.contains(taskInfo)) {
-            return true;
-        }
-
-        boolean dependenciesComplete = taskInfo.allDependenciesComplete();
-        if (dependenciesComplete) {
-            dependenciesCompleteCache.add(taskInfo);
-        }
-
-        return dependenciesComplete;
-    }
-
     private boolean allProjectsLocked() {
         for (ResourceLock lock : projectLocks.values()) {
             if (!lock.isLocked()) {
@@ -762,39 +1172,45 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
 
     @Nullable
     private Pair<TaskInfo, String> firstRunningTaskWithOverlappingMutations(Set<String> candidateTaskMutations) {
-        if (!candidateTaskMutations.isEmpty()) {
-            for (TaskInfo runningTask : runningTasks) {
-                TaskMutationInfo taskMutationInfo = taskMutations.get(runningTask);
-                Iterable<String> runningTaskMutations = Iterables.concat(taskMutationInfo.outputPaths, taskMutationInfo.destroyablePaths);
-                String firstOverlap = findFirstOverlap(candidateTaskMutations, runningTaskMutations);
-                if (firstOverlap != null) {
-                    return Pair.of(runningTask, firstOverlap);
+        final AtomicReference<Pair<TaskInfo, String>> overlap = new AtomicReference<Pair<TaskInfo, String>>();
+        for (String path : candidateTaskMutations) {
+            runningTaskMutations.visitOverlapping(path, new PathOverlapIndex.Visitor<TaskInfo>() {
+                @Override
+                public boolean visit(TaskInfo runningTask, String overlappingPath) {
+                    overlap.set(Pair.of(runningTask, overlappingPath));
+                    return false;
                 }
+            });
+            if (overlap.get() != null) {
+                break;
             }
         }
-
-        return null;
+        return overlap.get();
     }
 
     @Nullable
     private Pair<TaskInfo, String> firstTaskWithDestroyedIntermediateInput(final TaskInfo taskInfo, Set<String> destroyablePaths) {
-        if (!destroyablePaths.isEmpty()) {
-            Iterator<TaskMutationInfo> iterator = taskMutations.values().iterator();
-            while (iterator.hasNext()) {
-                TaskMutationInfo taskMutationInfo = iterator.next();
-                if (taskMutationInfo.task.isComplete() && !taskMutationInfo.consumingTasks.isEmpty()) {
-                    String firstOverlap = findFirstOverlap(destroyablePaths, taskMutationInfo.outputPaths);
-                    if (firstOverlap != null) {
+        final AtomicReference<Pair<TaskInfo, String>> overlap = new AtomicReference<Pair<TaskInfo, String>>();
+        for (String path : destroyablePaths) {
+            resolvedTaskOutputs.visitOverlapping(path, new PathOverlapIndex.Visitor<TaskMutationInfo>() {
+                @Override
+                public boolean visit(TaskMutationInfo taskMutationInfo, String overlappingPath) {
+                    if (taskMutationInfo.task.isComplete()) {
                         for (TaskInfo consumingTask : taskMutationInfo.consumingTasks) {
                             if (consumingTask != taskInfo && !isReachableFrom(consumingTask, taskInfo)) {
-                                return Pair.of(consumingTask, firstOverlap);
+                                overlap.set(Pair.of(consumingTask, overlappingPath));
+                                return false;
                             }
                         }
                     }
+                    return true;
                 }
+            });
+            if (overlap.get() != null) {
+                break;
             }
         }
-        return null;
+        return overlap.get();
     }
 
     private boolean isReachableFrom(TaskInfo fromTask, TaskInfo toTask) {
@@ -819,19 +1235,6 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
         return reachable;
     }
 
-    private static String findFirstOverlap(Iterable<String> paths1, Iterable<String> paths2) {
-        for (String path1 : paths1) {
-            for (String path2 : paths2) {
-                String overLappedPath = getOverLappedPath(path1, path2);
-                if (overLappedPath != null) {
-                    return overLappedPath;
-                }
-            }
-        }
-
-        return null;
-    }
-
     private static Set<String> getOutputPaths(Map<File, String> canonicalizedFileCache, TaskInfo task, FileCollection outputFiles, FileCollection localStateFiles) {
         try {
             return canonicalizedPaths(canonicalizedFileCache, Iterables.concat(outputFiles, localStateFiles));
@@ -852,48 +1255,56 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
         return String.format("A deadlock was detected while resolving the %s for task '%s'. This can be caused, for instance, by %s property causing dependency resolution.", plural, task, singular);
     }
 
-    private static String getOverLappedPath(String firstPath, String secondPath) {
-        if (firstPath.equals(secondPath)) {
-            return firstPath;
-        }
-        if (firstPath.length() == secondPath.length()) {
-            return null;
-        }
-
-        String shorter;
-        String longer;
-        if (firstPath.length() > secondPath.length()) {
-            shorter = secondPath;
-            longer = firstPath;
-        } else {
-            shorter = firstPath;
-            longer = secondPath;
+    private void recordTaskStarted(TaskInfo taskInfo) {
+        runningTasks.add(taskInfo);
+        TaskMutationInfo taskMutationInfo = taskMutations.get(taskInfo);
+        for (String path : Iterables.concat(taskMutationInfo.outputPaths, taskMutationInfo.destroyablePaths)) {
+            runningTaskMutations.add(path, taskInfo);
         }
-
-        boolean isOverlapping = longer.startsWith(shorter) && longer.charAt(shorter.length()) == File.separatorChar;
-        if (isOverlapping) {
-            return shorter;
-        } else {
-            return null;
+        if (preSnapshotInputs) {
+            for (TaskInfo dependent : taskInfo.getDependents()) {
+                if (pendingTasks.contains(dependent) && !preSnapshotCandidatesSeen.contains(dependent) && allDependenciesCompleteOrRunning(dependent)) {
+                    preSnapshotCandidatesSeen.add(dependent);
+                    preSnapshotCandidates.add(dependent);
+                }
+            }
         }
     }
 
-    private void recordTaskStarted(TaskInfo taskInfo) {
-        runningTasks.add(taskInfo);
+    /**
+     * When all the dependencies of a task have completed or are running, the outputs of its dependencies are known and the task will be ready once they complete.
+     */
+    private boolean allDependenciesCompleteOrRunning(TaskInfo taskInfo) {
+        for (TaskInfo dependency : Iterables.concat(taskInfo.getDependencySuccessors(), taskInfo.getMustSuccessors())) {
+            if (!dependency.isComplete() && !runningTasks.contains(dependency)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     private void recordTaskCompleted(TaskInfo taskInfo) {
         runningTasks.remove(taskInfo);
         TaskMutationInfo taskMutationInfo = taskMutations.get(taskInfo);
+        for (String path : Iterables.concat(taskMutationInfo.outputPaths, taskMutationInfo.destroyablePaths)) {
+            runningTaskMutations.remove(path, taskInfo);
+        }
         for (TaskInfo producerTask : taskMutationInfo.consumesOutputOf) {
             TaskMutationInfo producerTaskMutationInfo = taskMutations.get(producerTask);
             if (producerTaskMutationInfo.consumingTasks.remove(taskInfo) && canRemoveTaskMutation(producerTaskMutationInfo)) {
-                taskMutations.remove(producerTask);
+                removeTaskMutation(producerTaskMutationInfo);
             }
         }
 
         if (canRemoveTaskMutation(taskMutationInfo)) {
-            taskMutations.remove(taskInfo);
+            removeTaskMutation(taskMutationInfo);
+        }
+    }
+
+    private void removeTaskMutation(TaskMutationInfo taskMutationInfo) {
+        taskMutations.remove(taskMutationInfo.task);
+        for (String outputPath : taskMutationInfo.outputPaths) {
+            resolvedTaskOutputs.remove(outputPath, taskMutationInfo);
         }
     }
 
@@ -909,9 +1320,10 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
 
         taskInfo.finishExecution();
         recordTaskCompleted(taskInfo);
+        notifyDependentsOfCompletion(taskInfo);
     }
 
-    private static void enforceFinalizerTasks(TaskInfo taskInfo) {
+    private void enforceFinalizerTasks(TaskInfo taskInfo) {
         for (TaskInfo finalizerNode : taskInfo.getFinalizers()) {
             if (finalizerNode.isRequired() || finalizerNode.isMustNotRun()) {
                 enforceWithDependencies(finalizerNode, Sets.<TaskInfo>newHashSet());
@@ -919,7 +1331,7 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
         }
     }
 
-    private static void enforceWithDependencies(TaskInfo nodeInfo, Set<TaskInfo> enforcedTasks) {
+    private void enforceWithDependencies(TaskInfo nodeInfo, Set<TaskInfo> enforcedTasks) {
         Deque<TaskInfo> candidateNodes = new ArrayDeque<TaskInfo>();
         candidateNodes.add(nodeInfo);
 
@@ -930,7 +1342,14 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
 
                 candidateNodes.addAll(node.getDependencySuccessors());
 
-                if (node.isMustNotRun() || node.isRequired()) {
+                if (node.isMustNotRun()) {
+                    node.enforceRun();
+                    if (executionPlan.containsKey(node.getTask())) {
+                        pendingTasks.add(node);
+                        notifyDependentsOfEnforcement(node);
+                        enqueueIfReady(node);
+                    }
+                } else if (node.isRequired()) {
                     node.enforceRun();
                 }
             }
@@ -972,12 +1391,16 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
             // Allow currently executing and enforced tasks to complete, but skip everything else.
             if (taskInfo.isRequired()) {
                 taskInfo.skipExecution();
+                dequeue(taskInfo);
+                notifyDependentsOfCompletion(taskInfo);
                 aborted = true;
             }
 
             // If abortAll is set, also stop enforced tasks.
             if (abortAll && taskInfo.isReady()) {
                 taskInfo.abortExecution();
+                dequeue(taskInfo);
+                notifyDependentsOfCompletion(taskInfo);
                 aborted = true;
             }
         }
@@ -1023,12 +1446,7 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
     }
 
     private boolean workRemaining() {
-        for (TaskInfo taskInfo : executionQueue) {
-            if (!taskInfo.isComplete()) {
-                return true;
-            }
-        }
-        return false;
+        return !pendingTasks.isEmpty();
     }
 
     private static class GraphEdge {
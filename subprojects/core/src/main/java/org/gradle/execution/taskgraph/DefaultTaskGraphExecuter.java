@@ -49,6 +49,8 @@ import org.gradle.internal.operations.BuildOperationCategory;
 import org.gradle.internal.operations.BuildOperationDescriptor;
 import org.gradle.internal.operations.BuildOperationRef;
 import org.gradle.internal.resources.ResourceLockCoordinationService;
+import org.gradle.internal.resources.ResourceLockCoordinationStatistics;
+import org.gradle.internal.resources.TargetedResourceLockCoordinationService;
 import org.gradle.internal.time.Time;
 import org.gradle.internal.time.Timer;
 import org.gradle.internal.work.WorkerLeaseService;
@@ -56,9 +58,14 @@ import org.gradle.listener.ClosureBackedMethodInvocationDispatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 @NonNullApi
 public class DefaultTaskGraphExecuter implements TaskGraphExecuter {
@@ -71,22 +78,32 @@ public class DefaultTaskGraphExecuter implements TaskGraphExecuter {
     private final TaskPlanExecutor taskPlanExecutor;
     // This currently needs to be lazy, as it uses state that is not available when the graph is created
     private final Factory<? extends TaskExecuter> taskExecuter;
+    // Lazy, so that the task history is only opened when tasks are executed
+    private final Factory<? extends TaskDurationRepository> taskDurations;
+    private final boolean prioritizeCriticalPath;
     private final ListenerBroadcast<TaskExecutionGraphListener> graphListeners;
     private final ListenerBroadcast<TaskExecutionListener> taskListeners;
     private final DefaultTaskExecutionPlan taskExecutionPlan;
     private final BuildOperationExecutor buildOperationExecutor;
+    private final ResourceLockCoordinationService coordinationService;
+    private final GradleInternal gradle;
     private TaskGraphState taskGraphState = TaskGraphState.EMPTY;
 
     private final Set<Task> requestedTasks = Sets.newTreeSet();
     private Spec<? super Task> filter = Specs.SATISFIES_ALL;
 
-    public DefaultTaskGraphExecuter(ListenerManager listenerManager, TaskPlanExecutor taskPlanExecutor, Factory<? extends TaskExecuter> taskExecuter, BuildCancellationToken cancellationToken, BuildOperationExecutor buildOperationExecutor, WorkerLeaseService workerLeaseService, ResourceLockCoordinationService coordinationService, GradleInternal gradleInternal) {
+    public DefaultTaskGraphExecuter(ListenerManager listenerManager, TaskPlanExecutor taskPlanExecutor, Factory<? extends TaskExecuter> taskExecuter, BuildCancellationToken cancellationToken, BuildOperationExecutor buildOperationExecutor, WorkerLeaseService workerLeaseService, ResourceLockCoordinationService coordinationService, GradleInternal gradleInternal, Factory<? extends TaskDurationRepository> taskDurations, boolean prioritizeCriticalPath, boolean recordWorkerWaits) {
         this.taskPlanExecutor = taskPlanExecutor;
         this.taskExecuter = taskExecuter;
+        this.taskDurations = taskDurations;
+        this.prioritizeCriticalPath = prioritizeCriticalPath;
         this.buildOperationExecutor = buildOperationExecutor;
+        this.coordinationService = coordinationService;
+        this.gradle = gradleInternal;
         graphListeners = listenerManager.createAnonymousBroadcaster(TaskExecutionGraphListener.class);
         taskListeners = listenerManager.createAnonymousBroadcaster(TaskExecutionListener.class);
         taskExecutionPlan = new DefaultTaskExecutionPlan(cancellationToken, coordinationService, workerLeaseService, gradleInternal);
+        taskExecutionPlan.recordWorkerWaits(recordWorkerWaits);
     }
 
     public void useFailureHandler(TaskFailureHandler handler) {
@@ -126,12 +143,121 @@ public class DefaultTaskGraphExecuter implements TaskGraphExecuter {
         ensurePopulated();
 
         graphListeners.getSource().graphPopulated(this);
+        ResourceLockCoordinationStatistics lockStatisticsBefore = getLockStatistics();
         try {
+            if (prioritizeCriticalPath) {
+                taskExecutionPlan.useTaskDurations(taskDurations.create(), true);
+            }
             taskPlanExecutor.process(taskExecutionPlan, new EventFiringTaskWorker(taskExecuter.create(), buildOperationExecutor.getCurrentOperation()));
             LOGGER.debug("Timing: Executing the DAG took " + clock.getElapsed());
         } finally {
+            Map<String, List<TaskWorkerWait>> workerWaits = taskExecutionPlan.getWorkerWaits();
             taskExecutionPlan.clear();
+            if (!workerWaits.isEmpty()) {
+                reportWorkerWaits(workerWaits);
+            }
+            if (lockStatisticsBefore != null) {
+                reportLockContention(getLockStatistics().since(lockStatisticsBefore));
+            }
+        }
+    }
+
+    @Nullable
+    private ResourceLockCoordinationStatistics getLockStatistics() {
+        if (coordinationService instanceof TargetedResourceLockCoordinationService) {
+            return ((TargetedResourceLockCoordinationService) coordinationService).getStatistics();
         }
+        return null;
+    }
+
+    private void reportLockContention(final ResourceLockCoordinationStatistics statistics) {
+        LOGGER.debug("Resource lock contention while executing the DAG: {}", statistics);
+        buildOperationExecutor.run(new RunnableBuildOperation() {
+            @Override
+            public void run(BuildOperationContext context) {
+                context.setResult(new ResourceLockContentionBuildOperationType.Result() {
+                    @Override
+                    public long getStateLockAcquisitions() {
+                        return statistics.getStateLockAcquisitions();
+                    }
+
+                    @Override
+                    public long getContendedStateLockAcquisitions() {
+                        return statistics.getContendedStateLockAcquisitions();
+                    }
+
+                    @Override
+                    public long getStateLockWaitTimeMillis() {
+                        return statistics.getStateLockWaitTime(TimeUnit.MILLISECONDS);
+                    }
+
+                    @Override
+                    public long getWaits() {
+                        return statistics.getWaits();
+                    }
+
+                    @Override
+                    public long getTargetedWaits() {
+                        return statistics.getTargetedWaits();
+                    }
+
+                    @Override
+                    public long getFutileWakeups() {
+                        return statistics.getFutileWakeups();
+                    }
+                });
+            }
+
+            @Override
+            public BuildOperationDescriptor.Builder description() {
+                return BuildOperationDescriptor.displayName("Resource lock contention")
+                    .details(new ResourceLockContentionBuildOperationType.Details() {
+                        @Override
+                        public String getBuildPath() {
+                            return gradle.getIdentityPath().getPath();
+                        }
+                    });
+            }
+        });
+    }
+
+    private void reportWorkerWaits(Map<String, List<TaskWorkerWait>> workerWaits) {
+        final List<TaskWorkerWaitsBuildOperationType.Worker> workers = new ArrayList<TaskWorkerWaitsBuildOperationType.Worker>(workerWaits.size());
+        for (final Map.Entry<String, List<TaskWorkerWait>> entry : workerWaits.entrySet()) {
+            workers.add(new TaskWorkerWaitsBuildOperationType.Worker() {
+                @Override
+                public String getThreadName() {
+                    return entry.getKey();
+                }
+
+                @Override
+                public List<TaskWorkerWaitsBuildOperationType.Wait> getWaits() {
+                    return Collections.<TaskWorkerWaitsBuildOperationType.Wait>unmodifiableList(entry.getValue());
+                }
+            });
+        }
+        buildOperationExecutor.run(new RunnableBuildOperation() {
+            @Override
+            public void run(BuildOperationContext context) {
+                context.setResult(new TaskWorkerWaitsBuildOperationType.Result() {
+                    @Override
+                    public List<TaskWorkerWaitsBuildOperationType.Worker> getWorkers() {
+                        return workers;
+                    }
+                });
+            }
+
+            @Override
+            public BuildOperationDescriptor.Builder description() {
+                return BuildOperationDescriptor.displayName("Task worker waits")
+                    .details(new TaskWorkerWaitsBuildOperationType.Details() {
+                        @Override
+                        public String getBuildPath() {
+                            return gradle.getIdentityPath().getPath();
+                        }
+                    });
+            }
+        });
     }
 
     public void addTaskExecutionGraphListener(TaskExecutionGraphListener listener) {
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.execution.taskgraph;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An index of values keyed by canonical file system paths, which finds the values whose paths overlap a given path in time proportional to the depth of that path.
+ * Two paths overlap when they are equal, or when one of them is an ancestor of the other.
+ *
+ * <p>The same value can be added for many paths, and many values can be added for the same path.</p>
+ */
+class PathOverlapIndex<T> {
+    private final Node<T> root = new Node<T>();
+
+    public void add(String path, T value) {
+        Node<T> node = root;
+        node.count++;
+        int start = 0;
+        while (start <= path.length()) {
+            int end = segmentEnd(path, start);
+            String segment = path.substring(start, end);
+            Node<T> child = node.children.get(segment);
+            if (child == null) {
+                child = new Node<T>();
+                node.children.put(segment, child);
+            }
+            node = child;
+            node.count++;
+            start = end + 1;
+        }
+        node.path = path;
+        node.values.add(value);
+    }
+
+    public void remove(String path, T value) {
+        List<Node<T>> nodes = new ArrayList<Node<T>>();
+        List<String> segments = new ArrayList<String>();
+        Node<T> node = root;
+        int start = 0;
+        while (start <= path.length()) {
+            int end = segmentEnd(path, start);
+            String segment = path.substring(start, end);
+            nodes.add(node);
+            segments.add(segment);
+            node = node.children.get(segment);
+            if (node == null) {
+                return;
+            }
+            start = end + 1;
+        }
+        if (!node.values.remove(value)) {
+            return;
+        }
+        node.count--;
+        for (int i = nodes.size() - 1; i >= 0; i--) {
+            Node<T> parent = nodes.get(i);
+            parent.count--;
+            if (node.count == 0) {
+                parent.children.remove(segments.get(i));
+            }
+            node = parent;
+        }
+    }
+
+    public boolean isEmpty() {
+        return root.count == 0;
+    }
+
+    public void clear() {
+        root.children.clear();
+        root.count = 0;
+    }
+
+    /**
+     * Visits the values whose paths overlap the given path, until the visitor asks to stop. Each value is visited together with the overlapping part
+     * of the paths, which is the shorter of the two paths.
+     *
+     * @return false if the visitor asked to stop, true otherwise.
+     */
+    public boolean visitOverlapping(String path, Visitor<? super T> visitor) {
+        Node<T> node = root;
+        int start = 0;
+        while (start <= path.length()) {
+            int end = segmentEnd(path, start);
+            node = node.children.get(path.substring(start, end));
+            if (node == null) {
+                return true;
+            }
+            if (end == path.length()) {
+                // Reached the node for the path itself, so every value at or below it overlaps
+                return visitAll(node, path, visitor);
+            }
+            for (T value : node.values) {
+                if (!visitor.visit(value, node.path)) {
+                    return false;
+                }
+            }
+            start = end + 1;
+        }
+        return true;
+    }
+
+    private static <T> boolean visitAll(Node<T> node, String overlappingPath, Visitor<? super T> visitor) {
+        for (T value : node.values) {
+            if (!visitor.visit(value, overlappingPath)) {
+                return false;
+            }
+        }
+        for (Node<T> child : node.children.values()) {
+            if (!visitAll(child, overlappingPath, visitor)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int segmentEnd(String path, int start) {
+        int end = path.indexOf(File.separatorChar, start);
+        return end < 0 ? path.length() : end;
+    }
+
+    public interface Visitor<T> {
+        /**
+         * @return true to continue visiting, false to stop.
+         */
+        boolean visit(T value, String overlappingPath);
+    }
+
+    private static class Node<T> {
+        final Map<String, Node<T>> children = new HashMap<String, Node<T>>();
+        final List<T> values = new ArrayList<T>(1);
+        String path;
+        int count;
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.execution.taskgraph;
+
+import org.gradle.internal.operations.BuildOperationType;
+
+/**
+ * Reports how contended the resource lock state was while the tasks of a build were executed.
+ * Only emitted when the {@link org.gradle.internal.resources.TargetedResourceLockCoordinationService} is in use.
+ *
+ * @since 4.7
+ */
+public final class ResourceLockContentionBuildOperationType implements BuildOperationType<ResourceLockContentionBuildOperationType.Details, ResourceLockContentionBuildOperationType.Result> {
+
+    public interface Details {
+
+        /**
+         * The build path of the executed task graph.
+         * Never null.
+         */
+        String getBuildPath();
+    }
+
+    /**
+     * The counters include the locking done by every build running in the process at the same time.
+     */
+    public interface Result {
+
+        long getStateLockAcquisitions();
+
+        long getContendedStateLockAcquisitions();
+
+        long getStateLockWaitTimeMillis();
+
+        /**
+         * The number of times a thread waited for the resource lock state to change.
+         */
+        long getWaits();
+
+        /**
+         * The number of those waits that only waited for a specific lock to be released.
+         */
+        long getTargetedWaits();
+
+        /**
+         * The number of times a waiting thread was woken up, only to find that it still could not make progress.
+         */
+        long getFutileWakeups();
+    }
+
+    private ResourceLockContentionBuildOperationType() {
+    }
+}
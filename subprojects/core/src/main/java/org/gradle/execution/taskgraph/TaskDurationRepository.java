@@ -0,0 +1,34 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.execution.taskgraph;
+
+import org.gradle.api.internal.TaskInternal;
+
+import javax.annotation.Nullable;
+
+/**
+ * Remembers how long each task took to execute, so that later builds can use the durations to decide which tasks to start first.
+ */
+public interface TaskDurationRepository {
+    /**
+     * Returns the duration in milliseconds of the most recent execution of the given task, or null when the task has not been executed before.
+     */
+    @Nullable
+    Long getDuration(TaskInternal task);
+
+    void recordDuration(TaskInternal task, long durationMillis);
+}
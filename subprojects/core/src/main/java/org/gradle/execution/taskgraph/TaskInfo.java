@@ -19,6 +19,8 @@ package org.gradle.execution.taskgraph;
 import org.gradle.api.internal.TaskInternal;
 
 import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.TreeSet;
 
 public class TaskInfo implements Comparable<TaskInfo> {
@@ -36,6 +38,9 @@ public class TaskInfo implements Comparable<TaskInfo> {
     private final TreeSet<TaskInfo> mustSuccessors = new TreeSet<TaskInfo>();
     private final TreeSet<TaskInfo> shouldSuccessors = new TreeSet<TaskInfo>();
     private final TreeSet<TaskInfo> finalizers = new TreeSet<TaskInfo>();
+    private final List<TaskInfo> dependents = new ArrayList<TaskInfo>();
+    private int incompleteDependencies;
+    private int queuePosition;
 
     public TaskInfo(TaskInternal task) {
         this.task = task;
@@ -179,6 +184,60 @@ public class TaskInfo implements Comparable<TaskInfo> {
         return shouldSuccessors;
     }
 
+    /**
+     * Returns the tasks of the execution plan that wait for this task to complete, because they either depend on it or must run after it.
+     */
+    public List<TaskInfo> getDependents() {
+        return dependents;
+    }
+
+    /**
+     * Returns the position of this task in the execution queue.
+     */
+    public int getQueuePosition() {
+        return queuePosition;
+    }
+
+    /**
+     * Forgets the dependents of this task, in preparation for tracking the completion of the dependencies of the tasks in the execution queue.
+     */
+    public void resetDependents(int queuePosition) {
+        this.queuePosition = queuePosition;
+        dependents.clear();
+        incompleteDependencies = 0;
+    }
+
+    /**
+     * Records that the given task waits for this task to complete.
+     */
+    public void addDependent(TaskInfo dependent) {
+        dependents.add(dependent);
+        if (!isComplete()) {
+            dependent.incompleteDependencies++;
+        }
+    }
+
+    public boolean hasIncompleteDependencies() {
+        return incompleteDependencies > 0;
+    }
+
+    /**
+     * Called when a dependency of this task completes.
+     *
+     * @return true when all dependencies of this task tracked by the execution plan are now complete.
+     */
+    public boolean dependencyCompleted() {
+        assert incompleteDependencies > 0;
+        return --incompleteDependencies == 0;
+    }
+
+    /**
+     * Called when a dependency of this task that was considered complete is enforced to run.
+     */
+    public void dependencyEnforced() {
+        incompleteDependencies++;
+    }
+
     public boolean getDependenciesProcessed() {
         return dependenciesProcessed;
     }
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.execution.taskgraph;
+
+/**
+ * A period of time during which a task worker was waiting for a task to execute.
+ */
+class TaskWorkerWait implements TaskWorkerWaitsBuildOperationType.Wait {
+    enum Reason {
+        /**
+         * Blocked acquiring the resource lock state, while another thread held it.
+         */
+        STATE_LOCK,
+        /**
+         * No task was ready to execute, because they are all waiting for their dependencies to complete.
+         */
+        DEPENDENCIES,
+        /**
+         * The tasks that were ready to execute belong to projects that were locked by other workers.
+         */
+        PROJECT_LOCK,
+        /**
+         * No worker lease was available.
+         */
+        WORKER_LEASE,
+        /**
+         * The tasks that were ready to execute have outputs or destroyables that overlap with those of running tasks.
+         */
+        OUTPUT_OVERLAP
+    }
+
+    private final Reason reason;
+    private final long startTime;
+    private final long endTime;
+
+    TaskWorkerWait(Reason reason, long startTime, long endTime) {
+        this.reason = reason;
+        this.startTime = startTime;
+        this.endTime = endTime;
+    }
+
+    @Override
+    public String getReason() {
+        return reason.name();
+    }
+
+    @Override
+    public long getStartTime() {
+        return startTime;
+    }
+
+    @Override
+    public long getEndTime() {
+        return endTime;
+    }
+
+    @Override
+    public String toString() {
+        return reason + " " + startTime + "-" + endTime;
+    }
+}
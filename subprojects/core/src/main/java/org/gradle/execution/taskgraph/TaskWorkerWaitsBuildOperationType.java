@@ -0,0 +1,72 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.execution.taskgraph;
+
+import org.gradle.internal.operations.BuildOperationType;
+
+import java.util.List;
+
+/**
+ * Reports when each task worker of a build was waiting for a task to execute, and why.
+ * Together with the task execution operations, which run on the worker threads, this describes how each worker spent its time.
+ *
+ * @since 4.7
+ */
+public final class TaskWorkerWaitsBuildOperationType implements BuildOperationType<TaskWorkerWaitsBuildOperationType.Details, TaskWorkerWaitsBuildOperationType.Result> {
+
+    public interface Details {
+
+        /**
+         * The build path of the executed task graph.
+         * Never null.
+         */
+        String getBuildPath();
+    }
+
+    public interface Result {
+
+        /**
+         * The workers that waited, in the order in which they first waited.
+         */
+        List<Worker> getWorkers();
+    }
+
+    public interface Worker {
+
+        /**
+         * The name of the thread that the worker ran on.
+         */
+        String getThreadName();
+
+        List<Wait> getWaits();
+    }
+
+    public interface Wait {
+
+        /**
+         * One of {@code STATE_LOCK}, {@code DEPENDENCIES}, {@code PROJECT_LOCK}, {@code WORKER_LEASE} or {@code OUTPUT_OVERLAP}.
+         */
+        String getReason();
+
+        long getStartTime();
+
+        long getEndTime();
+    }
+
+    private TaskWorkerWaitsBuildOperationType() {
+    }
+}
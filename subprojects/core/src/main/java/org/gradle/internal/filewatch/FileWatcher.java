@@ -39,4 +39,11 @@ public interface FileWatcher extends Stoppable {
     boolean isRunning();
 
     void watch(FileSystemSubset fileSystemSubset) throws IOException;
+
+    /**
+     * Delivers the events for all changes that the file system has reported to this watcher so far, before returning.
+     *
+     * @return false when the watcher cannot guarantee that all changes made before the call have been delivered, for example because it is not running or it polls the file system for changes.
+     */
+    boolean deliverPendingEvents();
 }
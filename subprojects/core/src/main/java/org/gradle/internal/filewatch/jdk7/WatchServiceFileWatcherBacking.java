@@ -35,12 +35,17 @@ import java.lang.ref.SoftReference;
 import java.nio.file.ClosedWatchServiceException;
 import java.nio.file.WatchService;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class WatchServiceFileWatcherBacking {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(WatchServiceFileWatcherBacking.class);
+    // Kept short, as the poller thread holds the delivery lock while it waits for events
+    private static final long POLL_TIMEOUT_MILLIS = 100;
 
     private final AtomicBoolean started = new AtomicBoolean();
     private final AtomicBoolean running = new AtomicBoolean();
@@ -51,6 +56,8 @@ public class WatchServiceFileWatcherBacking {
     private final WatchServiceRegistrar watchServiceRegistrar;
     private final WatchService watchService;
     private final WatchServicePoller poller;
+    // Held while events are taken from the watch service and delivered, so that pending events can be delivered on demand
+    private final Lock deliveryLock = new ReentrantLock(true);
 
     private final FileWatcher fileWatcher = new FileWatcher() {
         @Override
@@ -63,6 +70,11 @@ public class WatchServiceFileWatcherBacking {
             WatchServiceFileWatcherBacking.this.watchServiceRegistrar.watch(fileSystemSubset);
         }
 
+        @Override
+        public boolean deliverPendingEvents() {
+            return WatchServiceFileWatcherBacking.this.deliverPendingEvents();
+        }
+
         @Override
         public void stop() {
             WatchServiceFileWatcherBacking.this.stop();
@@ -126,18 +138,46 @@ public class WatchServiceFileWatcherBacking {
 
     private void pumpEvents() throws InterruptedException {
         while (isRunning()) {
+            deliveryLock.lockInterruptibly();
             try {
-                List<FileWatcherEvent> events = poller.takeEvents();
+                List<FileWatcherEvent> events = poller.takeEvents(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
                 if (events != null) {
                     deliverEvents(events);
                 }
             } catch (ClosedWatchServiceException e) {
                 LOGGER.debug("Received ClosedWatchServiceException, stopping");
                 stop();
+            } finally {
+                deliveryLock.unlock();
             }
         }
     }
 
+    private boolean deliverPendingEvents() {
+        if (isPolling()) {
+            // Changes are only noticed when the watch service next polls the file system
+            return false;
+        }
+        deliveryLock.lock();
+        try {
+            List<FileWatcherEvent> events = poller.pollEvents();
+            while (events != null) {
+                deliverEvents(events);
+                events = poller.pollEvents();
+            }
+            return running.get();
+        } catch (ClosedWatchServiceException e) {
+            return false;
+        } finally {
+            deliveryLock.unlock();
+        }
+    }
+
+    private boolean isPolling() {
+        // The JDK falls back to polling the file system every few seconds where there is no native watch service, e.g. on macOS
+        return watchService.getClass().getName().endsWith(".PollingWatchService");
+    }
+
     private void deliverEvents(List<FileWatcherEvent> events) {
         for (FileWatcherEvent event : events) {
             if (!isRunning()) {
@@ -16,6 +16,7 @@
 
 package org.gradle.internal.filewatch.jdk7;
 
+import com.google.common.collect.Lists;
 import org.gradle.api.Transformer;
 import org.gradle.internal.Cast;
 import org.gradle.internal.filewatch.FileWatcherEvent;
@@ -29,12 +30,10 @@ import java.nio.file.StandardWatchEventKinds;
 import java.nio.file.WatchEvent;
 import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
-import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 class WatchServicePoller {
-    private static final int POLL_TIMEOUT_SECONDS = 5;
     private final WatchService watchService;
 
     WatchServicePoller(WatchService watchService) throws IOException {
@@ -42,8 +41,20 @@ class WatchServicePoller {
     }
 
     @Nullable
-    public List<FileWatcherEvent> takeEvents() throws InterruptedException {
-        WatchKey watchKey = watchService.poll(POLL_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    public List<FileWatcherEvent> takeEvents(long timeout, TimeUnit unit) throws InterruptedException {
+        WatchKey watchKey = watchService.poll(timeout, unit);
+        if (watchKey != null) {
+            return handleWatchKey(watchKey);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the events of the next signalled key without waiting, or null when no key is signalled.
+     */
+    @Nullable
+    public List<FileWatcherEvent> pollEvents() {
+        WatchKey watchKey = watchService.poll();
         if (watchKey != null) {
             return handleWatchKey(watchKey);
         }
@@ -66,12 +77,18 @@ class WatchServicePoller {
         };
 
         List<WatchEvent<?>> watchEvents = watchKey.pollEvents();
-        watchKey.reset();
+        boolean valid = watchKey.reset();
+        List<FileWatcherEvent> events;
         if (watchEvents.isEmpty()) {
-            return Collections.singletonList(FileWatcherEvent.delete(watchedPath.toFile()));
+            events = Lists.newArrayList(FileWatcherEvent.delete(watchedPath.toFile()));
         } else {
-            return CollectionUtils.collect(watchEvents, watchEventTransformer);
+            events = CollectionUtils.collect(watchEvents, watchEventTransformer);
+        }
+        if (!valid) {
+            // The key is no longer registered, so changes below the watched path are not reported anymore
+            events.add(FileWatcherEvent.undefined());
         }
+        return events;
     }
 
     private FileWatcherEvent toEvent(WatchEvent.Kind kind, File file) {
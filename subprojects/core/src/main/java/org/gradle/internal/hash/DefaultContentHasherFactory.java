@@ -17,12 +17,32 @@
 package org.gradle.internal.hash;
 
 public class DefaultContentHasherFactory implements ContentHasherFactory {
-    private static final HashCode SIGNATURE = Hashing.md5().hashString(DefaultContentHasherFactory.class.getName());
+    /**
+     * Selects the hash function used to hash file content. Defaults to {@link HashAlgorithm#MD5}, as content hashes contribute to build cache keys, which are shared with other machines.
+     */
+    public static final String HASH_ALGORITHM_PROPERTY = "org.gradle.internal.hash.content";
+
+    private final HashAlgorithm algorithm;
+    private final HashCode signature;
+
+    public DefaultContentHasherFactory() {
+        this(HashAlgorithm.fromSystemProperty(HASH_ALGORITHM_PROPERTY, HashAlgorithm.MD5));
+    }
+
+    public DefaultContentHasherFactory(HashAlgorithm algorithm) {
+        this.algorithm = algorithm;
+        this.signature = algorithm.getHashFunction().hashString(DefaultContentHasherFactory.class.getName());
+    }
+
+    @Override
+    public HashAlgorithm getAlgorithm() {
+        return algorithm;
+    }
 
     @Override
     public Hasher create() {
-        Hasher hasher = Hashing.md5().newHasher();
-        hasher.putHash(SIGNATURE);
+        Hasher hasher = algorithm.getHashFunction().newHasher();
+        hasher.putHash(signature);
         return hasher;
     }
 }
@@ -18,14 +18,20 @@ package org.gradle.internal.hash;
 import org.gradle.api.UncheckedIOException;
 import org.gradle.internal.io.NullOutputStream;
 
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Queue;
 import java.util.concurrent.ArrayBlockingQueue;
 
 public class DefaultStreamHasher implements StreamHasher {
+    private static final int DIRECT_BUFFER_SIZE = 64 * 1024;
+
     private final Queue<byte[]> buffers = new ArrayBlockingQueue<byte[]>(16);
+    private final Queue<ByteBuffer> directBuffers = new ArrayBlockingQueue<ByteBuffer>(16);
     private final ContentHasherFactory hasherFactory;
 
     public DefaultStreamHasher(ContentHasherFactory hasherFactory) {
@@ -35,6 +41,13 @@ public class DefaultStreamHasher implements StreamHasher {
     @Override
     public HashCode hash(InputStream inputStream) {
         try {
+            if (inputStream instanceof FileInputStream) {
+                FileChannel channel = ((FileInputStream) inputStream).getChannel();
+                if (channel.size() - channel.position() >= DIRECT_BUFFER_SIZE) {
+                    // Read the content of larger files directly from the file, without copying it to the heap first
+                    return doHash(channel);
+                }
+            }
             return doHash(inputStream, NullOutputStream.INSTANCE);
         } catch (IOException e) {
             throw new UncheckedIOException("Failed to create MD5 hash for file content.", e);
@@ -64,6 +77,34 @@ public class DefaultStreamHasher implements StreamHasher {
         }
     }
 
+    private HashCode doHash(FileChannel channel) throws IOException {
+        Hasher hasher = hasherFactory.create();
+        ByteBuffer buffer = takeDirectBuffer();
+        try {
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                hasher.putBytes(buffer);
+                buffer.clear();
+            }
+        } finally {
+            returnDirectBuffer(buffer);
+        }
+        return hasher.hash();
+    }
+
+    private void returnDirectBuffer(ByteBuffer buffer) {
+        buffer.clear();
+        directBuffers.offer(buffer);
+    }
+
+    private ByteBuffer takeDirectBuffer() {
+        ByteBuffer buffer = directBuffers.poll();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(DIRECT_BUFFER_SIZE);
+        }
+        return buffer;
+    }
+
     private void returnBuffer(byte[] buffer) {
         // Retain buffer if there is capacity in the queue, otherwise discard
         buffers.offer(buffer);
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.operations.trace;
+
+import com.google.common.collect.ImmutableMap;
+import groovy.json.JsonOutput;
+import org.gradle.StartParameter;
+import org.gradle.execution.taskgraph.TaskWorkerWaitsBuildOperationType;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.concurrent.Stoppable;
+import org.gradle.internal.event.ListenerManager;
+import org.gradle.internal.operations.BuildOperationDescriptor;
+import org.gradle.internal.operations.BuildOperationListener;
+import org.gradle.internal.operations.OperationFinishEvent;
+import org.gradle.internal.operations.OperationIdentifier;
+import org.gradle.internal.operations.OperationProgressEvent;
+import org.gradle.internal.operations.OperationStartEvent;
+import org.gradle.util.GFileUtils;
+
+import javax.annotation.Nullable;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Writes a timeline of the build operations of a build, showing which thread ran each operation and when.
+ * Can be enabled for any build with `-Dorg.gradle.internal.operations.timeline=«path-base»`.
+ *
+ * Imposes no overhead when not enabled. In particular, task workers only record the periods during which they wait when it is enabled, see {@link #isEnabled(StartParameter)}.
+ *
+ * A single file is created, «path-base»-timeline.json, in the Chrome trace event format.
+ * It can be opened with chrome://tracing, or any other viewer for this format.
+ * Each thread is shown as a row, with nested build operations stacked on top of each other.
+ * The periods of time during which task workers were waiting for a task to execute, and the reason why, are shown on the rows of the workers.
+ * The file is written while the build runs, so that its size is not limited by the available memory.
+ *
+ * The «path-base» param is optional.
+ * If invoked as `-Dorg.gradle.internal.operations.timeline`, a base value of "operations" will be used.
+ *
+ * @since 4.7
+ */
+public class BuildOperationTimeline implements Stoppable {
+
+    public static final String SYSPROP = "org.gradle.internal.operations.timeline";
+
+    private final ListenerManager listenerManager;
+    private final Writer writer;
+    private final ConcurrentMap<OperationIdentifier, RunningOperation> runningOperations = new ConcurrentHashMap<OperationIdentifier, RunningOperation>();
+    private final Map<String, Integer> threadIds = new HashMap<String, Integer>();
+    private boolean firstEvent = true;
+
+    private final BuildOperationListener listener = new TimelineListener();
+
+    public BuildOperationTimeline(StartParameter startParameter, ListenerManager listenerManager) {
+        this.listenerManager = listenerManager;
+
+        String basePath = getBasePath(startParameter);
+        if (basePath == null) {
+            this.writer = null;
+            return;
+        }
+
+        try {
+            File timelineFile = new File((basePath.trim().isEmpty() ? "operations" : basePath) + "-timeline.json").getAbsoluteFile();
+            GFileUtils.mkdirs(timelineFile.getParentFile());
+            this.writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(timelineFile), "UTF-8"));
+            writer.write("[");
+        } catch (IOException e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        }
+
+        listenerManager.addListener(listener);
+    }
+
+    /**
+     * Returns whether a timeline is written for builds using the given start parameter.
+     */
+    public static boolean isEnabled(StartParameter startParameter) {
+        return getBasePath(startParameter) != null;
+    }
+
+    @Nullable
+    private static String getBasePath(StartParameter startParameter) {
+        String basePath = startParameter.getSystemPropertiesArgs().get(SYSPROP);
+        if (basePath == null) {
+            basePath = System.getProperty(SYSPROP);
+        }
+        if (basePath == null || basePath.equals(Boolean.FALSE.toString())) {
+            return null;
+        }
+        return basePath;
+    }
+
+    @Override
+    public void stop() {
+        if (writer != null) {
+            listenerManager.removeListener(listener);
+            synchronized (this) {
+                try {
+                    writer.write("\n]\n");
+                    writer.close();
+                } catch (IOException e) {
+                    throw UncheckedException.throwAsUncheckedException(e);
+                }
+            }
+        }
+    }
+
+    private synchronized void writeSlice(String threadName, String name, String category, long startTime, long endTime) {
+        int threadId = threadId(threadName);
+        write(ImmutableMap.<String, Object>builder()
+            .put("name", name)
+            .put("cat", category)
+            .put("ph", "X")
+            .put("ts", startTime * 1000)
+            .put("dur", (endTime - startTime) * 1000)
+            .put("pid", 1)
+            .put("tid", threadId)
+            .build());
+    }
+
+    private int threadId(String threadName) {
+        Integer threadId = threadIds.get(threadName);
+        if (threadId == null) {
+            threadId = threadIds.size() + 1;
+            threadIds.put(threadName, threadId);
+            write(ImmutableMap.of(
+                "name", "thread_name",
+                "ph", "M",
+                "pid", 1,
+                "tid", threadId,
+                "args", ImmutableMap.of("name", threadName)));
+        }
+        return threadId;
+    }
+
+    private void write(Map<String, ?> event) {
+        try {
+            writer.write(firstEvent ? "\n" : ",\n");
+            firstEvent = false;
+            writer.write(JsonOutput.toJson(event));
+        } catch (IOException e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        }
+    }
+
+    private static class RunningOperation {
+        final String threadName;
+        final long startTime;
+
+        RunningOperation(String threadName, long startTime) {
+            this.threadName = threadName;
+            this.startTime = startTime;
+        }
+    }
+
+    private class TimelineListener implements BuildOperationListener {
+        @Override
+        public void started(BuildOperationDescriptor buildOperation, OperationStartEvent startEvent) {
+            // Operations are started on the thread that runs them
+            runningOperations.put(buildOperation.getId(), new RunningOperation(Thread.currentThread().getName(), startEvent.getStartTime()));
+        }
+
+        @Override
+        public void progress(OperationIdentifier operationIdentifier, OperationProgressEvent progressEvent) {
+        }
+
+        @Override
+        public void finished(BuildOperationDescriptor buildOperation, OperationFinishEvent finishEvent) {
+            RunningOperation operation = runningOperations.remove(buildOperation.getId());
+            if (operation == null) {
+                return;
+            }
+            writeSlice(operation.threadName, buildOperation.getDisplayName(), buildOperation.getOperationType().name(), operation.startTime, finishEvent.getEndTime());
+
+            if (finishEvent.getResult() instanceof TaskWorkerWaitsBuildOperationType.Result) {
+                TaskWorkerWaitsBuildOperationType.Result result = (TaskWorkerWaitsBuildOperationType.Result) finishEvent.getResult();
+                for (TaskWorkerWaitsBuildOperationType.Worker worker : result.getWorkers()) {
+                    for (TaskWorkerWaitsBuildOperationType.Wait wait : worker.getWaits()) {
+                        writeSlice(worker.getThreadName(), "Waiting: " + wait.getReason(), "wait", wait.getStartTime(), wait.getEndTime());
+                    }
+                }
+            }
+        }
+    }
+}
@@ -37,6 +37,7 @@ import org.gradle.internal.operations.DelegatingBuildOperationExecutor;
 import org.gradle.internal.operations.logging.LoggingBuildOperationProgressBroadcaster;
 import org.gradle.internal.operations.notify.BuildOperationNotificationBridge;
 import org.gradle.internal.operations.notify.BuildOperationNotificationListenerRegistrar;
+import org.gradle.internal.operations.trace.BuildOperationTimeline;
 import org.gradle.internal.operations.trace.BuildOperationTrace;
 import org.gradle.internal.progress.BuildProgressLogger;
 import org.gradle.internal.resources.ResourceLockCoordinationService;
@@ -64,6 +65,7 @@ import java.io.IOException;
 public class CrossBuildSessionScopeServices implements Closeable {
 
     private final BuildOperationTrace buildOperationTrace;
+    private final BuildOperationTimeline buildOperationTimeline;
     private final BuildOperationNotificationBridge buildOperationNotificationBridge;
     private final LoggingBuildOperationProgressBroadcaster loggingBuildOperationProgressBroadcaster;
     private final BuildOperationListenerManager buildOperationListenerManager;
@@ -77,6 +79,7 @@ public class CrossBuildSessionScopeServices implements Closeable {
         ListenerManager crossSessionListenerManager = globalListenerManager.createChild();
         this.buildOperationListenerManager = new DefaultBuildOperationListenerManager(crossSessionListenerManager);
         this.buildOperationTrace = new BuildOperationTrace(startParameter, globalListenerManager);
+        this.buildOperationTimeline = new BuildOperationTimeline(startParameter, globalListenerManager);
         this.buildOperationNotificationBridge = new BuildOperationNotificationBridge(buildOperationListenerManager, globalListenerManager);
 
         LoggingManagerInternal rootLoggingManager = parent.get(DefaultLoggingManagerFactory.class).getRoot();
@@ -107,6 +110,7 @@ public class CrossBuildSessionScopeServices implements Closeable {
     public void close() throws IOException {
         new CompositeStoppable().add(
             buildOperationTrace,
+            buildOperationTimeline,
             buildOperationNotificationBridge,
             loggingBuildOperationProgressBroadcaster,
             services
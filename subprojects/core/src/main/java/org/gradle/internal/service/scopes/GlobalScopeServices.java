@@ -96,6 +96,7 @@ import org.gradle.internal.remote.MessagingServer;
 import org.gradle.internal.remote.services.MessagingServices;
 import org.gradle.internal.resources.DefaultResourceLockCoordinationService;
 import org.gradle.internal.resources.ResourceLockCoordinationService;
+import org.gradle.internal.resources.TargetedResourceLockCoordinationService;
 import org.gradle.internal.service.CachingServiceLocator;
 import org.gradle.internal.service.DefaultServiceLocator;
 import org.gradle.internal.service.ServiceRegistration;
@@ -156,6 +157,9 @@ public class GlobalScopeServices extends BasicGlobalScopeServices {
     }
 
     ResourceLockCoordinationService createWorkerLeaseCoordinationService() {
+        if (Boolean.getBoolean(TargetedResourceLockCoordinationService.ENABLED_PROPERTY)) {
+            return new TargetedResourceLockCoordinationService();
+        }
         return new DefaultResourceLockCoordinationService();
     }
 
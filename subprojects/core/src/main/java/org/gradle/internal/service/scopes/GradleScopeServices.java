@@ -15,6 +15,7 @@
  */
 package org.gradle.internal.service.scopes;
 
+import org.gradle.StartParameter;
 import org.gradle.api.Action;
 import org.gradle.api.internal.GradleInternal;
 import org.gradle.api.internal.InstantiatorFactory;
@@ -51,6 +52,7 @@ import org.gradle.execution.TaskSelector;
 import org.gradle.execution.commandline.CommandLineTaskConfigurer;
 import org.gradle.execution.commandline.CommandLineTaskParser;
 import org.gradle.execution.taskgraph.DefaultTaskGraphExecuter;
+import org.gradle.execution.taskgraph.TaskDurationRepository;
 import org.gradle.execution.taskgraph.TaskPlanExecutor;
 import org.gradle.initialization.BuildCancellationToken;
 import org.gradle.internal.Factory;
@@ -62,6 +64,7 @@ import org.gradle.internal.id.UniqueId;
 import org.gradle.internal.logging.LoggingManagerInternal;
 import org.gradle.internal.logging.text.StyledTextOutputFactory;
 import org.gradle.internal.operations.BuildOperationExecutor;
+import org.gradle.internal.operations.trace.BuildOperationTimeline;
 import org.gradle.internal.reflect.Instantiator;
 import org.gradle.internal.resources.ResourceLockCoordinationService;
 import org.gradle.internal.scan.BuildScanServices;
@@ -158,7 +161,17 @@ public class GradleScopeServices extends DefaultServiceRegistry {
                 return get(TaskExecuter.class);
             }
         };
-        return new DefaultTaskGraphExecuter(listenerManager, taskPlanExecutor, taskExecuterFactory, cancellationToken, buildOperationExecutor, workerLeaseService, coordinationService, gradleInternal);
+        Factory<TaskDurationRepository> taskDurationsFactory = new Factory<TaskDurationRepository>() {
+            @Override
+            public TaskDurationRepository create() {
+                return get(TaskDurationRepository.class);
+            }
+        };
+        // Ordering only makes a difference when tasks from different projects can run at the same time
+        StartParameter startParameter = gradleInternal.getStartParameter();
+        boolean prioritizeCriticalPath = startParameter.isParallelProjectExecutionEnabled() && startParameter.getMaxWorkerCount() > 1;
+        boolean recordWorkerWaits = BuildOperationTimeline.isEnabled(startParameter);
+        return new DefaultTaskGraphExecuter(listenerManager, taskPlanExecutor, taskExecuterFactory, cancellationToken, buildOperationExecutor, workerLeaseService, coordinationService, gradleInternal, taskDurationsFactory, prioritizeCriticalPath, recordWorkerWaits);
     }
 
     ServiceRegistryFactory createServiceRegistryFactory(final ServiceRegistry services) {
@@ -30,6 +30,7 @@ import org.gradle.api.internal.changedetection.state.DefaultGenericFileCollectio
 import org.gradle.api.internal.changedetection.state.DefaultTaskHistoryStore
 import org.gradle.api.internal.changedetection.state.FileCollectionSnapshot
 import org.gradle.api.internal.changedetection.state.InMemoryCacheDecoratorFactory
+import org.gradle.api.internal.changedetection.state.ParallelDirectoryWalker
 import org.gradle.api.internal.changedetection.state.TaskHistoryRepository
 import org.gradle.api.internal.changedetection.state.TaskHistoryStore
 import org.gradle.api.internal.changedetection.state.TaskOutputFilesRepository
@@ -48,6 +49,7 @@ import org.gradle.cache.internal.CacheScopeMapping
 import org.gradle.cache.internal.CrossBuildInMemoryCacheFactory
 import org.gradle.cache.internal.DefaultCacheRepository
 import org.gradle.caching.internal.tasks.TaskCacheKeyCalculator
+import org.gradle.caching.internal.tasks.TaskOutputPacker
 import org.gradle.internal.classloader.ConfigurableClassLoaderHierarchyHasher
 import org.gradle.internal.event.DefaultListenerManager
 import org.gradle.internal.file.PathToFileResolver
@@ -94,7 +96,7 @@ class DefaultTaskArtifactStateRepositoryTest extends AbstractProjectBuilderSpec
     TaskOutputFilesRepository taskOutputFilesRepository = Stub(TaskOutputFilesRepository)
     final originMetadata = new OriginTaskExecutionMetadata(buildScopeId.id, 1)
     def taskExecutionContext = Mock(TaskExecutionContext)
-    def taskCacheKeyCalculator = new TaskCacheKeyCalculator(false)
+    def taskCacheKeyCalculator = new TaskCacheKeyCalculator(false, TaskOutputPacker.CACHE_ENTRY_FORMAT)
 
     def setup() {
         gradle = project.getGradle()
@@ -105,7 +107,7 @@ class DefaultTaskArtifactStateRepositoryTest extends AbstractProjectBuilderSpec
         def stringInterner = new StringInterner()
         def fileHasher = new TestFileHasher()
         fileSystemMirror = new DefaultFileSystemMirror([])
-        fileCollectionSnapshotter = new DefaultGenericFileCollectionSnapshotter(stringInterner, TestFiles.directoryFileTreeFactory(), new DefaultFileSystemSnapshotter(fileHasher, stringInterner, TestFiles.fileSystem(), TestFiles.directoryFileTreeFactory(), fileSystemMirror))
+        fileCollectionSnapshotter = new DefaultGenericFileCollectionSnapshotter(stringInterner, TestFiles.directoryFileTreeFactory(), new DefaultFileSystemSnapshotter(fileHasher, stringInterner, TestFiles.fileSystem(), TestFiles.directoryFileTreeFactory(), fileSystemMirror, new ParallelDirectoryWalker(TestFiles.fileSystem(), 1)))
         def classLoaderHierarchyHasher = Mock(ConfigurableClassLoaderHierarchyHasher) {
             getClassLoaderHash(_) >> HashCode.fromInt(123)
         }
@@ -17,8 +17,14 @@
 package org.gradle.api.internal.changedetection.state
 
 import org.gradle.BuildResult
+import org.gradle.api.file.RelativePath
 import org.gradle.api.internal.GradleInternal
 import org.gradle.internal.classpath.CachedJarFileStore
+import org.gradle.internal.filewatch.FileWatcher
+import org.gradle.internal.filewatch.FileWatcherEvent
+import org.gradle.internal.filewatch.FileWatcherFactory
+import org.gradle.internal.filewatch.FileWatcherListener
+import org.gradle.internal.hash.HashCode
 import org.gradle.test.fixtures.file.TestFile
 import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
 import org.junit.Rule
@@ -68,6 +74,29 @@ class DefaultFileSystemMirrorTest extends Specification {
         mirror.getContent(file.path) == null
     }
 
+    def "does not keep directory snapshotted ahead of its use when state is invalidated while it is snapshotted"() {
+        def dir = tmpDir.file("dir")
+        def other = tmpDir.file("other")
+        def fileTreeSnapshot = Stub(FileTreeSnapshot)
+
+        given:
+        _ * fileTreeSnapshot.path >> dir.path
+
+        when:
+        def generation = mirror.generation
+        mirror.beforeTaskOutputChanged([other.path])
+        mirror.putDirectory(fileTreeSnapshot, generation)
+
+        then:
+        mirror.getDirectoryTree(dir.path) == null
+
+        when:
+        mirror.putDirectory(fileTreeSnapshot, mirror.generation)
+
+        then:
+        mirror.getDirectoryTree(dir.path) == fileTreeSnapshot
+    }
+
     def "keeps state about a file until end of build"() {
         def file = tmpDir.file("a")
         def fileSnapshot = Stub(FileSnapshot)
@@ -141,4 +170,248 @@ class DefaultFileSystemMirrorTest extends Specification {
         mirror.getDirectoryTree(file.path) == null
         mirror.getContent(file.path) == null
     }
+
+    def "retains state about watched files between builds until a change is reported"() {
+        def watcherFactory = Mock(FileWatcherFactory)
+        def watcher = Mock(FileWatcher)
+        def fileStore = Stub(CachedJarFileStore)
+        fileStore.fileStoreRoots >> [cacheDir]
+        def watchingMirror = new DefaultFileSystemMirror([fileStore], watcherFactory)
+        FileWatcherListener listener = null
+        def dir = tmpDir.file("dir")
+        def file = dir.file("a")
+        def other = tmpDir.file("b")
+        def fileSnapshot = Stub(FileSnapshot)
+        def otherSnapshot = Stub(FileSnapshot)
+        def fileTreeSnapshot = Stub(FileTreeSnapshot)
+        def snapshot = Stub(Snapshot)
+
+        given:
+        _ * fileSnapshot.path >> file.path
+        _ * otherSnapshot.path >> other.path
+        _ * fileTreeSnapshot.path >> dir.path
+        _ * watcher.deliverPendingEvents() >> true
+
+        when:
+        watchingMirror.afterStart()
+
+        then:
+        1 * watcherFactory.watch(_, _) >> { onError, l ->
+            listener = l
+            watcher
+        }
+
+        when:
+        watchingMirror.beforeSnapshot(dir.path)
+        watchingMirror.beforeSnapshot(other.path)
+        watchingMirror.putFile(fileSnapshot)
+        watchingMirror.putFile(otherSnapshot)
+        watchingMirror.putDirectory(fileTreeSnapshot)
+        watchingMirror.putContent(file.path, snapshot)
+        watchingMirror.beforeComplete()
+        watchingMirror.afterStart()
+
+        then:
+        2 * watcher.watch(_)
+        0 * watcherFactory._
+        0 * watcher.stop()
+        watchingMirror.getFile(file.path) == fileSnapshot
+        watchingMirror.getFile(other.path) == otherSnapshot
+        watchingMirror.getDirectoryTree(dir.path) == fileTreeSnapshot
+        watchingMirror.getContent(file.path) == snapshot
+
+        when:
+        listener.onChange(watcher, FileWatcherEvent.modify(file))
+
+        then:
+        watchingMirror.getFile(file.path) == null
+        watchingMirror.getDirectoryTree(dir.path) == null
+        watchingMirror.getContent(file.path) == null
+        watchingMirror.getFile(other.path) == otherSnapshot
+    }
+
+    def "discards all state when file system events are lost"() {
+        def watcherFactory = Mock(FileWatcherFactory)
+        def watcher = Mock(FileWatcher)
+        def watchingMirror = new DefaultFileSystemMirror([], watcherFactory)
+        FileWatcherListener listener = null
+        def file = tmpDir.file("a")
+        def fileSnapshot = Stub(FileSnapshot)
+
+        given:
+        _ * fileSnapshot.path >> file.path
+        _ * watcher.deliverPendingEvents() >> true
+        _ * watcherFactory.watch(_, _) >> { onError, l ->
+            listener = l
+            watcher
+        }
+
+        when:
+        watchingMirror.afterStart()
+        watchingMirror.putFile(fileSnapshot)
+        listener.onChange(watcher, FileWatcherEvent.undefined())
+
+        then:
+        watchingMirror.getFile(file.path) == null
+
+        when:
+        watchingMirror.putFile(fileSnapshot)
+        watchingMirror.beforeComplete()
+
+        then:
+        1 * watcher.stop()
+        watchingMirror.getFile(file.path) == null
+    }
+
+    def "does not retain state for a location that was only watched after it was snapshotted"() {
+        def watcherFactory = Mock(FileWatcherFactory)
+        def watcher = Mock(FileWatcher)
+        def watchingMirror = new DefaultFileSystemMirror([], watcherFactory)
+        def file = tmpDir.file("a")
+        def fileSnapshot = Stub(FileSnapshot)
+
+        given:
+        _ * fileSnapshot.path >> file.path
+        _ * watcher.deliverPendingEvents() >> true
+        _ * watcherFactory.watch(_, _) >> watcher
+
+        when:
+        watchingMirror.afterStart()
+        watchingMirror.putFile(fileSnapshot)
+
+        then:
+        1 * watcher.watch(_)
+        watchingMirror.getFile(file.path) == fileSnapshot
+
+        when:
+        watchingMirror.beforeComplete()
+        watchingMirror.afterStart()
+
+        then:
+        0 * watcher.stop()
+        watchingMirror.getFile(file.path) == null
+    }
+
+    def "does not retain state for a location that changed during the build"() {
+        def watcherFactory = Mock(FileWatcherFactory)
+        def watcher = Mock(FileWatcher)
+        def watchingMirror = new DefaultFileSystemMirror([], watcherFactory)
+        FileWatcherListener listener = null
+        def file = tmpDir.file("a")
+        def fileSnapshot = Stub(FileSnapshot)
+
+        given:
+        _ * fileSnapshot.path >> file.path
+        _ * watcher.deliverPendingEvents() >> true
+        _ * watcherFactory.watch(_, _) >> { onError, l ->
+            listener = l
+            watcher
+        }
+
+        when:
+        watchingMirror.afterStart()
+        watchingMirror.beforeSnapshot(file.path)
+        // The change is reported while the file is snapshotted
+        listener.onChange(watcher, FileWatcherEvent.modify(file))
+        watchingMirror.putFile(fileSnapshot)
+
+        then:
+        watchingMirror.getFile(file.path) == fileSnapshot
+
+        when:
+        watchingMirror.beforeComplete()
+        watchingMirror.afterStart()
+
+        then:
+        0 * watcher.stop()
+        watchingMirror.getFile(file.path) == null
+    }
+
+    def "discards retained state when pending file system events cannot be delivered"() {
+        def watcherFactory = Mock(FileWatcherFactory)
+        def watcher = Mock(FileWatcher)
+        def newWatcher = Mock(FileWatcher)
+        def watchingMirror = new DefaultFileSystemMirror([], watcherFactory)
+        def file = tmpDir.file("a")
+        def fileSnapshot = Stub(FileSnapshot)
+
+        given:
+        _ * fileSnapshot.path >> file.path
+
+        when:
+        watchingMirror.afterStart()
+        watchingMirror.beforeSnapshot(file.path)
+        watchingMirror.putFile(fileSnapshot)
+        watchingMirror.beforeComplete()
+
+        then:
+        1 * watcherFactory.watch(_, _) >> watcher
+        1 * watcher.deliverPendingEvents() >> true
+
+        when:
+        watchingMirror.afterStart()
+
+        then:
+        1 * watcher.deliverPendingEvents() >> false
+        1 * watcher.stop()
+        1 * watcherFactory.watch(_, _) >> newWatcher
+        watchingMirror.getFile(file.path) == null
+    }
+
+    def "answers lookups for descendants of a known directory tree"() {
+        def root = tmpDir.file("root")
+        def dir = root.file("dir")
+        def file = dir.file("a.txt")
+        def content = new FileHashSnapshot(HashCode.fromInt(123))
+
+        given:
+        mirror.putDirectory(new DirectoryTreeDetails(root.path, [
+            new DirectoryFileSnapshot(dir.path, new RelativePath(false, "dir"), false),
+            new RegularFileSnapshot(file.path, new RelativePath(true, "dir", "a.txt"), false, content)
+        ]))
+
+        expect:
+        def fileSnapshot = mirror.getFile(file.path)
+        fileSnapshot.path == file.path
+        fileSnapshot.root
+        fileSnapshot.relativePath == new RelativePath(true, "a.txt")
+        fileSnapshot.content == content
+
+        def subtree = mirror.getDirectoryTree(dir.path)
+        subtree.path == dir.path
+        subtree.descendants.size() == 1
+        subtree.descendants[0].path == file.path
+        subtree.descendants[0].relativePath == new RelativePath(true, "a.txt")
+
+        mirror.getFile(dir.file("missing").path) == null
+        mirror.getDirectoryTree(file.path) == null
+    }
+
+    def "discards only state affected by task outputs"() {
+        def outputDir = tmpDir.file("build/classes")
+        def outputFile = outputDir.file("A.class")
+        def source = tmpDir.file("src/A.java")
+        def outputSnapshot = Stub(FileSnapshot)
+        def buildDirSnapshot = Stub(FileTreeSnapshot)
+        def sourceSnapshot = Stub(FileSnapshot)
+        def snapshot = Stub(Snapshot)
+
+        given:
+        _ * outputSnapshot.path >> outputFile.path
+        _ * buildDirSnapshot.path >> tmpDir.file("build").path
+        _ * sourceSnapshot.path >> source.path
+        mirror.putFile(outputSnapshot)
+        mirror.putDirectory(buildDirSnapshot)
+        mirror.putFile(sourceSnapshot)
+        mirror.putContent(source.path, snapshot)
+
+        when:
+        mirror.beforeTaskOutputChanged([outputDir.path])
+
+        then:
+        mirror.getFile(outputFile.path) == null
+        mirror.getDirectoryTree(tmpDir.file("build").path) == null
+        mirror.getFile(source.path) == sourceSnapshot
+        mirror.getContent(source.path) == snapshot
+    }
 }
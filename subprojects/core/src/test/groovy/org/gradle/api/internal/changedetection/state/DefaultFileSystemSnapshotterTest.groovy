@@ -30,7 +30,7 @@ class DefaultFileSystemSnapshotterTest extends Specification {
     @Rule TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
     def fileHasher = new TestFileHasher()
     def fileSystemMirror = new DefaultFileSystemMirror([])
-    def snapshotter = new DefaultFileSystemSnapshotter(fileHasher, new StringInterner(), TestFiles.fileSystem(), TestFiles.directoryFileTreeFactory(), fileSystemMirror)
+    def snapshotter = new DefaultFileSystemSnapshotter(fileHasher, new StringInterner(), TestFiles.fileSystem(), TestFiles.directoryFileTreeFactory(), fileSystemMirror, new ParallelDirectoryWalker(TestFiles.fileSystem(), 1))
 
     def "fetches details of a file and caches the result"() {
         def f = tmpDir.createFile("f")
@@ -126,6 +126,28 @@ class DefaultFileSystemSnapshotterTest extends Specification {
         snapshot3.is(snapshot)
     }
 
+    def "walks a directory tree concurrently when multiple workers are available"() {
+        def d = tmpDir.createDir("d")
+        d.createFile("f1")
+        d.createFile("d1/f2")
+        d.createFile("d1/d3/f3")
+        d.createDir("d2")
+        def walker = new ParallelDirectoryWalker(TestFiles.fileSystem(), 4)
+        def parallelSnapshotter = new DefaultFileSystemSnapshotter(fileHasher, new StringInterner(), TestFiles.fileSystem(), TestFiles.directoryFileTreeFactory(), new DefaultFileSystemMirror([]), walker)
+
+        when:
+        def snapshot = parallelSnapshotter.snapshotDirectoryTree(d)
+        def expected = snapshotter.snapshotDirectoryTree(d)
+
+        then:
+        snapshot.descendants*.path == expected.descendants*.path
+        snapshot.descendants*.relativePath == expected.descendants*.relativePath
+        snapshot.descendants*.content == expected.descendants*.content
+
+        cleanup:
+        walker.close()
+    }
+
     def "fetches details of a directory tree with patterns patterns and does not cache the result"() {
         def d = tmpDir.createDir("d")
         d.createFile("f1")
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.gradle.api.internal.changedetection.state
+
+import org.gradle.api.internal.changedetection.state.CachingFileHasher.FileInfo
+import org.gradle.internal.hash.Hashing
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+class MappedFileInfoCacheTest extends Specification {
+    @Rule
+    TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+
+    def file = tmpDir.file("fileHashes.table")
+    def cache = MappedFileInfoCache.open(file, 64)
+
+    def cleanup() {
+        cache.close()
+    }
+
+    def "stores and removes file info"() {
+        def hash = Hashing.md5().hashString("hello")
+
+        expect:
+        cache.get("/some/file") == null
+
+        when:
+        cache.put("/some/file", new FileInfo(hash, 12, 34))
+
+        then:
+        def info = cache.get("/some/file")
+        info.hash == hash
+        info.length == 12
+        info.timestamp == 34
+        cache.get("/some/other-file") == null
+
+        when:
+        cache.remove("/some/file")
+
+        then:
+        cache.get("/some/file") == null
+    }
+
+    def "content is visible to other instances using the same file"() {
+        def hash = Hashing.md5().hashString("hello")
+
+        when:
+        cache.put("/some/file", new FileInfo(hash, 12, 34))
+        def other = MappedFileInfoCache.open(file, 64)
+
+        then:
+        other.get("/some/file").hash == hash
+
+        cleanup:
+        other?.close()
+    }
+
+    def "evicts records when table is full"() {
+        when:
+        200.times {
+            cache.put("/file/$it", new FileInfo(Hashing.md5().hashString("$it"), it, it))
+        }
+
+        then:
+        def found = (0..<200).findAll { cache.get("/file/$it") != null }
+        !found.empty
+        found.size() <= 64
+        found.every { cache.get("/file/$it").hash == Hashing.md5().hashString("$it") }
+    }
+
+    def "does not store hashes of unexpected length"() {
+        when:
+        cache.put("/some/file", new FileInfo(Hashing.sha1().hashString("hello"), 12, 34))
+
+        then:
+        cache.get("/some/file") == null
+    }
+
+    def "fails to open file with different layout"() {
+        when:
+        MappedFileInfoCache.open(file, 128)
+
+        then:
+        thrown(IOException)
+    }
+}
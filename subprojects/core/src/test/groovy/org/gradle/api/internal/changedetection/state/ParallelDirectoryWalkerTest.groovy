@@ -0,0 +1,168 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state
+
+import org.gradle.api.file.FileVisitDetails
+import org.gradle.api.file.FileVisitor
+import org.gradle.api.internal.file.TestFiles
+import org.gradle.api.internal.file.collections.DirectoryFileTree
+import org.gradle.api.tasks.util.PatternSet
+import org.gradle.internal.concurrent.DefaultParallelismConfiguration
+import org.gradle.internal.concurrent.ParallelismConfigurationManager
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+import java.util.concurrent.CopyOnWriteArraySet
+
+class ParallelDirectoryWalkerTest extends Specification {
+    @Rule TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+    def walker = new ParallelDirectoryWalker(TestFiles.fileSystem(), 4)
+    def patterns = new PatternSet()
+    def threads = new CopyOnWriteArraySet<Thread>()
+    def visitor = new ParallelDirectoryWalker.Visitor<String>() {
+        @Override
+        String visitDir(FileVisitDetails dirDetails) {
+            threads.add(Thread.currentThread())
+            dirDetails.relativePath.pathString + "/"
+        }
+
+        @Override
+        String visitFile(FileVisitDetails fileDetails) {
+            threads.add(Thread.currentThread())
+            fileDetails.relativePath.pathString + ":" + fileDetails.size
+        }
+    }
+
+    def cleanup() {
+        walker.close()
+    }
+
+    def "visits elements in the same order as a sequential walk"() {
+        def root = tmpDir.createDir("root")
+        40.times { root.file("f$it").text = "content $it" }
+        5.times { d ->
+            20.times { root.file("d$d/f$it").text = "content $d $it" }
+            root.createDir("d$d/d$d/empty")
+        }
+
+        expect:
+        walker.walk(root, patterns.asSpec, visitor) == sequentialWalk(root)
+        walker.parallel
+    }
+
+    def "skips default excludes in the same way as a directory file tree"() {
+        def root = tmpDir.createDir("root")
+        root.file("f").text = "content"
+        root.file(".gitignore").text = "ignored"
+        root.file(".DS_Store").text = "ignored"
+        root.file("f~").text = "ignored"
+        root.file(".git/config").text = "ignored"
+        root.file("d/f").text = "content"
+        root.file("d/.svn/entries").text = "ignored"
+        root.file("d/.cvsignore").text = "ignored"
+
+        when:
+        def elements = walker.walk(root, patterns.asSpec, visitor)
+
+        then:
+        elements == sequentialWalk(root)
+        elements as Set == ["f:7", "d/", "d/f:7"] as Set
+    }
+
+    def "skips excluded directories and files in the same way as a directory file tree"() {
+        def root = tmpDir.createDir("root")
+        root.file("f.txt").text = "content"
+        root.file("f.bin").text = "excluded"
+        root.file("excluded/f.txt").text = "excluded"
+        root.file("d/f.txt").text = "content"
+        patterns.exclude("**/*.bin", "excluded")
+
+        when:
+        def elements = walker.walk(root, patterns.asSpec, visitor)
+
+        then:
+        elements == sequentialWalk(root)
+        elements as Set == ["f.txt:7", "d/", "d/f.txt:7"] as Set
+    }
+
+    def "visits nothing for an empty directory"() {
+        expect:
+        walker.walk(tmpDir.createDir("root"), patterns.asSpec, visitor).empty
+    }
+
+    def "walks on the calling thread when a single worker is configured"() {
+        def root = tmpDir.createDir("root")
+        root.createFile("d/f")
+        root.createFile("f")
+        walker.onParallelismConfigurationChange(new DefaultParallelismConfiguration(false, 1))
+
+        expect:
+        !walker.parallel
+        walker.walk(root, patterns.asSpec, visitor) == sequentialWalk(root)
+        threads == [Thread.currentThread()] as Set
+    }
+
+    def "walks on the calling thread once closed"() {
+        def root = tmpDir.createDir("root")
+        root.createFile("f")
+
+        when:
+        walker.close()
+
+        then:
+        !walker.parallel
+        walker.walk(root, patterns.asSpec, visitor) == ["f:0"]
+        threads == [Thread.currentThread()] as Set
+    }
+
+    def "follows the parallelism configuration until closed"() {
+        def parallelismConfigurationManager = Mock(ParallelismConfigurationManager) {
+            getParallelismConfiguration() >> new DefaultParallelismConfiguration(true, 4)
+        }
+
+        when:
+        def managedWalker = new ParallelDirectoryWalker(TestFiles.fileSystem(), parallelismConfigurationManager)
+
+        then:
+        managedWalker.parallel
+        1 * parallelismConfigurationManager.addListener(_ as ParallelDirectoryWalker)
+
+        when:
+        managedWalker.close()
+
+        then:
+        !managedWalker.parallel
+        1 * parallelismConfigurationManager.removeListener(managedWalker)
+    }
+
+    private List<String> sequentialWalk(File root) {
+        def elements = []
+        new DirectoryFileTree(root, patterns, TestFiles.fileSystem()).visit(new FileVisitor() {
+            @Override
+            void visitDir(FileVisitDetails dirDetails) {
+                elements << dirDetails.relativePath.pathString + "/"
+            }
+
+            @Override
+            void visitFile(FileVisitDetails fileDetails) {
+                elements << fileDetails.relativePath.pathString + ":" + fileDetails.size
+            }
+        })
+        return elements
+    }
+}
@@ -16,6 +16,7 @@
 package org.gradle.api.internal.tasks.execution
 
 import org.gradle.api.execution.TaskActionListener
+import org.gradle.api.internal.file.collections.SimpleFileCollection
 import org.gradle.api.internal.TaskInternal
 import org.gradle.api.internal.changedetection.TaskArtifactState
 import org.gradle.api.internal.project.ProjectInternal
@@ -48,6 +49,7 @@ class ExecuteActionsTaskExecutorTest extends Specification {
     def state = new TaskStateInternal()
     def taskArtifactState = Mock(TaskArtifactState)
     def executionContext = Mock(TaskExecutionContext)
+    def taskProperties = Mock(TaskProperties)
     def scriptSource = Mock(ScriptSource)
     def standardOutputCapture = Mock(StandardOutputCapture)
     def publicListener = Mock(TaskActionListener)
@@ -67,6 +69,7 @@ class ExecuteActionsTaskExecutorTest extends Specification {
         project.getBuildScriptSource() >> scriptSource
         task.getStandardOutputCapture() >> standardOutputCapture
         executionContext.taskArtifactState >> taskArtifactState
+        executionContext.taskProperties >> taskProperties
     }
 
     void noMoreInteractions() {
@@ -105,6 +108,29 @@ class ExecuteActionsTaskExecutorTest extends Specification {
         state.actionable
     }
 
+    def notifiesListenerAboutDeclaredOutputLocationsBeforeExecutingActions() {
+        def outputFile = new File("output").absoluteFile
+        def localStateFile = new File("local-state").absoluteFile
+        def destroyedFile = new File("destroyed").absoluteFile
+
+        given:
+        task.getTaskActions() >> [action1]
+        task.hasTaskActions() >> true
+        taskProperties.hasDeclaredOutputs() >> true
+        taskProperties.outputFiles >> new SimpleFileCollection(outputFile)
+        taskProperties.localStateFiles >> new SimpleFileCollection(localStateFile)
+        taskProperties.destroyableFiles >> new SimpleFileCollection(destroyedFile)
+
+        when:
+        executer.execute(task, state, executionContext)
+
+        then:
+        1 * publicListener.beforeActions(task)
+        then:
+        1 * internalListener.beforeTaskOutputChanged([outputFile.path, localStateFile.path, destroyedFile.path])
+        0 * internalListener.beforeTaskOutputChanged()
+    }
+
     def executesEachActionInOrder() {
         given:
         task.getTaskActions() >> [action1, action2]
@@ -98,7 +98,7 @@ class SkipEmptySourceFilesTaskExecuterTest extends Specification {
         1 * taskArtifactState.executionHistory >> taskExecutionHistory
         1 * taskExecutionHistory.outputFiles >> outputFiles
         1 * taskExecutionHistory.overlappingOutputs >> null
-        1 * taskOutputChangesListener.beforeTaskOutputChanged()
+        1 * taskOutputChangesListener.beforeTaskOutputChanged(_ as Iterable)
 
         then: 'deleting the file succeeds'
         1 * cleanupRegistry.isOutputOwnedByBuild(previousFile) >> true
@@ -136,7 +136,7 @@ class SkipEmptySourceFilesTaskExecuterTest extends Specification {
         1 * taskArtifactState.executionHistory >> taskExecutionHistory
         1 * taskExecutionHistory.outputFiles >> outputFiles
         1 * taskExecutionHistory.overlappingOutputs >> null
-        1 * taskOutputChangesListener.beforeTaskOutputChanged()
+        1 * taskOutputChangesListener.beforeTaskOutputChanged(_ as Iterable)
 
         then: 'deleting the file succeeds'
         1 * previousFile.exists() >> true
@@ -173,7 +173,7 @@ class SkipEmptySourceFilesTaskExecuterTest extends Specification {
         1 * taskArtifactState.executionHistory >> taskExecutionHistory
         1 * taskExecutionHistory.outputFiles >> outputFiles
         1 * taskExecutionHistory.overlappingOutputs >> new OverlappingOutputs("outputProperty", "some/path")
-        1 * taskOutputChangesListener.beforeTaskOutputChanged()
+        1 * taskOutputChangesListener.beforeTaskOutputChanged(_ as Iterable)
 
         then: 'deleting the file succeeds'
         _ * previousFile.exists() >> true
@@ -216,7 +216,7 @@ class SkipEmptySourceFilesTaskExecuterTest extends Specification {
         1 * taskArtifactState.executionHistory >> taskExecutionHistory
         1 * taskExecutionHistory.outputFiles >> outputFiles
         1 * taskExecutionHistory.overlappingOutputs >> null
-        1 * taskOutputChangesListener.beforeTaskOutputChanged()
+        1 * taskOutputChangesListener.beforeTaskOutputChanged(_ as Iterable)
 
         then: 'deleting the previous file fails'
         1 * cleanupRegistry.isOutputOwnedByBuild(previousFile) >> true
@@ -23,10 +23,12 @@ import org.gradle.api.Task
 import org.gradle.api.file.FileCollection
 import org.gradle.api.internal.GradleInternal
 import org.gradle.api.internal.TaskInternal
+import org.gradle.api.internal.changedetection.state.FileSystemMirror
 import org.gradle.api.internal.project.ProjectInternal
 import org.gradle.api.tasks.Destroys
 import org.gradle.api.tasks.InputDirectory
 import org.gradle.api.tasks.InputFile
+import org.gradle.api.tasks.InputFiles
 import org.gradle.api.tasks.LocalState
 import org.gradle.api.tasks.OutputDirectory
 import org.gradle.api.tasks.OutputFile
@@ -36,6 +38,7 @@ import org.gradle.internal.concurrent.ParallelismConfigurationManagerFixture
 import org.gradle.internal.nativeintegration.filesystem.FileSystem
 import org.gradle.internal.resources.DefaultResourceLockCoordinationService
 import org.gradle.internal.work.DefaultWorkerLeaseService
+import org.gradle.test.fixtures.ConcurrentTestUtil
 import org.gradle.test.fixtures.concurrent.ConcurrentSpec
 import org.gradle.test.fixtures.file.CleanupTestDirectory
 import org.gradle.test.fixtures.file.TestFile
@@ -45,6 +48,7 @@ import org.gradle.util.Requires
 import org.gradle.util.TestPrecondition
 import org.gradle.util.UsesNativeServices
 import org.junit.Rule
+import spock.util.environment.RestoreSystemProperties
 
 import java.util.concurrent.BlockingQueue
 
@@ -185,6 +189,115 @@ class DefaultTaskExecutionPlanParallelTest extends ConcurrentSpec {
         operation."${b.path}".start > operation."${a.path}".end
     }
 
+    def "records why a worker waited for a task to execute"() {
+        given:
+        executionPlan.recordWorkerWaits(true)
+        Task a = root.task("a", type: Async)
+        Task b = root.task("b", type: Async).dependsOn(a)
+
+        when:
+        addToGraphAndPopulate(a, b)
+        async {
+            startTaskWorkers(2)
+            // Give the other worker time to wait for the dependency to complete
+            Thread.sleep(100)
+
+            releaseTasks(a, b)
+        }
+
+        then:
+        def waits = executionPlan.workerWaits.values().flatten()
+        waits.any { it.reason == "DEPENDENCIES" }
+        waits.every { it.endTime > it.startTime }
+
+        when:
+        executionPlan.clear()
+
+        then:
+        executionPlan.workerWaits.isEmpty()
+    }
+
+    def "does not record worker waits unless enabled"() {
+        given:
+        Task a = root.task("a", type: Async)
+        Task b = root.task("b", type: Async).dependsOn(a)
+
+        when:
+        addToGraphAndPopulate(a, b)
+        async {
+            startTaskWorkers(2)
+            Thread.sleep(100)
+
+            releaseTasks(a, b)
+        }
+
+        then:
+        executionPlan.workerWaits.isEmpty()
+    }
+
+    @RestoreSystemProperties
+    def "snapshots the input directories of a task while its dependencies execute"() {
+        given:
+        System.setProperty(DefaultTaskExecutionPlan.PRE_SNAPSHOT_INPUTS_PROPERTY, "true")
+        executionPlan = new DefaultTaskExecutionPlan(cancellationHandler, coordinationService, workerLeaseService, Mock(GradleInternal))
+        def inputDir = file("src").createDir()
+        inputDir.file("input.txt").text = "input"
+        Task a = root.task("a", type: Async)
+        Task b = root.task("b", type: AsyncWithInputDirectory) {
+            inputDirectory = inputDir
+        }.dependsOn(a)
+        def fileSystemMirror = root.services.get(FileSystemMirror)
+
+        when:
+        addToGraphAndPopulate(a, b)
+        async {
+            startTaskWorkers(2)
+            ConcurrentTestUtil.poll {
+                assert fileSystemMirror.getDirectoryTree(inputDir.absolutePath) != null
+            }
+
+            releaseTasks(a, b)
+        }
+
+        then:
+        operation."${b.path}".start > operation."${a.path}".end
+    }
+
+    @RestoreSystemProperties
+    def "does not resolve input file collections of a task while its dependencies execute"() {
+        given:
+        System.setProperty(DefaultTaskExecutionPlan.PRE_SNAPSHOT_INPUTS_PROPERTY, "true")
+        executionPlan = new DefaultTaskExecutionPlan(cancellationHandler, coordinationService, workerLeaseService, Mock(GradleInternal))
+        def inputDir = file("src").createDir()
+        def lazyInputDir = file("lazy").createDir()
+        def lazyInputResolved = false
+        Task a = root.task("a", type: Async)
+        Task b = root.task("b", type: AsyncWithInputDirectoryAndFiles) {
+            inputDirectory = inputDir
+            inputFiles = root.files({
+                lazyInputResolved = true
+                lazyInputDir
+            })
+        }.dependsOn(a)
+        def fileSystemMirror = root.services.get(FileSystemMirror)
+
+        when:
+        addToGraphAndPopulate(a, b)
+        async {
+            startTaskWorkers(2)
+            ConcurrentTestUtil.poll {
+                assert fileSystemMirror.getDirectoryTree(inputDir.absolutePath) != null
+            }
+            assert !lazyInputResolved
+            assert fileSystemMirror.getDirectoryTree(lazyInputDir.absolutePath) == null
+
+            releaseTasks(a, b)
+        }
+
+        then:
+        operation."${b.path}".start > operation."${a.path}".end
+    }
+
     def "two tasks with must run after ordering are not executed in parallel"() {
         given:
         Task a = root.task("a", type: Async)
@@ -824,6 +937,11 @@ class DefaultTaskExecutionPlanParallelTest extends ConcurrentSpec {
         File inputDirectory
     }
 
+    static class AsyncWithInputDirectoryAndFiles extends AsyncWithInputDirectory {
+        @InputFiles
+        FileCollection inputFiles
+    }
+
     static class BrokenTask extends DefaultTask {
         @OutputFiles
         FileCollection getOutputFiles() {
@@ -26,6 +26,7 @@ import org.gradle.api.internal.TaskInternal
 import org.gradle.api.internal.TaskOutputsInternal
 import org.gradle.api.internal.project.ProjectInternal
 import org.gradle.api.internal.tasks.TaskDestroyablesInternal
+import org.gradle.api.internal.tasks.TaskExecutionOutcome
 import org.gradle.api.internal.tasks.TaskLocalStateInternal
 import org.gradle.api.internal.tasks.TaskStateInternal
 import org.gradle.api.specs.Spec
@@ -57,6 +58,7 @@ class DefaultTaskExecutionPlanTest extends AbstractProjectBuilderSpec {
     def coordinationService = Mock(ResourceLockCoordinationService)
     def workerLease = Mock(WorkerLeaseRegistry.WorkerLease)
     def gradle = Mock(GradleInternal)
+    def outcomes = [:]
 
     def setup() {
         root = createRootProject(temporaryFolder.testDirectory)
@@ -129,6 +131,111 @@ class DefaultTaskExecutionPlanTest extends AbstractProjectBuilderSpec {
         executes(b, c, a, d)
     }
 
+    def "starts tasks with the longest chain of following work first when prioritizing critical path"() {
+        given:
+        def taskDurations = Mock(TaskDurationRepository)
+        Task a = task("a")
+        Task b = task("b")
+        Task c = task("c")
+        Task d = task("d", dependsOn: [c])
+        Task e = task("e", dependsOn: [a, b, d])
+        taskDurations.getDuration(a) >> 10L
+        taskDurations.getDuration(b) >> 50L
+        taskDurations.getDuration(c) >> 20L
+        taskDurations.getDuration(d) >> 20L
+        taskDurations.getDuration(e) >> 10L
+
+        when:
+        addToGraphAndPopulate([e])
+        executionPlan.useTaskDurations(taskDurations, true)
+        def executed = executedTasks
+
+        then:
+        executed == [b, c, d, a, e]
+        1 * taskDurations.recordDuration(a, _)
+        1 * taskDurations.recordDuration(b, _)
+        1 * taskDurations.recordDuration(c, _)
+        1 * taskDurations.recordDuration(d, _)
+        1 * taskDurations.recordDuration(e, _)
+    }
+
+    def "does not record the duration of tasks whose actions did not execute"() {
+        given:
+        def taskDurations = Mock(TaskDurationRepository)
+        Task a = task("a")
+        Task b = task("b")
+        Task c = task("c")
+        Task d = task("d", dependsOn: [a, b, c])
+        outcomes.a = TaskExecutionOutcome.UP_TO_DATE
+        outcomes.b = TaskExecutionOutcome.FROM_CACHE
+        outcomes.c = TaskExecutionOutcome.NO_SOURCE
+
+        when:
+        addToGraphAndPopulate([d])
+        executionPlan.useTaskDurations(taskDurations, true)
+        def executed = executedTasks
+
+        then:
+        executed.size() == 4
+        1 * taskDurations.recordDuration(d, _)
+        0 * taskDurations.recordDuration(_, _)
+    }
+
+    def "assumes average duration for tasks that have not executed before when prioritizing critical path"() {
+        given:
+        def taskDurations = Mock(TaskDurationRepository)
+        Task a = task("a")
+        Task b = task("b")
+        Task c = task("c", dependsOn: [b])
+        Task d = task("d", dependsOn: [a, c])
+        taskDurations.getDuration(a) >> 30L
+        taskDurations.getDuration(d) >> 10L
+
+        when:
+        addToGraphAndPopulate([d])
+        executionPlan.useTaskDurations(taskDurations, true)
+
+        then:
+        executedTasks == [b, a, c, d]
+    }
+
+    def "starts tasks for earlier requested tasks first when prioritizing critical path"() {
+        given:
+        def taskDurations = Stub(TaskDurationRepository)
+        Task a = task("a")
+        Task b = task("b")
+        Task c = task("c", dependsOn: [b])
+        taskDurations.getDuration(a) >> 1L
+        taskDurations.getDuration(b) >> 100L
+        taskDurations.getDuration(c) >> 100L
+
+        when:
+        executionPlan.addToTaskGraph([a])
+        executionPlan.addToTaskGraph([c])
+        executionPlan.determineExecutionPlan()
+        executionPlan.useTaskDurations(taskDurations, true)
+
+        then:
+        executedTasks == [a, b, c]
+    }
+
+    def "does not reorder tasks or record their durations when not prioritizing critical path"() {
+        given:
+        def taskDurations = Mock(TaskDurationRepository)
+        Task a = task("a")
+        Task b = task("b")
+        Task c = task("c", dependsOn: [a, b])
+
+        when:
+        addToGraphAndPopulate([c])
+        executionPlan.useTaskDurations(taskDurations, false)
+        def executed = executedTasks
+
+        then:
+        executed == [a, b, c]
+        0 * taskDurations._
+    }
+
     @Unroll
     def "schedules #orderingRule task dependencies in name order"() {
         given:
@@ -997,6 +1104,7 @@ class DefaultTaskExecutionPlanTest extends AbstractProjectBuilderSpec {
         task.path >> ':' + name
         task.identityPath >> Path.path(':' + name)
         task.state >> state
+        state.outcome >> { outcomes[name] ?: TaskExecutionOutcome.EXECUTED }
         task.toString() >> "task $name"
         task.compareTo(_ as TaskInternal) >> { TaskInternal taskInternal ->
             return name.compareTo(taskInternal.getName())
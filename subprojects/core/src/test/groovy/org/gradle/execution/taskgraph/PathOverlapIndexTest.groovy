@@ -0,0 +1,95 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.execution.taskgraph
+
+import spock.lang.Specification
+
+class PathOverlapIndexTest extends Specification {
+    def index = new PathOverlapIndex<String>()
+
+    def "finds values at equal, ancestor and descendant paths"() {
+        index.add(path("a", "b"), "ab")
+        index.add(path("a", "b", "c", "d"), "abcd")
+        index.add(path("a"), "a")
+        index.add(path("a", "bc"), "abc")
+        index.add(path("x"), "x")
+
+        expect:
+        overlapping(path("a", "b")) == [ab: path("a", "b"), abcd: path("a", "b"), a: path("a")]
+        overlapping(path("a", "b", "c")) == [ab: path("a", "b"), abcd: path("a", "b", "c"), a: path("a")]
+        overlapping(path("a", "bc", "d")) == [abc: path("a", "bc"), a: path("a")]
+        overlapping(path("a", "bcd")) == [a: path("a")]
+        overlapping(path("y")) == [:]
+    }
+
+    def "can add many values for the same path"() {
+        index.add(path("a"), "1")
+        index.add(path("a"), "2")
+
+        expect:
+        overlapping(path("a", "b")).keySet() == ["1", "2"] as Set
+    }
+
+    def "removed values are no longer found"() {
+        index.add(path("a", "b"), "ab")
+        index.add(path("a"), "a")
+
+        when:
+        index.remove(path("a", "b"), "ab")
+
+        then:
+        overlapping(path("a", "b")) == [a: path("a")]
+        !index.empty
+
+        when:
+        index.remove(path("a"), "a")
+        index.remove(path("a", "c"), "ac")
+
+        then:
+        overlapping(path("a", "b")) == [:]
+        index.empty
+    }
+
+    def "stops visiting when visitor asks to"() {
+        index.add(path("a"), "a")
+        index.add(path("a", "b"), "ab")
+        def visited = []
+
+        when:
+        def completed = index.visitOverlapping(path("a", "b"), { value, overlappingPath ->
+            visited << value
+            false
+        } as PathOverlapIndex.Visitor)
+
+        then:
+        !completed
+        visited == ["a"]
+    }
+
+    private Map<String, String> overlapping(String path) {
+        def result = [:]
+        index.visitOverlapping(path, { value, overlappingPath ->
+            result[value] = overlappingPath
+            true
+        } as PathOverlapIndex.Visitor)
+        return result
+    }
+
+    private static String path(String... segments) {
+        return File.separator + segments.join(File.separator)
+    }
+}
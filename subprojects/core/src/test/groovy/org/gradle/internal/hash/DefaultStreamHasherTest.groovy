@@ -0,0 +1,63 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.hash
+
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class DefaultStreamHasherTest extends Specification {
+    @Rule TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+    def hasherFactory = new DefaultContentHasherFactory()
+
+    @Unroll
+    def "hashes content of #size bytes read from a file the same as from any other stream"() {
+        def bytes = new byte[size]
+        new Random(size).nextBytes(bytes)
+        def file = tmpDir.file("content")
+        file.bytes = bytes
+        def streamHasher = new DefaultStreamHasher(hasherFactory)
+
+        expect:
+        def fileHash = file.withInputStream { streamHasher.hash(it) }
+        fileHash == streamHasher.hash(new ByteArrayInputStream(bytes))
+        fileHash == streamHasher.hashCopy(new ByteArrayInputStream(bytes), new ByteArrayOutputStream())
+
+        where:
+        size << [0, 10, 64 * 1024 - 1, 64 * 1024, 100000, 3 * 1024 * 1024]
+    }
+
+    @Unroll
+    def "hashes remaining content of a partially read file of #size bytes"() {
+        def bytes = new byte[size]
+        new Random(size).nextBytes(bytes)
+        def file = tmpDir.file("content")
+        file.bytes = bytes
+        def streamHasher = new DefaultStreamHasher(hasherFactory)
+
+        expect:
+        def hash = file.withInputStream {
+            it.skip(5)
+            streamHasher.hash(it)
+        }
+        hash == streamHasher.hash(new ByteArrayInputStream(bytes, 5, size - 5))
+
+        where:
+        size << [12, 3 * 1024 * 1024]
+    }
+}
@@ -44,6 +44,7 @@ import org.gradle.internal.concurrent.ExecutorFactory
 import org.gradle.internal.concurrent.ParallelismConfigurationManager
 import org.gradle.internal.event.ListenerManager
 import org.gradle.internal.hash.ContentHasherFactory
+import org.gradle.internal.hash.HashAlgorithm
 import org.gradle.internal.hash.FileHasher
 import org.gradle.internal.hash.StreamHasher
 import org.gradle.internal.jvm.inspection.JvmVersionDetector
@@ -116,7 +117,9 @@ class GradleUserHomeScopeServicesTest extends Specification {
         expectParentServiceLocated(CrossBuildInMemoryCacheFactory)
         expectParentServiceLocated(ClassLoaderRegistry)
         expectParentServiceLocated(DirectoryFileTreeFactory)
-        expectParentServiceLocated(ContentHasherFactory)
+        expectParentServiceLocated(ContentHasherFactory) {
+            _ * it.getAlgorithm() >> HashAlgorithm.MD5
+        }
         expectParentServiceLocated(StreamHasher)
 
         expect:
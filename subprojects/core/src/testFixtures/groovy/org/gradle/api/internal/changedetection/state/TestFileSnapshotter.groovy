@@ -44,6 +44,11 @@ class TestFileSnapshotter implements FileSystemSnapshotter {
         throw new UnsupportedOperationException()
     }
 
+    @Override
+    void preSnapshotDirectoryTree(File dir) {
+        throw new UnsupportedOperationException()
+    }
+
     @Override
     FileTreeSnapshot snapshotDirectoryTree(DirectoryFileTree dirTree) {
         throw new UnsupportedOperationException()
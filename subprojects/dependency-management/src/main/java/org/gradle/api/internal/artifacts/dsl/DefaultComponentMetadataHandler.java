@@ -149,6 +149,11 @@ public class DefaultComponentMetadataHandler implements ComponentMetadataHandler
         return updatedMetadata;
     }
 
+    @Override
+    public boolean hasRules() {
+        return !rules.isEmpty();
+    }
+
     private void processAllRules(ModuleComponentResolveMetadata metadata, ComponentMetadataDetails details) {
         for (SpecRuleAction<? super ComponentMetadataDetails> rule : rules) {
             processRule(rule, metadata, details);
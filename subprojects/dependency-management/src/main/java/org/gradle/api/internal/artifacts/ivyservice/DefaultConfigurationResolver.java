@@ -17,6 +17,7 @@
 package org.gradle.api.internal.artifacts.ivyservice;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
 import org.gradle.api.artifacts.ProjectDependency;
 import org.gradle.api.artifacts.UnresolvedDependency;
 import org.gradle.api.artifacts.dsl.RepositoryHandler;
@@ -29,6 +30,9 @@ import org.gradle.api.internal.artifacts.ImmutableModuleIdentifierFactory;
 import org.gradle.api.internal.artifacts.ResolverResults;
 import org.gradle.api.internal.artifacts.configurations.ConfigurationInternal;
 import org.gradle.api.internal.artifacts.configurations.ResolutionStrategyInternal;
+import org.gradle.api.internal.artifacts.dsl.ModuleReplacementsData;
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.ConfiguredModuleComponentRepository;
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.VersionSelectorScheme;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.artifact.BuildDependenciesOnlyVisitedArtifactSet;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.artifact.DefaultResolvedArtifactsBuilder;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.artifact.DependencyArtifactsVisitor;
@@ -47,8 +51,10 @@ import org.gradle.api.internal.artifacts.ivyservice.resolveengine.oldresult.Tran
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.projectresult.ResolvedLocalComponentsResultGraphVisitor;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.AttributeContainerSerializer;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.FileDependencyCollectingGraphVisitor;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.ResolvedGraphRecorder;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.StreamingResolutionResultBuilder;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.store.ResolutionResultsStoreFactory;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.store.ResolvedGraphCache;
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.store.StoreSet;
 import org.gradle.api.internal.artifacts.repositories.ResolutionAwareRepository;
 import org.gradle.api.internal.artifacts.transform.ArtifactTransforms;
@@ -62,9 +68,12 @@ import org.gradle.initialization.BuildIdentity;
 import org.gradle.internal.Transformers;
 import org.gradle.internal.component.local.model.DslOriginDependencyMetadata;
 import org.gradle.internal.component.model.DependencyMetadata;
+import org.gradle.internal.hash.HashCode;
 import org.gradle.internal.operations.BuildOperationExecutor;
 import org.gradle.util.CollectionUtils;
 
+import javax.annotation.Nullable;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 
@@ -88,6 +97,9 @@ public class DefaultConfigurationResolver implements ConfigurationResolver {
     private final ComponentSelectorConverter componentSelectorConverter;
     private final AttributeContainerSerializer attributeContainerSerializer;
     private final BuildIdentity buildIdentity;
+    private final ResolvedGraphFingerprinter graphFingerprinter;
+    private final ResolvedGraphCache graphCache;
+    private final VersionSelectorScheme versionSelectorScheme;
 
     public DefaultConfigurationResolver(ArtifactDependencyResolver resolver, RepositoryHandler repositories,
                                         GlobalDependencyResolutionRules metadataHandler,
@@ -100,7 +112,10 @@ public class DefaultConfigurationResolver implements ConfigurationResolver {
                                         ArtifactTypeRegistry artifactTypeRegistry,
                                         ComponentSelectorConverter componentSelectorConverter,
                                         AttributeContainerSerializer attributeContainerSerializer,
-                                        BuildIdentity buildIdentity) {
+                                        BuildIdentity buildIdentity,
+                                        @Nullable ResolvedGraphFingerprinter graphFingerprinter,
+                                        ResolvedGraphCache graphCache,
+                                        VersionSelectorScheme versionSelectorScheme) {
         this.resolver = resolver;
         this.repositories = repositories;
         this.metadataHandler = metadataHandler;
@@ -114,6 +129,9 @@ public class DefaultConfigurationResolver implements ConfigurationResolver {
         this.componentSelectorConverter = componentSelectorConverter;
         this.attributeContainerSerializer = attributeContainerSerializer;
         this.buildIdentity = buildIdentity;
+        this.graphFingerprinter = graphFingerprinter;
+        this.graphCache = graphCache;
+        this.versionSelectorScheme = versionSelectorScheme;
     }
 
     @Override
@@ -127,6 +145,53 @@ public class DefaultConfigurationResolver implements ConfigurationResolver {
 
     public void resolveGraph(ConfigurationInternal configuration, ResolverResults results) {
         List<ResolutionAwareRepository> resolutionAwareRepositories = CollectionUtils.collect(repositories, Transformers.cast(ResolutionAwareRepository.class));
+        HashCode graphKey = graphFingerprinter == null ? null : graphFingerprinter.fingerprint(configuration, resolutionAwareRepositories);
+        if (graphKey == null) {
+            resolveGraph(configuration, resolutionAwareRepositories, null, null, results);
+            return;
+        }
+        ResolvedGraphCache.CachedGraph cachedGraph = graphCache.get(graphKey);
+        if (cachedGraph != null && cachedGraph.isArtifactsRequired()) {
+            // The artifacts of this graph were required before, so the graph would be resolved again anyway
+            resolveGraph(configuration, resolutionAwareRepositories, null, null, results);
+            return;
+        }
+        ModuleReplacementsData moduleReplacements = metadataHandler.getModuleMetadataProcessor().getModuleReplacements();
+        if (cachedGraph != null && graphCache.isUpToDate(cachedGraph, createResolvers(resolutionAwareRepositories), configuration.getResolutionStrategy().getCachePolicy(), moduleReplacements)) {
+            loadGraph(configuration, graphKey, cachedGraph.getResults(), results);
+            return;
+        }
+        ResolvedGraphRecorder recorder = new ResolvedGraphRecorder(moduleIdentifierFactory, attributeContainerSerializer, versionSelectorScheme, moduleReplacements);
+        resolveGraph(configuration, resolutionAwareRepositories, recorder, graphKey, results);
+        if (recorder.isReusable()) {
+            graphCache.store(graphKey, recorder, createResolvers(resolutionAwareRepositories));
+        }
+    }
+
+    private static List<ConfiguredModuleComponentRepository> createResolvers(List<ResolutionAwareRepository> resolutionAwareRepositories) {
+        List<ConfiguredModuleComponentRepository> moduleRepositories = Lists.newArrayListWithCapacity(resolutionAwareRepositories.size());
+        for (ResolutionAwareRepository repository : resolutionAwareRepositories) {
+            moduleRepositories.add(repository.createResolver());
+        }
+        return moduleRepositories;
+    }
+
+    /**
+     * Uses the results of a graph resolved by an earlier build. The artifacts and the legacy results of the graph are not kept across builds, as they refer to
+     * the metadata of the components. When they are required, the graph is resolved again and the graph is not reused by later builds.
+     */
+    private void loadGraph(ConfigurationInternal configuration, HashCode graphKey, byte[] cachedResults, ResolverResults results) {
+        StoreSet stores = storeFactory.createStoreSet();
+        StreamingResolutionResultBuilder newModelBuilder = new StreamingResolutionResultBuilder(stores.nextBinaryStore(), stores.newModelCache(), moduleIdentifierFactory, attributeContainerSerializer);
+        newModelBuilder.replay(cachedResults);
+
+        // Graphs with project or file dependencies are never cached, so there is nothing to build before the artifacts are resolved
+        VisitedArtifactsResults noArtifacts = new DefaultResolvedArtifactsBuilder(buildIdentity.getCurrentBuild(), buildProjectDependencies, configuration.getResolutionStrategy().getSortOrder()).complete();
+        results.graphResolved(newModelBuilder.complete(), new ResolvedLocalComponentsResultGraphVisitor(buildIdentity.getCurrentBuild()), new BuildDependenciesOnlyVisitedArtifactSet(Collections.<UnresolvedDependency>emptySet(), noArtifacts, artifactTransforms));
+        results.retainState(new CachedGraphState(graphKey));
+    }
+
+    private void resolveGraph(ConfigurationInternal configuration, List<ResolutionAwareRepository> resolutionAwareRepositories, @Nullable DependencyGraphVisitor graphRecorder, @Nullable HashCode graphKey, ResolverResults results) {
         StoreSet stores = storeFactory.createStoreSet();
 
         BinaryStore oldModelStore = stores.nextBinaryStore();
@@ -144,7 +209,9 @@ public class DefaultConfigurationResolver implements ConfigurationResolver {
         DefaultResolvedArtifactsBuilder artifactsBuilder = new DefaultResolvedArtifactsBuilder(buildIdentity.getCurrentBuild(), buildProjectDependencies, configuration.getResolutionStrategy().getSortOrder());
         FileDependencyCollectingGraphVisitor fileDependencyVisitor = new FileDependencyCollectingGraphVisitor();
         ResolutionFailureCollector failureCollector = new ResolutionFailureCollector(componentSelectorConverter);
-        DependencyGraphVisitor graphVisitor = new CompositeDependencyGraphVisitor(newModelBuilder, localComponentsVisitor, failureCollector);
+        DependencyGraphVisitor graphVisitor = graphRecorder == null
+            ? new CompositeDependencyGraphVisitor(newModelBuilder, localComponentsVisitor, failureCollector)
+            : new CompositeDependencyGraphVisitor(newModelBuilder, localComponentsVisitor, failureCollector, graphRecorder);
         DependencyArtifactsVisitor artifactsVisitor = new CompositeDependencyArtifactsVisitor(oldModelVisitor, fileDependencyVisitor, artifactsBuilder);
 
         resolver.resolve(configuration, resolutionAwareRepositories, metadataHandler, Specs.<DependencyMetadata>satisfyAll(), graphVisitor, artifactsVisitor, attributesSchema, artifactTypeRegistry);
@@ -156,11 +223,19 @@ public class DefaultConfigurationResolver implements ConfigurationResolver {
         Set<UnresolvedDependency> failures = failureCollector.complete();
         results.graphResolved(newModelBuilder.complete(), localComponentsVisitor, new BuildDependenciesOnlyVisitedArtifactSet(failures, artifactsResults, artifactTransforms));
 
-        results.retainState(new ArtifactResolveState(graphResults, artifactsResults, fileDependencyResults, failures, oldTransientModelBuilder));
+        results.retainState(new ArtifactResolveState(graphResults, artifactsResults, fileDependencyResults, failures, oldTransientModelBuilder, graphKey));
     }
 
     public void resolveArtifacts(ConfigurationInternal configuration, ResolverResults results) {
+        if (results.getArtifactResolveState() instanceof CachedGraphState) {
+            graphCache.artifactsRequired(((CachedGraphState) results.getArtifactResolveState()).graphKey);
+            List<ResolutionAwareRepository> resolutionAwareRepositories = CollectionUtils.collect(repositories, Transformers.cast(ResolutionAwareRepository.class));
+            resolveGraph(configuration, resolutionAwareRepositories, null, null, results);
+        }
         ArtifactResolveState resolveState = (ArtifactResolveState) results.getArtifactResolveState();
+        if (resolveState.graphKey != null) {
+            graphCache.artifactsRequired(resolveState.graphKey);
+        }
         ResolvedGraphResults graphResults = resolveState.graphResults;
         VisitedArtifactsResults artifactResults = resolveState.artifactsResults;
         TransientConfigurationResultsBuilder transientConfigurationResultsBuilder = resolveState.transientConfigurationResultsBuilder;
@@ -177,13 +252,24 @@ public class DefaultConfigurationResolver implements ConfigurationResolver {
         final VisitedFileDependencyResults fileDependencyResults;
         final Set<UnresolvedDependency> failures;
         final TransientConfigurationResultsBuilder transientConfigurationResultsBuilder;
+        // The fingerprint of the graph, when it may be reused by later builds
+        final HashCode graphKey;
 
-        ArtifactResolveState(ResolvedGraphResults graphResults, VisitedArtifactsResults artifactsResults, VisitedFileDependencyResults fileDependencyResults, Set<UnresolvedDependency> failures, TransientConfigurationResultsBuilder transientConfigurationResultsBuilder) {
+        ArtifactResolveState(ResolvedGraphResults graphResults, VisitedArtifactsResults artifactsResults, VisitedFileDependencyResults fileDependencyResults, Set<UnresolvedDependency> failures, TransientConfigurationResultsBuilder transientConfigurationResultsBuilder, @Nullable HashCode graphKey) {
             this.graphResults = graphResults;
             this.artifactsResults = artifactsResults;
             this.fileDependencyResults = fileDependencyResults;
             this.failures = failures;
             this.transientConfigurationResultsBuilder = transientConfigurationResultsBuilder;
+            this.graphKey = graphKey;
+        }
+    }
+
+    private static class CachedGraphState {
+        final HashCode graphKey;
+
+        CachedGraphState(HashCode graphKey) {
+            this.graphKey = graphKey;
         }
     }
 }
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice;
+
+import com.google.common.collect.Lists;
+import org.gradle.StartParameter;
+import org.gradle.api.Named;
+import org.gradle.api.artifacts.ClientModule;
+import org.gradle.api.artifacts.Configuration;
+import org.gradle.api.artifacts.Dependency;
+import org.gradle.api.artifacts.DependencyArtifact;
+import org.gradle.api.artifacts.DependencyConstraint;
+import org.gradle.api.artifacts.ExcludeRule;
+import org.gradle.api.artifacts.ExternalModuleDependency;
+import org.gradle.api.artifacts.ModuleVersionSelector;
+import org.gradle.api.artifacts.VersionConstraint;
+import org.gradle.api.attributes.Attribute;
+import org.gradle.api.attributes.AttributeContainer;
+import org.gradle.api.internal.DomainObjectContext;
+import org.gradle.api.internal.artifacts.GlobalDependencyResolutionRules;
+import org.gradle.api.internal.artifacts.Module;
+import org.gradle.api.internal.artifacts.configurations.ConfigurationInternal;
+import org.gradle.api.internal.artifacts.configurations.ResolutionStrategyInternal;
+import org.gradle.api.internal.artifacts.repositories.DefaultMavenArtifactRepository;
+import org.gradle.api.internal.artifacts.repositories.ResolutionAwareRepository;
+import org.gradle.api.internal.project.ProjectInternal;
+import org.gradle.internal.classloader.ClassLoaderHierarchyHasher;
+import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.hash.Hasher;
+import org.gradle.internal.hash.Hashing;
+import org.gradle.util.GradleVersion;
+
+import javax.annotation.Nullable;
+import java.net.URI;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Calculates a fingerprint of the inputs of the resolution of a configuration, which identifies the resolved graph as long as the module caches do not change.
+ *
+ * <p>The rules and attribute schema of a build are code, so the class loader of the project is part of the fingerprint. Configurations whose graph depends on
+ * things that cannot be fingerprinted, such as dependency substitution or component metadata rules, project or file dependencies and local repositories,
+ * have no fingerprint. Repositories are identified by their declaration, so only Maven repositories are supported.</p>
+ */
+public class ResolvedGraphFingerprinter {
+    private final ClassLoaderHierarchyHasher classLoaderHierarchyHasher;
+    private final DomainObjectContext domainObjectContext;
+    private final StartParameter startParameter;
+    private final GlobalDependencyResolutionRules globalRules;
+
+    public ResolvedGraphFingerprinter(ClassLoaderHierarchyHasher classLoaderHierarchyHasher, DomainObjectContext domainObjectContext, StartParameter startParameter, GlobalDependencyResolutionRules globalRules) {
+        this.classLoaderHierarchyHasher = classLoaderHierarchyHasher;
+        this.domainObjectContext = domainObjectContext;
+        this.startParameter = startParameter;
+        this.globalRules = globalRules;
+    }
+
+    /**
+     * Returns the fingerprint of the inputs of the given configuration, or null when its graph cannot be identified by a fingerprint.
+     */
+    @Nullable
+    public HashCode fingerprint(ConfigurationInternal configuration, List<ResolutionAwareRepository> repositories) {
+        if (startParameter.isRefreshDependencies() || !(domainObjectContext instanceof ProjectInternal)) {
+            return null;
+        }
+        ResolutionStrategyInternal resolutionStrategy = configuration.getResolutionStrategy();
+        if (resolutionStrategy.resolveGraphToDetermineTaskDependencies()
+            || !resolutionStrategy.getComponentSelection().getRules().isEmpty()
+            || globalRules.getComponentMetadataProcessor().hasRules()) {
+            return null;
+        }
+        HashCode classLoaderHash = classLoaderHierarchyHasher.getClassLoaderHash(((ProjectInternal) domainObjectContext).getClassLoaderScope().getLocalClassLoader());
+        if (classLoaderHash == null) {
+            return null;
+        }
+
+        Hasher hasher = Hashing.md5().newHasher();
+        hasher.putString(GradleVersion.current().getVersion());
+        hasher.putHash(classLoaderHash);
+
+        hasher.putString(configuration.getPath());
+        Module module = configuration.getModule();
+        putNullableString(hasher, module.getGroup());
+        putNullableString(hasher, module.getName());
+        putNullableString(hasher, module.getVersion());
+        putNullableString(hasher, module.getStatus());
+        putAttributes(hasher, configuration.getAttributes());
+        for (Configuration superConfiguration : configuration.getHierarchy()) {
+            hasher.putString(superConfiguration.getName());
+            hasher.putBoolean(superConfiguration.isTransitive());
+            putExcludeRules(hasher, superConfiguration.getExcludeRules());
+        }
+
+        for (Dependency dependency : configuration.getAllDependencies()) {
+            if (!(dependency instanceof ExternalModuleDependency) || dependency instanceof ClientModule) {
+                return null;
+            }
+            putDependency(hasher, (ExternalModuleDependency) dependency);
+        }
+        for (DependencyConstraint constraint : configuration.getAllDependencyConstraints()) {
+            putModuleVersionSelector(hasher, constraint);
+            putNullableString(hasher, constraint.getReason());
+        }
+
+        for (ModuleVersionSelector forcedModule : resolutionStrategy.getForcedModules()) {
+            putModuleVersionSelector(hasher, forcedModule);
+        }
+        hasher.putString(resolutionStrategy.getConflictResolution().name());
+
+        // Uses the declaration of each repository, as creating the resolvers is expensive
+        for (ResolutionAwareRepository repository : repositories) {
+            if (!(repository instanceof DefaultMavenArtifactRepository)) {
+                return null;
+            }
+            DefaultMavenArtifactRepository mavenRepository = (DefaultMavenArtifactRepository) repository;
+            URI url = mavenRepository.getUrl();
+            if (url == null || "file".equals(url.getScheme())) {
+                // Metadata from local repositories is not cached, so it can change without the module caches knowing
+                return null;
+            }
+            mavenRepository.appendDescriptor(hasher);
+        }
+        return hasher.hash();
+    }
+
+    private static void putDependency(Hasher hasher, ExternalModuleDependency dependency) {
+        putModuleVersionSelector(hasher, dependency);
+        putNullableString(hasher, dependency.getReason());
+        hasher.putBoolean(dependency.isForce());
+        hasher.putBoolean(dependency.isChanging());
+        hasher.putBoolean(dependency.isTransitive());
+        putNullableString(hasher, dependency.getTargetConfiguration());
+        putExcludeRules(hasher, dependency.getExcludeRules());
+        hasher.putInt(dependency.getArtifacts().size());
+        for (DependencyArtifact artifact : dependency.getArtifacts()) {
+            putNullableString(hasher, artifact.getName());
+            putNullableString(hasher, artifact.getType());
+            putNullableString(hasher, artifact.getExtension());
+            putNullableString(hasher, artifact.getClassifier());
+            putNullableString(hasher, artifact.getUrl());
+        }
+    }
+
+    private static void putModuleVersionSelector(Hasher hasher, ModuleVersionSelector selector) {
+        putNullableString(hasher, selector.getGroup());
+        putNullableString(hasher, selector.getName());
+        VersionConstraint versionConstraint = selector.getVersionConstraint();
+        putNullableString(hasher, versionConstraint.getPreferredVersion());
+        putNullableString(hasher, versionConstraint.getBranch());
+        hasher.putInt(versionConstraint.getRejectedVersions().size());
+        for (String rejectedVersion : versionConstraint.getRejectedVersions()) {
+            hasher.putString(rejectedVersion);
+        }
+    }
+
+    private static void putExcludeRules(Hasher hasher, Iterable<ExcludeRule> excludeRules) {
+        for (ExcludeRule excludeRule : excludeRules) {
+            putNullableString(hasher, excludeRule.getGroup());
+            putNullableString(hasher, excludeRule.getModule());
+        }
+        hasher.putByte((byte) 0);
+    }
+
+    private static void putAttributes(Hasher hasher, AttributeContainer attributes) {
+        List<Attribute<?>> keys = Lists.newArrayList(attributes.keySet());
+        Collections.sort(keys, new Comparator<Attribute<?>>() {
+            @Override
+            public int compare(Attribute<?> left, Attribute<?> right) {
+                return left.getName().compareTo(right.getName());
+            }
+        });
+        for (Attribute<?> key : keys) {
+            hasher.putString(key.getName());
+            hasher.putString(key.getType().getName());
+            Object value = attributes.getAttribute(key);
+            hasher.putString(value instanceof Named ? ((Named) value).getName() : String.valueOf(value));
+        }
+        hasher.putByte((byte) 0);
+    }
+
+    private static void putNullableString(Hasher hasher, @Nullable String value) {
+        if (value == null) {
+            hasher.putBoolean(false);
+        } else {
+            hasher.putBoolean(true);
+            hasher.putString(value);
+        }
+    }
+}
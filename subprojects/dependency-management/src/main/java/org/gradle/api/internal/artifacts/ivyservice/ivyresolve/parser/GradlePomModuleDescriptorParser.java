@@ -60,15 +60,18 @@ public final class GradlePomModuleDescriptorParser extends AbstractModuleDescrip
     private final VersionSelectorScheme mavenVersionSelectorScheme;
     private final ImmutableModuleIdentifierFactory moduleIdentifierFactory;
     private final MavenMutableModuleMetadataFactory metadataFactory;
+    private final PomDocumentCache pomDocumentCache;
 
     public GradlePomModuleDescriptorParser(VersionSelectorScheme gradleVersionSelectorScheme,
                                            ImmutableModuleIdentifierFactory moduleIdentifierFactory,
-                                           FileResourceRepository fileResourceRepository, MavenMutableModuleMetadataFactory metadataFactory) {
+                                           FileResourceRepository fileResourceRepository, MavenMutableModuleMetadataFactory metadataFactory,
+                                           PomDocumentCache pomDocumentCache) {
         super(fileResourceRepository);
         this.gradleVersionSelectorScheme = gradleVersionSelectorScheme;
         mavenVersionSelectorScheme = new MavenVersionSelectorScheme(gradleVersionSelectorScheme);
         this.moduleIdentifierFactory = moduleIdentifierFactory;
         this.metadataFactory = metadataFactory;
+        this.pomDocumentCache = pomDocumentCache;
     }
 
     @Override
@@ -224,7 +227,8 @@ public final class GradlePomModuleDescriptorParser extends AbstractModuleDescrip
     }
 
     private PomReader parsePomResource(DescriptorParseContext parseContext, LocallyAvailableExternalResource localResource, Map<String, String> childProperties) throws SAXException, IOException {
-        PomReader pomReader = new PomReader(localResource, moduleIdentifierFactory, childProperties);
+        // Parent, imported and relocated POMs are shared by many modules, so reuse their parsed documents
+        PomReader pomReader = new PomReader(pomDocumentCache.getDocument(localResource), localResource, moduleIdentifierFactory, childProperties);
         GradlePomModuleDescriptorBuilder mdBuilder = new GradlePomModuleDescriptorBuilder(pomReader, gradleVersionSelectorScheme, mavenVersionSelectorScheme);
         doParsePom(parseContext, mdBuilder, pomReader);
         return pomReader;
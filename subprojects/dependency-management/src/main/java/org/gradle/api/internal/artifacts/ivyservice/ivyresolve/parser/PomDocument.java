@@ -0,0 +1,268 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The parts of a POM that are used to build the metadata of a module, as written in the POM. Properties are not substituted, so that a document can be shared
+ * by all the {@link PomReader}s of POMs with the same content, whatever the properties of their child POMs.
+ *
+ * <p>Like the DOM this replaces, only the first occurrence of a single valued element is kept, and the text of an element is its own text, without the text of
+ * nested elements.</p>
+ */
+public final class PomDocument {
+    private final String rootElementName;
+    private final String groupId;
+    private final String artifactId;
+    private final String version;
+    private final String packaging;
+    private final Coordinates parent;
+    private final Coordinates relocation;
+    private final Map<String, String> properties;
+    private final List<Dependency> dependencies;
+    private final List<Dependency> dependencyMgts;
+    private final List<Profile> profiles;
+
+    PomDocument(String rootElementName, @Nullable String groupId, @Nullable String artifactId, @Nullable String version, @Nullable String packaging,
+                @Nullable Coordinates parent, @Nullable Coordinates relocation, Map<String, String> properties,
+                List<Dependency> dependencies, List<Dependency> dependencyMgts, List<Profile> profiles) {
+        this.rootElementName = rootElementName;
+        this.groupId = groupId;
+        this.artifactId = artifactId;
+        this.version = version;
+        this.packaging = packaging;
+        this.parent = parent;
+        this.relocation = relocation;
+        this.properties = ImmutableMap.copyOf(properties);
+        this.dependencies = ImmutableList.copyOf(dependencies);
+        this.dependencyMgts = ImmutableList.copyOf(dependencyMgts);
+        this.profiles = ImmutableList.copyOf(profiles);
+    }
+
+    public String getRootElementName() {
+        return rootElementName;
+    }
+
+    @Nullable
+    public String getGroupId() {
+        return groupId;
+    }
+
+    @Nullable
+    public String getArtifactId() {
+        return artifactId;
+    }
+
+    @Nullable
+    public String getVersion() {
+        return version;
+    }
+
+    @Nullable
+    public String getPackaging() {
+        return packaging;
+    }
+
+    /**
+     * Returns the coordinates declared by the parent element, or null when there is no parent element.
+     */
+    @Nullable
+    public Coordinates getParent() {
+        return parent;
+    }
+
+    /**
+     * Returns the coordinates declared by the relocation element of the distribution management, or null when there is no relocation element.
+     */
+    @Nullable
+    public Coordinates getRelocation() {
+        return relocation;
+    }
+
+    public Map<String, String> getProperties() {
+        return properties;
+    }
+
+    public List<Dependency> getDependencies() {
+        return dependencies;
+    }
+
+    public List<Dependency> getDependencyMgts() {
+        return dependencyMgts;
+    }
+
+    public List<Profile> getProfiles() {
+        return profiles;
+    }
+
+    public static final class Coordinates {
+        private final String groupId;
+        private final String artifactId;
+        private final String version;
+
+        Coordinates(@Nullable String groupId, @Nullable String artifactId, @Nullable String version) {
+            this.groupId = groupId;
+            this.artifactId = artifactId;
+            this.version = version;
+        }
+
+        @Nullable
+        public String getGroupId() {
+            return groupId;
+        }
+
+        @Nullable
+        public String getArtifactId() {
+            return artifactId;
+        }
+
+        @Nullable
+        public String getVersion() {
+            return version;
+        }
+    }
+
+    public static final class Dependency {
+        private final String groupId;
+        private final String artifactId;
+        private final String version;
+        private final String scope;
+        private final String type;
+        private final String classifier;
+        private final String optional;
+        private final List<Coordinates> exclusions;
+
+        Dependency(@Nullable String groupId, @Nullable String artifactId, @Nullable String version, @Nullable String scope, @Nullable String type,
+                   @Nullable String classifier, @Nullable String optional, @Nullable List<Coordinates> exclusions) {
+            this.groupId = groupId;
+            this.artifactId = artifactId;
+            this.version = version;
+            this.scope = scope;
+            this.type = type;
+            this.classifier = classifier;
+            this.optional = optional;
+            this.exclusions = exclusions == null ? null : ImmutableList.copyOf(exclusions);
+        }
+
+        @Nullable
+        public String getGroupId() {
+            return groupId;
+        }
+
+        @Nullable
+        public String getArtifactId() {
+            return artifactId;
+        }
+
+        @Nullable
+        public String getVersion() {
+            return version;
+        }
+
+        @Nullable
+        public String getScope() {
+            return scope;
+        }
+
+        @Nullable
+        public String getType() {
+            return type;
+        }
+
+        @Nullable
+        public String getClassifier() {
+            return classifier;
+        }
+
+        @Nullable
+        public String getOptional() {
+            return optional;
+        }
+
+        /**
+         * Returns the exclusions, with no version, or null when there is no exclusions element.
+         */
+        @Nullable
+        public List<Coordinates> getExclusions() {
+            return exclusions;
+        }
+    }
+
+    public static final class Profile {
+        private final String id;
+        private final String activeByDefault;
+        private final String activationPropertyName;
+        private final boolean activationProperty;
+        private final boolean activation;
+        private final Map<String, String> properties;
+        private final List<Dependency> dependencies;
+        private final List<Dependency> dependencyMgts;
+
+        Profile(@Nullable String id, boolean activation, @Nullable String activeByDefault, boolean activationProperty, @Nullable String activationPropertyName,
+                Map<String, String> properties, List<Dependency> dependencies, List<Dependency> dependencyMgts) {
+            this.id = id;
+            this.activation = activation;
+            this.activeByDefault = activeByDefault;
+            this.activationProperty = activationProperty;
+            this.activationPropertyName = activationPropertyName;
+            this.properties = ImmutableMap.copyOf(properties);
+            this.dependencies = ImmutableList.copyOf(dependencies);
+            this.dependencyMgts = ImmutableList.copyOf(dependencyMgts);
+        }
+
+        @Nullable
+        public String getId() {
+            return id;
+        }
+
+        public boolean hasActivation() {
+            return activation;
+        }
+
+        @Nullable
+        public String getActiveByDefault() {
+            return activeByDefault;
+        }
+
+        public boolean hasActivationProperty() {
+            return activationProperty;
+        }
+
+        @Nullable
+        public String getActivationPropertyName() {
+            return activationPropertyName;
+        }
+
+        public Map<String, String> getProperties() {
+            return properties;
+        }
+
+        public List<Dependency> getDependencies() {
+            return dependencies;
+        }
+
+        public List<Dependency> getDependencyMgts() {
+            return dependencyMgts;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser;
+
+import org.apache.commons.io.IOUtils;
+import org.gradle.api.Transformer;
+import org.gradle.cache.internal.CrossBuildInMemoryCache;
+import org.gradle.cache.internal.CrossBuildInMemoryCacheFactory;
+import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.hash.Hashing;
+import org.gradle.internal.resource.local.LocallyAvailableExternalResource;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+/**
+ * Keeps the parsed POMs that are inherited or imported by other POMs, such as parent POMs and BOMs, across builds. As these are shared by many modules, they
+ * would otherwise be parsed again for each module that uses them. Documents are keyed by the hash of the content of the POM, so that the same document is
+ * used for the copies of a POM that are found in different repositories or caches.
+ */
+public class PomDocumentCache {
+    private final CrossBuildInMemoryCache<HashCode, PomDocument> documents;
+
+    public PomDocumentCache(CrossBuildInMemoryCacheFactory cacheFactory) {
+        this.documents = cacheFactory.newCache();
+    }
+
+    public PomDocument getDocument(final LocallyAvailableExternalResource resource) {
+        final String systemId = PomReader.getSystemId(resource);
+        return resource.withContent(new Transformer<PomDocument, InputStream>() {
+            public PomDocument transform(InputStream inputStream) {
+                try {
+                    byte[] content = IOUtils.toByteArray(inputStream);
+                    HashCode hash = Hashing.md5().hashBytes(content);
+                    PomDocument document = documents.get(hash);
+                    if (document == null) {
+                        document = PomStaxParser.parse(new ByteArrayInputStream(content), systemId);
+                        documents.put(hash, document);
+                    }
+                    return document;
+                } catch (Exception e) {
+                    throw new MetaDataParseException("POM", resource, e);
+                }
+            }
+        }).getResult();
+    }
+}
@@ -0,0 +1,507 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser;
+
+import org.apache.commons.io.IOUtils;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.classloader.ClassLoaderUtils;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLResolver;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.LineNumberReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parses a POM into a {@link PomDocument} with a streaming parser, keeping only the elements that are used to build the metadata of a module.
+ */
+public final class PomStaxParser {
+    private static final String PROJECT = "project";
+    private static final String MODEL = "model";
+    private static final String PACKAGING = "packaging";
+    private static final String DEPENDENCY = "dependency";
+    private static final String DEPENDENCIES = "dependencies";
+    private static final String DEPENDENCY_MGT = "dependencyManagement";
+    private static final String GROUP_ID = "groupId";
+    private static final String ARTIFACT_ID = "artifactId";
+    private static final String VERSION = "version";
+    private static final String PARENT = "parent";
+    private static final String SCOPE = "scope";
+    private static final String CLASSIFIER = "classifier";
+    private static final String OPTIONAL = "optional";
+    private static final String EXCLUSIONS = "exclusions";
+    private static final String EXCLUSION = "exclusion";
+    private static final String DISTRIBUTION_MGT = "distributionManagement";
+    private static final String RELOCATION = "relocation";
+    private static final String PROPERTIES = "properties";
+    private static final String TYPE = "type";
+    private static final String PROFILES = "profiles";
+    private static final String PROFILE = "profile";
+    private static final String PROFILE_ID = "id";
+    private static final String PROFILE_ACTIVATION = "activation";
+    private static final String PROFILE_ACTIVATION_ACTIVE_BY_DEFAULT = "activeByDefault";
+    private static final String PROFILE_ACTIVATION_PROPERTY = "property";
+    private static final String PROFILE_ACTIVATION_PROPERTY_NAME = "name";
+    private static final byte[] M2_ENTITIES_RESOURCE;
+    private static final XMLInputFactory XML_INPUT_FACTORY;
+
+    static {
+        byte[] bytes;
+        try {
+            bytes = IOUtils.toByteArray(org.apache.ivy.plugins.parser.m2.PomReader.class.getResourceAsStream("m2-entities.ent"));
+        } catch (IOException e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        }
+        M2_ENTITIES_RESOURCE = bytes;
+
+        // Set the context classloader the bootstrap classloader, to work around the way that JAXP locates implementation classes
+        // This should ensure that the JAXP classes provided by the JVM are used, rather than some other implementation
+        ClassLoader original = Thread.currentThread().getContextClassLoader();
+        Thread.currentThread().setContextClassLoader(ClassLoaderUtils.getPlatformClassLoader());
+        try {
+            XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+            XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_COALESCING, true);
+            XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_VALIDATING, false);
+            XML_INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, true);
+            XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES, true);
+            XML_INPUT_FACTORY.setXMLResolver(new XMLResolver() {
+                public Object resolveEntity(String publicId, String systemId, String baseUri, String namespace) {
+                    if ((systemId != null) && systemId.endsWith("m2-entities.ent")) {
+                        return new ByteArrayInputStream(M2_ENTITIES_RESOURCE);
+                    }
+                    return null;
+                }
+            });
+        } finally {
+            Thread.currentThread().setContextClassLoader(original);
+        }
+    }
+
+    private PomStaxParser() {}
+
+    public static PomDocument parse(InputStream stream, String systemId) throws IOException, XMLStreamException {
+        // Set the context classloader the bootstrap classloader, to work around the way that JAXP locates implementation classes
+        // This should ensure that the JAXP classes provided by the JVM are used, rather than some other implementation
+        ClassLoader original = Thread.currentThread().getContextClassLoader();
+        Thread.currentThread().setContextClassLoader(ClassLoaderUtils.getPlatformClassLoader());
+        try {
+            XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(systemId, new AddDTDFilterInputStream(stream));
+            try {
+                int event = reader.next();
+                while (event != XMLStreamConstants.START_ELEMENT) {
+                    event = reader.next();
+                }
+                PomDocument document = parseProject(reader);
+                // Read the rest of the document, so that it is checked to be well-formed
+                while (reader.hasNext()) {
+                    reader.next();
+                }
+                return document;
+            } finally {
+                reader.close();
+            }
+        } finally {
+            Thread.currentThread().setContextClassLoader(original);
+        }
+    }
+
+    private static PomDocument parseProject(XMLStreamReader reader) throws XMLStreamException {
+        String rootElementName = getName(reader);
+        List<PomDocument.Dependency> noDependencies = Collections.emptyList();
+        if (!PROJECT.equals(rootElementName) && !MODEL.equals(rootElementName)) {
+            skipElement(reader);
+            return new PomDocument(rootElementName, null, null, null, null, null, null, Collections.<String, String>emptyMap(), noDependencies, noDependencies, Collections.<PomDocument.Profile>emptyList());
+        }
+        String groupId = null;
+        String artifactId = null;
+        String version = null;
+        String packaging = null;
+        PomDocument.Coordinates parent = null;
+        PomDocument.Coordinates relocation = null;
+        boolean distributionMgt = false;
+        Map<String, String> properties = null;
+        List<PomDocument.Dependency> dependencies = null;
+        List<PomDocument.Dependency> dependencyMgts = null;
+        List<PomDocument.Profile> profiles = null;
+        while (nextChildElement(reader)) {
+            String name = getName(reader);
+            if (GROUP_ID.equals(name) && groupId == null) {
+                groupId = readText(reader);
+            } else if (ARTIFACT_ID.equals(name) && artifactId == null) {
+                artifactId = readText(reader);
+            } else if (VERSION.equals(name) && version == null) {
+                version = readText(reader);
+            } else if (PACKAGING.equals(name) && packaging == null) {
+                packaging = readText(reader);
+            } else if (PARENT.equals(name) && parent == null) {
+                parent = parseCoordinates(reader);
+            } else if (DISTRIBUTION_MGT.equals(name) && !distributionMgt) {
+                distributionMgt = true;
+                relocation = parseDistributionMgt(reader);
+            } else if (PROPERTIES.equals(name) && properties == null) {
+                properties = parseProperties(reader);
+            } else if (DEPENDENCIES.equals(name) && dependencies == null) {
+                dependencies = parseDependencies(reader);
+            } else if (DEPENDENCY_MGT.equals(name) && dependencyMgts == null) {
+                dependencyMgts = parseDependencyMgt(reader);
+            } else if (PROFILES.equals(name) && profiles == null) {
+                profiles = parseProfiles(reader);
+            } else {
+                skipElement(reader);
+            }
+        }
+        return new PomDocument(rootElementName, groupId, artifactId, version, packaging, parent, relocation,
+            properties == null ? Collections.<String, String>emptyMap() : properties,
+            dependencies == null ? noDependencies : dependencies,
+            dependencyMgts == null ? noDependencies : dependencyMgts,
+            profiles == null ? Collections.<PomDocument.Profile>emptyList() : profiles);
+    }
+
+    private static PomDocument.Coordinates parseCoordinates(XMLStreamReader reader) throws XMLStreamException {
+        String groupId = null;
+        String artifactId = null;
+        String version = null;
+        while (nextChildElement(reader)) {
+            String name = getName(reader);
+            if (GROUP_ID.equals(name) && groupId == null) {
+                groupId = readText(reader);
+            } else if (ARTIFACT_ID.equals(name) && artifactId == null) {
+                artifactId = readText(reader);
+            } else if (VERSION.equals(name) && version == null) {
+                version = readText(reader);
+            } else {
+                skipElement(reader);
+            }
+        }
+        return new PomDocument.Coordinates(groupId, artifactId, version);
+    }
+
+    private static PomDocument.Coordinates parseDistributionMgt(XMLStreamReader reader) throws XMLStreamException {
+        PomDocument.Coordinates relocation = null;
+        while (nextChildElement(reader)) {
+            if (RELOCATION.equals(getName(reader)) && relocation == null) {
+                relocation = parseCoordinates(reader);
+            } else {
+                skipElement(reader);
+            }
+        }
+        return relocation;
+    }
+
+    private static Map<String, String> parseProperties(XMLStreamReader reader) throws XMLStreamException {
+        Map<String, String> properties = new HashMap<String, String>();
+        while (nextChildElement(reader)) {
+            String name = getName(reader);
+            properties.put(name, readText(reader));
+        }
+        return properties;
+    }
+
+    private static List<PomDocument.Dependency> parseDependencyMgt(XMLStreamReader reader) throws XMLStreamException {
+        List<PomDocument.Dependency> dependencies = null;
+        while (nextChildElement(reader)) {
+            if (DEPENDENCIES.equals(getName(reader)) && dependencies == null) {
+                dependencies = parseDependencies(reader);
+            } else {
+                skipElement(reader);
+            }
+        }
+        return dependencies == null ? Collections.<PomDocument.Dependency>emptyList() : dependencies;
+    }
+
+    private static List<PomDocument.Dependency> parseDependencies(XMLStreamReader reader) throws XMLStreamException {
+        List<PomDocument.Dependency> dependencies = new ArrayList<PomDocument.Dependency>();
+        while (nextChildElement(reader)) {
+            if (DEPENDENCY.equals(getName(reader))) {
+                dependencies.add(parseDependency(reader));
+            } else {
+                skipElement(reader);
+            }
+        }
+        return dependencies;
+    }
+
+    private static PomDocument.Dependency parseDependency(XMLStreamReader reader) throws XMLStreamException {
+        String groupId = null;
+        String artifactId = null;
+        String version = null;
+        String scope = null;
+        String type = null;
+        String classifier = null;
+        String optional = null;
+        List<PomDocument.Coordinates> exclusions = null;
+        while (nextChildElement(reader)) {
+            String name = getName(reader);
+            if (GROUP_ID.equals(name) && groupId == null) {
+                groupId = readText(reader);
+            } else if (ARTIFACT_ID.equals(name) && artifactId == null) {
+                artifactId = readText(reader);
+            } else if (VERSION.equals(name) && version == null) {
+                version = readText(reader);
+            } else if (SCOPE.equals(name) && scope == null) {
+                scope = readText(reader);
+            } else if (TYPE.equals(name) && type == null) {
+                type = readText(reader);
+            } else if (CLASSIFIER.equals(name) && classifier == null) {
+                classifier = readText(reader);
+            } else if (OPTIONAL.equals(name) && optional == null) {
+                optional = readText(reader);
+            } else if (EXCLUSIONS.equals(name) && exclusions == null) {
+                exclusions = parseExclusions(reader);
+            } else {
+                skipElement(reader);
+            }
+        }
+        return new PomDocument.Dependency(groupId, artifactId, version, scope, type, classifier, optional, exclusions);
+    }
+
+    private static List<PomDocument.Coordinates> parseExclusions(XMLStreamReader reader) throws XMLStreamException {
+        List<PomDocument.Coordinates> exclusions = new ArrayList<PomDocument.Coordinates>();
+        while (nextChildElement(reader)) {
+            if (EXCLUSION.equals(getName(reader))) {
+                exclusions.add(parseCoordinates(reader));
+            } else {
+                skipElement(reader);
+            }
+        }
+        return exclusions;
+    }
+
+    private static List<PomDocument.Profile> parseProfiles(XMLStreamReader reader) throws XMLStreamException {
+        List<PomDocument.Profile> profiles = new ArrayList<PomDocument.Profile>();
+        while (nextChildElement(reader)) {
+            if (PROFILE.equals(getName(reader))) {
+                profiles.add(parseProfile(reader));
+            } else {
+                skipElement(reader);
+            }
+        }
+        return profiles;
+    }
+
+    private static PomDocument.Profile parseProfile(XMLStreamReader reader) throws XMLStreamException {
+        String id = null;
+        boolean activation = false;
+        String activeByDefault = null;
+        boolean activationProperty = false;
+        String activationPropertyName = null;
+        Map<String, String> properties = null;
+        List<PomDocument.Dependency> dependencies = null;
+        List<PomDocument.Dependency> dependencyMgts = null;
+        while (nextChildElement(reader)) {
+            String name = getName(reader);
+            if (PROFILE_ID.equals(name) && id == null) {
+                id = readText(reader);
+            } else if (PROFILE_ACTIVATION.equals(name) && !activation) {
+                activation = true;
+                while (nextChildElement(reader)) {
+                    String activationName = getName(reader);
+                    if (PROFILE_ACTIVATION_ACTIVE_BY_DEFAULT.equals(activationName) && activeByDefault == null) {
+                        activeByDefault = readText(reader);
+                    } else if (PROFILE_ACTIVATION_PROPERTY.equals(activationName) && !activationProperty) {
+                        activationProperty = true;
+                        activationPropertyName = parseActivationPropertyName(reader);
+                    } else {
+                        skipElement(reader);
+                    }
+                }
+            } else if (PROPERTIES.equals(name) && properties == null) {
+                properties = parseProperties(reader);
+            } else if (DEPENDENCIES.equals(name) && dependencies == null) {
+                dependencies = parseDependencies(reader);
+            } else if (DEPENDENCY_MGT.equals(name) && dependencyMgts == null) {
+                dependencyMgts = parseDependencyMgt(reader);
+            } else {
+                skipElement(reader);
+            }
+        }
+        return new PomDocument.Profile(id, activation, activeByDefault, activationProperty, activationPropertyName,
+            properties == null ? Collections.<String, String>emptyMap() : properties,
+            dependencies == null ? Collections.<PomDocument.Dependency>emptyList() : dependencies,
+            dependencyMgts == null ? Collections.<PomDocument.Dependency>emptyList() : dependencyMgts);
+    }
+
+    private static String parseActivationPropertyName(XMLStreamReader reader) throws XMLStreamException {
+        String name = null;
+        while (nextChildElement(reader)) {
+            if (PROFILE_ACTIVATION_PROPERTY_NAME.equals(getName(reader)) && name == null) {
+                name = readText(reader);
+            } else {
+                skipElement(reader);
+            }
+        }
+        return name;
+    }
+
+    /**
+     * Returns the name of the current element, including its prefix, as the DOM did when it was not aware of namespaces.
+     */
+    private static String getName(XMLStreamReader reader) {
+        String prefix = reader.getPrefix();
+        String localName = reader.getLocalName();
+        return prefix == null || prefix.length() == 0 ? localName : prefix + ":" + localName;
+    }
+
+    /**
+     * Moves to the start of the next child element of the current element. Returns false and moves to the end of the current element when there are no more child elements.
+     */
+    private static boolean nextChildElement(XMLStreamReader reader) throws XMLStreamException {
+        while (true) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                return true;
+            }
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Returns the text of the current element, without the text of nested elements, and moves to the end of the element.
+     */
+    private static String readText(XMLStreamReader reader) throws XMLStreamException {
+        String text = "";
+        StringBuilder builder = null;
+        while (true) {
+            switch (reader.next()) {
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    if (text.length() == 0) {
+                        text = reader.getText();
+                    } else {
+                        if (builder == null) {
+                            builder = new StringBuilder(text);
+                        }
+                        builder.append(reader.getText());
+                    }
+                    break;
+                case XMLStreamConstants.START_ELEMENT:
+                    skipElement(reader);
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    return builder == null ? text : builder.toString();
+                default:
+                    break;
+            }
+        }
+    }
+
+    private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    public static final class AddDTDFilterInputStream extends FilterInputStream {
+        private static final int MARK = 10000;
+        private static final String DOCTYPE = "<!DOCTYPE project SYSTEM \"m2-entities.ent\">\n";
+
+        private int count;
+        private byte[] prefix = DOCTYPE.getBytes();
+
+        public AddDTDFilterInputStream(InputStream in) throws IOException {
+            super(new BufferedInputStream(in));
+
+            this.in.mark(MARK);
+
+            // TODO: we should really find a better solution for this...
+            // maybe we could use a FilterReader instead of a FilterInputStream?
+            int byte1 = this.in.read();
+            int byte2 = this.in.read();
+            int byte3 = this.in.read();
+
+            if (byte1 == 239 && byte2 == 187 && byte3 == 191) {
+                // skip the UTF-8 BOM
+                this.in.mark(MARK);
+            } else {
+                this.in.reset();
+            }
+
+            int bytesToSkip = 0;
+            LineNumberReader reader = new LineNumberReader(new InputStreamReader(this.in, "UTF-8"), 100);
+            String firstLine = reader.readLine();
+            if (firstLine != null) {
+                String trimmed = firstLine.trim();
+                if (trimmed.startsWith("<?xml ")) {
+                    int endIndex = trimmed.indexOf("?>");
+                    String xmlDecl = trimmed.substring(0, endIndex + 2);
+                    prefix = (xmlDecl + "\n" + DOCTYPE).getBytes();
+                    bytesToSkip = xmlDecl.getBytes().length;
+                }
+            }
+
+            this.in.reset();
+            for (int i = 0; i < bytesToSkip; i++) {
+                this.in.read();
+            }
+        }
+
+        public int read() throws IOException {
+            if (count < prefix.length) {
+                return prefix[count++];
+            }
+
+            return super.read();
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (b == null) {
+                throw new NullPointerException();
+            } else if ((off < 0) || (off > b.length) || (len < 0)
+                    || ((off + len) > b.length) || ((off + len) < 0)) {
+                throw new IndexOutOfBoundsException();
+            } else if (len == 0) {
+                return 0;
+            }
+
+            int nbrBytesCopied = 0;
+
+            if (count < prefix.length) {
+                int nbrBytesFromPrefix = Math.min(prefix.length - count, len);
+                System.arraycopy(prefix, count, b, off, nbrBytesFromPrefix);
+                nbrBytesCopied = nbrBytesFromPrefix;
+            }
+
+            if (nbrBytesCopied < len) {
+                nbrBytesCopied += in.read(b, off + nbrBytesCopied, len - nbrBytesCopied);
+            }
+
+            count += nbrBytesCopied;
+            return nbrBytesCopied;
+        }
+    }
+}
@@ -20,11 +20,12 @@ import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.SetMultimap;
 import org.gradle.api.artifacts.ModuleVersionIdentifier;
+import org.gradle.api.artifacts.VersionConstraint;
 import org.gradle.api.artifacts.component.ModuleComponentIdentifier;
 import org.gradle.api.artifacts.component.ModuleComponentSelector;
 import org.gradle.api.attributes.AttributeContainer;
 import org.gradle.api.internal.artifacts.ImmutableModuleIdentifierFactory;
-import org.gradle.api.internal.artifacts.ModuleComponentSelectorSerializer;
+import org.gradle.api.internal.artifacts.dependencies.DefaultImmutableVersionConstraint;
 import org.gradle.api.internal.artifacts.ivyservice.NamespaceId;
 import org.gradle.api.internal.artifacts.ivyservice.moduleconverter.dependencies.DefaultExcludeRuleConverter;
 import org.gradle.api.internal.artifacts.ivyservice.moduleconverter.dependencies.ExcludeRuleConverter;
@@ -33,12 +34,14 @@ import org.gradle.api.internal.artifacts.repositories.metadata.IvyMutableModuleM
 import org.gradle.api.internal.artifacts.repositories.metadata.MavenMutableModuleMetadataFactory;
 import org.gradle.api.internal.artifacts.repositories.resolver.MavenUniqueSnapshotComponentIdentifier;
 import org.gradle.api.internal.attributes.ImmutableAttributes;
+import org.gradle.api.internal.cache.StringInterner;
 import org.gradle.internal.component.external.descriptor.Artifact;
 import org.gradle.internal.component.external.descriptor.Configuration;
 import org.gradle.internal.component.external.descriptor.DefaultExclude;
 import org.gradle.internal.component.external.descriptor.MavenScope;
 import org.gradle.internal.component.external.model.ComponentVariant;
 import org.gradle.internal.component.external.model.DefaultModuleComponentIdentifier;
+import org.gradle.internal.component.external.model.DefaultModuleComponentSelector;
 import org.gradle.internal.component.external.model.IvyDependencyDescriptor;
 import org.gradle.internal.component.external.model.IvyModuleResolveMetadata;
 import org.gradle.internal.component.external.model.MavenDependencyDescriptor;
@@ -59,29 +62,43 @@ import org.gradle.internal.serialize.Encoder;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+/**
+ * Serializes module metadata for the module metadata cache.
+ *
+ * <p>The strings of a descriptor are written to a string table as they are first used: the first occurrence of a string is written in full, and any later
+ * occurrence as the index of the string in the table. Group, module and version names are repeated many times by the dependencies, excludes and variants of a
+ * module, so this keeps the descriptors small and means each of these strings is decoded only once per descriptor. Strings that are read are interned, so that
+ * the metadata of all the modules read from the cache share the same instances.</p>
+ */
 public class ModuleMetadataSerializer {
     private static final byte TYPE_IVY = 1;
     private static final byte TYPE_MAVEN = 2;
 
-    private static final ModuleComponentSelectorSerializer COMPONENT_SELECTOR_SERIALIZER = new ModuleComponentSelectorSerializer();
+    private static final int NULL_STRING = 0;
+    private static final int NEW_STRING = 1;
+    private static final int FIRST_STRING_INDEX = 2;
+
     private final MavenMutableModuleMetadataFactory mavenMetadataFactory;
     private final IvyMutableModuleMetadataFactory ivyMetadataFactory;
     private final AttributeContainerSerializer attributeContainerSerializer;
+    private final StringInterner stringInterner;
 
-    public ModuleMetadataSerializer(AttributeContainerSerializer attributeContainerSerializer, MavenMutableModuleMetadataFactory mavenMetadataFactory, IvyMutableModuleMetadataFactory ivyMetadataFactory) {
+    public ModuleMetadataSerializer(AttributeContainerSerializer attributeContainerSerializer, MavenMutableModuleMetadataFactory mavenMetadataFactory, IvyMutableModuleMetadataFactory ivyMetadataFactory, StringInterner stringInterner) {
         this.mavenMetadataFactory = mavenMetadataFactory;
         this.ivyMetadataFactory = ivyMetadataFactory;
         this.attributeContainerSerializer = attributeContainerSerializer;
+        this.stringInterner = stringInterner;
     }
 
     public MutableModuleComponentResolveMetadata read(Decoder decoder, ImmutableModuleIdentifierFactory moduleIdentifierFactory) throws IOException {
-        return new Reader(decoder, moduleIdentifierFactory, attributeContainerSerializer, mavenMetadataFactory, ivyMetadataFactory).read();
+        return new Reader(decoder, moduleIdentifierFactory, attributeContainerSerializer, mavenMetadataFactory, ivyMetadataFactory, stringInterner).read();
     }
 
     public void write(Encoder encoder, ModuleComponentResolveMetadata metadata) throws IOException {
@@ -91,6 +108,7 @@ public class ModuleMetadataSerializer {
     private static class Writer {
         private final Encoder encoder;
         private final AttributeContainerSerializer attributeContainerSerializer;
+        private final Map<String, Integer> strings = new HashMap<String, Integer>();
 
         private Writer(Encoder encoder, AttributeContainerSerializer attributeContainerSerializer) {
             this.encoder = encoder;
@@ -121,7 +139,7 @@ public class ModuleMetadataSerializer {
         private void writeVariants(ModuleComponentResolveMetadata metadata) throws IOException {
             encoder.writeSmallInt(metadata.getVariants().size());
             for (ComponentVariant variant : metadata.getVariants()) {
-                encoder.writeString(variant.getName());
+                writeString(variant.getName());
                 writeAttributes(variant.getAttributes());
                 writeVariantDependencies(variant.getDependencies());
                 writeVariantConstraints(variant.getDependencyConstraints());
@@ -132,16 +150,16 @@ public class ModuleMetadataSerializer {
         private void writeVariantConstraints(ImmutableList<? extends ComponentVariant.DependencyConstraint> constraints) throws IOException {
             encoder.writeSmallInt(constraints.size());
             for (ComponentVariant.DependencyConstraint constraint : constraints) {
-                COMPONENT_SELECTOR_SERIALIZER.write(encoder, constraint.getGroup(), constraint.getModule(), constraint.getVersionConstraint());
-                encoder.writeNullableString(constraint.getReason());
+                writeSelector(constraint.getGroup(), constraint.getModule(), constraint.getVersionConstraint());
+                writeNullableString(constraint.getReason());
             }
         }
 
         private void writeVariantDependencies(List<? extends ComponentVariant.Dependency> dependencies) throws IOException {
             encoder.writeSmallInt(dependencies.size());
             for (ComponentVariant.Dependency dependency : dependencies) {
-                COMPONENT_SELECTOR_SERIALIZER.write(encoder, dependency.getGroup(), dependency.getModule(), dependency.getVersionConstraint());
-                encoder.writeNullableString(dependency.getReason());
+                writeSelector(dependency.getGroup(), dependency.getModule(), dependency.getVersionConstraint());
+                writeNullableString(dependency.getReason());
                 writeVariantDependencyExcludes(dependency.getExcludes());
             }
         }
@@ -161,8 +179,8 @@ public class ModuleMetadataSerializer {
         private void writeVariantFiles(List<? extends ComponentVariant.File> files) throws IOException {
             encoder.writeSmallInt(files.size());
             for (ComponentVariant.File file : files) {
-                encoder.writeString(file.getName());
-                encoder.writeString(file.getUri());
+                writeString(file.getName());
+                writeString(file.getUri());
             }
         }
 
@@ -182,7 +200,7 @@ public class ModuleMetadataSerializer {
         private void writeSharedInfo(ModuleComponentResolveMetadata metadata) throws IOException {
             encoder.writeBinary(metadata.getContentHash().asByteArray());
             encoder.writeBoolean(metadata.isMissing());
-            encoder.writeString(metadata.getStatus());
+            writeString(metadata.getStatus());
         }
 
         private void writeId(ModuleComponentIdentifier componentIdentifier) throws IOException {
@@ -247,7 +265,7 @@ public class ModuleMetadataSerializer {
         }
 
         private void writeIvyDependency(IvyDependencyDescriptor ivyDependency) throws IOException {
-            COMPONENT_SELECTOR_SERIALIZER.write(encoder, ivyDependency.getSelector());
+            writeSelector(ivyDependency.getSelector());
             writeDependencyConfigurationMapping(ivyDependency);
             writeArtifacts(ivyDependency.getDependencyArtifacts());
             writeExcludeRules(ivyDependency.getAllExcludes());
@@ -279,7 +297,7 @@ public class ModuleMetadataSerializer {
         }
 
         private void writeMavenDependency(MavenDependencyDescriptor mavenDependency) throws IOException {
-            COMPONENT_SELECTOR_SERIALIZER.write(encoder, mavenDependency.getSelector());
+            writeSelector(mavenDependency.getSelector());
             writeNullableArtifact(mavenDependency.getDependencyArtifact());
             writeMavenExcludeRules(mavenDependency.getAllExcludes());
             encoder.writeSmallInt(mavenDependency.getScope().ordinal());
@@ -310,12 +328,37 @@ public class ModuleMetadataSerializer {
             encoder.writeSmallInt(i);
         }
 
+        private void writeSelector(ModuleComponentSelector selector) throws IOException {
+            writeSelector(selector.getGroup(), selector.getModule(), selector.getVersionConstraint());
+        }
+
+        private void writeSelector(String group, String module, VersionConstraint versionConstraint) throws IOException {
+            writeString(group);
+            writeString(module);
+            writeString(versionConstraint.getPreferredVersion());
+            writeStringList(versionConstraint.getRejectedVersions());
+        }
+
         private void writeString(String str) throws IOException {
-            encoder.writeString(str);
+            if (str == null) {
+                throw new IllegalArgumentException("Cannot encode a null string.");
+            }
+            writeNullableString(str);
         }
 
         private void writeNullableString(String str) throws IOException {
-            encoder.writeNullableString(str);
+            if (str == null) {
+                encoder.writeSmallInt(NULL_STRING);
+                return;
+            }
+            Integer index = strings.get(str);
+            if (index == null) {
+                strings.put(str, strings.size());
+                encoder.writeSmallInt(NEW_STRING);
+                encoder.writeString(str);
+            } else {
+                encoder.writeSmallInt(FIRST_STRING_INDEX + index);
+            }
         }
 
         private void writeBoolean(boolean b) throws IOException {
@@ -351,6 +394,8 @@ public class ModuleMetadataSerializer {
         private final AttributeContainerSerializer attributeContainerSerializer;
         private final MavenMutableModuleMetadataFactory mavenMetadataFactory;
         private final IvyMutableModuleMetadataFactory ivyMetadataFactory;
+        private final StringInterner stringInterner;
+        private final List<String> strings = new ArrayList<String>();
         private ModuleComponentIdentifier id;
         private ModuleVersionIdentifier mvi;
         private ImmutableAttributes attributes;
@@ -359,13 +404,15 @@ public class ModuleMetadataSerializer {
                        ImmutableModuleIdentifierFactory moduleIdentifierFactory,
                        AttributeContainerSerializer attributeContainerSerializer,
                        MavenMutableModuleMetadataFactory mavenMutableModuleMetadataFactory,
-                       IvyMutableModuleMetadataFactory ivyMetadataFactory) {
+                       IvyMutableModuleMetadataFactory ivyMetadataFactory,
+                       StringInterner stringInterner) {
             this.decoder = decoder;
             this.moduleIdentifierFactory = moduleIdentifierFactory;
             this.excludeRuleConverter = new DefaultExcludeRuleConverter(moduleIdentifierFactory);
             this.attributeContainerSerializer = attributeContainerSerializer;
             this.mavenMetadataFactory = mavenMutableModuleMetadataFactory;
             this.ivyMetadataFactory = ivyMetadataFactory;
+            this.stringInterner = stringInterner;
         }
 
         public MutableModuleComponentResolveMetadata read() throws IOException {
@@ -383,7 +430,7 @@ public class ModuleMetadataSerializer {
         private void readSharedInfo(MutableModuleComponentResolveMetadata metadata) throws IOException {
             metadata.setContentHash(new HashValue(decoder.readBinary()));
             metadata.setMissing(decoder.readBoolean());
-            metadata.setStatus(decoder.readString());
+            metadata.setStatus(readString());
         }
 
         private MutableModuleComponentResolveMetadata readMaven() throws IOException {
@@ -407,7 +454,7 @@ public class ModuleMetadataSerializer {
         private void readVariants(MutableModuleComponentResolveMetadata metadata) throws IOException {
             int count = decoder.readSmallInt();
             for (int i = 0; i < count; i++) {
-                String name = decoder.readString();
+                String name = readString();
                 ImmutableAttributes attributes = readAttributes();
                 MutableComponentVariant variant = metadata.addVariant(name, attributes);
                 readVariantDependencies(variant);
@@ -423,8 +470,8 @@ public class ModuleMetadataSerializer {
         private void readVariantDependencies(MutableComponentVariant variant) throws IOException {
             int count = decoder.readSmallInt();
             for (int i = 0; i < count; i++) {
-                ModuleComponentSelector selector = COMPONENT_SELECTOR_SERIALIZER.read(decoder);
-                String reason = decoder.readNullableString();
+                ModuleComponentSelector selector = readSelector();
+                String reason = readNullableString();
                 ImmutableList<ExcludeMetadata> excludes = readVariantDependencyExcludes();
                 variant.addDependency(selector.getGroup(), selector.getModule(), selector.getVersionConstraint(), excludes, reason);
             }
@@ -433,8 +480,8 @@ public class ModuleMetadataSerializer {
         private void readVariantConstraints(MutableComponentVariant variant) throws IOException {
             int count = decoder.readSmallInt();
             for (int i = 0; i < count; i++) {
-                ModuleComponentSelector selector = COMPONENT_SELECTOR_SERIALIZER.read(decoder);
-                String reason = decoder.readNullableString();
+                ModuleComponentSelector selector = readSelector();
+                String reason = readNullableString();
                 variant.addDependencyConstraint(selector.getGroup(), selector.getModule(), selector.getVersionConstraint(), reason);
             }
         }
@@ -453,7 +500,7 @@ public class ModuleMetadataSerializer {
         private void readVariantFiles(MutableComponentVariant variant) throws IOException {
             int count = decoder.readSmallInt();
             for (int i = 0; i < count; i++) {
-                variant.addFile(decoder.readString(), decoder.readString());
+                variant.addFile(readString(), readString());
             }
         }
 
@@ -533,7 +580,7 @@ public class ModuleMetadataSerializer {
         }
 
         private IvyDependencyDescriptor readIvyDependency() throws IOException {
-            ModuleComponentSelector requested = COMPONENT_SELECTOR_SERIALIZER.read(decoder);
+            ModuleComponentSelector requested = readSelector();
             SetMultimap<String, String> configMappings = readDependencyConfigurationMapping();
             List<Artifact> artifacts = readDependencyArtifactDescriptors();
             List<Exclude> excludes = readDependencyExcludes();
@@ -616,7 +663,7 @@ public class ModuleMetadataSerializer {
         }
 
         private MavenDependencyDescriptor readMavenDependency() throws IOException {
-            ModuleComponentSelector requested = COMPONENT_SELECTOR_SERIALIZER.read(decoder);
+            ModuleComponentSelector requested = readSelector();
             IvyArtifactName artifactName = readNullableArtifact();
             List<ExcludeMetadata> mavenExcludes = readMavenDependencyExcludes();
             MavenScope scope = MavenScope.values()[decoder.readSmallInt()];
@@ -640,12 +687,29 @@ public class ModuleMetadataSerializer {
             return decoder.readSmallInt();
         }
 
+        private ModuleComponentSelector readSelector() throws IOException {
+            String group = readString();
+            String module = readString();
+            String preferredVersion = readString();
+            List<String> rejectedVersions = readStringList();
+            return DefaultModuleComponentSelector.newSelector(group, module, new DefaultImmutableVersionConstraint(preferredVersion, rejectedVersions));
+        }
+
         private String readString() throws IOException {
-            return decoder.readString();
+            return readNullableString();
         }
 
         private String readNullableString() throws IOException {
-            return decoder.readNullableString();
+            int index = decoder.readSmallInt();
+            if (index == NULL_STRING) {
+                return null;
+            }
+            if (index == NEW_STRING) {
+                String str = stringInterner.intern(decoder.readString());
+                strings.add(str);
+                return str;
+            }
+            return strings.get(index - FIRST_STRING_INDEX);
         }
 
         private boolean readBoolean() throws IOException {
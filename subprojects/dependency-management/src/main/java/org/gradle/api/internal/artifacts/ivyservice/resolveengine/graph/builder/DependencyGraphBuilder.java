@@ -19,6 +19,7 @@ import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import org.gradle.api.Action;
 import org.gradle.api.artifacts.ModuleIdentifier;
 import org.gradle.api.artifacts.ModuleVersionIdentifier;
@@ -56,8 +57,15 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class DependencyGraphBuilder {
+    /**
+     * When set to true, the nodes at the front of the queue that are independent of each other are visited one after the other before any of their edges is attached,
+     * so that the metadata of all of their targets is downloaded in a single concurrent batch instead of one batch per node. The graph is still traversed by a single thread.
+     */
+    public static final String BATCH_METADATA_DOWNLOADS_PROPERTY = "org.gradle.internal.dependency-resolution.batch-metadata-downloads";
+
     private static final Logger LOGGER = LoggerFactory.getLogger(DependencyGraphBuilder.class);
     private static final Predicate<SelectorState> ALL_SELECTORS = Predicates.alwaysTrue();
     private final ConflictHandler conflictHandler;
@@ -72,6 +80,8 @@ public class DependencyGraphBuilder {
     private final ComponentSelectorConverter componentSelectorConverter;
     private final DependencySubstitutionApplicator dependencySubstitutionApplicator;
     private final ImmutableAttributesFactory attributesFactory;
+    private final boolean batchMetadataDownloads;
+    private final MetadataPrefetcher metadataPrefetcher;
 
     public DependencyGraphBuilder(DependencyToComponentIdResolver componentIdResolver, ComponentMetaDataResolver componentMetaDataResolver,
                                   ResolveContextToComponentResolver resolveContextToComponentResolver,
@@ -80,7 +90,8 @@ public class DependencyGraphBuilder {
                                   ModuleExclusions moduleExclusions,
                                   BuildOperationExecutor buildOperationExecutor, ModuleReplacementsData moduleReplacementsData,
                                   DependencySubstitutionApplicator dependencySubstitutionApplicator, ComponentSelectorConverter componentSelectorConverter,
-                                  ImmutableAttributesFactory attributesFactory) {
+                                  ImmutableAttributesFactory attributesFactory, boolean batchMetadataDownloads,
+                                  @Nullable MetadataPrefetcher metadataPrefetcher) {
         this.idResolver = componentIdResolver;
         this.metaDataResolver = componentMetaDataResolver;
         this.moduleResolver = resolveContextToComponentResolver;
@@ -93,6 +104,8 @@ public class DependencyGraphBuilder {
         this.dependencySubstitutionApplicator = dependencySubstitutionApplicator;
         this.componentSelectorConverter = componentSelectorConverter;
         this.attributesFactory = attributesFactory;
+        this.batchMetadataDownloads = batchMetadataDownloads;
+        this.metadataPrefetcher = metadataPrefetcher;
     }
 
     public void resolve(final ResolveContext resolveContext, final DependencyGraphVisitor modelVisitor) {
@@ -101,10 +114,18 @@ public class DependencyGraphBuilder {
         DefaultBuildableComponentResolveResult rootModule = new DefaultBuildableComponentResolveResult();
         moduleResolver.resolve(resolveContext, rootModule);
 
-        final ResolveState resolveState = new ResolveState(idGenerator, rootModule, resolveContext.getName(), idResolver, metaDataResolver, edgeFilter, attributesSchema, moduleExclusions, moduleReplacementsData, componentSelectorConverter, attributesFactory, dependencySubstitutionApplicator);
+        MetadataPrefetcher.Pool prefetchPool = metadataPrefetcher == null ? null : metadataPrefetcher.createPool(metaDataResolver);
+        ComponentMetaDataResolver componentMetaDataResolver = prefetchPool == null ? metaDataResolver : prefetchPool;
+        final ResolveState resolveState = new ResolveState(idGenerator, rootModule, resolveContext.getName(), idResolver, componentMetaDataResolver, edgeFilter, attributesSchema, moduleExclusions, moduleReplacementsData, componentSelectorConverter, attributesFactory, dependencySubstitutionApplicator);
         conflictHandler.registerResolver(new DirectDependencyForcingResolver(resolveState.getRoot().getComponent()));
 
-        traverseGraph(resolveState);
+        try {
+            traverseGraph(resolveState, prefetchPool);
+        } finally {
+            if (prefetchPool != null) {
+                prefetchPool.stop();
+            }
+        }
 
         resolveState.getRoot().getComponent().setRoot();
 
@@ -115,7 +136,7 @@ public class DependencyGraphBuilder {
     /**
      * Traverses the dependency graph, resolving conflicts and building the paths from the root configuration.
      */
-    private void traverseGraph(final ResolveState resolveState) {
+    private void traverseGraph(final ResolveState resolveState, @Nullable MetadataPrefetcher.Pool prefetchPool) {
         resolveState.onMoreSelected(resolveState.getRoot());
         final List<EdgeState> dependencies = Lists.newArrayList();
         final List<EdgeState> dependenciesMissingLocalMetadata = Lists.newArrayList();
@@ -124,7 +145,9 @@ public class DependencyGraphBuilder {
         final PendingDependenciesHandler pendingDependenciesHandler = new DefaultPendingDependenciesHandler();
 
         while (resolveState.peek() != null || conflictHandler.hasConflicts()) {
-            if (resolveState.peek() != null) {
+            if (resolveState.peek() != null && batchMetadataDownloads) {
+                visitIndependentNodesWithBatchedDownloads(resolveState, pendingDependenciesHandler, componentIdentifierCache);
+            } else if (resolveState.peek() != null) {
                 final NodeState node = resolveState.pop();
                 LOGGER.debug("Visiting configuration {}.", node);
 
@@ -137,11 +160,50 @@ public class DependencyGraphBuilder {
             } else {
                 // We have some batched up conflicts. Resolve the first, and continue traversing the graph
                 conflictHandler.resolveNextConflict(resolveState.getReplaceSelectionWithConflictResultAction());
+                if (prefetchPool != null) {
+                    prefetchPool.discardDeselected(resolveState.getModules());
+                }
             }
 
         }
     }
 
+    /**
+     * Visits the nodes at the front of the queue for as long as none of them is the target of an edge of a node visited before it, and downloads the metadata
+     * of the targets of all of their edges in one concurrent batch. Only the attaching of the edges is delayed, and attaching an edge only changes how the nodes of its
+     * target component are traversed, so the resulting graph is the same as when visiting the nodes one at a time.
+     */
+    private void visitIndependentNodesWithBatchedDownloads(ResolveState resolveState, PendingDependenciesHandler pendingDependenciesHandler, Map<ModuleVersionIdentifier, ComponentIdentifier> componentIdentifierCache) {
+        List<EdgeState> dependencies = Lists.newArrayList();
+        Set<ComponentState> targetComponents = Sets.newHashSet();
+        int nodeCount = 0;
+        NodeState node = resolveState.peek();
+        while (node != null && !targetComponents.contains(node.getComponent())) {
+            resolveState.pop();
+            nodeCount++;
+            LOGGER.debug("Visiting configuration {}.", node);
+
+            int first = dependencies.size();
+            node.visitOutgoingDependencies(dependencies, pendingDependenciesHandler);
+            List<EdgeState> nodeDependencies = dependencies.subList(first, dependencies.size());
+            performSelectionSerially(nodeDependencies, resolveState);
+            for (EdgeState dependency : nodeDependencies) {
+                if (dependency.getTargetComponent() != null) {
+                    targetComponents.add(dependency.getTargetComponent());
+                }
+            }
+            node = resolveState.peek();
+        }
+        if (dependencies.isEmpty()) {
+            return;
+        }
+
+        List<EdgeState> dependenciesMissingMetadataLocally = Lists.newArrayList();
+        computePreemptiveDownloadList(dependencies, dependenciesMissingMetadataLocally, resolveState.getMetaDataResolver(), componentIdentifierCache);
+        downloadMetadataConcurrently(nodeCount + " configurations", dependenciesMissingMetadataLocally);
+        attachToTargetRevisionsSerially(dependencies);
+    }
+
     private void performSelection(final ResolveState resolveState, ComponentState moduleRevision) {
         ModuleIdentifier moduleId = moduleRevision.getId().getModule();
 
@@ -216,7 +278,7 @@ public class DependencyGraphBuilder {
             return;
         }
         performSelectionSerially(dependencies, resolveState);
-        computePreemptiveDownloadList(dependencies, dependenciesMissingMetadataLocally, componentIdentifierCache);
+        computePreemptiveDownloadList(dependencies, dependenciesMissingMetadataLocally, resolveState.getMetaDataResolver(), componentIdentifierCache);
         downloadMetadataConcurrently(node, dependenciesMissingMetadataLocally);
         attachToTargetRevisionsSerially(dependencies);
 
@@ -233,11 +295,11 @@ public class DependencyGraphBuilder {
         }
     }
 
-    private void downloadMetadataConcurrently(NodeState node, final List<EdgeState> dependencies) {
+    private void downloadMetadataConcurrently(Object owner, final List<EdgeState> dependencies) {
         if (dependencies.isEmpty()) {
             return;
         }
-        LOGGER.debug("Submitting {} metadata files to resolve in parallel for {}", dependencies.size(), node);
+        LOGGER.debug("Submitting {} metadata files to resolve in parallel for {}", dependencies.size(), owner);
         buildOperationExecutor.runAll(new Action<BuildOperationQueue<RunnableBuildOperation>>() {
             @Override
             public void execute(BuildOperationQueue<RunnableBuildOperation> buildOperationQueue) {
@@ -264,10 +326,11 @@ public class DependencyGraphBuilder {
      * @param dependencies the dependencies to be resolved
      * @param dependenciesToBeResolvedInParallel output, edges which will need parallel metadata download
      */
-    private void computePreemptiveDownloadList(List<EdgeState> dependencies, List<EdgeState> dependenciesToBeResolvedInParallel, Map<ModuleVersionIdentifier, ComponentIdentifier> componentIdentifierCache) {
+    private static void computePreemptiveDownloadList(List<EdgeState> dependencies, List<EdgeState> dependenciesToBeResolvedInParallel, ComponentMetaDataResolver metaDataResolver, Map<ModuleVersionIdentifier, ComponentIdentifier> componentIdentifierCache) {
+        Set<ComponentState> targetComponents = Sets.newHashSet();
         for (EdgeState dependency : dependencies) {
             ComponentState targetComponent = dependency.getTargetComponent();
-            if (targetComponent != null && !targetComponent.fastResolve() && performPreemptiveDownload(targetComponent)) {
+            if (targetComponent != null && !targetComponent.fastResolve() && performPreemptiveDownload(targetComponent) && targetComponents.add(targetComponent)) {
                 if (!metaDataResolver.isFetchingMetadataCheap(toComponentId(targetComponent.getId(), componentIdentifierCache))) {
                     dependenciesToBeResolvedInParallel.add(dependency);
                 }
@@ -0,0 +1,345 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.builder;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.gradle.api.artifacts.Dependency;
+import org.gradle.api.artifacts.ModuleIdentifier;
+import org.gradle.api.artifacts.component.ComponentIdentifier;
+import org.gradle.api.artifacts.component.ComponentSelector;
+import org.gradle.api.artifacts.component.ModuleComponentIdentifier;
+import org.gradle.api.artifacts.component.ModuleComponentSelector;
+import org.gradle.api.internal.artifacts.DefaultModuleIdentifier;
+import org.gradle.api.internal.artifacts.dependencies.DefaultResolvedVersionConstraint;
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.VersionSelector;
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.VersionSelectorScheme;
+import org.gradle.internal.component.external.model.DefaultModuleComponentIdentifier;
+import org.gradle.internal.component.model.ComponentOverrideMetadata;
+import org.gradle.internal.component.model.ComponentResolveMetadata;
+import org.gradle.internal.component.model.ConfigurationMetadata;
+import org.gradle.internal.component.model.DefaultComponentOverrideMetadata;
+import org.gradle.internal.component.model.DependencyMetadata;
+import org.gradle.internal.concurrent.ManagedExecutor;
+import org.gradle.internal.concurrent.Stoppable;
+import org.gradle.internal.resolve.resolver.ComponentMetaDataResolver;
+import org.gradle.internal.resolve.result.BuildableComponentResolveResult;
+import org.gradle.internal.resolve.result.DefaultBuildableComponentResolveResult;
+import org.gradle.internal.work.WorkerLeaseRegistry;
+import org.gradle.internal.work.WorkerLeaseService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Fetches the metadata of the likely dependencies of a component in the background, as soon as the metadata of the component has been resolved, so that the
+ * traversal of the graph usually finds the metadata of the next level already fetched instead of waiting for a round trip to the repositories per level.
+ *
+ * <p>The likely dependencies of a component are the dependencies with a static version of its variants, or of its default configuration when it has no variants.
+ * They are worked out on the traversal thread, as the dependencies of a component are computed lazily and are not safe to compute concurrently with the traversal,
+ * so only the raw metadata is fetched in the background, while holding a worker lease. The metadata is fetched through the same resolver as the metadata fetched
+ * by the traversal, so it goes through the module caches of the repositories.
+ * Fetched metadata is kept in a bounded pool per resolution until the traversal asks for it, is discarded when conflict resolution selects another version
+ * of its module, and is evicted at the end of the traversal when it has not been asked for.</p>
+ */
+public class MetadataPrefetcher implements Stoppable {
+    /**
+     * When set to true, the metadata of the likely dependencies of components is fetched in the background while the graph is traversed.
+     */
+    public static final String ENABLED_PROPERTY = "org.gradle.internal.dependency-resolution.metadata-prefetch";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MetadataPrefetcher.class);
+    private static final int MAX_PREFETCHED = 256;
+
+    private final ManagedExecutor executor;
+    private final VersionSelectorScheme versionSelectorScheme;
+    private final WorkerLeaseService workerLeaseService;
+    private final int maxPrefetched;
+
+    public MetadataPrefetcher(ManagedExecutor executor, VersionSelectorScheme versionSelectorScheme, WorkerLeaseService workerLeaseService) {
+        this(executor, versionSelectorScheme, workerLeaseService, MAX_PREFETCHED);
+    }
+
+    MetadataPrefetcher(ManagedExecutor executor, VersionSelectorScheme versionSelectorScheme, WorkerLeaseService workerLeaseService, int maxPrefetched) {
+        this.executor = executor;
+        this.versionSelectorScheme = versionSelectorScheme;
+        this.workerLeaseService = workerLeaseService;
+        this.maxPrefetched = maxPrefetched;
+    }
+
+    /**
+     * Creates the pool for a single resolution, which resolves metadata using the given resolver. The background fetches hold child leases of the worker lease
+     * of the calling thread.
+     */
+    Pool createPool(ComponentMetaDataResolver delegate) {
+        return new Pool(delegate, workerLeaseService.getWorkerLease());
+    }
+
+    @Override
+    public void stop() {
+        executor.stop();
+    }
+
+    private static boolean isDefault(ComponentOverrideMetadata overrideMetadata) {
+        return !overrideMetadata.isChanging() && overrideMetadata.getArtifacts().isEmpty() && overrideMetadata.getClientModule() == null;
+    }
+
+    private static List<? extends ConfigurationMetadata> getLikelyConfigurations(ComponentResolveMetadata metadata) {
+        List<? extends ConfigurationMetadata> variants = metadata.getVariantsForGraphTraversal();
+        if (!variants.isEmpty()) {
+            return variants;
+        }
+        ConfigurationMetadata defaultConfiguration = metadata.getConfiguration(Dependency.DEFAULT_CONFIGURATION);
+        return defaultConfiguration == null ? Collections.<ConfigurationMetadata>emptyList() : Collections.singletonList(defaultConfiguration);
+    }
+
+    /**
+     * The prefetched metadata of a single resolution. Resolves the metadata that has not been prefetched with the resolver of the resolution.
+     */
+    class Pool implements ComponentMetaDataResolver {
+        private final ComponentMetaDataResolver delegate;
+        private final WorkerLeaseRegistry.WorkerLease parentWorkerLease;
+        private final Object lock = new Object();
+        private final Map<ModuleComponentIdentifier, PrefetchedMetadata> prefetched = Maps.newHashMap();
+        private boolean stopped;
+
+        private Pool(ComponentMetaDataResolver delegate, WorkerLeaseRegistry.WorkerLease parentWorkerLease) {
+            this.delegate = delegate;
+            this.parentWorkerLease = parentWorkerLease;
+        }
+
+        @Override
+        public void resolve(ComponentIdentifier identifier, ComponentOverrideMetadata componentOverrideMetadata, BuildableComponentResolveResult result) {
+            if (identifier instanceof ModuleComponentIdentifier && isDefault(componentOverrideMetadata)) {
+                PrefetchedMetadata prefetchedMetadata;
+                synchronized (lock) {
+                    prefetchedMetadata = prefetched.remove(identifier);
+                }
+                ComponentResolveMetadata metadata = prefetchedMetadata == null ? null : prefetchedMetadata.take();
+                if (metadata != null) {
+                    result.resolved(metadata);
+                    prefetchDependencies(metadata);
+                    return;
+                }
+            }
+            delegate.resolve(identifier, componentOverrideMetadata, result);
+            if (result.getFailure() == null) {
+                prefetchDependencies(result.getMetaData());
+            }
+        }
+
+        @Override
+        public boolean isFetchingMetadataCheap(ComponentIdentifier identifier) {
+            PrefetchedMetadata prefetchedMetadata;
+            synchronized (lock) {
+                prefetchedMetadata = prefetched.get(identifier);
+            }
+            if (prefetchedMetadata != null && prefetchedMetadata.isFetched()) {
+                return true;
+            }
+            return delegate.isFetchingMetadataCheap(identifier);
+        }
+
+        /**
+         * Discards the metadata prefetched for versions of the given modules other than the selected one.
+         */
+        void discardDeselected(Collection<ModuleResolveState> modules) {
+            Map<ModuleIdentifier, String> selectedVersions = Maps.newHashMap();
+            for (ModuleResolveState module : modules) {
+                ComponentState selected = module.getSelected();
+                if (selected != null) {
+                    selectedVersions.put(DefaultModuleIdentifier.newId(module.getId().getGroup(), module.getId().getName()), selected.getVersion());
+                }
+            }
+            List<PrefetchedMetadata> discarded = Lists.newArrayList();
+            synchronized (lock) {
+                Iterator<PrefetchedMetadata> iterator = prefetched.values().iterator();
+                while (iterator.hasNext()) {
+                    PrefetchedMetadata prefetchedMetadata = iterator.next();
+                    String selectedVersion = selectedVersions.get(prefetchedMetadata.moduleId);
+                    if (selectedVersion != null && !selectedVersion.equals(prefetchedMetadata.id.getVersion())) {
+                        iterator.remove();
+                        discarded.add(prefetchedMetadata);
+                    }
+                }
+            }
+            for (PrefetchedMetadata prefetchedMetadata : discarded) {
+                LOGGER.debug("Discarding prefetched metadata for deselected {}", prefetchedMetadata.id);
+                prefetchedMetadata.discard();
+            }
+        }
+
+        /**
+         * Evicts the prefetched metadata that the traversal has not asked for, and stops prefetching. Fetches that are in progress are not interrupted,
+         * but their result is dropped.
+         */
+        void stop() {
+            List<PrefetchedMetadata> discarded;
+            synchronized (lock) {
+                stopped = true;
+                discarded = Lists.newArrayList(prefetched.values());
+                prefetched.clear();
+            }
+            if (!discarded.isEmpty()) {
+                LOGGER.debug("Evicting {} prefetched metadata entries not used by the traversal", discarded.size());
+            }
+            for (PrefetchedMetadata prefetchedMetadata : discarded) {
+                prefetchedMetadata.discard();
+            }
+        }
+
+        /**
+         * Starts fetching the metadata of the likely dependencies of the given component. Called on the traversal thread only.
+         */
+        private void prefetchDependencies(ComponentResolveMetadata metadata) {
+            List<ModuleComponentIdentifier> ids = Lists.newArrayList();
+            for (ConfigurationMetadata configuration : getLikelyConfigurations(metadata)) {
+                for (DependencyMetadata dependency : configuration.getDependencies()) {
+                    ModuleComponentIdentifier id = getStaticModuleVersion(dependency);
+                    if (id != null) {
+                        ids.add(id);
+                    }
+                }
+            }
+            if (ids.isEmpty()) {
+                return;
+            }
+            List<PrefetchedMetadata> started = Lists.newArrayList();
+            synchronized (lock) {
+                for (ModuleComponentIdentifier id : ids) {
+                    if (stopped || prefetched.size() >= maxPrefetched) {
+                        break;
+                    }
+                    if (!prefetched.containsKey(id)) {
+                        PrefetchedMetadata prefetchedMetadata = new PrefetchedMetadata(id);
+                        prefetched.put(id, prefetchedMetadata);
+                        started.add(prefetchedMetadata);
+                    }
+                }
+            }
+            for (PrefetchedMetadata prefetchedMetadata : started) {
+                executor.execute(prefetchedMetadata);
+            }
+        }
+
+        @Nullable
+        private ModuleComponentIdentifier getStaticModuleVersion(DependencyMetadata dependency) {
+            ComponentSelector selector = dependency.getSelector();
+            if (!(selector instanceof ModuleComponentSelector) || dependency.isPending() || dependency.isChanging() || !dependency.getArtifacts().isEmpty()) {
+                return null;
+            }
+            ModuleComponentSelector moduleSelector = (ModuleComponentSelector) selector;
+            String version = moduleSelector.getVersionConstraint().getPreferredVersion();
+            if (version == null || version.isEmpty()) {
+                return null;
+            }
+            VersionSelector versionSelector = new DefaultResolvedVersionConstraint(moduleSelector.getVersionConstraint(), versionSelectorScheme).getPreferredSelector();
+            if (versionSelector == null || versionSelector.isDynamic()) {
+                return null;
+            }
+            return DefaultModuleComponentIdentifier.newId(moduleSelector.getGroup(), moduleSelector.getModule(), version);
+        }
+
+        private class PrefetchedMetadata implements Runnable {
+            private final ModuleComponentIdentifier id;
+            private final ModuleIdentifier moduleId;
+            private final AtomicBoolean claimed = new AtomicBoolean();
+            private final CountDownLatch fetched = new CountDownLatch(1);
+            private volatile boolean discarded;
+            private volatile ComponentResolveMetadata metadata;
+
+            PrefetchedMetadata(ModuleComponentIdentifier id) {
+                this.id = id;
+                this.moduleId = DefaultModuleIdentifier.newId(id.getGroup(), id.getModule());
+            }
+
+            @Override
+            public void run() {
+                if (claimed.get()) {
+                    return;
+                }
+                workerLeaseService.withLocks(Collections.singleton(parentWorkerLease.createChild()), new Runnable() {
+                    @Override
+                    public void run() {
+                        fetch();
+                    }
+                });
+            }
+
+            private void fetch() {
+                // Claimed only once the lease is held, so that the traversal never waits for a fetch that is waiting for a lease
+                if (!claimed.compareAndSet(false, true)) {
+                    // Taken or discarded before the fetch started
+                    return;
+                }
+                try {
+                    DefaultBuildableComponentResolveResult result = new DefaultBuildableComponentResolveResult();
+                    delegate.resolve(id, new DefaultComponentOverrideMetadata(), result);
+                    if (result.getFailure() == null && !discarded) {
+                        metadata = result.getMetaData();
+                    }
+                } catch (Throwable t) {
+                    // The traversal fetches the metadata again, and reports the failure if it happens again
+                    LOGGER.debug("Could not prefetch metadata for {}", id, t);
+                } finally {
+                    fetched.countDown();
+                }
+            }
+
+            boolean isFetched() {
+                return metadata != null;
+            }
+
+            /**
+             * Returns the prefetched metadata, waiting for the fetch when it is in progress. Returns null when the fetch has not started yet or failed.
+             */
+            @Nullable
+            ComponentResolveMetadata take() {
+                if (claimed.compareAndSet(false, true)) {
+                    return null;
+                }
+                boolean interrupted = false;
+                while (true) {
+                    try {
+                        fetched.await();
+                        break;
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+                return metadata;
+            }
+
+            void discard() {
+                discarded = true;
+                claimed.set(true);
+                metadata = null;
+            }
+        }
+    }
+}
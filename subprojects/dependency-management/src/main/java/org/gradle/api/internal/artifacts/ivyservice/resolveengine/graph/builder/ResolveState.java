@@ -176,6 +176,10 @@ class ResolveState {
         }
     }
 
+    ComponentMetaDataResolver getMetaDataResolver() {
+        return metaDataResolver;
+    }
+
     public AttributesSchemaInternal getAttributesSchema() {
         return attributesSchema;
     }
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine.result;
+
+import org.gradle.api.artifacts.ModuleIdentifier;
+import org.gradle.api.artifacts.component.ComponentIdentifier;
+import org.gradle.api.artifacts.component.ComponentSelector;
+import org.gradle.api.artifacts.component.ModuleComponentIdentifier;
+import org.gradle.api.artifacts.component.ModuleComponentSelector;
+import org.gradle.api.internal.artifacts.ImmutableModuleIdentifierFactory;
+import org.gradle.api.internal.artifacts.ResolvedVersionConstraint;
+import org.gradle.api.internal.artifacts.dependencies.DefaultResolvedVersionConstraint;
+import org.gradle.api.internal.artifacts.dsl.ModuleReplacementsData;
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.VersionSelectorScheme;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphComponent;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphEdge;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphNode;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphSelector;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphVisitor;
+import org.gradle.internal.serialize.kryo.KryoBackedEncoder;
+
+import java.io.ByteArrayOutputStream;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Records the results of a resolved graph in memory, in the format written by {@link StreamingResolutionResultBuilder}, so that they can be reused by later builds
+ * with the same inputs. Also collects what needs to be checked before the results can be reused, that is the modules that were selected by a dynamic version
+ * and the changing modules.
+ *
+ * <p>Graphs that contain failures, file dependencies, modules that take part in module replacements or components other than the root that are not modules, such as
+ * projects, are not reusable.</p>
+ */
+public class ResolvedGraphRecorder implements DependencyGraphVisitor {
+    private final ImmutableModuleIdentifierFactory moduleIdentifierFactory;
+    private final VersionSelectorScheme versionSelectorScheme;
+    private final ModuleReplacementsData moduleReplacements;
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    private final KryoBackedEncoder encoder = new KryoBackedEncoder(output);
+    private final StreamingResolutionResultBuilder resultBuilder;
+    private final Set<ModuleIdentifier> modules = new LinkedHashSet<ModuleIdentifier>();
+    private final Set<ModuleIdentifier> dynamicModules = new LinkedHashSet<ModuleIdentifier>();
+    private final Set<ModuleComponentIdentifier> changingComponents = new LinkedHashSet<ModuleComponentIdentifier>();
+    private boolean reusable = true;
+
+    public ResolvedGraphRecorder(ImmutableModuleIdentifierFactory moduleIdentifierFactory, AttributeContainerSerializer attributeContainerSerializer, VersionSelectorScheme versionSelectorScheme, ModuleReplacementsData moduleReplacements) {
+        this.moduleIdentifierFactory = moduleIdentifierFactory;
+        this.versionSelectorScheme = versionSelectorScheme;
+        this.moduleReplacements = moduleReplacements;
+        // Uses the same encoding as the binary stores of the resolution results, so that the recorded results can be copied into them as they are
+        this.resultBuilder = new StreamingResolutionResultBuilder(encoder, moduleIdentifierFactory, attributeContainerSerializer);
+    }
+
+    @Override
+    public void start(DependencyGraphNode root) {
+        resultBuilder.start(root);
+    }
+
+    @Override
+    public void visitNode(DependencyGraphNode node) {
+        resultBuilder.visitNode(node);
+        if (!node.getOutgoingFileEdges().isEmpty()) {
+            reusable = false;
+        }
+        DependencyGraphComponent component = node.getOwner();
+        ComponentIdentifier componentId = component.getComponentId();
+        if (componentId instanceof ModuleComponentIdentifier) {
+            ModuleComponentIdentifier moduleComponentId = (ModuleComponentIdentifier) componentId;
+            ModuleIdentifier moduleId = moduleIdentifierFactory.module(moduleComponentId.getGroup(), moduleComponentId.getModule());
+            modules.add(moduleId);
+            if (moduleReplacements.participatesInReplacements(moduleId)) {
+                reusable = false;
+            }
+            if (component.getMetadata() != null && component.getMetadata().isChanging()) {
+                changingComponents.add(moduleComponentId);
+            }
+        } else if (!node.isRoot()) {
+            reusable = false;
+        }
+    }
+
+    @Override
+    public void visitSelector(DependencyGraphSelector selector) {
+        resultBuilder.visitSelector(selector);
+        ComponentSelector requested = selector.getRequested();
+        if (requested instanceof ModuleComponentSelector) {
+            ModuleComponentSelector moduleSelector = (ModuleComponentSelector) requested;
+            ResolvedVersionConstraint versionConstraint = new DefaultResolvedVersionConstraint(moduleSelector.getVersionConstraint(), versionSelectorScheme);
+            if (versionConstraint.getPreferredSelector().isDynamic()) {
+                dynamicModules.add(moduleIdentifierFactory.module(moduleSelector.getGroup(), moduleSelector.getModule()));
+            }
+        }
+    }
+
+    @Override
+    public void visitEdges(DependencyGraphNode node) {
+        resultBuilder.visitEdges(node);
+        for (DependencyGraphEdge edge : node.getOutgoingEdges()) {
+            if (edge.getFailure() != null) {
+                reusable = false;
+            }
+        }
+    }
+
+    @Override
+    public void finish(DependencyGraphNode root) {
+        resultBuilder.finish(root);
+    }
+
+    /**
+     * Returns true when the recorded results can be reused by a later build.
+     */
+    public boolean isReusable() {
+        return reusable;
+    }
+
+    /**
+     * Returns the recorded results, which can be passed to {@link StreamingResolutionResultBuilder#replay(byte[])}.
+     */
+    public byte[] getRecordedResults() {
+        encoder.flush();
+        return output.toByteArray();
+    }
+
+    public Set<ModuleIdentifier> getModules() {
+        return modules;
+    }
+
+    public Set<ModuleIdentifier> getDynamicModules() {
+        return dynamicModules;
+    }
+
+    public Set<ModuleComponentIdentifier> getChangingComponents() {
+        return changingComponents;
+    }
+}
@@ -58,6 +58,7 @@ public class StreamingResolutionResultBuilder implements DependencyGraphVisitor
 
     private final Map<ComponentSelector, ModuleVersionResolveException> failures = new HashMap<ComponentSelector, ModuleVersionResolveException>();
     private final BinaryStore store;
+    private final Encoder encoder;
     private final ComponentResultSerializer componentResultSerializer;
     private final Store<ResolvedComponentResult> cache;
     private final ComponentSelectorSerializer componentSelectorSerializer;
@@ -67,16 +68,43 @@ public class StreamingResolutionResultBuilder implements DependencyGraphVisitor
     public StreamingResolutionResultBuilder(BinaryStore store, Store<ResolvedComponentResult> cache, ImmutableModuleIdentifierFactory moduleIdentifierFactory, AttributeContainerSerializer attributeContainerSerializer) {
         this.componentResultSerializer = new ComponentResultSerializer(moduleIdentifierFactory, attributeContainerSerializer);
         this.store = store;
+        this.encoder = null;
         this.cache = cache;
         this.componentSelectorSerializer = new ComponentSelectorSerializer();
     }
 
+    /**
+     * Creates a builder that writes the results to the given encoder only, so that they can later be {@link #replay(byte[]) replayed} by another builder.
+     * Such a builder cannot {@link #complete()} the results.
+     */
+    StreamingResolutionResultBuilder(Encoder encoder, ImmutableModuleIdentifierFactory moduleIdentifierFactory, AttributeContainerSerializer attributeContainerSerializer) {
+        this.componentResultSerializer = new ComponentResultSerializer(moduleIdentifierFactory, attributeContainerSerializer);
+        this.store = null;
+        this.encoder = encoder;
+        this.cache = null;
+        this.componentSelectorSerializer = new ComponentSelectorSerializer();
+    }
+
     public ResolutionResult complete() {
+        if (store == null) {
+            throw new IllegalStateException("Cannot complete results that are written to an encoder.");
+        }
         BinaryStore.BinaryData data = store.done();
         RootFactory rootSource = new RootFactory(data, failures, cache, componentSelectorSerializer, dependencyResultSerializer, componentResultSerializer);
         return new DefaultResolutionResult(rootSource);
     }
 
+    /**
+     * Writes the results of a graph that were recorded by a {@link ResolvedGraphRecorder}, instead of visiting the graph.
+     */
+    public void replay(final byte[] recordedResults) {
+        write(new BinaryStore.WriteAction() {
+            public void write(Encoder encoder) throws IOException {
+                encoder.writeBytes(recordedResults);
+            }
+        });
+    }
+
     @Override
     public void start(final DependencyGraphNode root) {
         componentResultSerializer.reset();
@@ -85,7 +113,7 @@ public class StreamingResolutionResultBuilder implements DependencyGraphVisitor
 
     @Override
     public void finish(final DependencyGraphNode root) {
-        store.write(new BinaryStore.WriteAction() {
+        write(new BinaryStore.WriteAction() {
             public void write(Encoder encoder) throws IOException {
                 encoder.writeByte(ROOT);
                 encoder.writeSmallLong(root.getOwner().getResultId());
@@ -97,7 +125,7 @@ public class StreamingResolutionResultBuilder implements DependencyGraphVisitor
     public void visitNode(DependencyGraphNode node) {
         final DependencyGraphComponent component = node.getOwner();
         if (visitedComponents.add(component.getResultId())) {
-            store.write(new BinaryStore.WriteAction() {
+            write(new BinaryStore.WriteAction() {
                 public void write(Encoder encoder) throws IOException {
                     encoder.writeByte(COMPONENT);
                     componentResultSerializer.write(encoder, component);
@@ -108,7 +136,7 @@ public class StreamingResolutionResultBuilder implements DependencyGraphVisitor
 
     @Override
     public void visitSelector(final DependencyGraphSelector selector) {
-        store.write(new BinaryStore.WriteAction() {
+        write(new BinaryStore.WriteAction() {
             @Override
             public void write(Encoder encoder) throws IOException {
                 encoder.writeByte(SELECTOR);
@@ -123,7 +151,7 @@ public class StreamingResolutionResultBuilder implements DependencyGraphVisitor
         final Long fromComponent = node.getOwner().getResultId();
         final Collection<? extends DependencyGraphEdge> dependencies = node.getOutgoingEdges();
         if (!dependencies.isEmpty()) {
-            store.write(new BinaryStore.WriteAction() {
+            write(new BinaryStore.WriteAction() {
                 public void write(Encoder encoder) throws IOException {
                     encoder.writeByte(DEPENDENCY);
                     encoder.writeSmallLong(fromComponent);
@@ -141,6 +169,18 @@ public class StreamingResolutionResultBuilder implements DependencyGraphVisitor
         }
     }
 
+    private void write(BinaryStore.WriteAction action) {
+        if (store != null) {
+            store.write(action);
+            return;
+        }
+        try {
+            action.write(encoder);
+        } catch (IOException e) {
+            throw throwAsUncheckedException(e);
+        }
+    }
+
     private static class RootFactory implements Factory<ResolvedComponentResult> {
 
         private final static Logger LOG = Logging.getLogger(RootFactory.class);
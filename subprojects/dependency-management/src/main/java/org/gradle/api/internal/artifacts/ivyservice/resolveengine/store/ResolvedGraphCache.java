@@ -0,0 +1,323 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine.store;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.gradle.api.artifacts.ModuleIdentifier;
+import org.gradle.api.artifacts.ModuleVersionIdentifier;
+import org.gradle.api.artifacts.component.ModuleComponentIdentifier;
+import org.gradle.api.internal.artifacts.DefaultModuleVersionIdentifier;
+import org.gradle.api.internal.artifacts.ImmutableModuleIdentifierFactory;
+import org.gradle.api.internal.artifacts.configurations.dynamicversion.CachePolicy;
+import org.gradle.api.internal.artifacts.dsl.ModuleReplacementsData;
+import org.gradle.api.internal.artifacts.ivyservice.CacheLockingManager;
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.ModuleComponentRepository;
+import org.gradle.api.internal.artifacts.ivyservice.modulecache.ModuleMetadataCache;
+import org.gradle.api.internal.artifacts.ivyservice.modulecache.ModuleRepositoryCaches;
+import org.gradle.api.internal.artifacts.ivyservice.modulecache.dynamicversions.ModuleVersionsCache;
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.ResolvedGraphRecorder;
+import org.gradle.cache.PersistentIndexedCache;
+import org.gradle.internal.Factory;
+import org.gradle.internal.component.external.model.DefaultModuleComponentIdentifier;
+import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.serialize.AbstractSerializer;
+import org.gradle.internal.serialize.Decoder;
+import org.gradle.internal.serialize.Encoder;
+import org.gradle.internal.serialize.HashCodeSerializer;
+import org.gradle.util.BuildCommencedTimeProvider;
+
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the results of resolved graphs across builds, keyed by a fingerprint of the inputs of the resolution.
+ *
+ * <p>The fingerprint does not cover the versions listed by the repositories and the metadata of changing modules, so the results of a graph are only reused
+ * while the cached version listings and changing module metadata it was resolved from are still the ones in the module caches, and the cache policy of
+ * the configuration does not require them to be refreshed.</p>
+ *
+ * <p>Only the resolution result of a graph is kept. When the artifacts of a graph are required, the graph is resolved again, so the cache then only remembers that
+ * the artifacts of the graph are required and its results are not reused anymore.</p>
+ */
+public class ResolvedGraphCache {
+    /**
+     * When set to true, the results of resolved graphs are reused by later builds with the same inputs.
+     */
+    public static final String ENABLED_PROPERTY = "org.gradle.internal.dependency-resolution.graph-cache";
+
+    private final CacheLockingManager cacheLockingManager;
+    private final ModuleRepositoryCaches moduleCaches;
+    private final BuildCommencedTimeProvider timeProvider;
+    private final ImmutableModuleIdentifierFactory moduleIdentifierFactory;
+
+    private PersistentIndexedCache<HashCode, CachedGraph> cache;
+
+    public ResolvedGraphCache(CacheLockingManager cacheLockingManager, ModuleRepositoryCaches moduleCaches, BuildCommencedTimeProvider timeProvider, ImmutableModuleIdentifierFactory moduleIdentifierFactory) {
+        this.cacheLockingManager = cacheLockingManager;
+        this.moduleCaches = moduleCaches;
+        this.timeProvider = timeProvider;
+        this.moduleIdentifierFactory = moduleIdentifierFactory;
+    }
+
+    private PersistentIndexedCache<HashCode, CachedGraph> getCache() {
+        if (cache == null) {
+            cache = cacheLockingManager.createCache("resolved-graphs", new HashCodeSerializer(), new CachedGraphSerializer(moduleIdentifierFactory));
+        }
+        return cache;
+    }
+
+    /**
+     * Returns the entry for the graph with the given key, or null when there is none.
+     */
+    @Nullable
+    public CachedGraph get(final HashCode key) {
+        return cacheLockingManager.useCache(new Factory<CachedGraph>() {
+            @Override
+            public CachedGraph create() {
+                return getCache().get(key);
+            }
+        });
+    }
+
+    /**
+     * Returns true when the results of the given graph can be reused.
+     */
+    public boolean isUpToDate(final CachedGraph graph, final List<? extends ModuleComponentRepository> repositories, final CachePolicy cachePolicy, final ModuleReplacementsData moduleReplacements) {
+        if (graph.isArtifactsRequired()) {
+            return false;
+        }
+        return cacheLockingManager.useCache(new Factory<Boolean>() {
+            @Override
+            public Boolean create() {
+                return checkUpToDate(graph, repositories, cachePolicy, moduleReplacements);
+            }
+        });
+    }
+
+    /**
+     * Records that the artifacts of the graph with the given key are required, so that its results are not kept: the graph would be resolved again to
+     * find the artifacts anyway.
+     */
+    public void artifactsRequired(final HashCode key) {
+        cacheLockingManager.useCache(new Runnable() {
+            @Override
+            public void run() {
+                CachedGraph graph = getCache().get(key);
+                if (graph == null || !graph.isArtifactsRequired()) {
+                    getCache().put(key, CachedGraph.ARTIFACTS_REQUIRED);
+                }
+            }
+        });
+    }
+
+    /**
+     * Keeps the results recorded for the graph with the given key, unless they depend on version listings or changing module metadata that are not in the module caches.
+     */
+    public void store(final HashCode key, final ResolvedGraphRecorder recorder, final List<? extends ModuleComponentRepository> repositories) {
+        cacheLockingManager.useCache(new Runnable() {
+            @Override
+            public void run() {
+                long now = timeProvider.getCurrentTime();
+                List<CachedEntry> listings = Lists.newArrayList();
+                for (ModuleIdentifier moduleId : recorder.getDynamicModules()) {
+                    for (ModuleComponentRepository repository : repositories) {
+                        ModuleVersionsCache.CachedModuleVersionList listing = moduleCaches.moduleVersionsCache.getCachedModuleResolution(repository, moduleId);
+                        if (listing == null) {
+                            // The version was selected from a listing that is not kept across builds
+                            return;
+                        }
+                        listings.add(new CachedEntry(repository.getId(), new DefaultModuleComponentIdentifier(moduleId.getGroup(), moduleId.getName(), ""), now - listing.getAgeMillis()));
+                    }
+                }
+                List<CachedEntry> changingModules = Lists.newArrayList();
+                for (ModuleComponentIdentifier componentId : recorder.getChangingComponents()) {
+                    int found = 0;
+                    for (ModuleComponentRepository repository : repositories) {
+                        ModuleMetadataCache.CachedMetadata metadata = moduleCaches.moduleMetadataCache.getCachedModuleDescriptor(repository, componentId);
+                        if (metadata != null && !metadata.isMissing()) {
+                            changingModules.add(new CachedEntry(repository.getId(), componentId, now - metadata.getAgeMillis()));
+                            found++;
+                        }
+                    }
+                    if (found == 0) {
+                        return;
+                    }
+                }
+                getCache().put(key, new CachedGraph(recorder.getRecordedResults(), recorder.getModules(), listings, changingModules));
+            }
+        });
+    }
+
+    private boolean checkUpToDate(CachedGraph graph, List<? extends ModuleComponentRepository> repositories, CachePolicy cachePolicy, ModuleReplacementsData moduleReplacements) {
+        for (ModuleIdentifier moduleId : graph.modules) {
+            if (moduleReplacements.participatesInReplacements(moduleId)) {
+                return false;
+            }
+        }
+
+        Map<String, ModuleComponentRepository> repositoriesById = Maps.newHashMap();
+        for (ModuleComponentRepository repository : repositories) {
+            repositoriesById.put(repository.getId(), repository);
+        }
+        long now = timeProvider.getCurrentTime();
+        for (CachedEntry entry : graph.listings) {
+            ModuleComponentRepository repository = repositoriesById.get(entry.repositoryId);
+            if (repository == null) {
+                return false;
+            }
+            ModuleIdentifier moduleId = moduleIdentifierFactory.module(entry.componentId.getGroup(), entry.componentId.getModule());
+            ModuleVersionsCache.CachedModuleVersionList listing = moduleCaches.moduleVersionsCache.getCachedModuleResolution(repository, moduleId);
+            if (listing == null || now - listing.getAgeMillis() != entry.timestamp) {
+                return false;
+            }
+            Set<ModuleVersionIdentifier> versions = new LinkedHashSet<ModuleVersionIdentifier>();
+            for (String version : listing.getModuleVersions()) {
+                versions.add(new DefaultModuleVersionIdentifier(moduleId, version));
+            }
+            if (cachePolicy.mustRefreshVersionList(moduleId, versions, listing.getAgeMillis())) {
+                return false;
+            }
+        }
+        for (CachedEntry entry : graph.changingModules) {
+            ModuleComponentRepository repository = repositoriesById.get(entry.repositoryId);
+            if (repository == null) {
+                return false;
+            }
+            ModuleMetadataCache.CachedMetadata metadata = moduleCaches.moduleMetadataCache.getCachedModuleDescriptor(repository, entry.componentId);
+            if (metadata == null || metadata.isMissing() || now - metadata.getAgeMillis() != entry.timestamp) {
+                return false;
+            }
+            if (cachePolicy.mustRefreshChangingModule(entry.componentId, metadata.getModuleVersion(), metadata.getAgeMillis())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The recorded results of a graph, or a marker for a graph whose artifacts are required.
+     */
+    public static class CachedGraph {
+        static final CachedGraph ARTIFACTS_REQUIRED = new CachedGraph(null, Collections.<ModuleIdentifier>emptySet(), Collections.<CachedEntry>emptyList(), Collections.<CachedEntry>emptyList());
+
+        private final byte[] results;
+        private final Set<ModuleIdentifier> modules;
+        private final List<CachedEntry> listings;
+        private final List<CachedEntry> changingModules;
+
+        CachedGraph(@Nullable byte[] results, Set<ModuleIdentifier> modules, List<CachedEntry> listings, List<CachedEntry> changingModules) {
+            this.results = results;
+            this.modules = modules;
+            this.listings = listings;
+            this.changingModules = changingModules;
+        }
+
+        public boolean isArtifactsRequired() {
+            return results == null;
+        }
+
+        /**
+         * Returns the recorded results, which can be passed to {@link org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.StreamingResolutionResultBuilder#replay(byte[])}.
+         */
+        public byte[] getResults() {
+            if (results == null) {
+                throw new IllegalStateException("No results were kept for this graph.");
+            }
+            return results;
+        }
+    }
+
+    /**
+     * A version listing or a module metadata entry of a repository, and the time at which it was created. The version is empty for version listings.
+     */
+    private static class CachedEntry {
+        final String repositoryId;
+        final ModuleComponentIdentifier componentId;
+        final long timestamp;
+
+        CachedEntry(String repositoryId, ModuleComponentIdentifier componentId, long timestamp) {
+            this.repositoryId = repositoryId;
+            this.componentId = componentId;
+            this.timestamp = timestamp;
+        }
+    }
+
+    private static class CachedGraphSerializer extends AbstractSerializer<CachedGraph> {
+        private final ImmutableModuleIdentifierFactory moduleIdentifierFactory;
+
+        CachedGraphSerializer(ImmutableModuleIdentifierFactory moduleIdentifierFactory) {
+            this.moduleIdentifierFactory = moduleIdentifierFactory;
+        }
+
+        @Override
+        public void write(Encoder encoder, CachedGraph value) throws Exception {
+            encoder.writeBoolean(value.results != null);
+            if (value.results == null) {
+                return;
+            }
+            encoder.writeBinary(value.results);
+            encoder.writeSmallInt(value.modules.size());
+            for (ModuleIdentifier moduleId : value.modules) {
+                encoder.writeString(moduleId.getGroup());
+                encoder.writeString(moduleId.getName());
+            }
+            writeEntries(encoder, value.listings);
+            writeEntries(encoder, value.changingModules);
+        }
+
+        @Override
+        public CachedGraph read(Decoder decoder) throws Exception {
+            if (!decoder.readBoolean()) {
+                return CachedGraph.ARTIFACTS_REQUIRED;
+            }
+            byte[] results = decoder.readBinary();
+            int moduleCount = decoder.readSmallInt();
+            Set<ModuleIdentifier> modules = new LinkedHashSet<ModuleIdentifier>(moduleCount);
+            for (int i = 0; i < moduleCount; i++) {
+                modules.add(moduleIdentifierFactory.module(decoder.readString(), decoder.readString()));
+            }
+            return new CachedGraph(results, modules, readEntries(decoder), readEntries(decoder));
+        }
+
+        private static void writeEntries(Encoder encoder, List<CachedEntry> entries) throws Exception {
+            encoder.writeSmallInt(entries.size());
+            for (CachedEntry entry : entries) {
+                encoder.writeString(entry.repositoryId);
+                encoder.writeString(entry.componentId.getGroup());
+                encoder.writeString(entry.componentId.getModule());
+                encoder.writeString(entry.componentId.getVersion());
+                encoder.writeLong(entry.timestamp);
+            }
+        }
+
+        private static List<CachedEntry> readEntries(Decoder decoder) throws Exception {
+            int count = decoder.readSmallInt();
+            List<CachedEntry> entries = Lists.newArrayListWithCapacity(count);
+            for (int i = 0; i < count; i++) {
+                String repositoryId = decoder.readString();
+                ModuleComponentIdentifier componentId = new DefaultModuleComponentIdentifier(decoder.readString(), decoder.readString(), decoder.readString());
+                entries.add(new CachedEntry(repositoryId, componentId, decoder.readLong()));
+            }
+            return entries;
+        }
+    }
+}
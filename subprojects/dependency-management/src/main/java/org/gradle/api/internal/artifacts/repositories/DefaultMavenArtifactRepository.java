@@ -46,6 +46,7 @@ import org.gradle.api.internal.file.FileResolver;
 import org.gradle.internal.component.external.model.ModuleComponentArtifactIdentifier;
 import org.gradle.internal.component.external.model.ModuleComponentArtifactMetadata;
 import org.gradle.internal.component.external.model.MutableMavenModuleResolveMetadata;
+import org.gradle.internal.hash.Hasher;
 import org.gradle.internal.resource.local.FileResourceRepository;
 import org.gradle.internal.resource.local.FileStore;
 import org.gradle.internal.resource.local.LocallyAvailableResourceFinder;
@@ -192,6 +193,23 @@ public class DefaultMavenArtifactRepository extends AbstractAuthenticationSuppor
         return new MavenResolver(getName(), rootUri, transport, locallyAvailableResourceFinder, artifactFileStore, moduleIdentifierFactory, metadataSources, MavenMetadataArtifactProvider.INSTANCE, mavenMetadataLoader);
     }
 
+    /**
+     * Appends the properties of this repository that determine the metadata found by the resolver created by {@link #createResolver()}, without creating the resolver.
+     */
+    public void appendDescriptor(Hasher hasher) {
+        hasher.putString(getClass().getName());
+        hasher.putString(getName());
+        hasher.putString(String.valueOf(getUrl()));
+        Set<URI> artifactUrls = getArtifactUrls();
+        hasher.putInt(artifactUrls.size());
+        for (URI artifactUrl : artifactUrls) {
+            hasher.putString(artifactUrl.toString());
+        }
+        hasher.putBoolean(metadataSources.gradleMetadata);
+        hasher.putBoolean(metadataSources.mavenPom);
+        hasher.putBoolean(metadataSources.artifact);
+    }
+
     @Override
     public void metadataSources(Action<? super MetadataSources> configureAction) {
         metadataSources.reset();
@@ -46,10 +46,10 @@ class CacheLayoutTest extends Specification {
         CacheLayout cacheLayout = CacheLayout.META_DATA
 
         then:
-        cacheLayout.key == 'metadata-2.53'
-        cacheLayout.version == VersionNumber.parse("2.53.0")
-        cacheLayout.formattedVersion == '2.53'
-        cacheLayout.getPath(new File('some/dir')) == new File('some/dir/metadata-2.53')
+        cacheLayout.key == 'metadata-2.54'
+        cacheLayout.version == VersionNumber.parse("2.54.0")
+        cacheLayout.formattedVersion == '2.54'
+        cacheLayout.getPath(new File('some/dir')) == new File('some/dir/metadata-2.54')
     }
 
     def "use transforms layout"() {
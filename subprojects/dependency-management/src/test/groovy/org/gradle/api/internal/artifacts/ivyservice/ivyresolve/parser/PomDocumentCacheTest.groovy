@@ -0,0 +1,89 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser
+
+import org.gradle.api.internal.artifacts.DefaultImmutableModuleIdentifierFactory
+import org.gradle.api.internal.file.TestFiles
+import org.gradle.cache.internal.CrossBuildInMemoryCacheFactory
+import org.gradle.internal.event.DefaultListenerManager
+import org.gradle.internal.resource.local.LocalFileStandInExternalResource
+import org.gradle.internal.resource.local.LocallyAvailableExternalResource
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+class PomDocumentCacheTest extends Specification {
+    @Rule public final TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+    def moduleIdentifierFactory = new DefaultImmutableModuleIdentifierFactory()
+    def cache = new PomDocumentCache(new CrossBuildInMemoryCacheFactory(new DefaultListenerManager()))
+
+    def "reuses the document of POMs with the same content"() {
+        def parent = resource("parent.pom", pom("version-one"))
+        def copy = resource("copy/parent.pom", pom("version-one"))
+        def other = resource("other.pom", pom("version-two"))
+
+        when:
+        def document = cache.getDocument(parent)
+
+        then:
+        cache.getDocument(parent).is(document)
+        cache.getDocument(copy).is(document)
+        !cache.getDocument(other).is(document)
+        cache.getDocument(other).version == 'version-two'
+    }
+
+    def "properties of a reused document are substituted using the properties of each child POM"() {
+        def parent = resource("parent.pom", pom('${child.version}'))
+        def document = cache.getDocument(parent)
+
+        when:
+        def first = new PomReader(document, parent, moduleIdentifierFactory, ['child.version': '1.0'])
+        def second = new PomReader(cache.getDocument(parent), parent, moduleIdentifierFactory, ['child.version': '2.0'])
+
+        then:
+        first.version == '1.0'
+        second.version == '2.0'
+    }
+
+    def "fails to parse invalid POM"() {
+        def invalid = resource("invalid.pom", "<project><groupId>group-one</project>")
+
+        when:
+        cache.getDocument(invalid)
+
+        then:
+        thrown(MetaDataParseException)
+    }
+
+    private LocallyAvailableExternalResource resource(String name, String content) {
+        def file = tmpDir.file(name).createFile()
+        file.text = content
+        return new LocalFileStandInExternalResource(file, TestFiles.fileSystem())
+    }
+
+    private static String pom(String version) {
+        return """
+<project>
+    <modelVersion>4.0.0</modelVersion>
+    <groupId>group-one</groupId>
+    <artifactId>artifact-one</artifactId>
+    <version>${version}</version>
+    <packaging>pom</packaging>
+</project>
+"""
+    }
+}
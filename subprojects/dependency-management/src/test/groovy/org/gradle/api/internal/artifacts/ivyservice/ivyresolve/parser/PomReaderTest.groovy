@@ -100,6 +100,39 @@ class PomReaderTest extends AbstractPomReaderTest {
         pomReader.relocation == null
     }
 
+    def "parse POM with entities, CDATA sections and repeated elements"() {
+        when:
+        pomFile << """<?xml version="1.0" encoding="UTF-8"?>
+<project xmlns="http://maven.apache.org/POM/4.0.0">
+    <modelVersion>4.0.0</modelVersion>
+    <groupId>group-&amp;-one</groupId>
+    <groupId>ignored</groupId>
+    <artifactId><![CDATA[artifact]]>-one<!-- comment --></artifactId>
+    <version>version-one</version>
+    <name>Artifact &oslash;ne</name>
+    <properties>
+        <some.prop>&copy; <nested>ignored</nested>2018</some.prop>
+    </properties>
+    <dependencies>
+        <dependency>
+            <groupId>group-two</groupId>
+            <artifactId>artifact-two</artifactId>
+            <version>version-two</version>
+            <optional>TRUE</optional>
+        </dependency>
+    </dependencies>
+</project>
+"""
+        pomReader = new PomReader(locallyAvailableExternalResource, moduleIdentifierFactory)
+
+        then:
+        pomReader.groupId == 'group-&-one'
+        pomReader.artifactId == 'artifact-one'
+        pomReader.properties['some.prop'] == '\u00a9 2018'
+        pomReader.dependencies.size() == 1
+        pomReader.dependencies.values()[0].optional
+    }
+
     def "use custom properties in POM project coordinates"() {
         when:
         pomFile << """
@@ -19,23 +19,30 @@ package org.gradle.api.internal.artifacts.ivyservice.modulecache
 import org.apache.commons.io.output.ByteArrayOutputStream
 import org.gradle.api.internal.artifacts.DefaultImmutableModuleIdentifierFactory
 import org.gradle.api.internal.artifacts.ImmutableModuleIdentifierFactory
+import org.gradle.api.internal.artifacts.dependencies.DefaultMutableVersionConstraint
 import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.DescriptorParseContext
 import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.GradlePomModuleDescriptorParser
 import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.IvyModuleDescriptorConverter
 import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.IvyXmlModuleDescriptorParser
 import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.MetaDataParser
 import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.ModuleMetadataParser
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.parser.PomDocumentCache
 import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.DefaultVersionSelectorScheme
 import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.MavenVersionSelectorScheme
 import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.AttributeContainerSerializer
 import org.gradle.api.internal.artifacts.repositories.metadata.IvyMutableModuleMetadataFactory
 import org.gradle.api.internal.artifacts.repositories.metadata.MavenMutableModuleMetadataFactory
+import org.gradle.api.internal.cache.StringInterner
 import org.gradle.api.internal.file.TestFiles
 import org.gradle.api.internal.model.NamedObjectInstantiator
+import org.gradle.cache.internal.CrossBuildInMemoryCacheFactory
+import org.gradle.internal.component.external.descriptor.MavenScope
 import org.gradle.internal.component.external.model.DefaultModuleComponentIdentifier
+import org.gradle.internal.component.external.model.MavenDependencyDescriptor
 import org.gradle.internal.component.external.model.MutableIvyModuleResolveMetadata
 import org.gradle.internal.component.external.model.MutableMavenModuleResolveMetadata
 import org.gradle.internal.component.external.model.MutableModuleComponentResolveMetadata
+import org.gradle.internal.event.DefaultListenerManager
 import org.gradle.internal.hash.HashUtil
 import org.gradle.internal.resource.local.FileResourceRepository
 import org.gradle.internal.resource.local.LocalFileStandInExternalResource
@@ -46,6 +53,8 @@ import org.gradle.util.TestUtil
 import spock.lang.Specification
 import spock.lang.Unroll
 
+import static org.gradle.internal.component.external.model.DefaultModuleComponentSelector.newSelector
+
 class ModuleMetadataSerializerTest extends Specification {
 
     private final ImmutableModuleIdentifierFactory moduleIdentifierFactory = new DefaultImmutableModuleIdentifierFactory()
@@ -90,6 +99,31 @@ class ModuleMetadataSerializerTest extends Specification {
 
     }
 
+    def "writes repeated strings once and shares the strings that are read"() {
+        given:
+        def dependencies = (1..3).collect {
+            new MavenDependencyDescriptor(MavenScope.Compile, false, newSelector("org.test", "dep-$it".toString(), new DefaultMutableVersionConstraint("1.0")), null, [])
+        }
+        def metadata = mavenMetadataFactory.create(DefaultModuleComponentIdentifier.newId("org.test", "test-module", "1.0"), dependencies)
+        def bytes = serialize(metadata)
+
+        when:
+        def first = deserialize(bytes).asImmutable()
+        def second = deserialize(bytes).asImmutable()
+
+        then:
+        first == metadata.asImmutable()
+        occurrences(bytes, "org.test") == 1
+        occurrences(bytes, "dep-") == 3
+        first.dependencies[0].selector.group.is(first.dependencies[2].selector.group)
+        first.dependencies[0].selector.group.is(second.dependencies[0].selector.group)
+        first.dependencies[1].selector.module.is(second.dependencies[1].selector.module)
+    }
+
+    private static int occurrences(byte[] bytes, String str) {
+        new String(bytes, "ISO-8859-1").count(str)
+    }
+
     private MutableModuleComponentResolveMetadata deserialize(byte[] serializedForm) {
         serializer.read(new InputStreamBackedDecoder(new ByteArrayInputStream(serializedForm)), moduleIdentifierFactory)
     }
@@ -148,7 +182,8 @@ class ModuleMetadataSerializerTest extends Specification {
         new ModuleMetadataSerializer(
             new AttributeContainerSerializer(TestUtil.attributesFactory(), NamedObjectInstantiator.INSTANCE),
             mavenMetadataFactory,
-            ivyMetadataFactory
+            ivyMetadataFactory,
+            new StringInterner()
         )
     }
 
@@ -157,7 +192,8 @@ class ModuleMetadataSerializerTest extends Specification {
             new MavenVersionSelectorScheme(new DefaultVersionSelectorScheme()),
             moduleIdentifierFactory,
             Stub(FileResourceRepository),
-            mavenMetadataFactory
+            mavenMetadataFactory,
+            new PomDocumentCache(new CrossBuildInMemoryCacheFactory(new DefaultListenerManager()))
         )
     }
 
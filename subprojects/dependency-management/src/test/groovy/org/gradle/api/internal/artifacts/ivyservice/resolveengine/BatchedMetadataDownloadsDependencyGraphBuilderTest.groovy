@@ -0,0 +1,64 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine
+
+class BatchedMetadataDownloadsDependencyGraphBuilderTest extends DependencyGraphBuilderTest {
+    @Override
+    boolean batchMetadataDownloads() {
+        return true
+    }
+
+    def "downloads metadata of the targets of independent configurations together"() {
+        given:
+        def a = revision("a")
+        def b = revision("b")
+        def c = revision("c")
+        def d = revision("d")
+        def e = revision("e")
+        traverses root, a
+        traverses root, b
+        traverses a, c
+        traverses a, d
+        traverses b, e
+
+        when:
+        def result = resolve()
+        result.rethrowFailure()
+
+        then:
+        result.components == ids(root, a, b, c, d, e)
+        metadataDownloads == [2, 3]
+    }
+
+    def "does not visit a configuration together with the configurations that depend on it"() {
+        given:
+        def a = revision("a")
+        def b = revision("b")
+        def c = revision("c")
+        traverses root, a
+        traverses root, b
+        doesNotResolve a, b
+        traverses b, c
+
+        when:
+        def result = resolve()
+        result.rethrowFailure()
+
+        then:
+        result.components == ids(root, a, b, c)
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.builder
+
+import com.google.common.collect.ImmutableList
+import org.gradle.api.internal.artifacts.DefaultModuleIdentifier
+import org.gradle.api.internal.artifacts.dependencies.DefaultMutableVersionConstraint
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.DefaultVersionComparator
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.DefaultVersionSelectorScheme
+import org.gradle.internal.component.model.ComponentResolveMetadata
+import org.gradle.internal.component.model.ConfigurationMetadata
+import org.gradle.internal.component.model.DefaultComponentOverrideMetadata
+import org.gradle.internal.component.model.DependencyMetadata
+import org.gradle.internal.concurrent.ManagedExecutor
+import org.gradle.internal.resolve.resolver.ComponentMetaDataResolver
+import org.gradle.internal.resolve.result.BuildableComponentResolveResult
+import org.gradle.internal.resolve.result.DefaultBuildableComponentResolveResult
+import org.gradle.internal.work.WorkerLeaseRegistry
+import org.gradle.internal.work.WorkerLeaseService
+import spock.lang.Specification
+
+import static org.gradle.internal.component.external.model.DefaultModuleComponentIdentifier.newId
+import static org.gradle.internal.component.external.model.DefaultModuleComponentSelector.newSelector
+
+class MetadataPrefetcherTest extends Specification {
+    def executor = Mock(ManagedExecutor) {
+        execute(_) >> { Runnable action -> action.run() }
+    }
+    def delegate = Mock(ComponentMetaDataResolver)
+    def versionSelectorScheme = new DefaultVersionSelectorScheme(new DefaultVersionComparator())
+    def workerLease = Stub(WorkerLeaseRegistry.WorkerLease)
+    def workerLeaseService = Mock(WorkerLeaseService) {
+        getWorkerLease() >> workerLease
+        withLocks(_, _ as Runnable) >> { Iterable locks, Runnable action -> action.run() }
+    }
+    def pool = new MetadataPrefetcher(executor, versionSelectorScheme, workerLeaseService, 2).createPool(delegate)
+
+    def "prefetches metadata of dependencies with static versions once metadata of a component is resolved"() {
+        def b = metadata("b", "1.0")
+        def a = metadata("a", "1.0", dependency("b", "1.0"), dependency("c", "[1.0,2.0)"))
+
+        when:
+        def result = resolve("a", "1.0")
+
+        then:
+        result.metaData == a
+        1 * delegate.resolve(newId("org", "a", "1.0"), _, _) >> { resolved(it, a) }
+        1 * delegate.resolve(newId("org", "b", "1.0"), _, _) >> { resolved(it, b) }
+        0 * delegate.resolve(_, _, _)
+
+        when:
+        def prefetched = resolve("b", "1.0")
+
+        then:
+        prefetched.metaData == b
+        0 * delegate.resolve(_, _, _)
+    }
+
+    def "considers fetching prefetched metadata cheap"() {
+        def b = metadata("b", "1.0")
+        def a = metadata("a", "1.0", dependency("b", "1.0"))
+        delegate.resolve(newId("org", "a", "1.0"), _, _) >> { resolved(it, a) }
+        delegate.resolve(newId("org", "b", "1.0"), _, _) >> { resolved(it, b) }
+
+        when:
+        resolve("a", "1.0")
+
+        then:
+        pool.isFetchingMetadataCheap(newId("org", "b", "1.0"))
+        0 * delegate.isFetchingMetadataCheap(_)
+    }
+
+    def "prefetches the dependencies of prefetched metadata once the traversal takes it"() {
+        def c = metadata("c", "1.0")
+        def b = metadata("b", "1.0", dependency("c", "1.0"))
+        def a = metadata("a", "1.0", dependency("b", "1.0"))
+
+        when:
+        resolve("a", "1.0")
+
+        then:
+        1 * delegate.resolve(newId("org", "a", "1.0"), _, _) >> { resolved(it, a) }
+        1 * delegate.resolve(newId("org", "b", "1.0"), _, _) >> { resolved(it, b) }
+        0 * delegate.resolve(_, _, _)
+
+        when:
+        resolve("b", "1.0")
+
+        then:
+        1 * delegate.resolve(newId("org", "c", "1.0"), _, _) >> { resolved(it, c) }
+        0 * delegate.resolve(_, _, _)
+    }
+
+    def "stops prefetching when the pool is full"() {
+        def c = metadata("c", "1.0")
+        def b = metadata("b", "1.0")
+        def a = metadata("a", "1.0", dependency("b", "1.0"), dependency("c", "1.0"), dependency("d", "1.0"))
+
+        when:
+        resolve("a", "1.0")
+
+        then:
+        1 * delegate.resolve(newId("org", "a", "1.0"), _, _) >> { resolved(it, a) }
+        1 * delegate.resolve(newId("org", "b", "1.0"), _, _) >> { resolved(it, b) }
+        1 * delegate.resolve(newId("org", "c", "1.0"), _, _) >> { resolved(it, c) }
+        0 * delegate.resolve(_, _, _)
+    }
+
+    def "fetches metadata in the background while holding a worker lease"() {
+        def b = metadata("b", "1.0")
+        def a = metadata("a", "1.0", dependency("b", "1.0"))
+        delegate.resolve(newId("org", "a", "1.0"), _, _) >> { resolved(it, a) }
+
+        when:
+        resolve("a", "1.0")
+
+        then:
+        1 * workerLeaseService.withLocks(_, _ as Runnable) >> { Iterable locks, Runnable action ->
+            assert locks.size() == 1
+            action.run()
+        }
+        1 * delegate.resolve(newId("org", "b", "1.0"), _, _) >> { resolved(it, b) }
+    }
+
+    def "evicts metadata not taken by the traversal when stopped"() {
+        def b = metadata("b", "1.0")
+        def a = metadata("a", "1.0", dependency("b", "1.0"))
+        delegate.resolve(newId("org", "a", "1.0"), _, _) >> { resolved(it, a) }
+        delegate.resolve(newId("org", "b", "1.0"), _, _) >> { resolved(it, b) }
+        resolve("a", "1.0")
+
+        when:
+        pool.stop()
+
+        then:
+        !pool.isFetchingMetadataCheap(newId("org", "b", "1.0"))
+
+        when:
+        resolve("b", "1.0")
+
+        then:
+        1 * delegate.resolve(newId("org", "b", "1.0"), _, _) >> { resolved(it, b) }
+    }
+
+    def "discards metadata prefetched for a version of a module other than the selected one"() {
+        def b = metadata("b", "1.0")
+        def a = metadata("a", "1.0", dependency("b", "1.0"))
+        delegate.resolve(newId("org", "a", "1.0"), _, _) >> { resolved(it, a) }
+        delegate.resolve(newId("org", "b", "1.0"), _, _) >> { resolved(it, b) }
+        resolve("a", "1.0")
+
+        when:
+        pool.discardDeselected([module("b", "2.0")])
+        resolve("b", "1.0")
+
+        then:
+        1 * delegate.resolve(newId("org", "b", "1.0"), _, _) >> { resolved(it, b) }
+    }
+
+    def "does not use prefetched metadata when the request overrides the metadata"() {
+        def b = metadata("b", "1.0")
+        def a = metadata("a", "1.0", dependency("b", "1.0"))
+        delegate.resolve(newId("org", "a", "1.0"), _, _) >> { resolved(it, a) }
+        delegate.resolve(newId("org", "b", "1.0"), _, _) >> { resolved(it, b) }
+        resolve("a", "1.0")
+
+        when:
+        def result = new DefaultBuildableComponentResolveResult()
+        pool.resolve(newId("org", "b", "1.0"), new DefaultComponentOverrideMetadata().withChanging(), result)
+
+        then:
+        1 * delegate.resolve(newId("org", "b", "1.0"), _, _) >> { resolved(it, b) }
+    }
+
+    def "does not prefetch once stopped"() {
+        def a = metadata("a", "1.0", dependency("b", "1.0"))
+
+        when:
+        pool.stop()
+        resolve("a", "1.0")
+
+        then:
+        1 * delegate.resolve(newId("org", "a", "1.0"), _, _) >> { resolved(it, a) }
+        0 * delegate.resolve(_, _, _)
+        0 * executor.execute(_)
+    }
+
+    private BuildableComponentResolveResult resolve(String name, String version) {
+        def result = new DefaultBuildableComponentResolveResult()
+        pool.resolve(newId("org", name, version), new DefaultComponentOverrideMetadata(), result)
+        return result
+    }
+
+    private static void resolved(def args, ComponentResolveMetadata metadata) {
+        ((BuildableComponentResolveResult) args[2]).resolved(metadata)
+    }
+
+    private ComponentResolveMetadata metadata(String name, String version, DependencyMetadata... dependencies) {
+        def configuration = Stub(ConfigurationMetadata) {
+            getDependencies() >> (dependencies as List)
+        }
+        def metadata = Stub(ComponentResolveMetadata) {
+            getComponentId() >> newId("org", name, version)
+            getVariantsForGraphTraversal() >> ImmutableList.of()
+            getConfiguration("default") >> configuration
+        }
+        return metadata
+    }
+
+    private DependencyMetadata dependency(String name, String version) {
+        return Stub(DependencyMetadata) {
+            getSelector() >> newSelector("org", name, new DefaultMutableVersionConstraint(version))
+            getArtifacts() >> []
+        }
+    }
+
+    private ModuleResolveState module(String name, String selectedVersion) {
+        def selected = Stub(ComponentState) {
+            getVersion() >> selectedVersion
+        }
+        return Stub(ModuleResolveState) {
+            getId() >> DefaultModuleIdentifier.newId("org", name)
+            getSelected() >> selected
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine.result
+
+import org.gradle.api.artifacts.ModuleVersionIdentifier
+import org.gradle.api.artifacts.component.ComponentIdentifier
+import org.gradle.api.internal.artifacts.DefaultImmutableModuleIdentifierFactory
+import org.gradle.api.internal.artifacts.DefaultModuleVersionIdentifier
+import org.gradle.api.internal.artifacts.ImmutableModuleIdentifierFactory
+import org.gradle.api.internal.artifacts.dependencies.DefaultMutableVersionConstraint
+import org.gradle.api.internal.artifacts.dsl.ModuleReplacementsData
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.DefaultVersionComparator
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.strategy.DefaultVersionSelectorScheme
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphComponent
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphEdge
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphNode
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.graph.DependencyGraphSelector
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.store.ResolutionResultsStoreFactory
+import org.gradle.api.internal.file.TmpDirTemporaryFileProvider
+import org.gradle.api.internal.model.NamedObjectInstantiator
+import org.gradle.internal.component.external.model.DefaultModuleComponentIdentifier
+import org.gradle.internal.component.external.model.DefaultModuleComponentSelector
+import org.gradle.internal.component.local.model.DefaultProjectComponentIdentifier
+import org.gradle.internal.component.model.ComponentResolveMetadata
+import org.gradle.internal.resolve.ModuleVersionResolveException
+import org.gradle.util.TestUtil
+import spock.lang.Specification
+
+import static org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.ResolutionResultPrinter.printGraph
+import static org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.VersionSelectionReasons.requested
+
+class ResolvedGraphRecorderTest extends Specification {
+    final ImmutableModuleIdentifierFactory moduleIdentifierFactory = new DefaultImmutableModuleIdentifierFactory()
+    final attributeContainerSerializer = new AttributeContainerSerializer(TestUtil.attributesFactory(), NamedObjectInstantiator.INSTANCE)
+    final versionSelectorScheme = new DefaultVersionSelectorScheme(new DefaultVersionComparator())
+    def moduleReplacements = Stub(ModuleReplacementsData)
+    def storeFactory = new ResolutionResultsStoreFactory(new TmpDirTemporaryFileProvider())
+
+    def cleanup() {
+        storeFactory.close()
+    }
+
+    def "recorded results can be replayed into the stores of the resolution results"() {
+        def root = rootNode()
+        def selector = selector(1, "org", "dep1", "2.0")
+        def dep1 = node(2, "org", "dep1", "2.0")
+        root.outgoingEdges >> [dep(selector, 2)]
+        def recorder = recorder()
+
+        when:
+        visit(recorder, root, [dep1], [selector])
+        def stores = storeFactory.createStoreSet()
+        def builder = new StreamingResolutionResultBuilder(stores.nextBinaryStore(), stores.newModelCache(), moduleIdentifierFactory, attributeContainerSerializer)
+        builder.replay(recorder.recordedResults)
+        def result = builder.complete()
+
+        then:
+        recorder.reusable
+        recorder.modules*.toString() == ["org:root", "org:dep1"]
+        printGraph(result.root) == """org:root:1.0
+  org:dep1:2.0 [root]
+"""
+    }
+
+    def "collects modules selected by dynamic versions and changing modules"() {
+        def root = rootNode()
+        def dynamicSelector = selector(1, "org", "dynamic", "1.+")
+        def staticSelector = selector(2, "org", "changing", "1.0-SNAPSHOT")
+        def dynamic = node(2, "org", "dynamic", "1.2")
+        def changing = node(3, "org", "changing", "1.0-SNAPSHOT", true)
+        root.outgoingEdges >> [dep(dynamicSelector, 2), dep(staticSelector, 3)]
+        def recorder = recorder()
+
+        when:
+        visit(recorder, root, [dynamic, changing], [dynamicSelector, staticSelector])
+
+        then:
+        recorder.reusable
+        recorder.dynamicModules*.toString() == ["org:dynamic"]
+        recorder.changingComponents == [changing.owner.componentId] as Set
+    }
+
+    def "results of graph with failures are not reusable"() {
+        def root = rootNode()
+        def selector = selector(1, "org", "dep1", "2.0")
+        root.outgoingEdges >> [failedDep(selector)]
+        def recorder = recorder()
+
+        when:
+        visit(recorder, root, [], [selector])
+
+        then:
+        !recorder.reusable
+    }
+
+    def "results of graph with project components are not reusable"() {
+        def root = rootNode()
+        def selector = selector(1, "org", "dep1", "2.0")
+        def project = node(2, DefaultProjectComponentIdentifier.newProjectId(":other"), DefaultModuleVersionIdentifier.newId("org", "other", "1.0"))
+        root.outgoingEdges >> [dep(selector, 2)]
+        def recorder = recorder()
+
+        when:
+        visit(recorder, root, [project], [selector])
+
+        then:
+        !recorder.reusable
+    }
+
+    def "results of graph with modules that take part in replacements are not reusable"() {
+        def root = rootNode()
+        def selector = selector(1, "org", "dep1", "2.0")
+        def dep1 = node(2, "org", "dep1", "2.0")
+        root.outgoingEdges >> [dep(selector, 2)]
+        moduleReplacements.participatesInReplacements(moduleIdentifierFactory.module("org", "dep1")) >> true
+        def recorder = recorder()
+
+        when:
+        visit(recorder, root, [dep1], [selector])
+
+        then:
+        !recorder.reusable
+    }
+
+    private ResolvedGraphRecorder recorder() {
+        return new ResolvedGraphRecorder(moduleIdentifierFactory, attributeContainerSerializer, versionSelectorScheme, moduleReplacements)
+    }
+
+    private static void visit(ResolvedGraphRecorder recorder, DependencyGraphNode root, List<DependencyGraphNode> nodes, List<DependencyGraphSelector> selectors) {
+        recorder.start(root)
+        recorder.visitNode(root)
+        nodes.each { recorder.visitNode(it) }
+        selectors.each { recorder.visitSelector(it) }
+        recorder.visitEdges(root)
+        recorder.finish(root)
+    }
+
+    private DependencyGraphNode rootNode() {
+        def node = node(1, "org", "root", "1.0")
+        _ * node.root >> true
+        return node
+    }
+
+    private DependencyGraphNode node(Long resultId, String org, String name, String ver, boolean changing = false) {
+        return node(resultId, DefaultModuleComponentIdentifier.newId(org, name, ver), DefaultModuleVersionIdentifier.newId(org, name, ver), changing)
+    }
+
+    private DependencyGraphNode node(Long resultId, ComponentIdentifier componentId, ModuleVersionIdentifier moduleVersion, boolean changing = false) {
+        def metadata = Stub(ComponentResolveMetadata)
+        _ * metadata.changing >> changing
+
+        def component = Stub(DependencyGraphComponent)
+        _ * component.resultId >> resultId
+        _ * component.componentId >> componentId
+        _ * component.moduleVersion >> moduleVersion
+        _ * component.selectionReason >> requested()
+        _ * component.metadata >> metadata
+
+        def node = Stub(DependencyGraphNode)
+        _ * node.owner >> component
+        return node
+    }
+
+    private DependencyGraphEdge dep(DependencyGraphSelector selector, Long selectedId) {
+        def edge = Stub(DependencyGraphEdge)
+        _ * edge.selector >> selector
+        _ * edge.selected >> selectedId
+        _ * edge.failure >> null
+        return edge
+    }
+
+    private DependencyGraphEdge failedDep(DependencyGraphSelector selector) {
+        def edge = Stub(DependencyGraphEdge)
+        _ * edge.selector >> selector
+        _ * edge.requested >> selector.requested
+        _ * edge.reason >> requested()
+        _ * edge.failure >> new ModuleVersionResolveException(selector.requested, new RuntimeException("Boo!"))
+        return edge
+    }
+
+    private DependencyGraphSelector selector(Long resultId, String org, String name, String ver) {
+        def selector = Stub(DependencyGraphSelector)
+        selector.resultId >> resultId
+        selector.requested >> DefaultModuleComponentSelector.newSelector(org, name, new DefaultMutableVersionConstraint(ver))
+        return selector
+    }
+}
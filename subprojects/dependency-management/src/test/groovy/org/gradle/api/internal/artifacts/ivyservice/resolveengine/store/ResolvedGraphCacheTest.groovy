@@ -0,0 +1,207 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.artifacts.ivyservice.resolveengine.store
+
+import org.gradle.api.internal.artifacts.DefaultImmutableModuleIdentifierFactory
+import org.gradle.api.internal.artifacts.configurations.dynamicversion.CachePolicy
+import org.gradle.api.internal.artifacts.dsl.ModuleReplacementsData
+import org.gradle.api.internal.artifacts.ivyservice.CacheLockingManager
+import org.gradle.api.internal.artifacts.ivyservice.ivyresolve.ModuleComponentRepository
+import org.gradle.api.internal.artifacts.ivyservice.modulecache.ModuleMetadataCache
+import org.gradle.api.internal.artifacts.ivyservice.modulecache.ModuleRepositoryCaches
+import org.gradle.api.internal.artifacts.ivyservice.modulecache.dynamicversions.ModuleVersionsCache
+import org.gradle.api.internal.artifacts.ivyservice.resolveengine.result.ResolvedGraphRecorder
+import org.gradle.internal.component.external.model.DefaultModuleComponentIdentifier
+import org.gradle.internal.hash.HashCode
+import org.gradle.internal.serialize.Serializer
+import org.gradle.testfixtures.internal.InMemoryIndexedCache
+import org.gradle.util.BuildCommencedTimeProvider
+import spock.lang.Specification
+
+class ResolvedGraphCacheTest extends Specification {
+    def moduleIdentifierFactory = new DefaultImmutableModuleIdentifierFactory()
+    def key = HashCode.fromInt(1234)
+    def results = [1, 2, 3] as byte[]
+    def dep = moduleIdentifierFactory.module("org", "dep")
+    def changingId = DefaultModuleComponentIdentifier.newId("org", "dep", "1.0-SNAPSHOT")
+    def repository = Stub(ModuleComponentRepository) {
+        getId() >> "repo"
+    }
+    def repositories = [repository]
+    def moduleReplacements = Stub(ModuleReplacementsData)
+    Long listingAge
+    Long metadataAge
+    boolean changingModuleExpired
+    def cachePolicy = Stub(CachePolicy) {
+        mustRefreshChangingModule(changingId, _, _) >> { changingModuleExpired }
+    }
+    def versionsCache = Stub(ModuleVersionsCache) {
+        getCachedModuleResolution(repository, dep) >> { listingAge == null ? null : listing(listingAge) }
+    }
+    def metadataCache = Stub(ModuleMetadataCache) {
+        getCachedModuleDescriptor(repository, changingId) >> { metadataAge == null ? null : metadata(metadataAge) }
+    }
+    long now = 10000L
+    def timeProvider = Stub(BuildCommencedTimeProvider) {
+        getCurrentTime() >> { now }
+    }
+    def cacheLockingManager = Stub(CacheLockingManager) {
+        useCache(_) >> { args ->
+            def action = args[0]
+            if (action instanceof org.gradle.internal.Factory) {
+                return action.create()
+            } else {
+                action.run()
+            }
+        }
+
+        createCache(_, _, _) >> { String file, Serializer keySerializer, Serializer valueSerializer ->
+            return new InMemoryIndexedCache<>(valueSerializer)
+        }
+    }
+    def cache = new ResolvedGraphCache(cacheLockingManager, new ModuleRepositoryCaches(versionsCache, metadataCache, null, null), timeProvider, moduleIdentifierFactory)
+
+    def "reuses results of graph without dynamic versions or changing modules"() {
+        when:
+        cache.store(key, recorder(), repositories)
+
+        then:
+        load(key) == results
+        load(HashCode.fromInt(5678)) == null
+    }
+
+    def "does not reuse results when a module of the graph takes part in module replacements"() {
+        given:
+        cache.store(key, recorder(), repositories)
+        moduleReplacements.participatesInReplacements(dep) >> true
+
+        expect:
+        load(key) == null
+    }
+
+    def "reuses results of graph with dynamic versions while the version listing is the same"() {
+        given:
+        listingAge = 100
+        cache.store(key, recorder([dep]), repositories)
+
+        when:
+        now += 500
+        listingAge += 500
+
+        then:
+        load(key) == results
+    }
+
+    def "does not reuse results of graph with dynamic versions when the version listing has been refreshed"() {
+        given:
+        listingAge = 100
+        cache.store(key, recorder([dep]), repositories)
+
+        when:
+        now += 500
+        listingAge = 20
+
+        then:
+        load(key) == null
+    }
+
+    def "does not reuse results of graph with dynamic versions when the version listing must be refreshed"() {
+        given:
+        listingAge = 100
+        cache.store(key, recorder([dep]), repositories)
+        cachePolicy.mustRefreshVersionList(dep, _, 100) >> true
+
+        expect:
+        load(key) == null
+    }
+
+    def "does not keep results of graph with dynamic versions when the version listing is not cached"() {
+        given:
+        cache.store(key, recorder([dep]), repositories)
+        listingAge = 100
+
+        expect:
+        load(key) == null
+    }
+
+    def "reuses results of graph with changing modules until the metadata must be refreshed"() {
+        given:
+        metadataAge = 100
+        cache.store(key, recorder([], [changingId]), repositories)
+
+        when:
+        def reused = load(key)
+
+        then:
+        reused == results
+
+        when:
+        changingModuleExpired = true
+
+        then:
+        load(key) == null
+    }
+
+    def "does not reuse results of graph whose artifacts are required"() {
+        given:
+        cache.store(key, recorder(), repositories)
+
+        when:
+        cache.artifactsRequired(key)
+
+        then:
+        cache.get(key).artifactsRequired
+        load(key) == null
+
+        when:
+        cache.artifactsRequired(key)
+
+        then:
+        cache.get(key).artifactsRequired
+    }
+
+    private byte[] load(HashCode key) {
+        def graph = cache.get(key)
+        if (graph == null || !cache.isUpToDate(graph, repositories, cachePolicy, moduleReplacements)) {
+            return null
+        }
+        return graph.results
+    }
+
+    private ResolvedGraphRecorder recorder(List dynamicModules = [], List changingComponents = []) {
+        def recorder = Stub(ResolvedGraphRecorder)
+        _ * recorder.recordedResults >> results
+        _ * recorder.modules >> ([dep] as Set)
+        _ * recorder.dynamicModules >> (dynamicModules as Set)
+        _ * recorder.changingComponents >> (changingComponents as Set)
+        return recorder
+    }
+
+    private ModuleVersionsCache.CachedModuleVersionList listing(long ageMillis) {
+        def listing = Stub(ModuleVersionsCache.CachedModuleVersionList)
+        _ * listing.moduleVersions >> (["1.0", "1.1"] as Set)
+        _ * listing.ageMillis >> ageMillis
+        return listing
+    }
+
+    private ModuleMetadataCache.CachedMetadata metadata(long ageMillis) {
+        def metadata = Stub(ModuleMetadataCache.CachedMetadata)
+        _ * metadata.missing >> false
+        _ * metadata.ageMillis >> ageMillis
+        return metadata
+    }
+}
@@ -17,6 +17,7 @@
 package org.gradle.integtests
 
 import org.gradle.api.internal.artifacts.ivyservice.CacheLayout
+import org.gradle.cache.internal.btree.BTreePersistentIndexedCache
 import org.gradle.integtests.fixtures.AbstractIntegrationTest
 import org.gradle.internal.hash.DefaultContentHasherFactory
 import org.gradle.internal.hash.DefaultFileHasher
@@ -60,7 +61,7 @@ class CacheProjectIntegrationTest extends AbstractIntegrationTest {
         userHomeDir = executer.gradleUserHomeDir
         buildFile = projectDir.file('build.gradle')
 
-        artifactsCache = projectDir.file(".gradle/$version/taskHistory/taskHistory.bin")
+        artifactsCache = projectDir.file(".gradle/$version/taskHistory/${BTreePersistentIndexedCache.getFileName("taskHistory")}")
 
         repo = new MavenHttpRepository(server, mavenRepo)
 
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal.btree;
+
+import org.apache.commons.io.FileUtils;
+import org.gradle.internal.serialize.BaseSerializerFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@State(Scope.Benchmark)
+@SuppressWarnings("Since15")
+public class BTreePersistentIndexedCacheBenchmark {
+    private static final int BATCH_SIZE = 100;
+
+    @Param({"1000", "100000"})
+    int entryCount;
+
+    @Param({"16", "1024"})
+    int valueSize;
+
+    @Param({"4096", "4194304"})
+    long pageCacheSize;
+
+    File tempDir;
+    BTreePersistentIndexedCache<String, byte[]> cache;
+    String[] keys;
+    byte[] value;
+    Random random = new Random(1234L);
+    int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        tempDir = Files.createTempDirectory("btree").toFile();
+        System.setProperty(BTreePersistentIndexedCache.PAGE_CACHE_SIZE_PROPERTY, String.valueOf(pageCacheSize));
+        cache = new BTreePersistentIndexedCache<String, byte[]>(new File(tempDir, "cache.bin"), BaseSerializerFactory.STRING_SERIALIZER, BaseSerializerFactory.BYTE_ARRAY_SERIALIZER);
+        value = new byte[valueSize];
+        random.nextBytes(value);
+        keys = new String[entryCount];
+        for (int i = 0; i < entryCount; i++) {
+            keys[i] = "/some/path/to/file-" + i;
+            cache.put(keys[i], value);
+        }
+        cache.reset();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        cache.close();
+        System.clearProperty(BTreePersistentIndexedCache.PAGE_CACHE_SIZE_PROPERTY);
+        FileUtils.forceDelete(tempDir);
+    }
+
+    @Benchmark
+    public void getExisting(Blackhole blackhole) {
+        blackhole.consume(cache.get(nextKey()));
+    }
+
+    @Benchmark
+    public void getMissing(Blackhole blackhole) {
+        blackhole.consume(cache.get(nextKey() + "-missing"));
+    }
+
+    @Benchmark
+    public void putExisting() {
+        cache.put(nextKey(), value);
+    }
+
+    @Benchmark
+    public void putBatchAndFlush() {
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            cache.put(nextKey(), value);
+        }
+        // Closes the cache file, writing any pending changes, and opens it again
+        cache.reset();
+    }
+
+    private String nextKey() {
+        next = (next + 7919) % entryCount;
+        return keys[next];
+    }
+}
@@ -42,6 +42,7 @@ import org.gradle.util.CollectionUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -56,6 +57,17 @@ import static org.gradle.cache.FileLockManager.LockMode.Exclusive;
 
 @ThreadSafe
 public class DefaultCacheAccess implements CacheCoordinator {
+    /**
+     * Set to {@code true} to record updates to indexed caches in a write-ahead log, rather than applying them directly. Experimental.
+     *
+     * <p>Other Gradle versions, and builds that run without this property, do not read the log and update the BTree file directly.
+     * Those updates are shadowed by the records of the log when the log is read again, so the property should only be used for caches that are not shared with such builds.</p>
+     */
+    public static final String WRITE_AHEAD_LOG_PROPERTY = "org.gradle.internal.cache.write-ahead-log";
+    private static final long WRITE_AHEAD_LOG_COMPACTION_THRESHOLD = 1024 * 1024;
+    private static final long MIN_COMPACTION_FILE_SIZE = 1024 * 1024;
+    private static final double MAX_FREE_SPACE_RATIO = 0.5;
+
     private final static Logger LOG = LoggerFactory.getLogger(DefaultCacheAccess.class);
     private final static Runnable NO_OP = new Runnable() {
         @Override
@@ -67,6 +79,7 @@ public class DefaultCacheAccess implements CacheCoordinator {
     private final String cacheDisplayName;
     private final File baseDir;
     private final CacheCleanupAction cleanupAction;
+    private final CacheCleanupAction compactionAction;
     private final ExecutorFactory executorFactory;
     private final FileAccess fileAccess = new UnitOfWorkFileAccess();
     private final Map<String, IndexedCacheEntry<?, ?>> caches = new HashMap<String, IndexedCacheEntry<?, ?>>();
@@ -89,6 +102,7 @@ public class DefaultCacheAccess implements CacheCoordinator {
         this.cacheDisplayName = cacheDisplayName;
         this.baseDir = baseDir;
         this.cleanupAction = cleanupAction;
+        this.compactionAction = lockOptions.getMode() == FileLockManager.LockMode.Shared ? null : new CompactIndexedCaches();
         this.executorFactory = executorFactory;
         this.operations = new CacheAccessOperationsStack();
 
@@ -165,15 +179,8 @@ public class DefaultCacheAccess implements CacheCoordinator {
         try {
             // Take ownership
             takeOwnershipNow();
-            if (cleanupAction != null) {
-                try {
-                    if (cleanupAction.requiresCleanup()) {
-                        cleanupAction.cleanup();
-                    }
-                } catch (Exception e) {
-                    LOG.debug("Cache {} could not run cleanup action {}", cacheDisplayName, cleanupAction);
-                }
-            }
+            runCleanupAction(cleanupAction);
+            runCleanupAction(compactionAction);
             if (fileLockHeldByOwner != null) {
                 fileLockHeldByOwner.run();
             }
@@ -188,6 +195,18 @@ public class DefaultCacheAccess implements CacheCoordinator {
         }
     }
 
+    private void runCleanupAction(@Nullable CacheCleanupAction action) {
+        if (action != null) {
+            try {
+                if (action.requiresCleanup()) {
+                    action.cleanup();
+                }
+            } catch (Exception e) {
+                LOG.debug("Cache {} could not run cleanup action {}", cacheDisplayName, action);
+            }
+        }
+    }
+
     @Override
     public <T> T withFileLock(Factory<? extends T> action) {
         return crossProcessCacheAccess.withFileLock(action);
@@ -282,7 +301,7 @@ public class DefaultCacheAccess implements CacheCoordinator {
         IndexedCacheEntry<K, V> entry = Cast.uncheckedCast(caches.get(parameters.getCacheName()));
         try {
             if (entry == null) {
-                final File cacheFile = new File(baseDir, parameters.getCacheName() + ".bin");
+                final File cacheFile = new File(baseDir, BTreePersistentIndexedCache.getFileName(parameters.getCacheName()));
                 LOG.debug("Creating new cache for {}, path {}, access {}", parameters.getCacheName(), cacheFile, this);
                 Factory<BTreePersistentIndexedCache<K, V>> indexedCacheFactory = new Factory<BTreePersistentIndexedCache<K, V>>() {
                     public BTreePersistentIndexedCache<K, V> create() {
@@ -290,7 +309,12 @@ public class DefaultCacheAccess implements CacheCoordinator {
                     }
                 };
 
-                MultiProcessSafePersistentIndexedCache<K, V> indexedCache = new DefaultMultiProcessSafePersistentIndexedCache<K, V>(indexedCacheFactory, fileAccess);
+                DefaultMultiProcessSafePersistentIndexedCache<K, V> persistentCache = new DefaultMultiProcessSafePersistentIndexedCache<K, V>(indexedCacheFactory, fileAccess);
+                MultiProcessSafePersistentIndexedCache<K, V> indexedCache = persistentCache;
+                if (Boolean.getBoolean(WRITE_AHEAD_LOG_PROPERTY)) {
+                    File logFile = new File(baseDir, parameters.getCacheName() + ".wal");
+                    indexedCache = new WriteAheadLogPersistentIndexedCache<K, V>(indexedCache, logFile, parameters.getKeySerializer(), parameters.getValueSerializer(), fileAccess, WRITE_AHEAD_LOG_COMPACTION_THRESHOLD);
+                }
                 CacheDecorator decorator = parameters.getCacheDecorator();
                 if (decorator != null) {
                     indexedCache = decorator.decorate(cacheFile.getAbsolutePath(), parameters.getCacheName(), indexedCache, crossProcessCacheAccess, getCacheAccessWorker());
@@ -298,7 +322,7 @@ public class DefaultCacheAccess implements CacheCoordinator {
                         useCache(NO_OP);
                     }
                 }
-                entry = new IndexedCacheEntry<K, V>(parameters, indexedCache);
+                entry = new IndexedCacheEntry<K, V>(parameters, indexedCache, persistentCache, cacheFile);
                 caches.put(parameters.getCacheName(), entry);
                 if (fileLock != null) {
                     indexedCache.afterLockAcquire(stateAtOpen);
@@ -420,19 +444,69 @@ public class DefaultCacheAccess implements CacheCoordinator {
         return fileAccess;
     }
 
+    /**
+     * Compacts the files of the indexed caches that have accumulated too much free space.
+     */
+    private class CompactIndexedCaches implements CacheCleanupAction {
+        @Override
+        public boolean requiresCleanup() {
+            for (IndexedCacheEntry<?, ?> entry : caches.values()) {
+                if (entry.getCacheFile().length() >= MIN_COMPACTION_FILE_SIZE) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void cleanup() {
+            crossProcessCacheAccess.withFileLock(new Factory<Void>() {
+                @Override
+                public Void create() {
+                    for (IndexedCacheEntry<?, ?> entry : caches.values()) {
+                        if (entry.getCacheFile().length() >= MIN_COMPACTION_FILE_SIZE) {
+                            entry.getPersistentCache().compactIfRequired(MAX_FREE_SPACE_RATIO);
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+
+        @Override
+        public String toString() {
+            return "compaction of indexed caches";
+        }
+    }
+
     private static class IndexedCacheEntry<K, V> {
         private final MultiProcessSafePersistentIndexedCache<K, V> cache;
+        private final DefaultMultiProcessSafePersistentIndexedCache<K, V> persistentCache;
+        private final File cacheFile;
         private final PersistentIndexedCacheParameters<K, V> parameters;
 
-        IndexedCacheEntry(PersistentIndexedCacheParameters<K, V> parameters, MultiProcessSafePersistentIndexedCache<K, V> cache) {
+        IndexedCacheEntry(PersistentIndexedCacheParameters<K, V> parameters, MultiProcessSafePersistentIndexedCache<K, V> cache, DefaultMultiProcessSafePersistentIndexedCache<K, V> persistentCache, File cacheFile) {
             this.parameters = parameters;
             this.cache = cache;
+            this.persistentCache = persistentCache;
+            this.cacheFile = cacheFile;
         }
 
         public MultiProcessSafePersistentIndexedCache<K, V> getCache() {
             return cache;
         }
 
+        /**
+         * Returns the undecorated cache backed by the cache file.
+         */
+        public DefaultMultiProcessSafePersistentIndexedCache<K, V> getPersistentCache() {
+            return persistentCache;
+        }
+
+        public File getCacheFile() {
+            return cacheFile;
+        }
+
         public PersistentIndexedCacheParameters<K, V> getParameters() {
             return parameters;
         }
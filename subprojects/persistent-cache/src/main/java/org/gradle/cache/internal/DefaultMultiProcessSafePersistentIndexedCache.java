@@ -109,6 +109,21 @@ public class DefaultMultiProcessSafePersistentIndexedCache<K, V> implements Mult
     public void beforeLockRelease(FileLock.State currentCacheState) {
     }
 
+    /**
+     * Compacts the cache file when the proportion of free space in the file exceeds the given ratio.
+     */
+    public void compactIfRequired(final double maxFreeSpaceRatio) {
+        final BTreePersistentIndexedCache<K, V> cache = getCache();
+        fileAccess.writeFile(new Runnable() {
+            public void run() {
+                double freeSpaceRatio = cache.getFreeSpaceRatio();
+                if (freeSpaceRatio > maxFreeSpaceRatio) {
+                    cache.compact();
+                }
+            }
+        });
+    }
+
     private BTreePersistentIndexedCache<K, V> getCache() {
         if (cache == null) {
             // Use writeFile because the cache can internally recover from datafile
@@ -0,0 +1,300 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal;
+
+import org.gradle.api.UncheckedIOException;
+import org.gradle.internal.io.RandomAccessFileOutputStream;
+
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of the updates made to a cache, held as serialized keys and values.
+ *
+ * <p>Updates are buffered in memory and written to the log file in a single append by {@link #commit()}. When the log is loaded, the records are replayed
+ * in order, so that the most recent update for each key wins. A record that was only partially written, for example because the process crashed, is ignored and
+ * overwritten by the next commit.</p>
+ *
+ * <p>The log file starts with a format version. A log written in another format, for example by another Gradle version, is ignored and replaced by the next commit.</p>
+ *
+ * <p>The log file must only be accessed while holding the lock for the cache.</p>
+ */
+class WriteAheadLog {
+    private static final int MAGIC = 0x4757414c;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+
+    private final File file;
+    private final Map<Key, Entry> entries = new LinkedHashMap<Key, Entry>();
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private final DataOutputStream pendingOutput = new DataOutputStream(pending);
+    private final CRC32 checksum = new CRC32();
+    private boolean loaded;
+    private long length;
+
+    WriteAheadLog(File file) {
+        this.file = file;
+    }
+
+    @Override
+    public String toString() {
+        return "write-ahead log '" + file + "'";
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Reads the records of the log file, discarding any in-memory state.
+     */
+    public void load() {
+        discard();
+        try {
+            if (file.length() >= HEADER_SIZE) {
+                DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+                try {
+                    if (input.readInt() == MAGIC && input.readInt() == FORMAT_VERSION) {
+                        length = HEADER_SIZE + readRecords(input, file.length() - HEADER_SIZE);
+                    }
+                } finally {
+                    input.close();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Could not read %s.", this), e);
+        }
+        loaded = true;
+    }
+
+    private long readRecords(DataInputStream input, long available) throws IOException {
+        long validLength = 0;
+        try {
+            while (validLength < available) {
+                checksum.reset();
+                byte type = input.readByte();
+                if (type != PUT && type != REMOVE) {
+                    break;
+                }
+                byte[] key = readBytes(input, available - validLength);
+                byte[] value = type == PUT ? readBytes(input, available - validLength) : null;
+                if (key == null || (type == PUT && value == null)) {
+                    break;
+                }
+                checksum.update(type);
+                checksum.update(key);
+                if (value != null) {
+                    checksum.update(value);
+                }
+                if (input.readInt() != (int) checksum.getValue()) {
+                    break;
+                }
+                entries.put(new Key(key), new Entry(key, value));
+                validLength += recordSize(key, value);
+            }
+        } catch (EOFException e) {
+            // A partially written record at the end of the log
+        }
+        return validLength;
+    }
+
+    @Nullable
+    private static byte[] readBytes(DataInputStream input, long available) throws IOException {
+        int count = input.readInt();
+        if (count < 0 || count > available) {
+            return null;
+        }
+        byte[] bytes = new byte[count];
+        input.readFully(bytes);
+        return bytes;
+    }
+
+    private static long recordSize(byte[] key, @Nullable byte[] value) {
+        return 1 + 4 + key.length + (value == null ? 0 : 4 + value.length) + 4;
+    }
+
+    /**
+     * Discards the in-memory state of this log, including any updates that have not been committed. The log is loaded again on next use.
+     */
+    public void discard() {
+        entries.clear();
+        pending.reset();
+        length = 0;
+        loaded = false;
+    }
+
+    /**
+     * Returns the size of the log, including the updates that have not been committed.
+     */
+    public long getSize() {
+        return length + pending.size();
+    }
+
+    public boolean hasPendingUpdates() {
+        return pending.size() > 0;
+    }
+
+    /**
+     * Returns true when this log contains an update for the given key.
+     */
+    public boolean contains(byte[] key) {
+        return entries.containsKey(new Key(key));
+    }
+
+    /**
+     * Returns the most recent value for the given key, or null when the key was removed or has not been updated.
+     */
+    @Nullable
+    public byte[] get(byte[] key) {
+        Entry entry = entries.get(new Key(key));
+        return entry == null ? null : entry.value;
+    }
+
+    /**
+     * Returns the most recent update for each key, in the order in which the keys were first updated.
+     */
+    public Collection<Entry> getEntries() {
+        return entries.values();
+    }
+
+    /**
+     * Records an update. Use a {@code null} value to record the removal of the key.
+     */
+    public void append(byte[] key, @Nullable byte[] value) {
+        checksum.reset();
+        byte type = value == null ? REMOVE : PUT;
+        try {
+            pendingOutput.writeByte(type);
+            pendingOutput.writeInt(key.length);
+            pendingOutput.write(key);
+            checksum.update(type);
+            checksum.update(key);
+            if (value != null) {
+                pendingOutput.writeInt(value.length);
+                pendingOutput.write(value);
+                checksum.update(value);
+            }
+            pendingOutput.writeInt((int) checksum.getValue());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        entries.put(new Key(key), new Entry(key, value));
+    }
+
+    /**
+     * Appends the updates made since the last commit to the log file, using a single write.
+     */
+    public void commit() {
+        if (!hasPendingUpdates()) {
+            return;
+        }
+        try {
+            file.getParentFile().mkdirs();
+            RandomAccessFile output = new RandomAccessFile(file, "rw");
+            try {
+                if (length == 0) {
+                    output.writeInt(MAGIC);
+                    output.writeInt(FORMAT_VERSION);
+                    length = HEADER_SIZE;
+                }
+                output.seek(length);
+                pending.writeTo(new RandomAccessFileOutputStream(output));
+                length += pending.size();
+                // Discard any partially written record that followed the valid records
+                output.setLength(length);
+            } finally {
+                output.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Could not write to %s.", this), e);
+        }
+        pending.reset();
+    }
+
+    /**
+     * Removes all records from this log, including those in the log file.
+     */
+    public void clear() {
+        entries.clear();
+        pending.reset();
+        length = 0;
+        loaded = true;
+        if (file.isFile() && !file.delete()) {
+            throw new UncheckedIOException(String.format("Could not delete %s.", this));
+        }
+    }
+
+    /**
+     * The most recent update for a key.
+     */
+    public static class Entry {
+        private final byte[] key;
+        private final byte[] value;
+
+        Entry(byte[] key, @Nullable byte[] value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        public byte[] getKey() {
+            return key;
+        }
+
+        /**
+         * Returns the serialized value, or null when the key was removed.
+         */
+        @Nullable
+        public byte[] getValue() {
+            return value;
+        }
+    }
+
+    private static class Key {
+        private final byte[] bytes;
+        private final int hashCode;
+
+        Key(byte[] bytes) {
+            this.bytes = bytes;
+            this.hashCode = Arrays.hashCode(bytes);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key && Arrays.equals(bytes, ((Key) obj).bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal;
+
+import org.gradle.api.Transformer;
+import org.gradle.cache.FileAccess;
+import org.gradle.cache.FileLock;
+import org.gradle.cache.MultiProcessSafePersistentIndexedCache;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.serialize.Serializer;
+import org.gradle.internal.serialize.kryo.KryoBackedDecoder;
+import org.gradle.internal.serialize.kryo.KryoBackedEncoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+
+/**
+ * Records the updates to a backing cache in a {@link WriteAheadLog}, rather than applying them to the backing cache directly.
+ *
+ * <p>The updates made while the cache lock is held are appended to the log in a single write just before the lock is released. Only when the log grows beyond a threshold
+ * are the logged updates applied to the backing cache, in one batch, and the log cleared. This keeps the time that the lock is held short for most units of work.
+ * Should the process crash while applying the updates, they are applied again from the log.</p>
+ *
+ * <p>The log is kept in memory between units of work, and is only read again when another process has updated the cache in the meantime.</p>
+ */
+public class WriteAheadLogPersistentIndexedCache<K, V> implements MultiProcessSafePersistentIndexedCache<K, V> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(WriteAheadLogPersistentIndexedCache.class);
+
+    private final MultiProcessSafePersistentIndexedCache<K, V> target;
+    private final WriteAheadLog log;
+    private final Serializer<K> keySerializer;
+    private final Serializer<V> valueSerializer;
+    private final FileAccess fileAccess;
+    private final long compactionThreshold;
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    private final KryoBackedEncoder encoder = new KryoBackedEncoder(buffer);
+    private FileLock.State stateAtLastRelease;
+
+    /**
+     * @param compactionThreshold The size of the log in bytes above which the logged updates are applied to the backing cache.
+     */
+    public WriteAheadLogPersistentIndexedCache(MultiProcessSafePersistentIndexedCache<K, V> target, File logFile, Serializer<K> keySerializer, Serializer<V> valueSerializer,
+                                               FileAccess fileAccess, long compactionThreshold) {
+        this.target = target;
+        this.log = new WriteAheadLog(logFile);
+        this.keySerializer = keySerializer;
+        this.valueSerializer = valueSerializer;
+        this.fileAccess = fileAccess;
+        this.compactionThreshold = compactionThreshold;
+    }
+
+    @Override
+    public String toString() {
+        return target.toString();
+    }
+
+    @Nullable
+    @Override
+    public V get(K key) {
+        byte[] serializedKey = serialize(keySerializer, key);
+        WriteAheadLog log = getLog();
+        if (log.contains(serializedKey)) {
+            byte[] serializedValue = log.get(serializedKey);
+            return serializedValue == null ? null : deserialize(valueSerializer, serializedValue);
+        }
+        return target.get(key);
+    }
+
+    @Override
+    public V get(K key, Transformer<? extends V, ? super K> producer) {
+        V value = get(key);
+        if (value == null) {
+            value = producer.transform(key);
+            put(key, value);
+        }
+        return value;
+    }
+
+    @Override
+    public void put(K key, V value) {
+        append(serialize(keySerializer, key), serialize(valueSerializer, value));
+    }
+
+    @Override
+    public void remove(K key) {
+        append(serialize(keySerializer, key), null);
+    }
+
+    private void append(byte[] serializedKey, @Nullable byte[] serializedValue) {
+        WriteAheadLog log = getLog();
+        log.append(serializedKey, serializedValue);
+        if (log.getSize() > compactionThreshold) {
+            compact();
+        }
+    }
+
+    @Override
+    public void afterLockAcquire(FileLock.State currentCacheState) {
+        if (stateAtLastRelease == null || !currentCacheState.canDetectChanges() || currentCacheState.hasBeenUpdatedSince(stateAtLastRelease)) {
+            // Another process may have updated the log
+            log.discard();
+        }
+        target.afterLockAcquire(currentCacheState);
+    }
+
+    @Override
+    public void finishWork() {
+        try {
+            if (log.hasPendingUpdates()) {
+                fileAccess.writeFile(new Runnable() {
+                    @Override
+                    public void run() {
+                        log.commit();
+                    }
+                });
+            }
+        } finally {
+            target.finishWork();
+        }
+    }
+
+    @Override
+    public void beforeLockRelease(FileLock.State currentCacheState) {
+        stateAtLastRelease = currentCacheState;
+        target.beforeLockRelease(currentCacheState);
+    }
+
+    /**
+     * Applies the logged updates to the backing cache, then clears the log.
+     */
+    private void compact() {
+        LOGGER.debug("Applying {} updates from {} to {}", log.getEntries().size(), log, target);
+        for (WriteAheadLog.Entry entry : log.getEntries()) {
+            K key = deserialize(keySerializer, entry.getKey());
+            byte[] serializedValue = entry.getValue();
+            if (serializedValue == null) {
+                target.remove(key);
+            } else {
+                target.put(key, deserialize(valueSerializer, serializedValue));
+            }
+        }
+        fileAccess.writeFile(new Runnable() {
+            @Override
+            public void run() {
+                log.clear();
+            }
+        });
+    }
+
+    private WriteAheadLog getLog() {
+        if (!log.isLoaded()) {
+            // Use writeFile because a partially written record is discarded on next commit, so we don't care at this level if the log is corrupt
+            fileAccess.writeFile(new Runnable() {
+                @Override
+                public void run() {
+                    log.load();
+                }
+            });
+        }
+        return log;
+    }
+
+    private <T> byte[] serialize(Serializer<T> serializer, T value) {
+        try {
+            serializer.write(encoder, value);
+            encoder.flush();
+        } catch (Exception e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        }
+        byte[] bytes = buffer.toByteArray();
+        buffer.reset();
+        return bytes;
+    }
+
+    private static <T> T deserialize(Serializer<T> serializer, byte[] bytes) {
+        try {
+            return serializer.read(new KryoBackedDecoder(new ByteArrayInputStream(bytes)));
+        } catch (Exception e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        }
+    }
+}
@@ -17,6 +17,7 @@ package org.gradle.cache.internal.btree;
 
 import com.google.common.collect.ImmutableSet;
 import org.gradle.api.UncheckedIOException;
+import org.gradle.internal.hash.HashAlgorithm;
 import org.gradle.internal.io.StreamByteBuffer;
 import org.gradle.internal.serialize.Serializer;
 import org.gradle.internal.serialize.kryo.KryoBackedDecoder;
@@ -24,10 +25,14 @@ import org.gradle.internal.serialize.kryo.KryoBackedEncoder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -47,14 +52,37 @@ import java.util.List;
 // todo - use more efficient lookup for free block with nearest size
 @SuppressWarnings("unchecked")
 public class BTreePersistentIndexedCache<K, V> {
+    /**
+     * Selects the hash function used to hash keys. Defaults to {@link HashAlgorithm#MURMUR3_128}, as key hashes are never exposed outside of the cache.
+     *
+     * @see #getFileName(String)
+     */
+    public static final String KEY_HASH_ALGORITHM_PROPERTY = "org.gradle.internal.btree.key-hash";
+
+    /**
+     * The maximum number of bytes of each cache file to hold in memory while the cache is open.
+     */
+    public static final String PAGE_CACHE_SIZE_PROPERTY = "org.gradle.internal.btree.page-cache-size";
+    private static final long DEFAULT_PAGE_CACHE_SIZE = 4 * 1024 * 1024;
+
     private static final Logger LOGGER = LoggerFactory.getLogger(BTreePersistentIndexedCache.class);
+    private static final int COMPACTION_FLUSH_INTERVAL = 1000;
+    /**
+     * Modified blocks are held in memory until the cache is closed, or this many updates have been made.
+     */
+    private static final int MAX_UNFLUSHED_UPDATES = 1000;
     private final File cacheFile;
+    private final Serializer<K> keySerializer;
     private final KeyHasher<K> keyHasher;
     private final Serializer<V> serializer;
     private final short maxChildIndexEntries;
     private final int minIndexChildNodes;
+    private final int maxFreeListEntries;
+    private final FileBackedBlockStore fileStore;
+    private final FreeListBlockStore freeListStore;
     private final StateCheckBlockStore store;
     private HeaderBlock header;
+    private int unflushedUpdates;
 
     public BTreePersistentIndexedCache(File cacheFile, Serializer<K> keySerializer, Serializer<V> valueSerializer) {
         this(cacheFile, keySerializer, valueSerializer, (short) 512, 512);
@@ -63,12 +91,16 @@ public class BTreePersistentIndexedCache<K, V> {
     public BTreePersistentIndexedCache(File cacheFile, Serializer<K> keySerializer, Serializer<V> valueSerializer,
                                        short maxChildIndexEntries, int maxFreeListEntries) {
         this.cacheFile = cacheFile;
-        this.keyHasher = new KeyHasher<K>(keySerializer);
+        this.keySerializer = keySerializer;
+        this.keyHasher = new KeyHasher<K>(keySerializer, getKeyHashAlgorithm());
         this.serializer = valueSerializer;
         this.maxChildIndexEntries = maxChildIndexEntries;
         this.minIndexChildNodes = maxChildIndexEntries / 2;
-        BlockStore cachingStore = new CachingBlockStore(new FileBackedBlockStore(cacheFile), ImmutableSet.of(IndexBlock.class, FreeListBlockStore.FreeListBlock.class));
-        this.store = new StateCheckBlockStore(new FreeListBlockStore(cachingStore, maxFreeListEntries));
+        this.maxFreeListEntries = maxFreeListEntries;
+        this.fileStore = new FileBackedBlockStore(cacheFile, Long.getLong(PAGE_CACHE_SIZE_PROPERTY, DEFAULT_PAGE_CACHE_SIZE));
+        BlockStore cachingStore = new CachingBlockStore(fileStore, ImmutableSet.of(IndexBlock.class, FreeListBlockStore.FreeListBlock.class));
+        this.freeListStore = new FreeListBlockStore(cachingStore, maxFreeListEntries);
+        this.store = new StateCheckBlockStore(freeListStore);
         try {
             open();
         } catch (Exception e) {
@@ -76,6 +108,25 @@ public class BTreePersistentIndexedCache<K, V> {
         }
     }
 
+    private static HashAlgorithm getKeyHashAlgorithm() {
+        return HashAlgorithm.fromSystemProperty(KEY_HASH_ALGORITHM_PROPERTY, HashAlgorithm.MURMUR3_128);
+    }
+
+    /**
+     * Returns the name of the file that holds the cache with the given name, for the key hash algorithm selected by {@link #KEY_HASH_ALGORITHM_PROPERTY}.
+     *
+     * <p>Caches whose keys are hashed using MD5, as in all earlier Gradle versions, are held in {@code <name>.bin}. Caches that use another algorithm are held in a file
+     * whose name includes the versioned name of the algorithm, so that a cache directory shared with another Gradle version never holds a file that the other version reads
+     * using different key hashes.</p>
+     */
+    public static String getFileName(String name) {
+        HashAlgorithm algorithm = getKeyHashAlgorithm();
+        if (algorithm == HashAlgorithm.MD5) {
+            return name + ".bin";
+        }
+        return name + "-" + algorithm.getVersionedName() + ".bin";
+    }
+
     @Override
     public String toString() {
         return "cache " + cacheFile.getName() + " (" + cacheFile + ")";
@@ -86,7 +137,7 @@ public class BTreePersistentIndexedCache<K, V> {
         try {
             doOpen();
         } catch (CorruptedCacheException e) {
-            rebuild();
+            rebuild(e);
         }
     }
 
@@ -127,7 +178,7 @@ public class BTreePersistentIndexedCache<K, V> {
                 }
                 return null;
             } catch (CorruptedCacheException e) {
-                rebuild();
+                rebuild(e);
                 return null;
             }
         } catch (Exception e) {
@@ -154,7 +205,7 @@ public class BTreePersistentIndexedCache<K, V> {
                 store.write(newBlock);
                 lookup.indexBlock.put(hashCode, newBlock.getPos());
             }
-            store.flush();
+            maybeFlush();
         } catch (Exception e) {
             throw new UncheckedIOException(String.format("Could not add entry '%s' to %s.", key, this), e);
         }
@@ -169,12 +220,38 @@ public class BTreePersistentIndexedCache<K, V> {
             lookup.indexBlock.remove(lookup.entry);
             DataBlock block = store.read(lookup.entry.dataBlock, DataBlock.class);
             store.remove(block);
-            store.flush();
+            maybeFlush();
         } catch (Exception e) {
             throw new UncheckedIOException(String.format("Could not remove entry '%s' from %s.", key, this), e);
         }
     }
 
+    private void maybeFlush() {
+        if (++unflushedUpdates >= MAX_UNFLUSHED_UPDATES) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes the modified blocks of this cache to the file, in file order. Also happens when the cache is closed.
+     */
+    public void flush() {
+        unflushedUpdates = 0;
+        try {
+            store.flush();
+        } catch (Exception e) {
+            throw new UncheckedIOException(String.format("Could not flush %s.", this), e);
+        }
+    }
+
+    /**
+     * Returns the page cache of the cache file, or null when the cache has not been opened.
+     */
+    @Nullable
+    PageCache getPageCache() {
+        return fileStore.getPageCache();
+    }
+
     private IndexBlock load(BlockPointer pos, IndexRoot root, IndexBlock parent, int index) {
         IndexBlock block = store.read(pos, IndexBlock.class);
         block.root = root;
@@ -193,7 +270,13 @@ public class BTreePersistentIndexedCache<K, V> {
     }
 
     public void close() {
-        LOGGER.debug("Closing {}", this);
+        PageCache pageCache = fileStore.getPageCache();
+        if (pageCache != null) {
+            LOGGER.debug("Closing {} (page cache hits: {}, misses: {}, page writes: {})", this, pageCache.getHitCount(), pageCache.getMissCount(), pageCache.getWriteCount());
+        } else {
+            LOGGER.debug("Closing {}", this);
+        }
+        unflushedUpdates = 0;
         try {
             store.close();
         } catch (Exception e) {
@@ -205,8 +288,87 @@ public class BTreePersistentIndexedCache<K, V> {
         return store.isOpen();
     }
 
-    private void rebuild() throws Exception {
-        LOGGER.warn("{} is corrupt. Discarding.", this);
+    /**
+     * Returns the proportion of the cache file that is occupied by free blocks.
+     */
+    public double getFreeSpaceRatio() {
+        try {
+            store.flush();
+            long length = fileStore.getLength();
+            return length == 0 ? 0 : (double) freeListStore.getFreeSpace() / length;
+        } catch (Exception e) {
+            throw new UncheckedIOException(String.format("Could not determine free space of %s.", this), e);
+        }
+    }
+
+    /**
+     * Rewrites the live blocks of this cache, ordered by key hash, into a new file which then replaces the cache file.
+     * The free space of the cache file is discarded.
+     */
+    public void compact() {
+        LOGGER.debug("Compacting {}", this);
+        File compactedFile = new File(cacheFile.getParentFile(), cacheFile.getName() + ".compact");
+        try {
+            Files.deleteIfExists(compactedFile.toPath());
+            BTreePersistentIndexedCache<K, V> target = new BTreePersistentIndexedCache<K, V>(compactedFile, keySerializer, serializer, maxChildIndexEntries, maxFreeListEntries);
+            try {
+                int count = copyTo(header.getRoot(), target, 0);
+                target.store.flush();
+                LOGGER.debug("Copied {} entries from {} to {}", count, this, target);
+            } finally {
+                target.close();
+            }
+            close();
+            try {
+                Files.move(compactedFile.toPath(), cacheFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(compactedFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                open();
+            }
+        } catch (CorruptedCacheException e) {
+            // Leave the cache to be rebuilt on next access
+            LOGGER.debug("Could not compact {} as it is corrupt.", this);
+        } catch (Exception e) {
+            throw new UncheckedIOException(String.format("Could not compact %s.", this), e);
+        } finally {
+            compactedFile.delete();
+        }
+    }
+
+    /**
+     * Copies the entries of the given index block and its descendants, in order of their hash codes.
+     */
+    private int copyTo(IndexBlock block, BTreePersistentIndexedCache<K, V> target, int count) throws Exception {
+        for (IndexEntry entry : block.entries) {
+            if (!entry.childIndexBlock.isNull()) {
+                count = copyTo(store.read(entry.childIndexBlock, IndexBlock.class), target, count);
+            }
+            DataBlock dataBlock = store.read(entry.dataBlock, DataBlock.class);
+            target.putSerialized(entry.hashCode, dataBlock.buffer);
+            if (++count % COMPACTION_FLUSH_INTERVAL == 0) {
+                target.store.flush();
+            }
+        }
+        if (!block.tailPos.isNull()) {
+            count = copyTo(store.read(block.tailPos, IndexBlock.class), target, count);
+        }
+        return count;
+    }
+
+    private void putSerialized(long hashCode, StreamByteBuffer serializedValue) throws Exception {
+        Lookup lookup = header.getRoot().find(hashCode);
+        DataBlock newBlock = new DataBlock(null, serializedValue);
+        store.write(newBlock);
+        lookup.indexBlock.put(hashCode, newBlock.getPos());
+    }
+
+    private void rebuild(CorruptedCacheException failure) throws Exception {
+        if (failure instanceof KeyHashAlgorithmMismatchException) {
+            LOGGER.debug("{} was built using a different key hash algorithm. Discarding.", this);
+        } else {
+            LOGGER.warn("{} is corrupt. Discarding.", this);
+        }
         store.clear();
         close();
         doOpen();
@@ -322,7 +484,7 @@ public class BTreePersistentIndexedCache<K, V> {
 
         @Override
         protected int getSize() {
-            return Block.LONG_SIZE + Block.SHORT_SIZE;
+            return Block.LONG_SIZE + Block.SHORT_SIZE + (isMd5() ? 0 : Block.INT_SIZE);
         }
 
         @Override
@@ -333,12 +495,31 @@ public class BTreePersistentIndexedCache<K, V> {
             if (actualChildIndexEntries != maxChildIndexEntries) {
                 throw blockCorruptedException();
             }
+
+            // The header of an index with MD5 key hashes has the same layout as in earlier Gradle versions, other indexes record the algorithm
+            if (!isMd5()) {
+                int actualKeyHashAlgorithm = instr.readInt();
+                if (actualKeyHashAlgorithm != keyHashAlgorithmId()) {
+                    throw new KeyHashAlgorithmMismatchException(String.format("%s was built using a different key hash algorithm.", BTreePersistentIndexedCache.this));
+                }
+            }
         }
 
         @Override
         protected void write(DataOutputStream outstr) throws Exception {
             outstr.writeLong(index.rootPos.getPos());
             outstr.writeShort(maxChildIndexEntries);
+            if (!isMd5()) {
+                outstr.writeInt(keyHashAlgorithmId());
+            }
+        }
+
+        private boolean isMd5() {
+            return keyHasher.getAlgorithm() == HashAlgorithm.MD5;
+        }
+
+        private int keyHashAlgorithmId() {
+            return keyHasher.getAlgorithm().getVersionedName().hashCode();
         }
 
         public IndexBlock getRoot() throws Exception {
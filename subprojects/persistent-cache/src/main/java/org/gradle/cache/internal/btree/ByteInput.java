@@ -17,32 +17,30 @@
 package org.gradle.cache.internal.btree;
 
 import com.google.common.io.CountingInputStream;
-import org.gradle.internal.io.RandomAccessFileInputStream;
 
 import java.io.BufferedInputStream;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.RandomAccessFile;
 
 /**
- * Allows a stream of bytes to be read from a particular location of some backing byte stream.
+ * Allows a stream of bytes to be read from a particular location of some backing page cache.
  */
 class ByteInput {
-    private final RandomAccessFile file;
+    private final PageCacheInputStream pageCacheInputStream;
     private final ResettableBufferedInputStream bufferedInputStream;
     private CountingInputStream countingInputStream;
 
-    public ByteInput(RandomAccessFile file) {
-        this.file = file;
-        bufferedInputStream = new ResettableBufferedInputStream(new RandomAccessFileInputStream(file));
+    public ByteInput(PageCache pageCache) {
+        pageCacheInputStream = new PageCacheInputStream(pageCache);
+        bufferedInputStream = new ResettableBufferedInputStream(pageCacheInputStream);
     }
 
     /**
      * Starts reading from the given offset.
      */
     public DataInputStream start(long offset) throws IOException {
-        file.seek(offset);
+        pageCacheInputStream.pos = offset;
         bufferedInputStream.clear();
         countingInputStream = new CountingInputStream(bufferedInputStream);
         return new DataInputStream(countingInputStream);
@@ -72,4 +70,29 @@ class ByteInput {
             pos = 0;
         }
     }
+
+    private static class PageCacheInputStream extends InputStream {
+        private final PageCache pageCache;
+        private final byte[] single = new byte[1];
+        long pos;
+
+        PageCacheInputStream(PageCache pageCache) {
+            this.pageCache = pageCache;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int nread = read(single, 0, 1);
+            return nread < 0 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            int nread = pageCache.read(pos, bytes, offset, length);
+            if (nread > 0) {
+                pos += nread;
+            }
+            return nread;
+        }
+    }
 }
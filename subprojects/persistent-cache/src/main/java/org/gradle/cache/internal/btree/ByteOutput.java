@@ -17,32 +17,30 @@
 package org.gradle.cache.internal.btree;
 
 import com.google.common.io.CountingOutputStream;
-import org.gradle.internal.io.RandomAccessFileOutputStream;
 
 import java.io.BufferedOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.RandomAccessFile;
 
 /**
- * Allows a stream of bytes to be written to a particular location of some backing byte stream.
+ * Allows a stream of bytes to be written to a particular location of some backing page cache.
  */
 class ByteOutput {
-    private final RandomAccessFile file;
+    private final PageCacheOutputStream pageCacheOutputStream;
     private final ResettableBufferedOutputStream bufferedOutputStream;
     private CountingOutputStream countingOutputStream;
 
-    public ByteOutput(RandomAccessFile file) {
-        this.file = file;
-        bufferedOutputStream = new ResettableBufferedOutputStream(new RandomAccessFileOutputStream(file));
+    public ByteOutput(PageCache pageCache) {
+        pageCacheOutputStream = new PageCacheOutputStream(pageCache);
+        bufferedOutputStream = new ResettableBufferedOutputStream(pageCacheOutputStream);
     }
 
     /**
      * Starts writing to the given offset. Can be beyond the current length of the file.
      */
     public DataOutputStream start(long offset) throws IOException {
-        file.seek(offset);
+        pageCacheOutputStream.pos = offset;
         bufferedOutputStream.clear();
         countingOutputStream = new CountingOutputStream(bufferedOutputStream);
         return new DataOutputStream(countingOutputStream);
@@ -56,7 +54,7 @@ class ByteOutput {
     }
 
     /**
-     * Finishes writing, flushing and resetting any buffered state
+     * Finishes writing, flushing and resetting any buffered state. The bytes are written to the page cache, which writes them to the file when it is flushed.
      */
     public void done() throws IOException {
         countingOutputStream.flush();
@@ -72,4 +70,26 @@ class ByteOutput {
             count = 0;
         }
     }
+
+    private static class PageCacheOutputStream extends OutputStream {
+        private final PageCache pageCache;
+        private final byte[] single = new byte[1];
+        long pos;
+
+        PageCacheOutputStream(PageCache pageCache) {
+            this.pageCache = pageCache;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            single[0] = (byte) b;
+            write(single, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            pageCache.write(pos, bytes, offset, length);
+            pos += length;
+        }
+    }
 }
@@ -17,6 +17,7 @@ package org.gradle.cache.internal.btree;
 
 import org.gradle.api.UncheckedIOException;
 
+import javax.annotation.Nullable;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
@@ -25,15 +26,21 @@ import java.io.RandomAccessFile;
 
 public class FileBackedBlockStore implements BlockStore {
     private final File cacheFile;
+    private final long pageCacheSize;
     private RandomAccessFile file;
+    private PageCache pageCache;
     private ByteOutput output;
     private ByteInput input;
     private long nextBlock;
     private Factory factory;
     private long currentFileSize;
 
-    public FileBackedBlockStore(File cacheFile) {
+    /**
+     * @param pageCacheSize The maximum number of bytes of the file to hold in memory.
+     */
+    public FileBackedBlockStore(File cacheFile, long pageCacheSize) {
         this.cacheFile = cacheFile;
+        this.pageCacheSize = pageCacheSize;
     }
 
     @Override
@@ -46,9 +53,10 @@ public class FileBackedBlockStore implements BlockStore {
         try {
             cacheFile.getParentFile().mkdirs();
             file = new RandomAccessFile(cacheFile, "rw");
-            output = new ByteOutput(file);
-            input = new ByteInput(file);
-            currentFileSize = file.length();
+            pageCache = new PageCache(file, pageCacheSize);
+            output = new ByteOutput(pageCache);
+            input = new ByteInput(pageCache);
+            currentFileSize = pageCache.length();
             nextBlock = currentFileSize;
             if (currentFileSize == 0) {
                 runnable.run();
@@ -60,15 +68,34 @@ public class FileBackedBlockStore implements BlockStore {
 
     public void close() {
         try {
-            file.close();
+            try {
+                pageCache.flush();
+            } finally {
+                file.close();
+            }
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
     }
 
+    /**
+     * Returns the length of the file, including any blocks that have not been flushed.
+     */
+    public long getLength() {
+        return pageCache.length();
+    }
+
+    /**
+     * Returns the page cache of the file, or null when this store has not been opened.
+     */
+    @Nullable
+    public PageCache getPageCache() {
+        return pageCache;
+    }
+
     public void clear() {
         try {
-            file.setLength(0);
+            pageCache.setLength(0);
             currentFileSize = 0;
         } catch (IOException e) {
             throw new UncheckedIOException(e);
@@ -88,6 +115,11 @@ public class FileBackedBlockStore implements BlockStore {
     }
 
     public void flush() {
+        try {
+            pageCache.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
     public <T extends BlockPayload> T readFirst(Class<T> payloadType) {
@@ -201,7 +233,7 @@ public class FileBackedBlockStore implements BlockStore {
 
             // Pad
             if (currentFileSize < finalSize) {
-                file.setLength(finalSize);
+                pageCache.setLength(finalSize);
                 currentFileSize = finalSize;
             }
         }
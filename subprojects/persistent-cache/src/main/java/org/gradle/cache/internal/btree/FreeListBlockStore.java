@@ -92,6 +92,19 @@ public class FreeListBlockStore implements BlockStore {
         store.flush();
     }
 
+    /**
+     * Returns the total size of the free blocks.
+     */
+    public long getFreeSpace() {
+        long freeSpace = 0;
+        for (FreeListBlock block = freeListBlock; block != null; block = block.nextBlock.isNull() ? null : block.getNextBlock()) {
+            for (FreeListEntry entry : block.entries) {
+                freeSpace += entry.size;
+            }
+        }
+        return freeSpace;
+    }
+
     private void verify() {
         FreeListBlock block = store.readFirst(FreeListBlock.class);
         verify(block, Integer.MAX_VALUE);
@@ -16,59 +16,56 @@
 
 package org.gradle.cache.internal.btree;
 
-import org.gradle.internal.UncheckedException;
+import org.gradle.internal.hash.HashAlgorithm;
+import org.gradle.internal.hash.Hasher;
 import org.gradle.internal.serialize.Serializer;
 import org.gradle.internal.serialize.kryo.KryoBackedEncoder;
 
-import java.io.IOException;
 import java.io.OutputStream;
 import java.math.BigInteger;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 
 class KeyHasher<K> {
     private final Serializer<K> serializer;
-    private final MessageDigestStream digestStream = new MessageDigestStream();
-    private final KryoBackedEncoder encoder = new KryoBackedEncoder(digestStream);
+    private final HashAlgorithm algorithm;
+    private final HasherStream hasherStream = new HasherStream();
+    private final KryoBackedEncoder encoder = new KryoBackedEncoder(hasherStream);
 
-    public KeyHasher(Serializer<K> serializer) {
+    public KeyHasher(Serializer<K> serializer, HashAlgorithm algorithm) {
         this.serializer = serializer;
+        this.algorithm = algorithm;
+    }
+
+    HashAlgorithm getAlgorithm() {
+        return algorithm;
     }
 
     long getHashCode(K key) throws Exception {
+        hasherStream.hasher = algorithm.getHashFunction().newHasher();
         serializer.write(encoder, key);
         encoder.flush();
-        return digestStream.getChecksum();
+        return hasherStream.getChecksum();
     }
 
-    private static class MessageDigestStream extends OutputStream {
-        MessageDigest messageDigest;
-
-        private MessageDigestStream() {
-            try {
-                messageDigest = MessageDigest.getInstance("MD5");
-            } catch (NoSuchAlgorithmException e) {
-                throw UncheckedException.throwAsUncheckedException(e);
-            }
-        }
+    private static class HasherStream extends OutputStream {
+        Hasher hasher;
 
         @Override
-        public void write(int b) throws IOException {
-            messageDigest.update((byte) b);
+        public void write(int b) {
+            hasher.putByte((byte) b);
         }
 
         @Override
-        public void write(byte[] b) throws IOException {
-            messageDigest.update(b);
+        public void write(byte[] b) {
+            hasher.putBytes(b);
         }
 
         @Override
-        public void write(byte[] b, int off, int len) throws IOException {
-            messageDigest.update(b, off, len);
+        public void write(byte[] b, int off, int len) {
+            hasher.putBytes(b, off, len);
         }
 
         long getChecksum() {
-            byte[] digest = messageDigest.digest();
+            byte[] digest = hasher.hash().toByteArray();
             assert digest.length == 16;
             return new BigInteger(digest).longValue();
         }
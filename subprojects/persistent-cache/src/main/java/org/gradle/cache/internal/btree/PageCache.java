@@ -0,0 +1,230 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal.btree;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A pool of fixed-size pages of a {@link RandomAccessFile}, with a bounded memory budget.
+ *
+ * <p>The least recently used page is evicted when the budget is exceeded, and is written to the file first if it has been modified.
+ * Other modified pages are kept in memory until {@link #flush()}, which writes them in file order, seeking once per run of adjacent pages.</p>
+ *
+ * <p>Reads and writes beyond the current length of the file are allowed, and the file is extended to its new length on flush.</p>
+ */
+public class PageCache {
+    public static final int PAGE_SIZE = 4096;
+
+    private final RandomAccessFile file;
+    private final int maxPages;
+    private final LinkedHashMap<Long, Page> pages = new LinkedHashMap<Long, Page>(16, 0.75f, true);
+    private long length;
+    private long fileLength;
+    private long hitCount;
+    private long missCount;
+    private long writeCount;
+
+    public PageCache(RandomAccessFile file, long memoryBudget) throws IOException {
+        this.file = file;
+        this.maxPages = (int) Math.max(1, Math.min(Integer.MAX_VALUE, memoryBudget / PAGE_SIZE));
+        this.fileLength = file.length();
+        this.length = fileLength;
+    }
+
+    /**
+     * Returns the length of the file, including any modifications that have not been flushed.
+     */
+    public long length() {
+        return length;
+    }
+
+    /**
+     * Changes the length of the file. Truncation is applied to the file immediately.
+     */
+    public void setLength(long newLength) throws IOException {
+        if (newLength < length) {
+            Iterator<Page> iterator = pages.values().iterator();
+            while (iterator.hasNext()) {
+                Page page = iterator.next();
+                if (page.offset() >= newLength) {
+                    iterator.remove();
+                } else if (page.offset() + PAGE_SIZE > newLength) {
+                    int newPageLength = (int) (newLength - page.offset());
+                    for (int i = newPageLength; i < PAGE_SIZE; i++) {
+                        page.data[i] = 0;
+                    }
+                }
+            }
+            if (fileLength > newLength) {
+                file.setLength(newLength);
+                fileLength = newLength;
+            }
+        }
+        length = newLength;
+    }
+
+    /**
+     * Reads up to the given number of bytes at the given position.
+     *
+     * @return The number of bytes read, or -1 when the position is at or beyond the end of the file.
+     */
+    public int read(long pos, byte[] buffer, int offset, int count) throws IOException {
+        if (pos >= length) {
+            return -1;
+        }
+        int remaining = (int) Math.min(count, length - pos);
+        int bytesRead = 0;
+        while (bytesRead < remaining) {
+            Page page = getPage(pos / PAGE_SIZE);
+            int pageOffset = (int) (pos % PAGE_SIZE);
+            int n = Math.min(remaining - bytesRead, PAGE_SIZE - pageOffset);
+            System.arraycopy(page.data, pageOffset, buffer, offset + bytesRead, n);
+            bytesRead += n;
+            pos += n;
+        }
+        return bytesRead;
+    }
+
+    /**
+     * Writes the given bytes at the given position, extending the file when required.
+     */
+    public void write(long pos, byte[] buffer, int offset, int count) throws IOException {
+        int bytesWritten = 0;
+        while (bytesWritten < count) {
+            Page page = getPage(pos / PAGE_SIZE);
+            int pageOffset = (int) (pos % PAGE_SIZE);
+            int n = Math.min(count - bytesWritten, PAGE_SIZE - pageOffset);
+            System.arraycopy(buffer, offset + bytesWritten, page.data, pageOffset, n);
+            page.dirty = true;
+            bytesWritten += n;
+            pos += n;
+            // Update the length before fetching the next page, as this page may be evicted and written to the file
+            length = Math.max(length, pos);
+        }
+    }
+
+    /**
+     * Writes all modified pages to the file, in file order, and sets the length of the file.
+     */
+    public void flush() throws IOException {
+        List<Page> dirtyPages = new ArrayList<Page>();
+        for (Page page : pages.values()) {
+            if (page.dirty) {
+                dirtyPages.add(page);
+            }
+        }
+        Collections.sort(dirtyPages);
+        long nextIndex = -1;
+        for (Page page : dirtyPages) {
+            if (page.index != nextIndex) {
+                file.seek(page.offset());
+            }
+            writeAtCurrentPosition(page);
+            nextIndex = page.index + 1;
+        }
+        if (fileLength != length) {
+            file.setLength(length);
+            fileLength = length;
+        }
+    }
+
+    /**
+     * Returns the number of page lookups that were served from memory.
+     */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Returns the number of page lookups that required the page to be read from the file, or to be allocated.
+     */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Returns the number of pages written to the file.
+     */
+    public long getWriteCount() {
+        return writeCount;
+    }
+
+    private Page getPage(long index) throws IOException {
+        Page page = pages.get(index);
+        if (page != null) {
+            hitCount++;
+            return page;
+        }
+        missCount++;
+        page = new Page(index);
+        long offset = page.offset();
+        if (offset < fileLength) {
+            file.seek(offset);
+            file.readFully(page.data, 0, (int) Math.min(PAGE_SIZE, fileLength - offset));
+        }
+        evictIfRequired();
+        pages.put(index, page);
+        return page;
+    }
+
+    private void evictIfRequired() throws IOException {
+        Iterator<Map.Entry<Long, Page>> iterator = pages.entrySet().iterator();
+        while (pages.size() >= maxPages && iterator.hasNext()) {
+            Page eldest = iterator.next().getValue();
+            if (eldest.dirty) {
+                file.seek(eldest.offset());
+                writeAtCurrentPosition(eldest);
+            }
+            iterator.remove();
+        }
+    }
+
+    private void writeAtCurrentPosition(Page page) throws IOException {
+        long offset = page.offset();
+        int pageLength = (int) Math.min(PAGE_SIZE, length - offset);
+        file.write(page.data, 0, pageLength);
+        writeCount++;
+        fileLength = Math.max(fileLength, offset + pageLength);
+        page.dirty = false;
+    }
+
+    private static class Page implements Comparable<Page> {
+        final long index;
+        final byte[] data = new byte[PAGE_SIZE];
+        boolean dirty;
+
+        Page(long index) {
+            this.index = index;
+        }
+
+        long offset() {
+            return index * PAGE_SIZE;
+        }
+
+        @Override
+        public int compareTo(Page other) {
+            return index < other.index ? -1 : index == other.index ? 0 : 1;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal
+
+import org.gradle.api.Transformer
+import org.gradle.cache.FileAccess
+import org.gradle.cache.FileLock
+import org.gradle.cache.MultiProcessSafePersistentIndexedCache
+import org.gradle.internal.serialize.BaseSerializerFactory
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+class WriteAheadLogPersistentIndexedCacheTest extends Specification {
+    @Rule
+    TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+    final FileAccess fileAccess = Mock() {
+        writeFile(_) >> { Runnable action -> action.run() }
+    }
+    final MultiProcessSafePersistentIndexedCache<String, String> target = Mock()
+    final logFile = tmpDir.file("cache.wal")
+    final state1 = Stub(FileLock.State)
+    final state2 = Stub(FileLock.State)
+
+    def "records updates in log instead of backing cache"() {
+        def cache = newCache()
+
+        when:
+        cache.put("a", "1")
+        cache.put("b", "2")
+        cache.remove("b")
+        def a = cache.get("a")
+        def b = cache.get("b")
+
+        then:
+        a == "1"
+        b == null
+        0 * target._
+
+        when:
+        def result = cache.get("c")
+
+        then:
+        result == "3"
+        1 * target.get("c") >> "3"
+    }
+
+    def "produces and records value when missing"() {
+        def cache = newCache()
+        def producer = Mock(Transformer)
+
+        when:
+        def result = cache.get("a", producer)
+
+        then:
+        result == "1"
+        1 * target.get("a") >> null
+        1 * producer.transform("a") >> "1"
+
+        when:
+        result = cache.get("a", producer)
+
+        then:
+        result == "1"
+        0 * producer._
+        0 * target._
+    }
+
+    def "appends updates to log file before lock is released"() {
+        def cache = newCache()
+        cache.put("a", "1")
+
+        expect:
+        !logFile.exists()
+
+        when:
+        cache.finishWork()
+        cache.beforeLockRelease(state1)
+
+        then:
+        logFile.file
+        1 * target.finishWork()
+        1 * target.beforeLockRelease(state1)
+        0 * target._
+
+        when:
+        def result = newCache().get("a")
+
+        then:
+        result == "1"
+        0 * target._
+    }
+
+    def "keeps log in memory when cache has not been updated by another process"() {
+        state2.canDetectChanges() >> true
+        state2.hasBeenUpdatedSince(state1) >> false
+        def cache = newCache()
+        cache.put("a", "1")
+        cache.finishWork()
+        cache.beforeLockRelease(state1)
+        logFile.delete()
+
+        when:
+        cache.afterLockAcquire(state2)
+
+        then:
+        cache.get("a") == "1"
+    }
+
+    def "reads log again when cache has been updated by another process"() {
+        state2.canDetectChanges() >> true
+        state2.hasBeenUpdatedSince(state1) >> true
+        def cache = newCache()
+        cache.put("a", "1")
+        cache.finishWork()
+        cache.beforeLockRelease(state1)
+
+        def other = newCache()
+        other.put("a", "2")
+        other.finishWork()
+
+        when:
+        cache.afterLockAcquire(state2)
+
+        then:
+        cache.get("a") == "2"
+    }
+
+    def "applies logged updates to backing cache and clears log when log grows beyond threshold"() {
+        def cache = newCache(100)
+
+        when:
+        cache.put("a", "1")
+        cache.remove("b")
+        cache.put("c", "3")
+        cache.put("a", "4")
+        cache.finishWork()
+
+        then:
+        0 * target.put(_, _)
+        0 * target.remove(_)
+
+        when:
+        cache.put("long", "x" * 100)
+
+        then:
+        1 * target.put("a", "4")
+        1 * target.remove("b")
+
+        then:
+        1 * target.put("c", "3")
+
+        then:
+        1 * target.put("long", "x" * 100)
+        0 * target.put(_, _)
+
+        and:
+        !logFile.exists()
+
+        when:
+        def result = cache.get("a")
+
+        then:
+        result == "4"
+        1 * target.get("a") >> "4"
+    }
+
+    private WriteAheadLogPersistentIndexedCache<String, String> newCache(long threshold = 1024 * 1024) {
+        return new WriteAheadLogPersistentIndexedCache<String, String>(target, logFile, BaseSerializerFactory.STRING_SERIALIZER, BaseSerializerFactory.STRING_SERIALIZER, fileAccess, threshold)
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal
+
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+class WriteAheadLogTest extends Specification {
+    @Rule
+    TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+    def file = tmpDir.file("cache.wal")
+    def log = new WriteAheadLog(file)
+
+    def "loads empty log when file does not exist"() {
+        when:
+        log.load()
+
+        then:
+        log.loaded
+        log.entries.empty
+        log.size == 0
+        !file.exists()
+    }
+
+    def "buffers updates until committed"() {
+        log.load()
+
+        when:
+        log.append(bytes("a"), bytes("1"))
+        log.append(bytes("b"), null)
+
+        then:
+        log.hasPendingUpdates()
+        log.contains(bytes("a"))
+        log.get(bytes("a")) == bytes("1")
+        log.contains(bytes("b"))
+        log.get(bytes("b")) == null
+        !log.contains(bytes("c"))
+        !file.exists()
+
+        when:
+        log.commit()
+
+        then:
+        !log.hasPendingUpdates()
+        file.length() == log.size
+    }
+
+    def "replays committed updates in order"() {
+        log.load()
+        log.append(bytes("a"), bytes("1"))
+        log.append(bytes("b"), bytes("2"))
+        log.commit()
+        log.append(bytes("a"), bytes("3"))
+        log.append(bytes("b"), null)
+        log.append(bytes("c"), bytes("4"))
+        log.commit()
+
+        when:
+        def other = new WriteAheadLog(file)
+        other.load()
+
+        then:
+        other.size == file.length()
+        other.entries.collect { string(it.key) } == ["a", "b", "c"]
+        other.get(bytes("a")) == bytes("3")
+        other.contains(bytes("b"))
+        other.get(bytes("b")) == null
+        other.get(bytes("c")) == bytes("4")
+    }
+
+    def "discards uncommitted updates"() {
+        log.load()
+        log.append(bytes("a"), bytes("1"))
+        log.commit()
+        log.append(bytes("b"), bytes("2"))
+
+        when:
+        log.discard()
+
+        then:
+        !log.loaded
+
+        when:
+        log.load()
+
+        then:
+        log.contains(bytes("a"))
+        !log.contains(bytes("b"))
+        !log.hasPendingUpdates()
+    }
+
+    def "ignores partially written record at end of log and overwrites it on next commit"() {
+        log.load()
+        log.append(bytes("a"), bytes("1"))
+        log.commit()
+        def validLength = file.length()
+        log.append(bytes("b"), bytes("2"))
+        log.commit()
+        truncate(file, file.length() - 3)
+
+        when:
+        def other = new WriteAheadLog(file)
+        other.load()
+
+        then:
+        other.size == validLength
+        other.contains(bytes("a"))
+        !other.contains(bytes("b"))
+
+        when:
+        other.append(bytes("c"), bytes("3"))
+        other.commit()
+        log.load()
+
+        then:
+        log.contains(bytes("a"))
+        !log.contains(bytes("b"))
+        log.get(bytes("c")) == bytes("3")
+        file.length() == log.size
+    }
+
+    def "ignores records with invalid checksum"() {
+        log.load()
+        log.append(bytes("a"), bytes("1"))
+        log.commit()
+        log.append(bytes("b"), bytes("2"))
+        log.commit()
+        corruptByte(file, file.length() - 6)
+
+        when:
+        log.load()
+
+        then:
+        log.contains(bytes("a"))
+        !log.contains(bytes("b"))
+    }
+
+    def "ignores file with unexpected content"() {
+        file.text = "not a log"
+
+        when:
+        log.load()
+
+        then:
+        log.entries.empty
+
+        when:
+        log.append(bytes("a"), bytes("1"))
+        log.commit()
+        log.load()
+
+        then:
+        log.get(bytes("a")) == bytes("1")
+        file.length() == log.size
+    }
+
+    def "ignores log written in another format version"() {
+        log.load()
+        log.append(bytes("a"), bytes("1"))
+        log.commit()
+        def raf = new RandomAccessFile(file, "rw")
+        try {
+            raf.seek(4)
+            raf.writeInt(1000)
+        } finally {
+            raf.close()
+        }
+
+        when:
+        log.load()
+
+        then:
+        log.entries.empty
+        log.size == 0
+
+        when:
+        log.append(bytes("b"), bytes("2"))
+        log.commit()
+        log.load()
+
+        then:
+        !log.contains(bytes("a"))
+        log.get(bytes("b")) == bytes("2")
+        file.length() == log.size
+    }
+
+    def "can clear log"() {
+        log.load()
+        log.append(bytes("a"), bytes("1"))
+        log.commit()
+        log.append(bytes("b"), bytes("2"))
+
+        when:
+        log.clear()
+
+        then:
+        log.loaded
+        log.entries.empty
+        log.size == 0
+        !log.hasPendingUpdates()
+        !file.exists()
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes("utf-8")
+    }
+
+    private static String string(byte[] bytes) {
+        return new String(bytes, "utf-8")
+    }
+
+    private static void truncate(File file, long length) {
+        def raf = new RandomAccessFile(file, "rw")
+        try {
+            raf.setLength(length)
+        } finally {
+            raf.close()
+        }
+    }
+
+    private static void corruptByte(File file, long pos) {
+        def raf = new RandomAccessFile(file, "rw")
+        try {
+            raf.seek(pos)
+            def value = raf.read()
+            raf.seek(pos)
+            raf.write(value ^ 0xff)
+        } finally {
+            raf.close()
+        }
+    }
+}
@@ -15,6 +15,7 @@
  */
 package org.gradle.cache.internal.btree;
 
+import org.gradle.internal.hash.HashAlgorithm;
 import org.gradle.internal.serialize.DefaultSerializer;
 import org.gradle.internal.serialize.Serializer;
 import org.gradle.test.fixtures.file.TestFile;
@@ -36,8 +37,10 @@ import java.util.List;
 import java.util.Map;
 
 import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 
 public class BTreePersistentIndexedCacheTest {
     @Rule
@@ -173,6 +176,73 @@ public class BTreePersistentIndexedCacheTest {
         verifyAndCloseCache();
     }
 
+    @Test
+    public void discardsEntriesWhenKeyHashAlgorithmChanges() {
+        createCache();
+        checkAdds(1, 2, 3, 4, 5);
+        cache.close();
+
+        String oldValue = System.setProperty(BTreePersistentIndexedCache.KEY_HASH_ALGORITHM_PROPERTY, HashAlgorithm.MD5.name());
+        try {
+            createCache();
+            assertNull(cache.get("key_1"));
+            checkAdds(1, 2, 3);
+            verifyAndCloseCache();
+        } finally {
+            if (oldValue == null) {
+                System.clearProperty(BTreePersistentIndexedCache.KEY_HASH_ALGORITHM_PROPERTY);
+            } else {
+                System.setProperty(BTreePersistentIndexedCache.KEY_HASH_ALGORITHM_PROPERTY, oldValue);
+            }
+        }
+    }
+
+    @Test
+    public void includesKeyHashAlgorithmInFileNameUnlessMd5() {
+        assertThat(BTreePersistentIndexedCache.getFileName("cache"), equalTo("cache-murmur3-128-v1.bin"));
+
+        String oldValue = System.setProperty(BTreePersistentIndexedCache.KEY_HASH_ALGORITHM_PROPERTY, HashAlgorithm.MD5.name());
+        try {
+            assertThat(BTreePersistentIndexedCache.getFileName("cache"), equalTo("cache.bin"));
+        } finally {
+            if (oldValue == null) {
+                System.clearProperty(BTreePersistentIndexedCache.KEY_HASH_ALGORITHM_PROPERTY);
+            } else {
+                System.setProperty(BTreePersistentIndexedCache.KEY_HASH_ALGORITHM_PROPERTY, oldValue);
+            }
+        }
+    }
+
+    @Test
+    public void writesModifiedPagesOnlyWhenFlushed() {
+        createCache();
+        long writesAfterOpen = cache.getPageCache().getWriteCount();
+
+        for (int i = 0; i < 20; i++) {
+            cache.put("key_" + i, i);
+        }
+        cache.remove("key_3");
+
+        assertThat(cache.getPageCache().getWriteCount(), equalTo(writesAfterOpen));
+
+        cache.flush();
+
+        long writesAfterFlush = cache.getPageCache().getWriteCount();
+        assertTrue(writesAfterFlush > writesAfterOpen);
+        assertTrue(writesAfterFlush - writesAfterOpen < 20);
+
+        cache.put("key_3", 3);
+        cache.close();
+
+        assertTrue(cache.getPageCache().getWriteCount() > writesAfterFlush);
+
+        createCache();
+        for (int i = 0; i < 20; i++) {
+            assertThat(cache.get("key_" + i), equalTo(i));
+        }
+        verifyAndCloseCache();
+    }
+
     @Test
     public void persistsReplacedEntries() {
         createCache();
@@ -259,6 +329,43 @@ public class BTreePersistentIndexedCacheTest {
         cache.close();
     }
 
+    @Test
+    public void compactionReclaimsFreeSpaceAndKeepsEntries() {
+        createCache();
+        List<Integer> values = new ArrayList<Integer>();
+        for (int i = 0; i < 1000; i++) {
+            values.add(i);
+        }
+        checkAdds(values);
+        for (int i = 0; i < 1000; i += 2) {
+            cache.remove(String.format("key_%d", i));
+        }
+
+        assertThat(cache.getFreeSpaceRatio(), greaterThan(0.0));
+        long len = cacheFile.length();
+
+        cache.compact();
+
+        assertThat(cacheFile.length(), lessThan(len));
+        assertThat(cache.getFreeSpaceRatio(), equalTo(0.0));
+        assertFalse(new File(cacheFile.getParentFile(), cacheFile.getName() + ".compact").exists());
+        for (int i = 0; i < 1000; i++) {
+            String key = String.format("key_%d", i);
+            if (i % 2 == 0) {
+                assertNull(cache.get(key));
+            } else {
+                assertThat(cache.get(key), equalTo(i));
+            }
+        }
+
+        verifyAndCloseCache();
+        createCache();
+        assertThat(cache.get("key_1"), equalTo(1));
+        assertNull(cache.get("key_2"));
+        checkAdds(1000, 1001);
+        verifyAndCloseCache();
+    }
+
     @Test
     public void persistsRemovalOfEntries() {
         createCache();
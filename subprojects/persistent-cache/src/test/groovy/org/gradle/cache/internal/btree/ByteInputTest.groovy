@@ -24,11 +24,9 @@ class ByteInputTest extends Specification {
     @Rule
     TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
     RandomAccessFile file
-    ByteInput input
 
     def setup() {
         file = new RandomAccessFile(tmpDir.file("test.bin"), "rw")
-        input = new ByteInput(file)
     }
 
     def cleanup() {
@@ -41,6 +39,7 @@ class ByteInputTest extends Specification {
         file.writeInt(123)
         file.writeInt(321)
         file.writeInt(456)
+        def input = newInput()
 
         expect:
         def stream = input.start(0)
@@ -58,11 +57,30 @@ class ByteInputTest extends Specification {
         input.done()
     }
 
+    def "can read across page boundaries"() {
+        given:
+        file.seek(PageCache.PAGE_SIZE - 2)
+        file.writeInt(123)
+        file.writeLong(456)
+        def input = newInput()
+
+        expect:
+        def stream = input.start(PageCache.PAGE_SIZE - 2)
+        stream.readInt() == 123
+        stream.readLong() == 456
+        input.getBytesRead() == 12
+        input.done()
+    }
+
     def "cannot read beyond end of file"() {
         when:
-        input.start(123).readInt()
+        newInput().start(123).readInt()
 
         then:
         EOFException e = thrown()
     }
+
+    private ByteInput newInput() {
+        return new ByteInput(new PageCache(file, PageCache.PAGE_SIZE * 2))
+    }
 }
@@ -24,11 +24,13 @@ class ByteOutputTest extends Specification {
     @Rule
     TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
     RandomAccessFile file
+    PageCache pageCache
     ByteOutput output
 
     def setup() {
         file = new RandomAccessFile(tmpDir.file("test.bin"), "rw")
-        output = new ByteOutput(file)
+        pageCache = new PageCache(file, PageCache.PAGE_SIZE * 2)
+        output = new ByteOutput(pageCache)
     }
 
     def cleanup() {
@@ -41,6 +43,7 @@ class ByteOutputTest extends Specification {
         stream.writeInt(123)
         stream.writeByte(12)
         output.done()
+        pageCache.flush()
 
         then:
         file.length() == 5
@@ -52,6 +55,7 @@ class ByteOutputTest extends Specification {
         stream = output.start(5)
         stream.writeInt(321)
         output.done()
+        pageCache.flush()
 
         then:
         file.length() == 9
@@ -67,6 +71,7 @@ class ByteOutputTest extends Specification {
         stream.writeInt(123)
         stream.writeByte(12)
         output.done()
+        pageCache.flush()
 
         then:
         file.length() == 5
@@ -78,6 +83,7 @@ class ByteOutputTest extends Specification {
         stream = output.start(0)
         stream.writeInt(321)
         output.done()
+        pageCache.flush()
 
         then:
         file.length() == 5
@@ -92,6 +98,7 @@ class ByteOutputTest extends Specification {
         stream.writeInt(123)
         stream.writeByte(12)
         output.done()
+        pageCache.flush()
 
         then:
         file.length() == 15
@@ -99,4 +106,19 @@ class ByteOutputTest extends Specification {
         file.readInt() == 123
         file.readByte() == 12
     }
+
+    def "can write across page boundaries"() {
+        when:
+        def stream = output.start(PageCache.PAGE_SIZE - 2)
+        stream.writeInt(123)
+        stream.writeLong(456)
+        output.done()
+        pageCache.flush()
+
+        then:
+        file.length() == PageCache.PAGE_SIZE + 10
+        file.seek(PageCache.PAGE_SIZE - 2)
+        file.readInt() == 123
+        file.readLong() == 456
+    }
 }
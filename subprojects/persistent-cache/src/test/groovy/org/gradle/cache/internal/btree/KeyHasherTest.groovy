@@ -16,29 +16,43 @@
 
 package org.gradle.cache.internal.btree
 
+import org.gradle.internal.hash.HashAlgorithm
 import org.gradle.internal.serialize.BaseSerializerFactory
 import org.gradle.internal.serialize.Decoder
 import org.gradle.internal.serialize.Encoder
 import org.gradle.internal.serialize.Serializer
 import spock.lang.Specification
+import spock.lang.Unroll
 
+@Unroll
 class KeyHasherTest extends Specification {
-    def "can reuse to hash more than one key"() {
-        def hasher = new KeyHasher(BaseSerializerFactory.LONG_SERIALIZER)
+    def "can reuse to hash more than one key using #algorithm"() {
+        def hasher = new KeyHasher(BaseSerializerFactory.LONG_SERIALIZER, algorithm)
 
         expect:
         hasher.getHashCode(12L) != hasher.getHashCode(11L)
         hasher.getHashCode(12L) == hasher.getHashCode(12L)
-        hasher.getHashCode(12L) == new KeyHasher(BaseSerializerFactory.LONG_SERIALIZER).getHashCode(12L)
+        hasher.getHashCode(12L) == new KeyHasher(BaseSerializerFactory.LONG_SERIALIZER, algorithm).getHashCode(12L)
+
+        where:
+        algorithm << HashAlgorithm.values()
     }
 
-    def "can reuse to hash large key"() {
-        def hasher = new KeyHasher(new InefficientSerializer())
+    def "can reuse to hash large key using #algorithm"() {
+        def hasher = new KeyHasher(new InefficientSerializer(), algorithm)
 
         expect:
         hasher.getHashCode(12000L) != hasher.getHashCode(12001L)
         hasher.getHashCode(12000L) == hasher.getHashCode(12000L)
-        hasher.getHashCode(12000L) == new KeyHasher(new InefficientSerializer()).getHashCode(12000L)
+        hasher.getHashCode(12000L) == new KeyHasher(new InefficientSerializer(), algorithm).getHashCode(12000L)
+
+        where:
+        algorithm << HashAlgorithm.values()
+    }
+
+    def "hash codes depend on the algorithm"() {
+        expect:
+        new KeyHasher(BaseSerializerFactory.LONG_SERIALIZER, HashAlgorithm.MD5).getHashCode(12L) != new KeyHasher(BaseSerializerFactory.LONG_SERIALIZER, HashAlgorithm.MURMUR3_128).getHashCode(12L)
     }
 
     static class InefficientSerializer implements Serializer<Long> {
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal.btree
+
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+import static org.gradle.cache.internal.btree.PageCache.PAGE_SIZE
+
+class PageCacheTest extends Specification {
+    @Rule
+    TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+    RandomAccessFile file
+
+    def setup() {
+        file = new RandomAccessFile(tmpDir.file("test.bin"), "rw")
+    }
+
+    def cleanup() {
+        file.close()
+    }
+
+    def "keeps writes in memory until flushed"() {
+        def cache = new PageCache(file, PAGE_SIZE * 4)
+
+        when:
+        write(cache, 10, [1, 2, 3])
+
+        then:
+        cache.length() == 13
+        read(cache, 10, 3) == [1, 2, 3]
+        file.length() == 0
+
+        when:
+        cache.flush()
+
+        then:
+        file.length() == 13
+        file.seek(10)
+        file.read() == 1
+        file.read() == 2
+        file.read() == 3
+    }
+
+    def "counts hits and misses"() {
+        write(file, 0, new byte[PAGE_SIZE * 2])
+        def cache = new PageCache(file, PAGE_SIZE * 4)
+
+        when:
+        read(cache, 0, 10)
+        read(cache, 20, 10)
+        read(cache, PAGE_SIZE - 5, 10)
+
+        then:
+        cache.missCount == 2
+        cache.hitCount == 2
+    }
+
+    def "evicts least recently used page and writes it when modified"() {
+        def cache = new PageCache(file, PAGE_SIZE * 2)
+
+        when:
+        write(cache, 0, [1])
+        write(cache, PAGE_SIZE, [2])
+        read(cache, 0, 1)
+        write(cache, PAGE_SIZE * 2, [3])
+
+        then:
+        cache.missCount == 3
+        // The second page was evicted, the first and third are still dirty
+        file.length() == PAGE_SIZE + 1
+        file.seek(0)
+        file.read() == 0
+        file.seek(PAGE_SIZE)
+        file.read() == 2
+
+        when:
+        def data = read(cache, PAGE_SIZE, 1)
+
+        then:
+        data == [2]
+        cache.missCount == 4
+
+        when:
+        cache.flush()
+
+        then:
+        file.length() == PAGE_SIZE * 2 + 1
+        file.seek(0)
+        file.read() == 1
+        file.seek(PAGE_SIZE * 2)
+        file.read() == 3
+    }
+
+    def "reads nothing beyond the end of the file"() {
+        def cache = new PageCache(file, PAGE_SIZE * 2)
+        write(cache, 0, [1, 2])
+
+        expect:
+        cache.read(1, new byte[10], 0, 10) == 1
+        cache.read(2, new byte[10], 0, 10) == -1
+    }
+
+    def "extends and truncates file"() {
+        def cache = new PageCache(file, PAGE_SIZE * 2)
+        write(cache, 0, [1, 2, 3, 4])
+        cache.flush()
+
+        when:
+        cache.setLength(PAGE_SIZE + 2)
+        cache.flush()
+
+        then:
+        file.length() == PAGE_SIZE + 2
+
+        when:
+        cache.setLength(2)
+
+        then:
+        file.length() == 2
+        cache.length() == 2
+
+        when:
+        cache.setLength(4)
+
+        then:
+        read(cache, 0, 4) == [1, 2, 0, 0]
+    }
+
+    private static void write(PageCache cache, long pos, List<Integer> values) {
+        byte[] bytes = values as byte[]
+        cache.write(pos, bytes, 0, bytes.length)
+    }
+
+    private static void write(RandomAccessFile file, long pos, byte[] bytes) {
+        file.seek(pos)
+        file.write(bytes)
+    }
+
+    private static List<Integer> read(PageCache cache, long pos, int count) {
+        byte[] bytes = new byte[count]
+        assert cache.read(pos, bytes, 0, count) == count
+        return bytes as List<Integer>
+    }
+}